@@ -0,0 +1,163 @@
+package com.davemorrissey.labs.subscaleview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.davemorrissey.labs.subscaleview.decoder.SkiaImageRegionDecoder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
+
+/**
+ * Pans a viewport over a generated large JPEG the way the image viewer loads tiles, once parking tiles that leave the
+ * screen in the {@link TileCache} and once decoding every tile that comes back, for the developer settings.
+ */
+public class TileCacheBenchmark {
+    private static final int IMAGE_WIDTH = 4096;
+    private static final int IMAGE_HEIGHT = 3072;
+    private static final int TILE_SIZE = 512;
+    // about a phone screen at full resolution
+    private static final int VIEW_COLUMNS = 2;
+    private static final int VIEW_ROWS = 4;
+    private static final int PASSES = 3;
+
+    /**
+     * Run this off the main thread.
+     */
+    public static String run()
+            throws Exception {
+        Context context = getAppContext();
+        File file = new File(context.getCacheDir(), "tile_benchmark.jpg");
+        try {
+            writeImage(file);
+            SkiaImageRegionDecoder decoder = new SkiaImageRegionDecoder();
+            Point size = decoder.init(context, ImageSource.uri(Uri.fromFile(file)));
+            try {
+                StringBuilder result = new StringBuilder();
+                result.append(String.format(Locale.ENGLISH,
+                        "%dx%d image, %d KB, %dpx tiles, %d passes\n",
+                        size.x,
+                        size.y,
+                        file.length() / 1024,
+                        TILE_SIZE,
+                        PASSES
+                ));
+                pan(decoder, result, true);
+                pan(decoder, result, false);
+                return result.toString().trim();
+            } finally {
+                decoder.recycle();
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static void pan(SkiaImageRegionDecoder decoder, StringBuilder result, boolean useCache) {
+        TileCache tileCache = TileCache.getInstance();
+        String sourceKey = "benchmark" + SystemClock.elapsedRealtimeNanos();
+        tileCache.openSource(sourceKey);
+
+        int columns = IMAGE_WIDTH / TILE_SIZE;
+        int rows = IMAGE_HEIGHT / TILE_SIZE;
+        Map<Rect, Bitmap> visible = new HashMap<>();
+        int decodes = 0;
+        int reused = 0;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < PASSES; pass++) {
+            // right along the top, down, left along the bottom, and back up, one tile at a time
+            for (Point position : panPath(columns - VIEW_COLUMNS, rows - VIEW_ROWS)) {
+                List<Rect> wanted = new ArrayList<>();
+                for (int x = position.x; x < position.x + VIEW_COLUMNS; x++) {
+                    for (int y = position.y; y < position.y + VIEW_ROWS; y++) {
+                        wanted.add(new Rect(x * TILE_SIZE, y * TILE_SIZE, (x + 1) * TILE_SIZE, (y + 1) * TILE_SIZE));
+                    }
+                }
+
+                for (Rect rect : new ArrayList<>(visible.keySet())) {
+                    if (wanted.contains(rect)) continue;
+                    Bitmap bitmap = visible.remove(rect);
+                    if (useCache) {
+                        tileCache.put(sourceKey, TileCache.key(sourceKey, 0, 1, rect), bitmap);
+                    } else {
+                        tileCache.release(bitmap);
+                    }
+                }
+                for (Rect rect : wanted) {
+                    if (visible.containsKey(rect)) continue;
+                    Bitmap bitmap = useCache ? tileCache.take(TileCache.key(sourceKey, 0, 1, rect)) : null;
+                    if (bitmap != null) {
+                        reused++;
+                    } else {
+                        bitmap = decoder.decodeRegion(rect, 1, tileCache);
+                        decodes++;
+                    }
+                    visible.put(rect, bitmap);
+                }
+            }
+        }
+        double ms = (SystemClock.elapsedRealtimeNanos() - start) / 1e6;
+
+        for (Bitmap bitmap : visible.values()) {
+            tileCache.release(bitmap);
+        }
+        tileCache.evictSource(sourceKey);
+        result.append(String.format(Locale.ENGLISH,
+                "%s: %.0fms, %d decodes, %d tiles from the cache\n",
+                useCache ? "Cache on" : "Cache off",
+                ms,
+                decodes,
+                reused
+        ));
+    }
+
+    private static List<Point> panPath(int maxX, int maxY) {
+        List<Point> path = new ArrayList<>();
+        for (int x = 0; x <= maxX; x++) path.add(new Point(x, 0));
+        for (int y = 1; y <= maxY; y++) path.add(new Point(maxX, y));
+        for (int x = maxX - 1; x >= 0; x--) path.add(new Point(x, maxY));
+        for (int y = maxY - 1; y > 0; y--) path.add(new Point(0, y));
+        return path;
+    }
+
+    /**
+     * Random shapes rather than a flat color, so the JPEG takes about as long to decode as a photo would.
+     */
+    private static void writeImage(File file)
+            throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.RGB_565);
+        try {
+            Canvas canvas = new Canvas(bitmap);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            Random random = new Random(42);
+            for (int i = 0; i < 20000; i++) {
+                paint.setColor(0xFF000000 | random.nextInt(0xFFFFFF));
+                float x = random.nextInt(IMAGE_WIDTH);
+                float y = random.nextInt(IMAGE_HEIGHT);
+                canvas.drawCircle(x, y, 4 + random.nextInt(60), paint);
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model;
+
+import android.os.SystemClock;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Times {@link ReplyGraph} on a synthetic thread against the old approach of rescanning the post list and recursing on
+ * replies, for the developer settings.
+ */
+public class ReplyGraphBenchmark {
+    private static final int POST_COUNT = 5000;
+    private static final int FIRST_NO = 100000;
+
+    /**
+     * Every post replies to the one before it, so the whole thread is one chain, and some also reply to a random
+     * earlier post. Run this off the main thread.
+     */
+    public static String run() {
+        Random random = new Random(42);
+        Board board = Board.getDummyBoard();
+        List<Post> posts = new ArrayList<>(POST_COUNT);
+        for (int i = 0; i < POST_COUNT; i++) {
+            posts.add(new Post.Builder().board(board)
+                    .no(FIRST_NO + i)
+                    .opId(FIRST_NO)
+                    .op(i == 0)
+                    .setUnixTimestampSeconds(1600000000L + i * 30L)
+                    .comment("")
+                    .build());
+        }
+        for (int i = 1; i < POST_COUNT; i++) {
+            posts.get(i - 1).repliesFrom.add(FIRST_NO + i);
+            if (random.nextInt(3) == 0) {
+                posts.get(random.nextInt(i)).repliesFrom.add(FIRST_NO + i);
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        result.append(POST_COUNT).append(" posts\n");
+        long start = SystemClock.elapsedRealtimeNanos();
+        ReplyGraph graph = ReplyGraph.build(posts);
+        appendTiming(result, "Build", start, POST_COUNT);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        int found = graph.getPostWithReplies(FIRST_NO).size();
+        appendTiming(result, "Replies to OP", start, found);
+
+        // the old way, on a thread with a big enough stack to give it a fair chance
+        final String[] recursive = new String[1];
+        Thread thread = new Thread(null, () -> {
+            long recursiveStart = SystemClock.elapsedRealtimeNanos();
+            try {
+                Set<Integer> visited = new HashSet<>();
+                findRecursive(FIRST_NO, posts, visited);
+                StringBuilder line = new StringBuilder();
+                appendTiming(line, "Replies to OP, recursive", recursiveStart, visited.size());
+                recursive[0] = line.toString();
+            } catch (StackOverflowError e) {
+                recursive[0] = "Replies to OP, recursive: stack overflow\n";
+            }
+        }, "ReplyGraphBenchmark", 1024 * 1024);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        result.append(recursive[0]);
+        return result.toString().trim();
+    }
+
+    private static void findRecursive(int no, List<Post> posts, Set<Integer> visited) {
+        for (Post post : posts) {
+            if (post.no == no && visited.add(no)) {
+                for (int reply : post.repliesFrom) {
+                    findRecursive(reply, posts, visited);
+                }
+            }
+        }
+    }
+
+    private static void appendTiming(StringBuilder builder, String name, long startNanos, int count) {
+        builder.append(String.format(Locale.ENGLISH,
+                "%s: %.2fms, %d posts\n",
+                name,
+                (SystemClock.elapsedRealtimeNanos() - startNanos) / 1e6,
+                count
+        ));
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model.export;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.di.AppModule;
+import com.github.adamantcheese.chan.core.repository.ImportExportRepository;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+
+/**
+ * Compares exporting and importing a synthetic large profile as one Gson tree against {@link ExportStream}, and
+ * inserting its post hides with and without checking for each row first, for the developer settings.
+ * Uses a scratch file and database, the app's own database isn't touched.
+ */
+public class ImportExportBenchmark {
+    private static final int SITES = 10;
+    private static final int PINS_PER_SITE = 20;
+    private static final int BOARDS = 3000;
+    private static final int FILTERS = 200;
+    private static final int POST_HIDES = 50000;
+    private static final String SETTINGS = "{}";
+
+    /**
+     * Run this off the main thread.
+     */
+    public static String run() {
+        File file = new File(getCacheDir(), "benchmark_export.json");
+        File database = new File(getCacheDir(), "benchmark_import.db");
+        StringBuilder result = new StringBuilder();
+        result.append(String.format(Locale.ENGLISH,
+                "%d sites, %d pins, %d boards, %d filters, %d post hides\n",
+                SITES,
+                SITES * PINS_PER_SITE,
+                BOARDS,
+                FILTERS,
+                POST_HIDES
+        ));
+        try {
+            // whole tree, as exports used to be
+            long baseline = usedHeap();
+            long start = SystemClock.elapsedRealtimeNanos();
+            ExportedAppSettings tree = new ExportedAppSettings(ImportExportRepository.CURRENT_EXPORT_SETTINGS_VERSION,
+                    makeSites(),
+                    makeBoards(),
+                    makeFilters(),
+                    makePostHides(),
+                    SETTINGS
+            );
+            try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+                AppModule.gson.toJson(tree, writer);
+            }
+            long exportNanos = SystemClock.elapsedRealtimeNanos() - start;
+            long exportHeap = usedHeap() - baseline;
+            //noinspection UnusedAssignment
+            tree = null;
+
+            baseline = usedHeap();
+            start = SystemClock.elapsedRealtimeNanos();
+            ExportedAppSettings imported;
+            try (Reader reader = new BufferedReader(new FileReader(file))) {
+                imported = AppModule.gson.fromJson(reader, ExportedAppSettings.class);
+            }
+            long importNanos = SystemClock.elapsedRealtimeNanos() - start;
+            long importHeap = usedHeap() - baseline;
+            appendTiming(result, "Tree", exportNanos, exportHeap, importNanos, importHeap, file.length());
+            if (imported.getExportedPostHides().size() != POST_HIDES) throw new IllegalStateException("Lost records");
+            //noinspection UnusedAssignment
+            imported = null;
+
+            // streamed, records are made as they're written, like rows from a cursor
+            baseline = usedHeap();
+            start = SystemClock.elapsedRealtimeNanos();
+            try (ExportStream.Writer writer = new ExportStream.Writer(new BufferedWriter(new FileWriter(file)),
+                    ImportExportRepository.CURRENT_EXPORT_SETTINGS_VERSION,
+                    null
+            )) {
+                writer.beginArray(ExportStream.SITES);
+                for (ExportedSite site : makeSites()) {
+                    writer.write(site, ExportedSite.class);
+                }
+                writer.endArray();
+                writer.beginArray(ExportStream.BOARDS);
+                for (int i = 0; i < BOARDS; i++) {
+                    writer.write(makeBoard(i), ExportedBoard.class);
+                }
+                writer.endArray();
+                writer.beginArray(ExportStream.FILTERS);
+                for (int i = 0; i < FILTERS; i++) {
+                    writer.write(makeFilter(i), ExportedFilter.class);
+                }
+                writer.endArray();
+                writer.beginArray(ExportStream.POST_HIDES);
+                for (int i = 0; i < POST_HIDES; i++) {
+                    writer.write(makePostHide(i), ExportedPostHide.class);
+                }
+                writer.endArray();
+                writer.finish(SETTINGS);
+            }
+            exportNanos = SystemClock.elapsedRealtimeNanos() - start;
+            exportHeap = usedHeap() - baseline;
+
+            baseline = usedHeap();
+            start = SystemClock.elapsedRealtimeNanos();
+            CountingHandler handler = new CountingHandler();
+            try (Reader reader = new BufferedReader(new FileReader(file))) {
+                ExportStream.read(reader, handler, null);
+            }
+            importNanos = SystemClock.elapsedRealtimeNanos() - start;
+            importHeap = usedHeap() - baseline;
+            appendTiming(result, "Stream", exportNanos, exportHeap, importNanos, importHeap, file.length());
+            if (handler.postHides != POST_HIDES) throw new IllegalStateException("Lost records");
+
+            appendInserts(result, database);
+        } catch (Exception e) {
+            result.append("Failed: ").append(e.getMessage());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            SQLiteDatabase.deleteDatabase(database);
+        }
+        return result.toString().trim();
+    }
+
+    private static void appendInserts(StringBuilder result, File file) {
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            database.execSQL("CREATE TABLE posthide (id INTEGER PRIMARY KEY AUTOINCREMENT, site INTEGER, "
+                    + "board VARCHAR, no INTEGER, whole_thread SMALLINT, hide SMALLINT, "
+                    + "hide_replies_to_this_post SMALLINT, thread_no INTEGER)");
+            SQLiteStatement insert = database.compileStatement("INSERT INTO posthide (site, board, no, whole_thread, "
+                    + "hide, hide_replies_to_this_post, thread_no) VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+            SQLiteStatement exists = database.compileStatement("SELECT COUNT(*) FROM posthide WHERE id = ?");
+
+            // the import runs in one transaction; this is what createIfNotExists() cost per row before
+            long start = SystemClock.elapsedRealtimeNanos();
+            database.beginTransaction();
+            try {
+                for (int i = 0; i < POST_HIDES; i++) {
+                    exists.bindLong(1, 0);
+                    exists.simpleQueryForLong();
+                    bind(insert, makePostHide(i));
+                    insert.executeInsert();
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            long checkedNanos = SystemClock.elapsedRealtimeNanos() - start;
+            database.execSQL("DELETE FROM posthide");
+
+            start = SystemClock.elapsedRealtimeNanos();
+            database.beginTransaction();
+            try {
+                for (int i = 0; i < POST_HIDES; i++) {
+                    bind(insert, makePostHide(i));
+                    insert.executeInsert();
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            long directNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            result.append(String.format(Locale.ENGLISH,
+                    "Inserts of %d post hides: %.0fms checked first, %.0fms direct\n",
+                    POST_HIDES,
+                    checkedNanos / 1e6,
+                    directNanos / 1e6
+            ));
+        } finally {
+            database.close();
+        }
+    }
+
+    private static void bind(SQLiteStatement insert, ExportedPostHide postHide) {
+        insert.clearBindings();
+        insert.bindLong(1, postHide.getSite());
+        insert.bindString(2, postHide.getBoard() == null ? "" : postHide.getBoard());
+        insert.bindLong(3, postHide.getNo());
+        insert.bindLong(4, postHide.getWholeThread() ? 1 : 0);
+        insert.bindLong(5, postHide.getHide() ? 1 : 0);
+        insert.bindLong(6, postHide.getHideRepliesToThisPost() ? 1 : 0);
+        insert.bindLong(7, postHide.getThreadNo());
+    }
+
+    private static List<ExportedSite> makeSites() {
+        List<ExportedSite> sites = new ArrayList<>(SITES);
+        for (int site = 1; site <= SITES; site++) {
+            List<ExportedPin> pins = new ArrayList<>(PINS_PER_SITE);
+            for (int i = 0; i < PINS_PER_SITE; i++) {
+                int id = site * PINS_PER_SITE + i;
+                ExportedLoadable loadable = new ExportedLoadable("b" + site,
+                        id,
+                        100,
+                        90,
+                        10,
+                        0,
+                        1,
+                        1000000 + id,
+                        site,
+                        "Thread " + id,
+                        "https://i.example.com/b/" + id + "s.jpg"
+                );
+                pins.add(new ExportedPin(false, id, false, id, i, 3, 3, 100, 100, true, loadable));
+            }
+            sites.add(new ExportedSite(site, "{}", site, "{}", site, pins));
+        }
+        return sites;
+    }
+
+    private static List<ExportedBoard> makeBoards() {
+        List<ExportedBoard> boards = new ArrayList<>(BOARDS);
+        for (int i = 0; i < BOARDS; i++) {
+            boards.add(makeBoard(i));
+        }
+        return boards;
+    }
+
+    private static ExportedBoard makeBoard(int i) {
+        return new ExportedBoard(i % SITES + 1,
+                i % 7 == 0,
+                i,
+                "Board " + i,
+                "b" + i,
+                i % 2 == 0,
+                15,
+                10,
+                4194304,
+                3145728,
+                2000,
+                300,
+                150,
+                600,
+                60,
+                60,
+                true,
+                0,
+                false,
+                false,
+                false,
+                false,
+                new HashMap<>(),
+                false,
+                "A synthetic board for the import/export benchmark, number " + i,
+                false
+        );
+    }
+
+    private static List<ExportedFilter> makeFilters() {
+        List<ExportedFilter> filters = new ArrayList<>(FILTERS);
+        for (int i = 0; i < FILTERS; i++) {
+            filters.add(makeFilter(i));
+        }
+        return filters;
+    }
+
+    private static ExportedFilter makeFilter(int i) {
+        return new ExportedFilter(true, 1, "/word" + i + "/i", false, "1:b" + i, 1, 0, false, i, false, false);
+    }
+
+    private static List<ExportedPostHide> makePostHides() {
+        List<ExportedPostHide> postHides = new ArrayList<>(POST_HIDES);
+        for (int i = 0; i < POST_HIDES; i++) {
+            postHides.add(makePostHide(i));
+        }
+        return postHides;
+    }
+
+    private static ExportedPostHide makePostHide(int i) {
+        return new ExportedPostHide(i % SITES + 1, "b" + i % 100, 1000000 + i, i % 10 == 0, false, false, 1000000 + i);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void appendTiming(
+            StringBuilder builder, String name, long exportNanos, long exportHeap, long importNanos, long importHeap,
+            long bytes
+    ) {
+        builder.append(String.format(Locale.ENGLISH,
+                "%s: export %.0fms holding %.1f MB, import %.0fms holding %.1f MB, %d KB file\n",
+                name,
+                exportNanos / 1e6,
+                Math.max(0, exportHeap) / 1024.0 / 1024.0,
+                importNanos / 1e6,
+                Math.max(0, importHeap) / 1024.0 / 1024.0,
+                bytes / 1024
+        ));
+    }
+
+    private static class CountingHandler
+            implements ExportStream.Handler {
+        private int postHides;
+
+        @Override
+        public void onVersion(int version) {}
+
+        @Override
+        public void onSite(ExportedSite site) {}
+
+        @Override
+        public void onBoard(ExportedBoard board) {}
+
+        @Override
+        public void onFilter(ExportedFilter filter) {}
+
+        @Override
+        public void onPostHide(ExportedPostHide postHide) {
+            postHides++;
+        }
+
+        @Override
+        public void onSettings(@Nullable String settings) {}
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model.export;
+
+import android.os.SystemClock;
+import android.text.SpannableStringBuilder;
+import android.text.style.StyleSpan;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.PostLinkable;
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.ui.text.ForegroundColorSpanHashed;
+import com.github.adamantcheese.chan.ui.theme.Theme;
+import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import okhttp3.HttpUrl;
+import okio.ByteString;
+
+/**
+ * Times writing and reading {@link ThreadSnapshot}s of a synthetic thread, for the developer settings.
+ */
+public class ThreadSnapshotBenchmark {
+    private static final int POST_COUNT = 3000;
+    private static final int NEW_POSTS = 50;
+    private static final int FIRST_NO = 100000;
+    private static final int RUNS = 5;
+
+    /**
+     * Run this off the main thread.
+     */
+    public static String run() {
+        Board board = Board.getDummyBoard();
+        Loadable loadable = Loadable.forThread(board, FIRST_NO, "Benchmark", false);
+        List<Post> posts = makePosts(board, POST_COUNT);
+        // the dummy board's snapshot, which no real thread has
+        File file = ThreadSnapshot.getFile(loadable);
+
+        StringBuilder result = new StringBuilder();
+        try {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                long start = SystemClock.elapsedRealtimeNanos();
+                new ThreadSnapshot.Writer(loadable).update(posts);
+                best = Math.min(best, SystemClock.elapsedRealtimeNanos() - start);
+            }
+            long size = file.length();
+            appendTiming(result, "Write", best, POST_COUNT, size);
+
+            // an update with a few new posts, after the first write of the thread
+            List<Post> updated = new ArrayList<>(posts);
+            updated.addAll(makePosts(board, POST_COUNT + NEW_POSTS).subList(POST_COUNT, POST_COUNT + NEW_POSTS));
+            ThreadSnapshot.Writer writer = new ThreadSnapshot.Writer(loadable);
+            writer.update(posts);
+            long start = SystemClock.elapsedRealtimeNanos();
+            writer.update(updated);
+            appendTiming(result, "Update", SystemClock.elapsedRealtimeNanos() - start, NEW_POSTS, file.length() - size);
+
+            best = Long.MAX_VALUE;
+            int read = 0;
+            for (int i = 0; i < RUNS; i++) {
+                start = SystemClock.elapsedRealtimeNanos();
+                List<Post> readPosts = ThreadSnapshot.read(loadable);
+                if (readPosts == null) throw new IOException("Snapshot unreadable");
+                read = readPosts.size();
+                best = Math.min(best, SystemClock.elapsedRealtimeNanos() - start);
+            }
+            appendTiming(result, "Read", best, read, file.length());
+        } catch (IOException e) {
+            result.append("Failed: ").append(e.getMessage());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        return result.toString().trim();
+    }
+
+    private static List<Post> makePosts(Board board, int count) {
+        Random random = new Random(42);
+        Theme theme = ThemeHelper.getTheme();
+        List<Post> posts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int no = FIRST_NO + i;
+            SpannableStringBuilder comment = new SpannableStringBuilder();
+            List<Integer> quoted = new ArrayList<>();
+            if (i > 0) {
+                int quote = FIRST_NO + random.nextInt(i);
+                quoted.add(quote);
+                String text = ">>" + quote;
+                comment.append(text);
+                comment.setSpan(new PostLinkable(theme, text, quote, PostLinkable.Type.QUOTE), 0, text.length(), 0);
+                comment.append('\n');
+            }
+            if (random.nextInt(4) == 0) {
+                int start = comment.length();
+                comment.append(">implying this is a benchmark");
+                comment.setSpan(new ForegroundColorSpanHashed(0xff789922), start, comment.length(), 0);
+                comment.append('\n');
+            }
+            int start = comment.length();
+            comment.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ")
+                    .append("incididunt ut labore et dolore magna aliqua. Post number ")
+                    .append(String.valueOf(no));
+            if (random.nextInt(5) == 0) {
+                comment.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), start, start + 11, 0);
+            }
+
+            Post.Builder builder = new Post.Builder().board(board)
+                    .no(no)
+                    .opId(FIRST_NO)
+                    .op(i == 0)
+                    .setUnixTimestampSeconds(1600000000L + i * 30L)
+                    .name("Anonymous")
+                    .posterId(Integer.toHexString(random.nextInt(0xffffff)))
+                    .comment(comment)
+                    .repliesTo(new HashSet<>(quoted))
+                    .spans("", "Anonymous");
+            if (random.nextInt(3) == 0) {
+                String name = String.valueOf(1600000000000L + i);
+                builder.images(Collections.singletonList(new PostImage.Builder().serverFilename(name)
+                        .filename("image" + i)
+                        .extension("jpg")
+                        .imageUrl(HttpUrl.get("https://i.example.com/b/" + name + ".jpg"))
+                        .thumbnailUrl(HttpUrl.get("https://i.example.com/b/" + name + "s.jpg"))
+                        .imageWidth(1920)
+                        .imageHeight(1080)
+                        .size(500000 + random.nextInt(500000))
+                        .fileHash(ByteString.encodeUtf8(name).md5().hex(), false)
+                        .build()));
+            }
+            posts.add(builder.build());
+        }
+        return posts;
+    }
+
+    private static void appendTiming(StringBuilder builder, String name, long nanos, int posts, long bytes) {
+        double ms = nanos / 1e6;
+        builder.append(String.format(Locale.ENGLISH,
+                "%s: %.2fms, %d posts, %s KB, %.1f MB/s\n",
+                name,
+                ms,
+                posts,
+                bytes / 1024,
+                ms == 0 ? 0 : bytes / 1024.0 / 1024.0 / (ms / 1000)
+        ));
+    }
+}
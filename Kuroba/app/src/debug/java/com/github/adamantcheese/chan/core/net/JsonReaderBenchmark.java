@@ -0,0 +1,177 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.net;
+
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Locale;
+import java.util.Random;
+
+import okio.Buffer;
+import okio.ByteString;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Times {@link JsonReader} against {@link ByteJsonReader} on a synthetic thread in the 4chan API format, which vichan
+ * also serves, for the developer settings. Both read every name and every value as a string, like a site reader would;
+ * the last run skips the comments, like a refresh does for posts that are already loaded.
+ */
+public class JsonReaderBenchmark {
+    private static final int POST_COUNT = 3000;
+    private static final int ROUNDS = 5;
+    private static final String[] KEYS = {"no", "now", "name", "com", "filename", "ext", "w", "h", "tn_w", "tn_h",
+                                           "tim", "time", "md5", "fsize", "resto", "id", "country", "country_name"};
+    private static final ByteJsonReader.Names NAMES = ByteJsonReader.Names.of(KEYS);
+
+    /**
+     * Run this off the main thread.
+     */
+    public static String run()
+            throws IOException {
+        ByteString json = generateThread();
+        StringBuilder result = new StringBuilder();
+        result.append(String.format(Locale.ENGLISH, "%d posts, %d KB, best of %d\n",
+                POST_COUNT,
+                json.size() / 1024,
+                ROUNDS
+        ));
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            readAll(new JsonReader(new InputStreamReader(new Buffer().write(json).inputStream(), UTF_8)));
+            best = Math.min(best, SystemClock.elapsedRealtimeNanos() - start);
+        }
+        appendTiming(result, "JsonReader", best);
+
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            readAll(new ByteJsonReader(new Buffer().write(json)), false, false);
+            best = Math.min(best, SystemClock.elapsedRealtimeNanos() - start);
+        }
+        appendTiming(result, "ByteJsonReader", best);
+
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            readAll(new ByteJsonReader(new Buffer().write(json)), true, false);
+            best = Math.min(best, SystemClock.elapsedRealtimeNanos() - start);
+        }
+        appendTiming(result, "ByteJsonReader, known names", best);
+
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            readAll(new ByteJsonReader(new Buffer().write(json)), true, true);
+            best = Math.min(best, SystemClock.elapsedRealtimeNanos() - start);
+        }
+        appendTiming(result, "ByteJsonReader, comments skipped", best);
+        return result.toString().trim();
+    }
+
+    private static ByteString generateThread() {
+        Random random = new Random(42);
+        Buffer buffer = new Buffer();
+        buffer.writeUtf8("{\"posts\":[");
+        for (int i = 0; i < POST_COUNT; i++) {
+            int no = 100000000 + i;
+            if (i > 0) buffer.writeUtf8(",");
+            buffer.writeUtf8("{\"no\":").writeUtf8(Integer.toString(no));
+            buffer.writeUtf8(",\"now\":\"01/01/21(Fri)00:00:00\",\"name\":\"Anonymous\",\"com\":\"");
+            // quotes, line breaks and entities, like real comments
+            buffer.writeUtf8("<a href=\\\"#p").writeUtf8(Integer.toString(no - 1 - random.nextInt(Math.max(1, i))));
+            buffer.writeUtf8("\\\" class=\\\"quotelink\\\">&gt;&gt;").writeUtf8(Integer.toString(no - 1));
+            buffer.writeUtf8("</a><br>");
+            int words = 10 + random.nextInt(60);
+            for (int w = 0; w < words; w++) {
+                buffer.writeUtf8(w % 12 == 11 ? "<br>" : " ").writeUtf8("word").writeUtf8(Integer.toString(w));
+            }
+            buffer.writeUtf8(" caf\\u00e9 &#039;quoted&#039;\"");
+            if (random.nextInt(3) == 0) {
+                buffer.writeUtf8(",\"filename\":\"image").writeUtf8(Integer.toString(i));
+                buffer.writeUtf8("\",\"ext\":\".jpg\",\"w\":1920,\"h\":1080,\"tn_w\":250,\"tn_h\":140,\"tim\":");
+                buffer.writeUtf8(Long.toString(1609459200000000L + i));
+                buffer.writeUtf8(",\"md5\":\"dGhpcyBpcyBhbiBtZDUgaGFzaA==\",\"fsize\":")
+                        .writeUtf8(Integer.toString(random.nextInt(4000000)));
+            }
+            buffer.writeUtf8(",\"time\":").writeUtf8(Long.toString(1609459200L + i * 10L));
+            buffer.writeUtf8(",\"resto\":").writeUtf8(i == 0 ? "0" : "100000000");
+            buffer.writeUtf8(",\"id\":\"AbCd1234\",\"country\":\"US\",\"country_name\":\"United States\"}");
+        }
+        buffer.writeUtf8("]}");
+        return buffer.readByteString();
+    }
+
+    private static void readAll(JsonReader reader)
+            throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    readAll(reader);
+                }
+                reader.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readAll(reader);
+                }
+                reader.endArray();
+                break;
+            default:
+                reader.nextString();
+                break;
+        }
+    }
+
+    private static void readAll(ByteJsonReader reader, boolean knownNames, boolean skipComments)
+            throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = knownNames ? reader.nextName(NAMES) : reader.nextName();
+                if (skipComments && name.equals("com")) {
+                    reader.skipValue();
+                } else {
+                    readAll(reader, knownNames, skipComments);
+                }
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                readAll(reader, knownNames, skipComments);
+            }
+            reader.endArray();
+        } else {
+            reader.nextString();
+        }
+    }
+
+    private static void appendTiming(StringBuilder builder, String name, long nanos) {
+        builder.append(String.format(Locale.ENGLISH, "%s: %.1fms\n", name, nanos / 1e6));
+    }
+}
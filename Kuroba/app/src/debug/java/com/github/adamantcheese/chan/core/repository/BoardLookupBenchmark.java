@@ -0,0 +1,140 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.repository;
+
+import android.os.SystemClock;
+
+import com.github.adamantcheese.chan.core.manager.FilterEngine;
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Filter;
+import com.github.adamantcheese.chan.core.repository.BoardRepository.SiteBoards;
+import com.github.adamantcheese.chan.core.site.Site;
+import com.github.adamantcheese.chan.ui.helper.BoardHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.github.adamantcheese.chan.Chan.instance;
+
+/**
+ * Times board lookups by code and filter board matching on the boards that are actually set up, against the old
+ * approaches of scanning the board lists and parsing the filter's board list on every check, for the developer
+ * settings.
+ */
+public class BoardLookupBenchmark {
+    private static final int ROUNDS = 20;
+    // about what a filter limited to a handful of boards on a few sites would have
+    private static final int FILTER_BOARDS = 50;
+
+    /**
+     * Run this off the main thread.
+     */
+    public static String run() {
+        BoardRepository boardRepository = instance(BoardRepository.class);
+        FilterEngine filterEngine = instance(FilterEngine.class);
+
+        List<SiteBoards> allBoards = boardRepository.getAll().get();
+        List<Board> boards = new ArrayList<>();
+        for (SiteBoards siteBoards : allBoards) {
+            boards.addAll(siteBoards.boards);
+        }
+        if (boards.isEmpty()) return "No boards set up";
+
+        StringBuilder filterBoards = new StringBuilder();
+        for (int i = 0; i < FILTER_BOARDS; i++) {
+            if (filterBoards.length() > 0) filterBoards.append(',');
+            // every other board, so about half the checks match
+            filterBoards.append(BoardHelper.boardUniqueId(boards.get((i * 2) % boards.size())));
+        }
+        Filter filter = new Filter();
+        filter.allBoards = false;
+        filter.boards = filterBoards.toString();
+
+        StringBuilder result = new StringBuilder();
+        result.append(boards.size()).append(" boards on ").append(allBoards.size()).append(" sites\n");
+        int lookups = boards.size() * ROUNDS;
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Board board : boards) {
+                if (boardRepository.getFromCode(board.site, board.code) != null) found++;
+            }
+        }
+        appendTiming(result, "Lookup by code", start, lookups, found);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Board board : boards) {
+                if (scanForCode(allBoards, board.site, board.code) != null) found++;
+            }
+        }
+        appendTiming(result, "Lookup by code, list scan", start, lookups, found);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Board board : boards) {
+                if (filterEngine.matchesBoard(filter, board)) found++;
+            }
+        }
+        appendTiming(result, "Filter board match", start, lookups, found);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Board board : boards) {
+                for (String uniqueId : filter.boards.split(",")) {
+                    if (BoardHelper.matchesUniqueId(board, uniqueId)) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        appendTiming(result, "Filter board match, parsing", start, lookups, found);
+        return result.toString().trim();
+    }
+
+    private static Board scanForCode(List<SiteBoards> allBoards, Site site, String code) {
+        for (SiteBoards siteBoards : allBoards) {
+            if (siteBoards.site.id() == site.id()) {
+                for (Board board : siteBoards.boards) {
+                    if (board.code.equals(code)) {
+                        return board;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static void appendTiming(StringBuilder builder, String name, long startNanos, int count, int found) {
+        double ms = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1e6;
+        builder.append(String.format(Locale.ENGLISH,
+                "%s: %.2fms, %.0fns each, %d of %d found\n",
+                name,
+                ms,
+                ms * 1e6 / count,
+                found,
+                count
+        ));
+    }
+}
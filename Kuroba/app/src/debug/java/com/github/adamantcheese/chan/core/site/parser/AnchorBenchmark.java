@@ -0,0 +1,217 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.parser;
+
+import android.os.SystemClock;
+import android.util.JsonReader;
+
+import com.github.adamantcheese.chan.core.net.NetUtils;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Times classifying the quote anchors of a real thread, the busiest one on /g/ right now, with the regexes
+ * {@link CommentParser} used to run on every anchor against the scanners it uses now, for the developer settings.
+ */
+public class AnchorBenchmark {
+    private static final String BOARD = "g";
+    private static final int ROUNDS = 20;
+
+    // what matchAnchor used to do for each href
+    private static final String OLD_FULL_DOMAIN_THREAD_LINK = "//boards\\.4chan.*?\\.org/(.*?)/thread/(\\d*?)#p(\\d*)";
+    private static final Pattern OLD_FULL_QUOTE = Pattern.compile("/(\\w+)/\\w+/(\\d+)#p?(\\d+)");
+    private static final Pattern OLD_QUOTE = Pattern.compile(".*#p?(\\d+)");
+
+    /**
+     * Needs the network. Run this off the main thread.
+     */
+    public static String run()
+            throws IOException {
+        int threadNo = busiestThread();
+        List<String> hrefs = new ArrayList<>();
+        try (JsonReader reader = get("/" + BOARD + "/thread/" + threadNo + ".json")) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("posts")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("com")) {
+                            for (Element anchor : Jsoup.parseBodyFragment(reader.nextString()).select("a[href]")) {
+                                hrefs.add(anchor.attr("href"));
+                            }
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        if (hrefs.isEmpty()) return "/" + BOARD + "/" + threadNo + " has no anchors";
+
+        // both have to agree before the timings mean anything
+        int mismatches = 0;
+        for (String href : hrefs) {
+            if (!Arrays.equals(classifyOld(href), classifyNew(href))) mismatches++;
+        }
+
+        StringBuilder result = new StringBuilder();
+        result.append(String.format(Locale.ENGLISH,
+                "/%s/%d: %d anchors, %d classified differently\n",
+                BOARD,
+                threadNo,
+                hrefs.size(),
+                mismatches
+        ));
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int quotes = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String href : hrefs) {
+                if (classifyOld(href) != null) quotes++;
+            }
+        }
+        appendTiming(result, "Regexes", start, hrefs.size() * ROUNDS, quotes / ROUNDS);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        quotes = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String href : hrefs) {
+                if (classifyNew(href) != null) quotes++;
+            }
+        }
+        appendTiming(result, "Scanners", start, hrefs.size() * ROUNDS, quotes / ROUNDS);
+        return result.toString().trim();
+    }
+
+    /**
+     * @return board, thread and post for a full quote, the post for a quote, or null for anything else
+     */
+    private static String[] classifyOld(String href) {
+        if (href.matches(OLD_FULL_DOMAIN_THREAD_LINK)) {
+            href = href.substring(2);
+            href = href.substring(href.indexOf('/'));
+        }
+        Matcher fullQuote = OLD_FULL_QUOTE.matcher(href);
+        if (fullQuote.matches()) return new String[]{fullQuote.group(1), fullQuote.group(2), fullQuote.group(3)};
+        Matcher quote = OLD_QUOTE.matcher(href);
+        return quote.matches() ? new String[]{quote.group(1)} : null;
+    }
+
+    private static String[] classifyNew(String href) {
+        if (href.startsWith("//boards.4chan")
+                && CommentParser.FULL_DOMAIN_THREAD_LINK_PATTERN.matcher(href).matches()) {
+            href = href.substring(2);
+            href = href.substring(href.indexOf('/'));
+        }
+        String[] fullQuote = CommentParser.scanFullQuote(href);
+        if (fullQuote != null) return fullQuote;
+        String quote = CommentParser.scanQuote(href);
+        return quote != null ? new String[]{quote} : null;
+    }
+
+    private static int busiestThread()
+            throws IOException {
+        int busiest = 0;
+        int mostReplies = -1;
+        try (JsonReader reader = get("/" + BOARD + "/threads.json")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("threads")) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        int no = 0;
+                        int replies = 0;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String name = reader.nextName();
+                            if (name.equals("no")) {
+                                no = reader.nextInt();
+                            } else if (name.equals("replies")) {
+                                replies = reader.nextInt();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        if (replies > mostReplies) {
+                            mostReplies = replies;
+                            busiest = no;
+                        }
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        }
+        if (busiest == 0) throw new IOException("No threads on /" + BOARD + "/");
+        return busiest;
+    }
+
+    private static JsonReader get(String path)
+            throws IOException {
+        HttpUrl url = HttpUrl.get("https://a.4cdn.org" + path);
+        Response response = NetUtils.applicationClient.newCall(new Request.Builder().url(url).build()).execute();
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            response.close();
+            throw new IOException("HTTP " + response.code() + " for " + url);
+        }
+        return new JsonReader(new InputStreamReader(body.byteStream(), UTF_8));
+    }
+
+    private static void appendTiming(StringBuilder builder, String name, long startNanos, int count, int quotes) {
+        double ms = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1e6;
+        builder.append(String.format(Locale.ENGLISH,
+                "%s: %.2fms, %.0fns per anchor, %d quotes\n",
+                name,
+                ms,
+                ms * 1e6 / count,
+                quotes
+        ));
+    }
+}
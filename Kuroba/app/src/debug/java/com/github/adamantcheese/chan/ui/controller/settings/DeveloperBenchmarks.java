@@ -0,0 +1,77 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.ui.controller.settings;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.davemorrissey.labs.subscaleview.TileCacheBenchmark;
+import com.github.adamantcheese.chan.core.model.ReplyGraphBenchmark;
+import com.github.adamantcheese.chan.core.model.export.ImportExportBenchmark;
+import com.github.adamantcheese.chan.core.model.export.ThreadSnapshotBenchmark;
+import com.github.adamantcheese.chan.core.net.JsonReaderBenchmark;
+import com.github.adamantcheese.chan.core.repository.BoardLookupBenchmark;
+import com.github.adamantcheese.chan.core.site.parser.AnchorBenchmark;
+import com.github.adamantcheese.chan.ui.helper.BoardSearchBenchmark;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.util.concurrent.Callable;
+
+import static com.github.adamantcheese.chan.utils.AndroidUtils.dp;
+
+/**
+ * The benchmark buttons of the developer settings. Benchmarks are debug only; release builds get an empty one of these.
+ */
+public class DeveloperBenchmarks {
+    private static final String TAG = "DeveloperBenchmarks";
+
+    public static void addTo(Context context, LinearLayout wrapper) {
+        addBenchmark(context, wrapper, "Reply graph", ReplyGraphBenchmark::run);
+        addBenchmark(context, wrapper, "JSON reader", JsonReaderBenchmark::run);
+        addBenchmark(context, wrapper, "Thread snapshot", ThreadSnapshotBenchmark::run);
+        addBenchmark(context, wrapper, "Import/export", ImportExportBenchmark::run);
+        addBenchmark(context, wrapper, "Board lookup", BoardLookupBenchmark::run);
+        addBenchmark(context, wrapper, "Board search", BoardSearchBenchmark::run);
+        addBenchmark(context, wrapper, "Quote anchor", AnchorBenchmark::run);
+        addBenchmark(context, wrapper, "Tile cache pan", TileCacheBenchmark::run);
+    }
+
+    /**
+     * Adds a button that runs the benchmark in the background, and shows and logs its result underneath.
+     */
+    @SuppressLint("SetTextI18n")
+    private static void addBenchmark(Context context, LinearLayout wrapper, String name, Callable<String> benchmark) {
+        String title = name + " benchmark";
+        TextView resultText = new TextView(context);
+        resultText.setPadding(0, dp(5), 0, 0);
+        Button runButton = new Button(context);
+        runButton.setOnClickListener(v -> {
+            resultText.setText("Running " + title + "…");
+            BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, benchmark, result -> {
+                Logger.i(TAG, title + ":\n" + result);
+                resultText.setText(title + ":\n" + result);
+            });
+        });
+        runButton.setText("Run " + title);
+        wrapper.addView(runButton);
+        wrapper.addView(resultText);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.ui.helper;
+
+import android.os.SystemClock;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
+
+import java.util.Locale;
+import java.util.Random;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+
+/**
+ * Times {@link BoardHelper#search(Boards, String)} keystroke by keystroke on a synthetic 10,000 board site, against
+ * fuzzy scoring every board, for the developer settings.
+ */
+public class BoardSearchBenchmark {
+    private static final int BOARD_COUNT = 10000;
+    private static final String[] WORDS = {"anime", "technology", "politics", "video", "games", "music", "science",
+                                           "random", "travel", "food", "cooking", "fitness", "history", "literature",
+                                           "photography", "comics", "cartoons", "sports", "weapons", "vehicles",
+                                           "fashion", "business", "finance", "outdoors", "paranormal", "international"};
+    private static final String[] QUERIES = {"anime", "tech", "vidya", "hsitory"};
+
+    /**
+     * Run this off the main thread.
+     */
+    public static String run() {
+        Boards boards = makeBoards();
+        StringBuilder result = new StringBuilder();
+        result.append(BOARD_COUNT).append(" boards\n");
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        BoardSearchIndex.get(boards);
+        result.append(String.format(Locale.ENGLISH,
+                "Index build: %.2fms\n",
+                (SystemClock.elapsedRealtimeNanos() - start) / 1e6
+        ));
+
+        for (String query : QUERIES) {
+            long indexed = 0;
+            long scoredAll = 0;
+            int found = 0;
+            int foundAll = 0;
+            // as typed, one character at a time
+            for (int i = 1; i <= query.length(); i++) {
+                String typed = query.substring(0, i);
+                start = SystemClock.elapsedRealtimeNanos();
+                found = BoardHelper.search(boards, typed).size();
+                indexed = Math.max(indexed, SystemClock.elapsedRealtimeNanos() - start);
+
+                start = SystemClock.elapsedRealtimeNanos();
+                foundAll = scoreAll(boards, typed);
+                scoredAll = Math.max(scoredAll, SystemClock.elapsedRealtimeNanos() - start);
+            }
+            result.append(String.format(Locale.ENGLISH,
+                    "\"%s\": slowest key %.2fms, %d found; scoring every board %.2fms, %d found\n",
+                    query,
+                    indexed / 1e6,
+                    found,
+                    scoredAll / 1e6,
+                    foundAll
+            ));
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * The search without an index, which scored every board on every keystroke.
+     */
+    private static int scoreAll(Boards boards, String query) {
+        int found = 0;
+        for (Board board : boards) {
+            int code = FuzzySearch.ratio(board.code, query);
+            int name = FuzzySearch.ratio(board.name, query);
+            int description = FuzzySearch.weightedRatio(board.description, query);
+            if (code * 8 + name * 5 + Math.max(0, description - 30) * 4 > 2) found++;
+        }
+        return found;
+    }
+
+    private static Boards makeBoards() {
+        Random random = new Random(42);
+        Boards boards = new Boards(BOARD_COUNT);
+        for (int i = 0; i < BOARD_COUNT; i++) {
+            String first = WORDS[random.nextInt(WORDS.length)];
+            String second = WORDS[random.nextInt(WORDS.length)];
+            Board board = new Board();
+            board.code = first.substring(0, 1 + random.nextInt(3)) + i;
+            board.name = first + " and " + second;
+            board.description = "A board for " + first + ", " + second + " and "
+                    + WORDS[random.nextInt(WORDS.length)] + " discussion";
+            boards.add(board);
+        }
+        return boards;
+    }
+}
@@ -47,6 +47,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -222,6 +226,21 @@ public class SubsamplingScaleImageView
     // An executor service for loading of images
     private Executor executor = AsyncTask.THREAD_POOL_EXECUTOR;
 
+    // Tile decodes get their own pool sized to the device, so they don't queue behind unrelated background work
+    private static final int TILE_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final ThreadPoolExecutor TILE_EXECUTOR =
+            new ThreadPoolExecutor(TILE_THREADS, TILE_THREADS, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+
+    static {
+        TILE_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private Executor tileExecutor = TILE_EXECUTOR;
+
+    // Identifies the current source's tiles in the shared tile cache
+    private static final AtomicInteger tileSourceCounter = new AtomicInteger();
+    private String tileSourceKey;
+
     // Whether tiles should be loaded while gestures and animations are still in progress
     private boolean eagerLoadingEnabled = true;
 
@@ -505,6 +524,8 @@ public class SubsamplingScaleImageView
         }
 
         source = imageSource;
+        tileSourceKey = "source" + tileSourceCounter.incrementAndGet();
+        TileCache.getInstance().openSource(tileSourceKey);
 
         if (imageSource.getBitmap() != null && imageSource.getSRegion() != null) {
             onImageLoaded(Bitmap.createBitmap(imageSource.getBitmap(),
@@ -588,14 +609,19 @@ public class SubsamplingScaleImageView
             for (Map.Entry<Integer, List<Tile>> tileMapEntry : tileMap.entrySet()) {
                 for (Tile tile : tileMapEntry.getValue()) {
                     tile.visible = false;
+                    cancelTileLoad(tile);
                     if (tile.bitmap != null) {
-                        tile.bitmap.recycle();
+                        TileCache.getInstance().release(tile.bitmap);
                         tile.bitmap = null;
                     }
                 }
             }
             tileMap = null;
         }
+        if (newImage && tileSourceKey != null) {
+            TileCache.getInstance().evictSource(tileSourceKey);
+            tileSourceKey = null;
+        }
         setGestureDetector(getContext());
     }
 
@@ -1364,8 +1390,7 @@ public class SubsamplingScaleImageView
 
             List<Tile> baseGrid = tileMap.get(fullImageSampleSize);
             for (Tile baseTile : baseGrid) {
-                TileLoadTask task = new TileLoadTask(this, decoder, baseTile);
-                execute(task);
+                loadTile(baseTile);
             }
             refreshRequiredTiles(true);
         }
@@ -1381,38 +1406,74 @@ public class SubsamplingScaleImageView
         if (decoder == null || tileMap == null) { return; }
 
         int sampleSize = Math.min(fullImageSampleSize, calculateInSampleSize(scale));
+        boolean restoredFromCache = false;
 
         // Load tiles of the correct sample size that are on screen. Discard tiles off screen, and those that are higher
         // resolution than required, or lower res than required but not the base layer, so the base layer is always present.
+        // Discarded tiles are parked in the tile cache rather than recycled, and pending loads for them are canceled.
         for (Map.Entry<Integer, List<Tile>> tileMapEntry : tileMap.entrySet()) {
             for (Tile tile : tileMapEntry.getValue()) {
                 if (tile.sampleSize < sampleSize || (tile.sampleSize > sampleSize
                         && tile.sampleSize != fullImageSampleSize)) {
                     tile.visible = false;
-                    if (tile.bitmap != null) {
-                        tile.bitmap.recycle();
-                        tile.bitmap = null;
-                    }
+                    cancelTileLoad(tile);
+                    parkTile(tile);
                 }
                 if (tile.sampleSize == sampleSize) {
                     if (tileVisible(tile)) {
                         tile.visible = true;
                         if (!tile.loading && tile.bitmap == null && load) {
-                            TileLoadTask task = new TileLoadTask(this, decoder, tile);
-                            execute(task);
+                            Bitmap cached = TileCache.getInstance().take(tileCacheKey(tile));
+                            if (cached != null) {
+                                tile.bitmap = cached;
+                                restoredFromCache = true;
+                            } else {
+                                loadTile(tile);
+                            }
                         }
                     } else if (tile.sampleSize != fullImageSampleSize) {
                         tile.visible = false;
-                        if (tile.bitmap != null) {
-                            tile.bitmap.recycle();
-                            tile.bitmap = null;
-                        }
+                        cancelTileLoad(tile);
+                        parkTile(tile);
                     }
                 } else if (tile.sampleSize == fullImageSampleSize) {
                     tile.visible = true;
                 }
             }
         }
+
+        if (restoredFromCache) {
+            invalidate();
+        }
+    }
+
+    private String tileCacheKey(Tile tile) {
+        return TileCache.key(tileSourceKey, getRequiredRotation(), tile.sampleSize, tile.sRect);
+    }
+
+    private void loadTile(Tile tile) {
+        TileLoadTask task = new TileLoadTask(this, decoder, tile);
+        tile.loadTask = task;
+        task.executeOnExecutor(tileExecutor);
+    }
+
+    private void cancelTileLoad(Tile tile) {
+        if (tile.loading && tile.loadTask != null) {
+            tile.loadTask.cancel(false);
+            tile.loadTask = null;
+            tile.loading = false;
+        }
+    }
+
+    private void parkTile(Tile tile) {
+        if (tile.bitmap != null) {
+            if (tileSourceKey != null) {
+                TileCache.getInstance().put(tileSourceKey, tileCacheKey(tile), tile.bitmap);
+            } else {
+                TileCache.getInstance().release(tile.bitmap);
+            }
+            tile.bitmap = null;
+        }
     }
 
     /**
@@ -1729,12 +1790,16 @@ public class SubsamplingScaleImageView
         private final WeakReference<SubsamplingScaleImageView> viewRef;
         private final WeakReference<ImageRegionDecoder> decoderRef;
         private final WeakReference<Tile> tileRef;
+        private final String sourceKey;
+        private final String cacheKey;
         private Exception exception;
 
         TileLoadTask(SubsamplingScaleImageView view, ImageRegionDecoder decoder, Tile tile) {
             this.viewRef = new WeakReference<>(view);
             this.decoderRef = new WeakReference<>(decoder);
             this.tileRef = new WeakReference<>(tile);
+            this.sourceKey = view.tileSourceKey;
+            this.cacheKey = sourceKey != null ? view.tileCacheKey(tile) : null;
             tile.loading = true;
         }
 
@@ -1744,7 +1809,8 @@ public class SubsamplingScaleImageView
                 SubsamplingScaleImageView view = viewRef.get();
                 ImageRegionDecoder decoder = decoderRef.get();
                 Tile tile = tileRef.get();
-                if (decoder != null && tile != null && view != null && decoder.isReady() && tile.visible) {
+                if (decoder != null && tile != null && view != null && decoder.isReady() && tile.visible
+                        && !isCancelled()) {
                     view.decoderLock.readLock().lock();
                     try {
                         if (decoder.isReady()) {
@@ -1753,7 +1819,11 @@ public class SubsamplingScaleImageView
                             if (view.source.getSRegion() != null) {
                                 tile.fileSRect.offset(view.source.getSRegion().left, view.source.getSRegion().top);
                             }
-                            return decoder.decodeRegion(tile.fileSRect, tile.sampleSize);
+                            long start = System.nanoTime();
+                            Bitmap decoded =
+                                    decoder.decodeRegion(tile.fileSRect, tile.sampleSize, TileCache.getInstance());
+                            TileCache.getInstance().recordDecode(System.nanoTime() - start);
+                            return decoded;
                         } else {
                             tile.loading = false;
                         }
@@ -1773,10 +1843,24 @@ public class SubsamplingScaleImageView
             return null;
         }
 
+        @Override
+        protected void onCancelled(Bitmap bitmap) {
+            // the tile went off screen while decoding; keep the work in case it comes back, unless the image is gone
+            if (bitmap == null) return;
+            if (cacheKey != null) {
+                TileCache.getInstance().put(sourceKey, cacheKey, bitmap);
+            } else {
+                TileCache.getInstance().release(bitmap);
+            }
+        }
+
         @Override
         protected void onPostExecute(Bitmap bitmap) {
             final SubsamplingScaleImageView subsamplingScaleImageView = viewRef.get();
             final Tile tile = tileRef.get();
+            if (tile != null && tile.loadTask == this) {
+                tile.loadTask = null;
+            }
             if (subsamplingScaleImageView != null && tile != null) {
                 if (bitmap != null) {
                     tile.bitmap = bitmap;
@@ -2013,6 +2097,7 @@ public class SubsamplingScaleImageView
         private Bitmap bitmap;
         private boolean loading;
         private boolean visible;
+        private TileLoadTask loadTask;
 
         // Volatile fields instantiated once then updated before use to reduce GC.
         private Rect vRect;
@@ -2963,6 +3048,7 @@ public class SubsamplingScaleImageView
             throw new NullPointerException("Executor must not be null");
         }
         this.executor = executor;
+        this.tileExecutor = executor;
     }
 
     /**
@@ -0,0 +1,180 @@
+package com.davemorrissey.labs.subscaleview;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared storage for tile bitmaps that are not currently on screen.
+ * <p>
+ * Tiles that scroll off screen are parked here rather than recycled, keyed by their source, orientation, sample size
+ * and rectangle, so panning back over an area doesn't decode it again. A bitmap is owned either by a tile or by this
+ * cache, never both; {@link #take} hands ownership back to the caller. Bitmaps evicted from the cache go into a pool
+ * keyed by dimensions and config, which region decoders can draw new tiles into instead of allocating.
+ * </p>
+ * <p>
+ * Sources are opened before their tiles are cached and closed by {@link #evictSource}; tiles for a closed source,
+ * such as a decode that finishes after its image was replaced, are pooled instead of cached.
+ * </p>
+ */
+public class TileCache {
+    private static final TileCache INSTANCE = new TileCache();
+
+    private final LruCache<String, Bitmap> cache;
+    private final Set<String> openSources = new HashSet<>();
+    private final Map<String, ArrayDeque<Bitmap>> pool = new HashMap<>();
+    private final long maxPoolBytes;
+    private long poolBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    private TileCache() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        maxPoolBytes = maxMemory / 32;
+        cache = new LruCache<String, Bitmap>((int) (maxMemory / 8)) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(
+                    boolean evicted, @NonNull String key, @NonNull Bitmap oldValue, @Nullable Bitmap newValue
+            ) {
+                // plain removals are handed to the caller of take(), don't pool those
+                if (evicted || newValue != null) {
+                    release(oldValue);
+                }
+            }
+        };
+    }
+
+    public static TileCache getInstance() {
+        return INSTANCE;
+    }
+
+    static String key(String sourceKey, int orientation, int sampleSize, Rect sRect) {
+        return sourceKey + '|' + orientation + '|' + sampleSize + '|' + sRect.left + ',' + sRect.top + ','
+                + sRect.right + ',' + sRect.bottom;
+    }
+
+    /**
+     * @return the cached bitmap for this tile, removed from the cache, or null if it isn't cached
+     */
+    @Nullable
+    Bitmap take(String key) {
+        Bitmap bitmap = cache.remove(key);
+        if (bitmap == null || bitmap.isRecycled()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return bitmap;
+    }
+
+    void openSource(String sourceKey) {
+        synchronized (openSources) {
+            openSources.add(sourceKey);
+        }
+    }
+
+    void put(String sourceKey, String key, @NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled()) return;
+        synchronized (openSources) {
+            if (openSources.contains(sourceKey)) {
+                cache.put(key, bitmap);
+                return;
+            }
+        }
+        release(bitmap);
+    }
+
+    /**
+     * Closes a source and drops every cached tile belonging to it, moving the bitmaps into the pool.
+     */
+    void evictSource(String sourceKey) {
+        synchronized (openSources) {
+            openSources.remove(sourceKey);
+        }
+        String prefix = sourceKey + '|';
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                Bitmap removed = cache.remove(key);
+                if (removed != null) release(removed);
+            }
+        }
+    }
+
+    /**
+     * @return a spare mutable bitmap with exactly these dimensions and config, or null if there isn't one
+     */
+    @Nullable
+    public synchronized Bitmap obtain(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bitmaps = pool.get(poolKey(width, height, config));
+        if (bitmaps == null || bitmaps.isEmpty()) return null;
+        Bitmap bitmap = bitmaps.pop();
+        poolBytes -= bitmap.getAllocationByteCount();
+        reuses.incrementAndGet();
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap that is no longer displayed to the pool, or recycles it if the pool is full.
+     */
+    public synchronized void release(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        if (!bitmap.isMutable() || poolBytes + bitmap.getAllocationByteCount() > maxPoolBytes) {
+            bitmap.recycle();
+            return;
+        }
+        String key = poolKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = pool.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            pool.put(key, bitmaps);
+        }
+        bitmaps.push(bitmap);
+        poolBytes += bitmap.getAllocationByteCount();
+    }
+
+    void recordDecode(long nanos) {
+        decodes.incrementAndGet();
+        decodeNanos.addAndGet(nanos);
+    }
+
+    private static String poolKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + "|" + config;
+    }
+
+    public String getStats() {
+        long decodeCount = decodes.get();
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return String.format(Locale.ENGLISH,
+                "Tile cache: %d tiles, %dKB\nTile hits: %d/%d (%.1f%%)\nTile decodes: %d, average %.1fms\nPooled bitmap reuses: %d",
+                cache.snapshot().size(),
+                cache.size() / 1024,
+                hitCount,
+                total,
+                total == 0 ? 0f : hitCount * 100f / total,
+                decodeCount,
+                decodeCount == 0 ? 0f : decodeNanos.get() / 1000000f / decodeCount,
+                reuses.get()
+        );
+    }
+}
@@ -8,6 +8,7 @@ import android.graphics.Rect;
 import androidx.annotation.NonNull;
 
 import com.davemorrissey.labs.subscaleview.ImageSource;
+import com.davemorrissey.labs.subscaleview.TileCache;
 
 /**
  * Interface for image decoding classes, allowing the default {@link android.graphics.BitmapRegionDecoder}
@@ -54,6 +55,20 @@ public interface ImageRegionDecoder {
     @NonNull
     Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize);
 
+    /**
+     * Decode a region of the image, drawing into a pooled bitmap from the given cache if the implementation supports
+     * it. The default implementation ignores the cache.
+     *
+     * @param sRect      Source image rectangle to decode.
+     * @param sampleSize Sample size.
+     * @param tileCache  Cache to obtain reusable bitmaps from, and to release unused ones to.
+     * @return The decoded region.
+     */
+    @NonNull
+    default Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize, @NonNull TileCache tileCache) {
+        return decodeRegion(sRect, sampleSize);
+    }
+
     /**
      * Status check. Should return false before initialisation and after recycle.
      *
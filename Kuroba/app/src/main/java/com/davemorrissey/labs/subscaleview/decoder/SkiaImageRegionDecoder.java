@@ -18,6 +18,7 @@ import androidx.annotation.Nullable;
 
 import com.davemorrissey.labs.subscaleview.ImageSource;
 import com.davemorrissey.labs.subscaleview.SubsamplingScaleImageView;
+import com.davemorrissey.labs.subscaleview.TileCache;
 
 import java.io.InputStream;
 import java.util.List;
@@ -144,6 +145,40 @@ public class SkiaImageRegionDecoder
         }
     }
 
+    @Override
+    @NonNull
+    public Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize, @NonNull TileCache tileCache) {
+        // region decodes are drawn at the inBitmap's size, so only reuse one with exactly the output dimensions
+        Bitmap reuse = tileCache.obtain(Math.max(1, sRect.width() / sampleSize),
+                Math.max(1, sRect.height() / sampleSize),
+                bitmapConfig
+        );
+        if (reuse == null) {
+            return decodeRegion(sRect, sampleSize);
+        }
+        getDecodeLock().lock();
+        try {
+            if (decoder != null && !decoder.isRecycled()) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleSize;
+                options.inPreferredConfig = bitmapConfig;
+                options.inMutable = true;
+                options.inBitmap = reuse;
+                Bitmap bitmap = decoder.decodeRegion(sRect, options);
+                if (bitmap != null) {
+                    if (bitmap != reuse) tileCache.release(reuse);
+                    return bitmap;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap couldn't be reused, fall back to a fresh allocation below
+        } finally {
+            getDecodeLock().unlock();
+        }
+        tileCache.release(reuse);
+        return decodeRegion(sRect, sampleSize);
+    }
+
     @Override
     public synchronized boolean isReady() {
         return decoder != null && !decoder.isRecycled();
@@ -26,7 +26,9 @@ import androidx.annotation.NonNull;
 import com.github.adamantcheese.chan.core.di.AppModule;
 import com.github.adamantcheese.chan.core.di.ManagerModule;
 import com.github.adamantcheese.chan.core.di.RepositoryModule;
+import com.github.adamantcheese.chan.core.manager.ArchivesManager;
 import com.github.adamantcheese.chan.core.manager.BoardManager;
+import com.github.adamantcheese.chan.core.manager.FilterWatchManager;
 import com.github.adamantcheese.chan.core.manager.ReportManager;
 import com.github.adamantcheese.chan.core.manager.SettingsNotificationManager;
 import com.github.adamantcheese.chan.core.manager.SettingsNotificationManager.SettingNotification;
@@ -35,6 +37,7 @@ import com.github.adamantcheese.chan.core.repository.BitmapRepository;
 import com.github.adamantcheese.chan.core.repository.DrawableRepository;
 import com.github.adamantcheese.chan.core.repository.SiteRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.ui.service.DatabaseMaintenanceService;
 import com.github.adamantcheese.chan.ui.service.LastPageNotification;
 import com.github.adamantcheese.chan.ui.service.SavingNotification;
 import com.github.adamantcheese.chan.ui.service.WatchNotification;
@@ -43,6 +46,7 @@ import com.github.adamantcheese.chan.ui.widget.CancellableToast;
 import com.github.adamantcheese.chan.utils.AndroidUtils;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StartupTrace;
 
 import org.codejargon.feather.Feather;
 import org.greenrobot.eventbus.EventBus;
@@ -51,8 +55,10 @@ import org.greenrobot.eventbus.EventBusException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import io.reactivex.exceptions.UndeliverableException;
 import io.reactivex.plugins.RxJavaPlugins;
@@ -65,6 +71,7 @@ public class Chan
         extends Application
         implements DefaultActivityLifecycleCallbacks {
     private int activityForegroundCounter = 0;
+    private boolean firstActivityResumed = false;
 
     @Inject
     SiteRepository siteRepository;
@@ -72,8 +79,9 @@ public class Chan
     @Inject
     BoardManager boardManger;
 
+    // only needed once the first frame is up, or on a crash
     @Inject
-    ReportManager reportManager;
+    Provider<ReportManager> reportManager;
 
     private static Feather feather;
 
@@ -103,21 +111,36 @@ public class Chan
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupTrace.start();
+        StartupTrace.Phase onCreatePhase = StartupTrace.begin("Application onCreate");
         registerActivityLifecycleCallbacks(this);
 
         AndroidUtils.init(this);
-        BitmapRepository.initialize(this);
-        DrawableRepository.initialize(this);
+        // icon decoding doesn't depend on anything below, so do it alongside dependency and site setup
+        Future<?> resourcesLoaded = BackgroundUtils.backgroundService.submit(() -> {
+            StartupTrace.Phase phase = StartupTrace.begin("Bitmap and drawable repositories");
+            BitmapRepository.initialize(this);
+            DrawableRepository.initialize(this);
+            phase.end();
+        });
 
         WatchNotification.setupChannel();
         SavingNotification.setupChannel();
         LastPageNotification.setupChannel();
 
+        StartupTrace.Phase phase = StartupTrace.begin("Dependency injection");
         feather = Feather.with(new AppModule(), new RepositoryModule(), new ManagerModule());
         feather.injectFields(this);
+        phase.end();
 
+        phase = StartupTrace.begin("Site repository");
         siteRepository.initialize();
+        phase.end();
+        phase = StartupTrace.begin("Board manager");
         boardManger.initialize();
+        phase.end();
+
+        DatabaseMaintenanceService.schedule();
 
         RxJavaPlugins.setErrorHandler(e -> {
             if (e instanceof UndeliverableException) {
@@ -189,11 +212,48 @@ public class Chan
         });
 
         SettingsNotificationManager.postNotification(SettingNotification.Default);
-        if (ChanSettings.collectCrashLogs.get()) {
-            if (reportManager.countCrashLogs() > 0) {
-                SettingsNotificationManager.postNotification(SettingNotification.CrashLog);
-            }
+
+        try {
+            // the first activity will want these right away
+            resourcesLoaded.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
+        onCreatePhase.end();
+    }
+
+    /**
+     * Startup work that nothing on screen needs, run once the first activity has drawn its first frame.
+     */
+    private void onFirstFrame() {
+        // only watches for filter matches in the background; nothing on screen needs it
+        StartupTrace.Phase filterWatchPhase = StartupTrace.begin("Filter watch manager");
+        instance(FilterWatchManager.class);
+        filterWatchPhase.end();
+
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            StartupTrace.Phase phase = StartupTrace.begin("Archives list");
+            ArchivesManager.getInstance();
+            phase.end();
+
+            if (ChanSettings.collectCrashLogs.get()) {
+                phase = StartupTrace.begin("Crash log check");
+                int crashLogs = reportManager.get().countCrashLogs();
+                phase.end();
+                if (crashLogs > 0) {
+                    BackgroundUtils.runOnMainThread(() -> SettingsNotificationManager.postNotification(
+                            SettingNotification.CrashLog));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onActivityResumed(@NonNull Activity activity) {
+        if (firstActivityResumed) return;
+        firstActivityResumed = true;
+        // posted behind the first layout and draw pass
+        activity.getWindow().getDecorView().post(this::onFirstFrame);
     }
 
     private String exceptionToString(boolean isCalledFromRxJavaHandler, Throwable e) {
@@ -225,7 +285,7 @@ public class Chan
         }
 
         if (ChanSettings.collectCrashLogs.get()) {
-            reportManager.storeCrashLog(exception.getMessage(), error);
+            reportManager.get().storeCrashLog(exception.getMessage(), error);
         }
     }
 
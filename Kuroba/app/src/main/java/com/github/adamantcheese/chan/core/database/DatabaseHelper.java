@@ -69,7 +69,7 @@ public class DatabaseHelper
     private static final String TAG = "DatabaseHelper";
 
     private static final String DATABASE_NAME = "ChanDB";
-    private static final int DATABASE_VERSION = 54;
+    private static final int DATABASE_VERSION = 56;
 
     // All of these are NOT instantiated in the constructor because it is possible that they are failed to be created before an upgrade
     // Therefore they are instantiated upon request instead; this doesn't guarantee a lack of exceptions however
@@ -585,6 +585,28 @@ public class DatabaseHelper
                 Logger.e(this, "Error upgrading to version 54", e);
             }
         }
+
+        if (oldVersion < 55) {
+            try {
+                // history is paged by lastLoadDate
+                getLoadableDao().executeRawNoArgs(
+                        "CREATE INDEX IF NOT EXISTS loadable_lastLoadDate_idx ON loadable(lastLoadDate);");
+            } catch (Exception e) {
+                Logger.e(this, "Error upgrading to version 55", e);
+            }
+        }
+
+        if (oldVersion < 56) {
+            try {
+                // existing hides count as seen now, so retention starts counting from the upgrade
+                getPostHideDao().executeRawNoArgs("ALTER TABLE posthide ADD COLUMN last_seen BIGINT default 0;");
+                getPostHideDao().executeRawNoArgs("UPDATE posthide SET last_seen = " + System.currentTimeMillis() + ";");
+                // hides are looked up by post number for every thread load
+                getPostHideDao().executeRawNoArgs("CREATE INDEX IF NOT EXISTS posthide_no_idx ON posthide(no);");
+            } catch (Exception e) {
+                Logger.e(this, "Error upgrading to version 56", e);
+            }
+        }
     }
 
     @Override
@@ -3,11 +3,12 @@ package com.github.adamantcheese.chan.core.database;
 import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.utils.Logger;
-import com.github.adamantcheese.chan.utils.PostUtils;
 import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.UpdateBuilder;
 import com.j256.ormlite.table.TableUtils;
 
 import java.sql.SQLException;
@@ -20,16 +21,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseHideManager {
-    private static final long TRIM_TRIGGER = 25000;
-    private static final long TRIM_COUNT = 5000;
+    // last_seen is only refreshed once it's older than this, so most loads don't write anything
+    private static final long LAST_SEEN_INTERVAL = TimeUnit.DAYS.toMillis(1);
+    private static final int LAST_SEEN_CHUNK = 500;
 
     DatabaseHelper helper;
 
     public DatabaseHideManager(DatabaseHelper helper) {
         this.helper = helper;
-        DatabaseUtils.runTaskAsync(DatabaseUtils.trimTable(helper.getPostHideDao(), TRIM_TRIGGER, TRIM_COUNT));
     }
 
     /**
@@ -139,6 +141,7 @@ public class DatabaseHideManager {
     }
 
     private void applyFiltersToReplies(List<Post> posts, Map<Integer, Post> postsFastLookupMap) {
+        ReplyGraph replyGraph = null;
         for (Post post : posts) {
             if (post.isOP) continue; //skip the OP
 
@@ -149,7 +152,10 @@ public class DatabaseHideManager {
                     continue;
                 }
 
-                applyPostFilterActionToChildPosts(post, postsFastLookupMap);
+                if (post.filterReplies && replyGraph == null) {
+                    replyGraph = ReplyGraph.build(posts);
+                }
+                applyPostFilterActionToChildPosts(post, postsFastLookupMap, replyGraph);
             }
         }
     }
@@ -168,9 +174,24 @@ public class DatabaseHideManager {
                 .query());
 
         Map<Integer, PostHide> hiddenMap = new HashMap<>();
+        List<Integer> stale = new ArrayList<>();
+        long now = System.currentTimeMillis();
 
         for (PostHide postHide : hiddenInDatabase) {
             hiddenMap.put(postHide.no, postHide);
+            if (now - postHide.lastSeen > LAST_SEEN_INTERVAL) {
+                postHide.lastSeen = now;
+                stale.add(postHide.id);
+            }
+        }
+
+        // keep hides of threads that are still around from being expired
+        for (int i = 0; i < stale.size(); i += LAST_SEEN_CHUNK) {
+            UpdateBuilder<PostHide, Integer> builder = helper.getPostHideDao().updateBuilder();
+            builder.updateColumnValue("last_seen", now)
+                    .where()
+                    .in("id", stale.subList(i, Math.min(stale.size(), i + LAST_SEEN_CHUNK)));
+            builder.update();
         }
 
         return hiddenMap;
@@ -181,15 +202,16 @@ public class DatabaseHideManager {
      * If some post already has another filter's parameters - does not overwrite them.
      * Returns a chain of hidden posts.
      */
-    private void applyPostFilterActionToChildPosts(Post parentPost, Map<Integer, Post> postsFastLookupMap) {
-        if (postsFastLookupMap.isEmpty() || !parentPost.filterReplies) {
+    private void applyPostFilterActionToChildPosts(
+            Post parentPost, Map<Integer, Post> postsFastLookupMap, @Nullable ReplyGraph replyGraph
+    ) {
+        if (postsFastLookupMap.isEmpty() || !parentPost.filterReplies || replyGraph == null) {
             // do nothing with replies if filtering is disabled for replies
             return;
         }
 
         // find all replies to the post recursively
-        Set<Post> postWithAllReplies =
-                PostUtils.findPostWithReplies(parentPost.no, new ArrayList<>(postsFastLookupMap.values()));
+        List<Post> postWithAllReplies = replyGraph.getPostWithReplies(parentPost.no);
 
         for (Post p : postWithAllReplies) {
             if (p.no == parentPost.no) {
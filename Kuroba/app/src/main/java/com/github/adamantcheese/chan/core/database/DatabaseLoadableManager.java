@@ -18,12 +18,16 @@ package com.github.adamantcheese.chan.core.database;
 
 import android.annotation.SuppressLint;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.repository.SiteRepository;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.j256.ormlite.stmt.DeleteBuilder;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.stmt.Where;
 import com.j256.ormlite.support.DatabaseConnection;
 
 import java.sql.SQLException;
@@ -33,15 +37,17 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 public class DatabaseLoadableManager {
     private final DatabaseHelper helper;
     private final SiteRepository siteRepository;
 
-    private static final long HISTORY_LIMIT = 250L;
+    public static final long HISTORY_PAGE_SIZE = 50L;
     @SuppressLint("ConstantLocale")
     public static final SimpleDateFormat EPOCH_DATE_FORMAT =
             new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
@@ -107,6 +113,57 @@ public class DatabaseLoadableManager {
         return loadable;
     }
 
+    /**
+     * Same as {@link #refreshForeign(Loadable)} for many loadables at once, with one query and one update rather than
+     * two statements per loadable. Loadables missing from the database are left as they were.
+     *
+     * @param loadables Loadables that only have their ids loaded
+     * @return loadables ready to use, in the same order
+     *
+     * @throws SQLException database error
+     */
+    public List<Loadable> refreshForeign(final List<Loadable> loadables)
+            throws SQLException {
+        if (loadables.isEmpty()) return loadables;
+        List<Integer> ids = new ArrayList<>(loadables.size());
+        for (Loadable loadable : loadables) {
+            ids.add(loadable.id);
+        }
+
+        // stay well under SQLite's limit on bound arguments per statement
+        List<List<Integer>> idChunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += 500) {
+            idChunks.add(ids.subList(i, Math.min(ids.size(), i + 500)));
+        }
+        Map<Integer, Loadable> fresh = new HashMap<>();
+        for (List<Integer> chunk : idChunks) {
+            for (Loadable loadable : helper.getLoadableDao().queryBuilder().where().in("id", chunk).query()) {
+                fresh.put(loadable.id, loadable);
+            }
+        }
+
+        Date now = GregorianCalendar.getInstance().getTime();
+        List<Loadable> result = new ArrayList<>(loadables.size());
+        for (Loadable loadable : loadables) {
+            Loadable refreshed = fresh.get(loadable.id);
+            if (refreshed == null) {
+                result.add(loadable);
+                continue;
+            }
+            refreshed.site = siteRepository.forId(refreshed.siteId);
+            refreshed.board = refreshed.site.board(refreshed.boardCode);
+            refreshed.lastLoadDate = now;
+            result.add(refreshed);
+        }
+
+        for (List<Integer> chunk : idChunks) {
+            UpdateBuilder<Loadable, Integer> updateBuilder = helper.getLoadableDao().updateBuilder();
+            updateBuilder.updateColumnValue("lastLoadDate", now).where().in("id", chunk);
+            updateBuilder.update();
+        }
+        return result;
+    }
+
     private Callable<Loadable> getLoadable(final Loadable loadable) {
         return () -> {
             QueryBuilder<Loadable, Integer> builder = helper.getLoadableDao().queryBuilder();
@@ -161,18 +218,19 @@ public class DatabaseLoadableManager {
     }
 
     /**
-     * Called when the application goes into the background, to purge any old loadables that won't be used anymore; keeps
-     * the database clean and small. Avoids purging pin loadables.
+     * Called when the application goes into the background and from database maintenance, to purge any old loadables
+     * that won't be used anymore; keeps the database clean and small. Avoids purging pin loadables.
+     * Loadables are kept for {@link ChanSettings#historyRetentionDays}.
      */
     public Callable<Void> purgeOld() {
         return () -> {
             DatabaseConnection connection = helper.getLoadableDao().startThreadConnection();
-            Calendar oneMonthAgo = GregorianCalendar.getInstance();
-            oneMonthAgo.add(Calendar.MONTH, -1);
+            Calendar cutoff = GregorianCalendar.getInstance();
+            cutoff.add(Calendar.DAY_OF_MONTH, -ChanSettings.historyRetentionDays.get());
 
             DeleteBuilder<Loadable, Integer> builder = helper.getLoadableDao().deleteBuilder();
             builder.where()
-                    .lt("lastLoadDate", oneMonthAgo.getTime())
+                    .lt("lastLoadDate", cutoff.getTime())
                     .and()
                     .notIn("id", helper.getPinDao().queryBuilder().selectColumns("loadable_id"));
             builder.delete();
@@ -197,28 +255,58 @@ public class DatabaseLoadableManager {
     }
 
     /**
-     * @return A callable that returns a list of history, ignoring pins.
+     * Pages through history with the (lastLoadDate, id) of the last entry on the previous page as the key, so each page
+     * is a range scan over the lastLoadDate index no matter how deep into history it is.
+     *
+     * @param after the last entry of the previous page, or null for the first page
+     * @return A callable that returns up to {@link #HISTORY_PAGE_SIZE} history entries, newest first, ignoring pins.
+     * The site and board of each entry aren't set; call {@link #resolve(History)} before using them.
      */
-    public Callable<List<History>> getHistory() {
+    public Callable<List<History>> getHistoryPage(@Nullable History after) {
+        final Date afterDate = after == null ? null : after.loadable.lastLoadDate;
+        final int afterId = after == null ? 0 : after.loadable.id;
         return () -> {
-            List<History> history = new ArrayList<>();
-            for (Loadable l : helper.getLoadableDao()
+            QueryBuilder<Loadable, Integer> builder = helper.getLoadableDao()
                     .queryBuilder()
                     .orderBy("lastLoadDate", false)
-                    .limit(HISTORY_LIMIT)
-                    .where()
-                    .notIn("id", helper.getPinDao().queryBuilder().selectColumns("loadable_id"))
-                    .and()
-                    .ne("lastLoadDate", EPOCH_DATE)
-                    .query()) {
-                l.site = siteRepository.forId(l.siteId);
-                l.board = l.site.board(l.boardCode);
+                    .orderBy("id", false)
+                    .limit(HISTORY_PAGE_SIZE);
+            Where<Loadable, Integer> where = builder.where();
+            where.notIn("id", helper.getPinDao().queryBuilder().selectColumns("loadable_id"));
+            where.ne("lastLoadDate", EPOCH_DATE);
+            if (afterDate == null) {
+                where.and(2);
+            } else {
+                where.lt("lastLoadDate", afterDate);
+                where.eq("lastLoadDate", afterDate);
+                where.lt("id", afterId);
+                where.and(2);
+                where.or(2);
+                where.and(3);
+            }
+
+            List<History> history = new ArrayList<>();
+            for (Loadable l : builder.query()) {
                 history.add(new History(l));
             }
             return history;
         };
     }
 
+    /**
+     * Sets the site and board for a history entry's loadable if they haven't been already. This is cheap, so it's left
+     * until an entry is actually shown.
+     */
+    public void resolve(History history) {
+        Loadable l = history.loadable;
+        if (l.site == null) {
+            l.site = siteRepository.forId(l.siteId);
+        }
+        if (l.board == null) {
+            l.board = l.site.board(l.boardCode);
+        }
+    }
+
     public static class History {
         public Loadable loadable;
         public boolean highlighted;
@@ -0,0 +1,207 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import com.github.adamantcheese.chan.core.model.orm.PostHide;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.adamantcheese.chan.utils.PostUtils.getReadableFileSize;
+
+/**
+ * Keeps the database from growing without bound: expires history for threads that haven't been opened in
+ * {@link ChanSettings#historyRetentionDays} and post hides for threads that haven't been loaded in
+ * {@link ChanSettings#postHideRetentionDays}, then gives the freed pages back to the filesystem and refreshes the query
+ * planner's statistics. Run from {@link com.github.adamantcheese.chan.ui.service.DatabaseMaintenanceService} while the
+ * device is idle and charging.
+ */
+public class DatabaseMaintenanceManager {
+    // count caps, for when there are a lot of hides or replies in threads that are all still being seen
+    private static final long HIDE_TRIM_TRIGGER = 25000;
+    private static final long HIDE_TRIM_COUNT = 5000;
+    private static final long SAVED_REPLY_TRIM_TRIGGER = 250;
+    private static final long SAVED_REPLY_TRIM_COUNT = 50;
+
+    // hides in threads that are pinned, whether or not they've been opened lately
+    private static final String PINNED_HIDE = "EXISTS (SELECT 1 FROM pin JOIN loadable ON loadable.id = pin.loadable_id "
+            + "WHERE loadable.site = posthide.site AND loadable.board = posthide.board "
+            + "AND loadable.no = posthide.thread_no)";
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final String[] AUTO_VACUUM_MODES = {"none", "full", "incremental"};
+
+    private static final String[][] QUERY_PLANS = {
+            {"Post hide lookup", "SELECT * FROM posthide WHERE no IN (1, 2, 3) AND site = 1 AND board = 'a'"},
+            {"History page", "SELECT * FROM loadable WHERE id NOT IN (SELECT loadable_id FROM pin) "
+                    + "AND lastLoadDate <> '' ORDER BY lastLoadDate DESC, id DESC LIMIT 50"},
+            {"Loadable lookup", "SELECT * FROM loadable WHERE site = 1 AND mode = 1 AND board = 'a' AND no = 1"},
+            {"Pinned post hide refresh", "UPDATE posthide SET last_seen = 0 WHERE last_seen < 0 AND " + PINNED_HIDE},
+            {"Post hide expiry", "DELETE FROM posthide WHERE last_seen < 0"},
+            {"History expiry", "DELETE FROM loadable WHERE lastLoadDate < '' "
+                    + "AND id NOT IN (SELECT loadable_id FROM pin)"}
+    };
+
+    private final DatabaseHelper helper;
+    private final DatabaseLoadableManager databaseLoadableManager;
+
+    public DatabaseMaintenanceManager(DatabaseHelper helper, DatabaseLoadableManager databaseLoadableManager) {
+        this.helper = helper;
+        this.databaseLoadableManager = databaseLoadableManager;
+    }
+
+    /**
+     * Expires old rows, then compacts the database.
+     *
+     * @param onDone called on the main thread once maintenance is over, whether or not it succeeded
+     */
+    public void runMaintenance(Runnable onDone) {
+        DatabaseUtils.runTaskAsync(applyRetention(),
+                result -> DatabaseUtils.runTaskAsyncOutsideTransaction(compact(), compacted -> onDone.run())
+        );
+    }
+
+    /**
+     * @return A callable that deletes post hides and loadables for threads not seen within their retention periods, and
+     * trims the post hide and saved reply tables down if they're still over their caps.
+     */
+    public Callable<Void> applyRetention() {
+        return () -> {
+            try {
+                int hideRetentionDays = ChanSettings.postHideRetentionDays.get();
+                if (hideRetentionDays > 0) {
+                    long now = System.currentTimeMillis();
+                    // pinned threads aren't necessarily opened, only polled; count them as seen so they're kept, and so
+                    // unpinning one starts the full retention period
+                    helper.getPostHideDao()
+                            .executeRaw("UPDATE posthide SET last_seen = ? WHERE last_seen < ? AND " + PINNED_HIDE,
+                                    String.valueOf(now),
+                                    String.valueOf(now - TimeUnit.DAYS.toMillis(1))
+                            );
+
+                    DeleteBuilder<PostHide, Integer> builder = helper.getPostHideDao().deleteBuilder();
+                    builder.where().lt("last_seen", now - TimeUnit.DAYS.toMillis(hideRetentionDays));
+                    int expired = builder.delete();
+                    Logger.d(this, "Expired " + expired + " post hides");
+                }
+
+                databaseLoadableManager.purgeOld().call();
+
+                // saved replies have nothing to expire them by; trimmed ones stay in memory until the next start
+                DatabaseUtils.trimTable(helper.getPostHideDao(), HIDE_TRIM_TRIGGER, HIDE_TRIM_COUNT).call();
+                DatabaseUtils.trimTable(helper.getSavedReplyDao(), SAVED_REPLY_TRIM_TRIGGER, SAVED_REPLY_TRIM_COUNT)
+                        .call();
+            } catch (Exception e) {
+                Logger.e(this, "Error applying retention", e);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Must be run with {@link DatabaseUtils#runTaskAsyncOutsideTransaction}, VACUUM can't run inside a transaction.
+     *
+     * @return A callable that returns free pages to the filesystem and runs ANALYZE.
+     */
+    public Callable<Void> compact() {
+        return () -> {
+            try {
+                SQLiteDatabase db = helper.getWritableDatabase();
+                if (longForQuery(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                    // switching modes takes one full VACUUM; from then on, freed pages can be returned without a rewrite
+                    Logger.d(this, "Enabling incremental auto-vacuum");
+                    db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                    db.execSQL("VACUUM");
+                } else {
+                    // execSQL would only step this once, freeing a single page
+                    try (Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null)) {
+                        //noinspection StatementWithEmptyBody
+                        while (cursor.moveToNext()) {}
+                    }
+                }
+                db.execSQL("ANALYZE");
+            } catch (Exception e) {
+                Logger.e(this, "Error compacting database", e);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * File size, table sizes and the query plans of the busiest queries, for the developer screen.
+     */
+    public Callable<String> getReport() {
+        return () -> {
+            StringBuilder report = new StringBuilder();
+            try {
+                SQLiteDatabase db = helper.getReadableDatabase();
+                long pageSize = longForQuery(db, "PRAGMA page_size");
+                long autoVacuum = longForQuery(db, "PRAGMA auto_vacuum");
+                report.append("File size: ")
+                        .append(getReadableFileSize(longForQuery(db, "PRAGMA page_count") * pageSize))
+                        .append(", free: ")
+                        .append(getReadableFileSize(longForQuery(db, "PRAGMA freelist_count") * pageSize))
+                        .append("\nAuto-vacuum: ")
+                        .append(autoVacuum >= 0 && autoVacuum < AUTO_VACUUM_MODES.length
+                                ? AUTO_VACUUM_MODES[(int) autoVacuum]
+                                : String.valueOf(autoVacuum))
+                        .append("\n\n");
+
+                // dbstat is an optional SQLite extension, missing from some Android builds
+                try (Cursor cursor = db.rawQuery(
+                        "SELECT name, SUM(pgsize) FROM dbstat GROUP BY name ORDER BY 2 DESC",
+                        null
+                )) {
+                    while (cursor.moveToNext()) {
+                        report.append(cursor.getString(0))
+                                .append(": ")
+                                .append(getReadableFileSize(cursor.getLong(1)))
+                                .append("\n");
+                    }
+                } catch (SQLiteException e) {
+                    report.append("Table sizes unavailable, no dbstat in this SQLite build\n");
+                }
+
+                for (String[] query : QUERY_PLANS) {
+                    report.append("\n").append(query[0]).append(":\n");
+                    try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query[1], null)) {
+                        while (cursor.moveToNext()) {
+                            report.append("  ").append(cursor.getString(3)).append("\n");
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                Logger.e(this, "Error building database report", e);
+                report.append("Failed: ").append(e.getMessage());
+            }
+            return report.toString().trim();
+        };
+    }
+
+    private static long longForQuery(SQLiteDatabase db, String query) {
+        try (Cursor cursor = db.rawQuery(query, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+}
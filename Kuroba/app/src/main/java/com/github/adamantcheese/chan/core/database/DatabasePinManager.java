@@ -20,6 +20,7 @@ import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.j256.ormlite.stmt.DeleteBuilder;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -77,9 +78,13 @@ public class DatabasePinManager {
     public Callable<List<Pin>> getPins() {
         return () -> {
             List<Pin> list = helper.getPinDao().queryForAll();
+            List<Loadable> loadables = new ArrayList<>(list.size());
+            for (Pin p : list) {
+                loadables.add(p.loadable);
+            }
+            loadables = databaseLoadableManager.refreshForeign(loadables);
             for (int i = 0; i < list.size(); i++) {
-                Pin p = list.get(i);
-                p.loadable = databaseLoadableManager.refreshForeign(p.loadable);
+                list.get(i).loadable = loadables.get(i);
             }
             return list;
         };
@@ -34,9 +34,6 @@ import java.util.concurrent.Callable;
  * and used to delete posts.
  */
 public class DatabaseSavedReplyManager {
-    private static final long TRIM_TRIGGER = 250;
-    private static final long TRIM_COUNT = 50;
-
     DatabaseHelper helper;
 
     // map of post number to saved replies
@@ -44,7 +41,6 @@ public class DatabaseSavedReplyManager {
 
     public DatabaseSavedReplyManager(DatabaseHelper helper) {
         this.helper = helper;
-        DatabaseUtils.runTask(DatabaseUtils.trimTable(helper.getSavedReplyDao(), TRIM_TRIGGER, TRIM_COUNT));
         DatabaseUtils.runTask(() -> {
             final List<SavedReply> all = helper.getSavedReplyDao().queryForAll();
 
@@ -87,12 +87,22 @@ public class DatabaseUtils {
     }
 
     public static <T> void runTaskAsync(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
-        databaseExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult));
+        databaseExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult, true));
+    }
+
+    /**
+     * Same as {@link #runTaskAsync(Callable, TaskResult)}, but without wrapping the task in a transaction; only for
+     * statements that can't run inside one, like VACUUM.
+     */
+    public static <T> void runTaskAsyncOutsideTransaction(
+            final Callable<T> taskCallable, final TaskResult<T> taskResult
+    ) {
+        databaseExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult, false));
     }
 
     public static <T> T runTask(final Callable<T> taskCallable) {
         try {
-            return databaseExecutor.submit(new DatabaseCallable<>(taskCallable, result -> {})).get();
+            return databaseExecutor.submit(new DatabaseCallable<>(taskCallable, result -> {}, true)).get();
         } catch (InterruptedException e) {
             // Since we don't rethrow InterruptedException we need to at least restore the
             // "interrupted" flag.
@@ -107,10 +117,12 @@ public class DatabaseUtils {
             implements Callable<T> {
         private final Callable<T> task;
         private final TaskResult<T> result;
+        private final boolean transaction;
 
-        public DatabaseCallable(Callable<T> task, @NonNull TaskResult<T> result) {
+        public DatabaseCallable(Callable<T> task, @NonNull TaskResult<T> result, boolean transaction) {
             this.task = task;
             this.result = result;
+            this.transaction = transaction;
         }
 
         @Override
@@ -118,7 +130,9 @@ public class DatabaseUtils {
             try {
                 DatabaseHelper databaseHelper = instance(DatabaseHelper.class);
                 synchronized (databaseHelper.getConnectionSource()) {
-                    final T res = TransactionManager.callInTransaction(databaseHelper.getConnectionSource(), task);
+                    final T res = transaction
+                            ? TransactionManager.callInTransaction(databaseHelper.getConnectionSource(), task)
+                            : task.call();
                     BackgroundUtils.runOnMainThread(() -> result.onComplete(res));
                     return res;
                 }
@@ -22,6 +22,7 @@ import com.github.adamantcheese.chan.core.database.DatabaseFilterManager;
 import com.github.adamantcheese.chan.core.database.DatabaseHelper;
 import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager;
+import com.github.adamantcheese.chan.core.database.DatabaseMaintenanceManager;
 import com.github.adamantcheese.chan.core.database.DatabasePinManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSiteManager;
@@ -30,6 +31,7 @@ import com.github.adamantcheese.chan.core.saver.ImageSaver;
 import com.github.adamantcheese.chan.core.site.SiteResolver;
 import com.github.adamantcheese.chan.ui.settings.SavedFilesBaseDirectory;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StartupTrace;
 import com.github.k1rakishou.fsaf.BadPathSymbolResolutionStrategy;
 import com.github.k1rakishou.fsaf.FileChooser;
 import com.github.k1rakishou.fsaf.FileManager;
@@ -81,7 +83,10 @@ public class AppModule {
     @Singleton
     public DatabaseSavedReplyManager provideDatabaseSavedReplyManager(DatabaseHelper helper) {
         Logger.d(AppModule.DI_TAG, "Database saved reply manager");
-        return new DatabaseSavedReplyManager(helper);
+        StartupTrace.Phase phase = StartupTrace.begin("Saved reply manager");
+        DatabaseSavedReplyManager savedReplyManager = new DatabaseSavedReplyManager(helper);
+        phase.end();
+        return savedReplyManager;
     }
 
     @Provides
@@ -112,6 +117,15 @@ public class AppModule {
         return new DatabaseHideManager(helper);
     }
 
+    @Provides
+    @Singleton
+    public DatabaseMaintenanceManager provideDatabaseMaintenanceManager(
+            DatabaseHelper helper, DatabaseLoadableManager databaseLoadableManager
+    ) {
+        Logger.d(AppModule.DI_TAG, "Database maintenance manager");
+        return new DatabaseMaintenanceManager(helper, databaseLoadableManager);
+    }
+
     @Provides
     @Singleton
     public SiteResolver provideSiteResolver(SiteRepository siteRepository) {
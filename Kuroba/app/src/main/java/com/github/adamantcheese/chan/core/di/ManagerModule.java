@@ -18,6 +18,7 @@ package com.github.adamantcheese.chan.core.di;
 
 import com.github.adamantcheese.chan.core.database.DatabaseFilterManager;
 import com.github.adamantcheese.chan.core.database.DatabasePinManager;
+import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.manager.BoardManager;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.manager.FilterWatchManager;
@@ -26,6 +27,7 @@ import com.github.adamantcheese.chan.core.manager.WakeManager;
 import com.github.adamantcheese.chan.core.manager.WatchManager;
 import com.github.adamantcheese.chan.core.repository.BoardRepository;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StartupTrace;
 import com.github.k1rakishou.fsaf.FileManager;
 
 import org.codejargon.feather.Provides;
@@ -57,7 +59,10 @@ public class ManagerModule {
             DatabasePinManager databasePinManager
     ) {
         Logger.d(AppModule.DI_TAG, "Watch manager");
-        return new WatchManager(databasePinManager);
+        StartupTrace.Phase phase = StartupTrace.begin("Watch manager");
+        WatchManager watchManager = new WatchManager(databasePinManager);
+        phase.end();
+        return watchManager;
     }
 
     @Provides
@@ -65,10 +70,11 @@ public class ManagerModule {
     public FilterWatchManager provideFilterWatchManager(
             BoardRepository boardRepository,
             FilterEngine filterEngine,
-            WatchManager watchManager
+            WatchManager watchManager,
+            DatabaseSavedReplyManager savedReplyManager
     ) {
         Logger.d(AppModule.DI_TAG, "Filter watch manager");
-        return new FilterWatchManager(boardRepository, filterEngine, watchManager);
+        return new FilterWatchManager(boardRepository, filterEngine, watchManager, savedReplyManager);
     }
 
     @Provides
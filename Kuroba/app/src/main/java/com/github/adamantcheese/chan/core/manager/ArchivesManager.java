@@ -38,6 +38,7 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,14 +49,15 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 public class ArchivesManager
         implements NetUtilsClasses.Converter<List<ExternalSiteArchive>, JsonReader>,
                    ResponseResult<List<ExternalSiteArchive>> {
-    private List<ExternalSiteArchive> archivesList;
+    // rebuilt whenever the archive list is refreshed; swapped in whole so parser threads never see a partial one
+    private volatile ArchiveIndex index = new ArchiveIndex(Collections.emptyList());
 
     private final Map<String, Class<? extends ExternalSiteArchive>> jsonMapping = new HashMap<>();
 
     @SuppressLint("StaticFieldLeak")
     private static ArchivesManager instance;
 
-    public static ArchivesManager getInstance() {
+    public static synchronized ArchivesManager getInstance() {
         if (instance == null) {
             instance = new ArchivesManager();
         }
@@ -75,7 +77,7 @@ public class ArchivesManager
         try {
             // archives.json should only contain FoolFuuka archives, as no other proper archiving software with an API seems to exist
             try (JsonReader reader = new JsonReader(new InputStreamReader(assetManager.open("archives.json")))) {
-                archivesList = convert(reader);
+                index = new ArchiveIndex(convert(reader));
             }
         } catch (Exception e) {
             Logger.d(this, "Unable to load/parse internal archives list", e);
@@ -90,26 +92,37 @@ public class ArchivesManager
         );
     }
 
+    /**
+     * @return an unmodifiable list of the archives that archive this board
+     */
     public List<ExternalSiteArchive> archivesForBoard(Board b) {
-        List<ExternalSiteArchive> result = new ArrayList<>();
-        if (archivesList == null || !(b.site instanceof Chan4)) return result; //4chan only
-        for (ExternalSiteArchive a : archivesList) {
-            for (String code : a.boardCodes) {
-                if (code.equals(b.code)) {
-                    result.add(a);
-                    break;
-                }
-            }
-        }
-        return result;
+        if (!(b.site instanceof Chan4)) return Collections.emptyList(); //4chan only
+        List<ExternalSiteArchive> archives = index.byBoardCode.get(b.code);
+        return archives == null ? Collections.emptyList() : archives;
     }
 
     @Nullable
     public ExternalSiteArchive archiveForDomain(@NonNull String domain) {
-        for (ExternalSiteArchive a : archivesList) {
-            if (a.domain.contains(domain)) return a;
+        return index.forDomain(domain);
+    }
+
+    /**
+     * Same as {@link #archiveForDomain(String)} with the url's top private domain, but resolutions are cached by host,
+     * which skips the public suffix lookup for repeated links to the same site.
+     */
+    @Nullable
+    public ExternalSiteArchive archiveForUrl(@NonNull HttpUrl url) {
+        ArchiveIndex current = index;
+        String host = url.host();
+        synchronized (current.byHost) {
+            if (current.byHost.containsKey(host)) return current.byHost.get(host);
         }
-        return null;
+        String domain = url.topPrivateDomain();
+        ExternalSiteArchive archive = domain == null ? null : current.forDomain(domain);
+        synchronized (current.byHost) {
+            current.byHost.put(host, archive);
+        }
+        return archive;
     }
 
     @Override
@@ -169,6 +182,68 @@ public class ArchivesManager
 
     @Override
     public void onSuccess(List<ExternalSiteArchive> result) {
-        archivesList = result;
+        index = new ArchiveIndex(result);
+    }
+
+    private static class ArchiveIndex {
+        private static final int MAX_CACHED_LOOKUPS = 256;
+
+        final List<ExternalSiteArchive> archives;
+        final Map<String, List<ExternalSiteArchive>> byBoardCode = new HashMap<>();
+        // lookups by top private domain and by host; misses are cached too, as null
+        final Map<String, ExternalSiteArchive> byDomain = lookupCache();
+        final Map<String, ExternalSiteArchive> byHost = lookupCache();
+
+        ArchiveIndex(List<ExternalSiteArchive> archives) {
+            this.archives = archives;
+            Map<String, List<ExternalSiteArchive>> building = new HashMap<>();
+            for (ExternalSiteArchive a : archives) {
+                for (String code : a.boardCodes) {
+                    List<ExternalSiteArchive> forCode = building.get(code);
+                    if (forCode == null) {
+                        forCode = new ArrayList<>();
+                        building.put(code, forCode);
+                    }
+                    if (!forCode.contains(a)) forCode.add(a);
+                }
+            }
+            for (Map.Entry<String, List<ExternalSiteArchive>> entry : building.entrySet()) {
+                byBoardCode.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            }
+            // seed the domain lookups with each archive's own domain, which is what links to archives will use
+            for (ExternalSiteArchive a : archives) {
+                HttpUrl archiveUrl = HttpUrl.parse("https://" + a.domain);
+                String domain = archiveUrl == null ? null : archiveUrl.topPrivateDomain();
+                if (domain != null) forDomain(domain);
+            }
+        }
+
+        private static Map<String, ExternalSiteArchive> lookupCache() {
+            return new LinkedHashMap<String, ExternalSiteArchive>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ExternalSiteArchive> eldest) {
+                    // access ordered, so frequently linked archives stay while one-off sites get dropped
+                    return size() > MAX_CACHED_LOOKUPS;
+                }
+            };
+        }
+
+        @Nullable
+        ExternalSiteArchive forDomain(String domain) {
+            synchronized (byDomain) {
+                if (byDomain.containsKey(domain)) return byDomain.get(domain);
+            }
+            ExternalSiteArchive result = null;
+            for (ExternalSiteArchive a : archives) {
+                if (a.domain.contains(domain)) {
+                    result = a;
+                    break;
+                }
+            }
+            synchronized (byDomain) {
+                byDomain.put(domain, result);
+            }
+            return result;
+        }
     }
 }
@@ -21,6 +21,7 @@ import android.text.Spanned;
 import android.text.TextPaint;
 import android.text.TextUtils;
 import android.text.style.ClickableSpan;
+import android.util.LruCache;
 import android.view.View;
 import android.widget.Toast;
 
@@ -38,6 +39,7 @@ import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
+import com.github.adamantcheese.chan.core.site.parser.CatalogScanner;
 import com.github.adamantcheese.chan.ui.helper.BoardHelper;
 import com.github.adamantcheese.chan.ui.text.FilterHighlightSpan;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
@@ -46,8 +48,10 @@ import com.github.adamantcheese.chan.utils.Logger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -108,6 +112,10 @@ public class FilterEngine {
     private final DatabaseFilterManager databaseFilterManager;
 
     private final Map<String, Pattern> patternCache = new HashMap<>();
+    // filter board lists, parsed into sets of "siteId:code" keys; edited filters leave their old lists behind, so this
+    // is capped a bit above the number of filters anyone has
+    private static final int BOARD_LIST_CACHE_SIZE = 64;
+    private final LruCache<String, Set<String>> boardListCache = new LruCache<>(BOARD_LIST_CACHE_SIZE);
 
     public FilterEngine(DatabaseFilterManager databaseFilterManager) {
         this.databaseFilterManager = databaseFilterManager;
@@ -161,12 +169,17 @@ public class FilterEngine {
         if (filter.allBoards || TextUtils.isEmpty(filter.boards)) {
             return true;
         } else {
-            for (String uniqueId : filter.boards.split(",")) {
-                if (BoardHelper.matchesUniqueId(board, uniqueId)) {
-                    return true;
+            Set<String> boardKeys = boardListCache.get(filter.boards);
+            if (boardKeys == null) {
+                // parsing the same list twice from two threads is harmless
+                boardKeys = new HashSet<>();
+                for (String uniqueId : filter.boards.split(",")) {
+                    String key = BoardHelper.uniqueIdToKey(uniqueId);
+                    if (key != null) boardKeys.add(key);
                 }
+                boardListCache.put(filter.boards, boardKeys);
             }
-            return false;
+            return boardKeys.contains(BoardHelper.boardKey(board.siteId, board.code));
         }
     }
 
@@ -251,6 +264,36 @@ public class FilterEngine {
         return false;
     }
 
+    /**
+     * The same checks as {@link #matches(Filter, Post.Builder)}, against a thread read by a catalog scan.
+     *
+     * @param isSavedReply whether the thread is one of the user's own posts, only used for filters set to apply to them
+     */
+    @AnyThread
+    public boolean matches(Filter filter, CatalogScanner.ScannedThread thread, boolean isSavedReply) {
+        if (!thread.capcode.isEmpty() || thread.sticky) return false;
+        if (filter.applyToSaved && !isSavedReply) return false;
+
+        if (matches(filter, TRIPCODE, thread.tripcode, false)) return true;
+        if (matches(filter, NAME, thread.name, false)) return true;
+        if ((filter.type & COMMENT.flag) != 0 && matches(filter, COMMENT, thread.getComment(), false)) return true;
+        if (matches(filter, ID, thread.posterId, false)) return true;
+        if (matches(filter, SUBJECT, thread.subject, false)) return true;
+        for (String fileHash : thread.fileHashes) {
+            if (matches(filter, IMAGE, fileHash, false)) {
+                return ChanSettings.applyImageFilterToPost.get();
+            }
+        }
+        if (!thread.flagCode.isEmpty() && matches(filter, FLAG_CODE, thread.flagCode, false)) return true;
+
+        StringBuilder files = new StringBuilder();
+        for (String filename : thread.filenames) {
+            files.append(filename).append(" ");
+        }
+        String fnames = files.toString();
+        return !fnames.isEmpty() && matches(filter, FILENAME, fnames, false);
+    }
+
     @AnyThread
     public boolean matches(Filter filter, FilterType type, CharSequence text, boolean forceCompile) {
         if ((filter.type & type.flag) == 0) return false;
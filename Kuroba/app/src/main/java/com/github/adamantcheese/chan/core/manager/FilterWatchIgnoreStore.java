@@ -0,0 +1,356 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.ui.helper.BoardHelper;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The threads that filter watching has already pinned, per board, so that unpinning one doesn't bring it back.<br>
+ * <br>
+ * Each board's thread numbers are kept as a sorted int array. Changes are appended to a small binary journal on a
+ * background writer thread: a single record per new thread, and one record per board when a run trims it down to the
+ * threads still in the catalog, so a run only writes what actually changed. The journal is replayed on load and
+ * compacted into one record per board once it has grown enough.<br>
+ * <br>
+ * Nothing here waits for the journal to load. Changes made before then are queued behind the replay on the writer
+ * thread, and {@link #contains(Board, int)} only answers once {@link #isLoaded()}, so callers check that first.
+ */
+class FilterWatchIgnoreStore {
+    private static final String TAG = "FilterWatchIgnoreStore";
+
+    // a catalog rarely has more than a couple hundred threads, this only guards against runaway growth
+    private static final int MAX_PER_BOARD = 1000;
+    private static final int COMPACT_RECORDS = 500;
+
+    // journal record types
+    private static final byte ADD = 1;
+    private static final byte REPLACE = 2;
+    private static final byte REMOVE_BOARD = 3;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final File journalFile;
+    private final Map<String, IntSet> ignores = new HashMap<>();
+    private volatile boolean loaded;
+    private int journalRecords;
+
+    FilterWatchIgnoreStore(@NonNull File journalFile) {
+        this.journalFile = journalFile;
+        writer.execute(this::replayJournal);
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return false until the journal has loaded
+     */
+    boolean contains(Board board, int no) {
+        synchronized (ignores) {
+            IntSet set = ignores.get(key(board));
+            return set != null && set.contains(no);
+        }
+    }
+
+    void add(Board board, int no) {
+        if (!loaded) {
+            writer.execute(() -> add(board, no));
+            return;
+        }
+        String key = key(board);
+        synchronized (ignores) {
+            IntSet set = ignores.get(key);
+            if (set == null) {
+                set = new IntSet();
+                ignores.put(key, set);
+            }
+            if (!set.add(no)) return;
+        }
+        writer.execute(() -> appendRecord(ADD, key, new int[]{no}, 1));
+    }
+
+    /**
+     * Replaces a board's threads with the given ones, which should be the ignored threads still in its catalog. Nothing
+     * is written if that doesn't change anything.
+     */
+    void retain(Board board, IntSet seen) {
+        if (!loaded) {
+            writer.execute(() -> retain(board, seen));
+            return;
+        }
+        String key = key(board);
+        int[] kept = Arrays.copyOf(seen.values, Math.max(seen.size, 4));
+        int size = seen.size;
+        synchronized (ignores) {
+            IntSet set = ignores.get(key);
+            if (set == null ? size == 0 : set.sameAs(seen)) return;
+            set = new IntSet();
+            set.values = kept.clone();
+            set.size = size;
+            ignores.put(key, set);
+        }
+        writer.execute(() -> appendRecord(REPLACE, key, kept, size));
+    }
+
+    /**
+     * Drops every board that isn't being watched anymore.
+     */
+    void retainBoards(Collection<Board> boards) {
+        if (!loaded) {
+            List<Board> copy = new ArrayList<>(boards);
+            writer.execute(() -> retainBoards(copy));
+            return;
+        }
+        Set<String> keep = new HashSet<>();
+        for (Board board : boards) {
+            keep.add(key(board));
+        }
+        synchronized (ignores) {
+            for (Iterator<String> iterator = ignores.keySet().iterator(); iterator.hasNext(); ) {
+                String key = iterator.next();
+                if (!keep.contains(key)) {
+                    iterator.remove();
+                    writer.execute(() -> appendRecord(REMOVE_BOARD, key, new int[0], 0));
+                }
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (ignores) {
+            ignores.clear();
+        }
+        writer.execute(() -> {
+            // again, in case the journal was still being replayed
+            synchronized (ignores) {
+                ignores.clear();
+            }
+            journalRecords = 0;
+            if (!journalFile.delete() && journalFile.exists()) {
+                Logger.w(TAG, "Failed to delete filter watch ignore journal");
+            }
+        });
+    }
+
+    private static String key(Board board) {
+        return BoardHelper.boardKey(board.siteId, board.code);
+    }
+
+    // writer thread only
+    private void appendRecord(byte type, String key, int[] values, int size) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(journalFile, true)))) {
+            writeRecord(out, type, key, values, size);
+            journalRecords++;
+        } catch (IOException e) {
+            Logger.w(TAG, "Failed to append to filter watch ignore journal", e);
+        }
+        if (journalRecords > COMPACT_RECORDS) compact();
+    }
+
+    // numbers are sorted, so they're stored as deltas in a variable length encoding; mostly one or two bytes each
+    private static void writeRecord(DataOutputStream out, byte type, String key, int[] values, int size)
+            throws IOException {
+        out.writeByte(type);
+        out.writeUTF(key);
+        writeVarInt(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarInt(out, values[i] - previous);
+            previous = values[i];
+        }
+    }
+
+    // writer thread only
+    private void replayJournal() {
+        Map<String, IntSet> replayed = new HashMap<>();
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                String key = in.readUTF();
+                int size = readVarInt(in);
+                int[] values = new int[size];
+                int previous = 0;
+                for (int i = 0; i < size; i++) {
+                    previous += readVarInt(in);
+                    values[i] = previous;
+                }
+                count++;
+
+                IntSet set = replayed.get(key);
+                switch (type) {
+                    case ADD:
+                        if (set == null) {
+                            set = new IntSet();
+                            replayed.put(key, set);
+                        }
+                        for (int value : values) {
+                            set.add(value);
+                        }
+                        break;
+                    case REPLACE:
+                        set = new IntSet();
+                        set.values = Arrays.copyOf(values, Math.max(size, 4));
+                        set.size = size;
+                        replayed.put(key, set);
+                        break;
+                    case REMOVE_BOARD:
+                        replayed.remove(key);
+                        break;
+                }
+            }
+        } catch (IOException ignored) {
+            // no journal yet, or a torn record from process death at the end; keep what was read
+        } finally {
+            journalRecords = count;
+            synchronized (ignores) {
+                ignores.putAll(replayed);
+            }
+            loaded = true;
+        }
+    }
+
+    // writer thread only
+    private void compact() {
+        // copied under the lock and written outside it, so lookups don't wait on the disk; anything changed after the
+        // copy still has its record queued behind this
+        Map<String, IntSet> snapshot = new HashMap<>();
+        synchronized (ignores) {
+            for (Map.Entry<String, IntSet> entry : ignores.entrySet()) {
+                IntSet copy = new IntSet();
+                copy.values = Arrays.copyOf(entry.getValue().values, entry.getValue().size);
+                copy.size = entry.getValue().size;
+                snapshot.put(entry.getKey(), copy);
+            }
+        }
+
+        File temp = new File(journalFile.getParentFile(), journalFile.getName() + ".tmp");
+        int written = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (Map.Entry<String, IntSet> entry : snapshot.entrySet()) {
+                writeRecord(out, REPLACE, entry.getKey(), entry.getValue().values, entry.getValue().size);
+                written++;
+            }
+        } catch (IOException e) {
+            Logger.w(TAG, "Failed to compact filter watch ignore journal", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(journalFile)) {
+            journalRecords = written;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value)
+            throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in)
+            throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * A sorted set of ints in a plain array.
+     */
+    static class IntSet {
+        private int[] values = new int[4];
+        private int size;
+
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        /**
+         * @return true if the value wasn't already in the set
+         */
+        boolean add(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) return false;
+            index = -index - 1;
+            if (size == MAX_PER_BOARD) {
+                // drop the oldest thread to make room
+                if (index == 0) return false;
+                System.arraycopy(values, 1, values, 0, index - 1);
+                values[index - 1] = value;
+                return true;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean sameAs(IntSet other) {
+            if (size != other.size) return false;
+            for (int i = 0; i < size; i++) {
+                if (values[i] != other.values[i]) return false;
+            }
+            return true;
+        }
+    }
+}
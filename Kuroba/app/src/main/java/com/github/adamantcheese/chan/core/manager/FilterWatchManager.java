@@ -16,15 +16,26 @@
  */
 package com.github.adamantcheese.chan.core.manager;
 
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.di.AppModule;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
+import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ChainConverter;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.MainThreadResponseResult;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.repository.BoardRepository;
 import com.github.adamantcheese.chan.core.settings.PersistableChanState;
 import com.github.adamantcheese.chan.core.site.loader.ChanThreadLoader;
+import com.github.adamantcheese.chan.core.site.parser.CatalogScanner;
 import com.github.adamantcheese.chan.ui.helper.PostHelper;
 import com.github.adamantcheese.chan.ui.helper.RefreshUIMessage;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
@@ -35,13 +46,20 @@ import com.google.gson.reflect.TypeToken;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.BYTE_JSON_CONVERTER;
+import static com.github.adamantcheese.chan.core.site.SiteEndpoints.makeArgument;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static com.github.adamantcheese.chan.ui.helper.RefreshUIMessage.Reason.FILTERS_CHANGED;
 
 public class FilterWatchManager
@@ -49,35 +67,49 @@ public class FilterWatchManager
     private final BoardRepository boardRepository;
     private final FilterEngine filterEngine;
     private final WatchManager watchManager;
+    private final DatabaseSavedReplyManager savedReplyManager;
 
     //filterLoaders keeps track of ChanThreadLoaders so they can be cleared correctly each alarm trigger
-    //ignoredPosts keeps track of threads pinned by the filter manager and ignores them for future alarm triggers
+    //these are only used for sites that can't scan their catalogs, see CatalogScanner
+    //ignores keeps track of threads pinned by the filter manager and ignores them for future alarm triggers
     //this lets you unpin threads that are pinned by the filter pin manager and not have them come back
-    //note that ignoredPosts is currently only saved while the application is running and not in the database
     private final Map<ChanThreadLoader, CatalogLoader> filterLoaders = new HashMap<>();
-    private final Set<Integer> ignoredPosts = Collections.synchronizedSet(new HashSet<>());
-    //keep track of how many boards we've checked and their posts so we can cut out things from the ignored posts
+    private final FilterWatchIgnoreStore ignores;
+    //ignored thread numbers from before they were stored per board; these apply to every board until a run has
+    //sorted them into the boards they're still on, which takes every board loading successfully
+    private final Set<Integer> legacyIgnores = Collections.synchronizedSet(new HashSet<>());
+    private boolean boardFailed;
+    //keep track of how many boards we've checked, and which, so boards that aren't watched anymore can be dropped
     private final AtomicInteger numBoardsChecked = new AtomicInteger();
-    private final Set<Post> lastCheckedPosts = Collections.synchronizedSet(new HashSet<>());
+    private final List<Board> checkedBoards = new ArrayList<>();
     private boolean processing = false;
 
     public FilterWatchManager(
             BoardRepository boardRepository,
             FilterEngine filterEngine,
-            WatchManager watchManager
+            WatchManager watchManager,
+            DatabaseSavedReplyManager savedReplyManager
     ) {
         this.boardRepository = boardRepository;
         this.filterEngine = filterEngine;
         this.watchManager = watchManager;
+        this.savedReplyManager = savedReplyManager;
 
-        if (!filterEngine.getEnabledWatchFilters().isEmpty()) {
-            WakeManager.getInstance().registerWakeable(this);
-        }
+        // querying filters isn't needed to show anything, keep it off the startup path
+        BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService,
+                () -> filterEngine.getEnabledWatchFilters().isEmpty(),
+                noWatchFilters -> {
+                    if (!noWatchFilters) {
+                        WakeManager.getInstance().registerWakeable(this);
+                    }
+                }
+        );
 
+        ignores = new FilterWatchIgnoreStore(new File(getAppContext().getFilesDir(), "filter_watch_ignores.journal"));
         Set<Integer> previousIgnore = AppModule.gson.fromJson(PersistableChanState.filterWatchIgnored.get(),
                 new TypeToken<Set<Integer>>() {}.getType()
         );
-        if (previousIgnore != null) ignoredPosts.addAll(previousIgnore);
+        if (previousIgnore != null) legacyIgnores.addAll(previousIgnore);
 
         EventBus.getDefault().register(this);
     }
@@ -87,97 +119,249 @@ public class FilterWatchManager
         if (message.reason != FILTERS_CHANGED) return;
         if (filterEngine.getEnabledWatchFilters().isEmpty()) {
             WakeManager.getInstance().unregisterWakeable(this);
+            // any deferred catalog loads were dropped with the registration
+            processing = false;
         } else {
             WakeManager.getInstance().registerWakeable(this);
         }
     }
 
     @Override
-    public void onWake() {
-        if (!processing) {
-            WakeManager.getInstance().manageLock(true, FilterWatchManager.this);
-            processing = true;
-            populateFilterLoaders();
-            if (!filterLoaders.keySet().isEmpty()) {
-                Logger.d(this,
-                        "Processing " + numBoardsChecked + " filter loaders, started at "
-                                + StringUtils.getCurrentTimeDefaultLocale()
-                );
-                for (ChanThreadLoader loader : filterLoaders.keySet()) {
-                    loader.requestData();
-                }
-            } else {
-                WakeManager.getInstance().manageLock(false, FilterWatchManager.this);
-            }
-        }
-    }
+    public void onWake(WakeWindow window) {
+        // until the ignores have loaded, pinned threads can't be told apart from new ones; the next wake will do
+        if (processing || !ignores.isLoaded()) return;
 
-    private void populateFilterLoaders() {
         for (Map.Entry<ChanThreadLoader, CatalogLoader> entry : filterLoaders.entrySet()) {
             ChanLoaderManager.release(entry.getKey(), entry.getValue());
         }
         filterLoaders.clear();
-        //get a set of boards to background load
-        Set<Board> boards = new HashSet<>();
+
+        //get the boards to background load, along with the watch filters for each
+        Map<Board, List<Filter>> boards = new HashMap<>();
+        List<Filter> watchFilters = filterEngine.getEnabledWatchFilters();
         for (BoardRepository.SiteBoards siteBoard : boardRepository.getSaved()) {
             for (Board b : siteBoard.boards) {
-                for (Filter f : filterEngine.getEnabledWatchFilters()) {
+                for (Filter f : watchFilters) {
                     if (filterEngine.matchesBoard(f, b)) {
-                        boards.add(b);
+                        List<Filter> boardFilters = boards.get(b);
+                        if (boardFilters == null) {
+                            boardFilters = new ArrayList<>();
+                            boards.put(b, boardFilters);
+                        }
+                        boardFilters.add(f);
                     }
                 }
             }
         }
+        if (boards.isEmpty()) return;
+
+        processing = true;
+        boardFailed = false;
         numBoardsChecked.set(boards.size());
+        checkedBoards.clear();
+        checkedBoards.addAll(boards.keySet());
+        Logger.d(this,
+                "Processing " + numBoardsChecked + " boards, started at " + StringUtils.getCurrentTimeDefaultLocale()
+        );
+
+        for (Map.Entry<Board, List<Filter>> entry : boards.entrySet()) {
+            Board board = entry.getKey();
+            List<Filter> filters = entry.getValue();
+            CatalogScanner scanner = board.site.chanReader().getCatalogScanner();
+            WakeWindow.Task task;
+            if (scanner != null) {
+                task = new WakeWindow.Task(taskKey(board), board.site.endpoints().catalog(board).host(), this) {
+                    @Override
+                    public void run(WakeWindow.Completion completion) {
+                        scanCatalog(board, filters, scanner, completion);
+                    }
+                };
+            } else {
+                CatalogLoader backgroundLoader = new CatalogLoader();
+                ChanThreadLoader catalogLoader = ChanLoaderManager.obtain(Loadable.forCatalog(board), backgroundLoader);
+                backgroundLoader.loader = catalogLoader;
+                filterLoaders.put(catalogLoader, backgroundLoader);
+                task = new WakeWindow.Task(taskKey(board), board.site.endpoints().catalog(board).host(), this) {
+                    @Override
+                    public void run(WakeWindow.Completion completion) {
+                        backgroundLoader.completion = completion;
+                        catalogLoader.requestData();
+                    }
+                };
+            }
+            window.submit(task);
+        }
+    }
+
+    private static String taskKey(Board board) {
+        return "catalog:" + board.siteId + "/" + board.code;
+    }
+
+    /**
+     * Streams the catalog and evaluates the watch filters on the raw thread fields, without building any posts.
+     */
+    private void scanCatalog(
+            Board board, List<Filter> filters, CatalogScanner scanner, WakeWindow.Completion completion
+    ) {
+        boolean needsSaved = false;
+        for (Filter filter : filters) {
+            needsSaved |= filter.applyToSaved;
+        }
+        final boolean checkSaved = needsSaved;
+        final long[] stats = new long[2]; // bytes, parse time
+
+        NetUtils.makeRequest(NetUtils.applicationClient,
+                board.site.endpoints().catalog(board),
+                new ChainConverter<CatalogScanResult, ByteJsonReader>(reader -> {
+                    long start = SystemClock.elapsedRealtime();
+                    CatalogScanResult result = new CatalogScanResult();
+                    scanner.scanCatalog(reader, thread -> {
+                        result.threadCount++;
+                        if (isIgnored(board, thread.no)) {
+                            result.stillIgnored.add(thread.no);
+                            return;
+                        }
+                        boolean saved = checkSaved && savedReplyManager.isSaved(board, thread.no);
+                        for (Filter filter : filters) {
+                            if (filterEngine.matches(filter, thread, saved)) {
+                                result.toPin.add(createPinLoadable(board, thread));
+                                break;
+                            }
+                        }
+                    });
+                    stats[1] = SystemClock.elapsedRealtime() - start;
+                    return result;
+                }).chain(BYTE_JSON_CONVERTER),
+                new MainThreadResponseResult<>(new ResponseResult<CatalogScanResult>() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        Logger.d(FilterWatchManager.this, "Catalog scan failed for /" + board.code + "/", e);
+                        boardFailed = true;
+                        completion.done(stats[0], stats[1]);
+                        checkComplete();
+                    }
+
+                    @Override
+                    public void onSuccess(CatalogScanResult result) {
+                        Logger.d(FilterWatchManager.this, String.format(Locale.ENGLISH,
+                                "Scanned /%s/: %d threads, %d to pin, %dms",
+                                board.code,
+                                result.threadCount,
+                                result.toPin.size(),
+                                stats[1]
+                        ));
+                        // trim first, the new pins are added on top
+                        ignores.retain(board, result.stillIgnored);
+                        for (Loadable pinLoadable : result.toPin) {
+                            if (!ignores.contains(board, pinLoadable.no)) {
+                                ignores.add(board, pinLoadable.no);
+                                watchManager.createPin(pinLoadable);
+                            }
+                        }
+                        completion.done(stats[0], stats[1]);
+                        checkComplete();
+                    }
+                }),
+                (source, bytesRead, contentLength, start, done) -> stats[0] = bytesRead,
+                null
+        );
+    }
+
+    private static Loadable createPinLoadable(Board board, CatalogScanner.ScannedThread thread) {
+        String title;
+        if (!thread.subject.isEmpty()) {
+            title = thread.subject;
+        } else if (!thread.getComment().isEmpty()) {
+            title = thread.getComment().substring(0, Math.min(thread.getComment().length(), 200));
+        } else {
+            title = "/" + board.code + "/" + thread.no;
+        }
+
+        Loadable pinLoadable = Loadable.forThread(board, thread.no, title);
+        if (thread.fileId != null && thread.fileExt != null) {
+            Post.Builder op = new Post.Builder().board(board).no(thread.no).op(true).opId(0);
+            pinLoadable.thumbnailUrl = board.site.endpoints()
+                    .thumbnailUrl(op, false, makeArgument("tim", thread.fileId, "ext", thread.fileExt))
+                    .toString();
+        }
+        return pinLoadable;
+    }
 
-        for (Board b : boards) {
-            CatalogLoader backgroundLoader = new CatalogLoader();
-            ChanThreadLoader catalogLoader = ChanLoaderManager.obtain(Loadable.forCatalog(b), backgroundLoader);
-            filterLoaders.put(catalogLoader, backgroundLoader);
+    private boolean isIgnored(Board board, int no) {
+        return ignores.contains(board, no) || legacyIgnores.contains(no);
+    }
+
+    public void clearIgnores() {
+        legacyIgnores.clear();
+        PersistableChanState.filterWatchIgnored.set("");
+        ignores.clear();
+    }
+
+    private void checkComplete() {
+        if (numBoardsChecked.decrementAndGet() == 0) {
+            ignores.retainBoards(checkedBoards);
+            if (!boardFailed && !legacyIgnores.isEmpty()) {
+                legacyIgnores.clear();
+                PersistableChanState.filterWatchIgnored.set("");
+            }
+            processing = false;
+            Logger.d(this, "Finished processing boards, ended at " + StringUtils.getCurrentTimeDefaultLocale());
         }
     }
 
+    private static class CatalogScanResult {
+        private int threadCount;
+        // the ignored threads that are still in the catalog
+        private final FilterWatchIgnoreStore.IntSet stillIgnored = new FilterWatchIgnoreStore.IntSet();
+        private final List<Loadable> toPin = new ArrayList<>();
+    }
+
     private class CatalogLoader
             implements ChanThreadLoader.ChanLoaderCallback {
+        private ChanThreadLoader loader;
+        // set while a background wake is waiting on this catalog's load
+        @Nullable
+        private WakeWindow.Completion completion;
+
         @Override
         public void onChanLoaderData(ChanThread result) {
             Logger.d(this, "onChanLoaderData() for /" + result.getLoadable().boardCode + "/");
+            Board board = result.getLoadable().board;
+            FilterWatchIgnoreStore.IntSet stillIgnored = new FilterWatchIgnoreStore.IntSet();
+            List<Post> toPin = new ArrayList<>();
             for (Post p : result.getPosts()) {
-                if (p.filterWatch && !ignoredPosts.contains(p.no)) {
-                    final Loadable pinLoadable =
-                            Loadable.forThread(p.board, p.no, PostHelper.getTitle(p, result.getLoadable()));
-                    pinLoadable.thumbnailUrl = p.image() == null ? null : p.image().getThumbnailUrl();
-                    BackgroundUtils.runOnMainThread(() -> watchManager.createPin(pinLoadable));
-                    ignoredPosts.add(p.no);
+                if (isIgnored(board, p.no)) {
+                    stillIgnored.add(p.no);
+                } else if (p.filterWatch) {
+                    toPin.add(p);
                 }
             }
-            //add all posts to ignore
-            lastCheckedPosts.addAll(result.getPosts());
+            // trim first, the new pins are added on top
+            ignores.retain(board, stillIgnored);
+            for (Post p : toPin) {
+                final Loadable pinLoadable =
+                        Loadable.forThread(p.board, p.no, PostHelper.getTitle(p, result.getLoadable()));
+                pinLoadable.thumbnailUrl = p.image() == null ? null : p.image().getThumbnailUrl();
+                BackgroundUtils.runOnMainThread(() -> watchManager.createPin(pinLoadable));
+                ignores.add(board, p.no);
+            }
             Logger.d(this, "Filter loader processed, left " + numBoardsChecked);
-            checkComplete();
+            finishLoad();
         }
 
         @Override
         public void onChanLoaderError(ChanThreadLoader.ChanLoaderException error) {
             Logger.d(this, "Filter loader failed, left " + numBoardsChecked);
-            checkComplete();
+            boardFailed = true;
+            finishLoad();
         }
 
-        private void checkComplete() {
-            if (numBoardsChecked.decrementAndGet() == 0) {
-                Set<Integer> lastCheckedPostNumbers = new HashSet<>();
-                for (Post post : lastCheckedPosts) {
-                    lastCheckedPostNumbers.add(post.no);
-                }
-                ignoredPosts.retainAll(lastCheckedPostNumbers);
-                PersistableChanState.filterWatchIgnored.setSync(AppModule.gson.toJson(ignoredPosts));
-                lastCheckedPosts.clear();
-                processing = false;
-                Logger.d(this,
-                        "Finished processing filter loaders, ended at " + StringUtils.getCurrentTimeDefaultLocale()
-                );
-                WakeManager.getInstance().manageLock(false, FilterWatchManager.this);
+        private void finishLoad() {
+            if (completion != null) {
+                completion.done(loader.getLastResponseBytes(), loader.getLastParseMs());
+                completion = null;
             }
+            checkComplete();
         }
     }
 }
@@ -23,6 +23,8 @@ import android.content.Intent;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.BuildConfig;
 import com.github.adamantcheese.chan.Chan;
 import com.github.adamantcheese.chan.core.receiver.WakeUpdateReceiver;
@@ -33,8 +35,11 @@ import com.github.adamantcheese.chan.utils.StringUtils;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -59,6 +64,11 @@ public class WakeManager {
     private long lastBackgroundUpdateTime = System.currentTimeMillis() - ChanSettings.watchBackgroundInterval.get();
     private boolean alarmRunning;
 
+    @Nullable
+    private WakeWindow currentWindow;
+    // tasks that didn't make the previous window's deadline, run first in the next one
+    private final List<WakeWindow.Task> deferredTasks = new ArrayList<>();
+
     public static WakeManager getInstance() {
         if (instance == null) {
             instance = new WakeManager();
@@ -85,10 +95,38 @@ public class WakeManager {
             Logger.d(this, "Early; previous @ " + StringUtils.getTimeDefaultLocale(lastBackgroundUpdateTime));
         } else {
             lastBackgroundUpdateTime = currentTime;
-            for (Wakeable wakeable : wakeableSet) {
-                wakeable.onWake();
+            openWindow();
+        }
+    }
+
+    private void openWindow() {
+        if (currentWindow != null) {
+            Logger.d(this, "Previous wake window still open, skipping");
+            return;
+        }
+
+        WakeWindow window = new WakeWindow(new WakeWindow.Callback() {
+            @Override
+            public void onDeferred(List<WakeWindow.Task> tasks) {
+                deferredTasks.addAll(tasks);
+            }
+
+            @Override
+            public void onFinished() {
+                currentWindow = null;
             }
+        });
+        currentWindow = window;
+
+        List<WakeWindow.Task> deferred = new ArrayList<>(deferredTasks);
+        deferredTasks.clear();
+        for (WakeWindow.Task task : deferred) {
+            window.submit(task);
+        }
+        for (Wakeable wakeable : new ArrayList<>(wakeableSet)) {
+            wakeable.onWake(window);
         }
+        window.start();
     }
 
     @Subscribe
@@ -124,6 +162,9 @@ public class WakeManager {
     public void unregisterWakeable(Wakeable wakeable) {
         Logger.d(this, "Unregistered " + wakeable.getClass().toString());
         wakeableSet.remove(wakeable);
+        for (Iterator<WakeWindow.Task> iterator = deferredTasks.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().owner == wakeable) iterator.remove();
+        }
         if (alarmRunning && wakeableSet.isEmpty()) {
             stopAlarm();
         }
@@ -185,6 +226,9 @@ public class WakeManager {
     }
 
     public interface Wakeable {
-        void onWake();
+        /**
+         * Called when the background alarm fires; submit any work to the given window rather than starting it here.
+         */
+        void onWake(WakeWindow window);
     }
 }
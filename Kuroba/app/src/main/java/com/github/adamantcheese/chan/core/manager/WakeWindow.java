@@ -0,0 +1,247 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * One background wake-up, shared by every {@link WakeManager.Wakeable}.<br>
+ * <br>
+ * Wakeables submit their network work as tasks instead of starting it themselves, so that the whole wake-up holds one
+ * wakelock and keeps the radio busy for one stretch rather than several. Tasks are queued per host and start in the order they
+ * were queued for that host, with a few requests in flight per host and a cap on how many run at once. Once the deadline passes the
+ * wakelock is released; tasks that haven't started yet are handed back to the {@link WakeManager} and run first in the
+ * next window.<br>
+ * <br>
+ * Everything here runs on the main thread.
+ */
+public class WakeWindow {
+    private static final int MAX_CONCURRENT = 4;
+    // most pins are on one site; a few parallel requests keep it from being a single file, without hammering it
+    private static final int MAX_PER_HOST = 3;
+    // the wakelock times out after a minute, leave some room for the in-flight requests
+    private static final long DEADLINE_MS = SECONDS.toMillis(45);
+
+    private final Map<String, ArrayDeque<Task>> queues = new LinkedHashMap<>();
+    private final Map<String, Task> tasksByKey = new LinkedHashMap<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Callback callback;
+
+    private int running;
+    private boolean started;
+    private boolean finished;
+    private boolean dispatching;
+    private boolean locked;
+    private long startTime;
+
+    private int completedCount;
+    private long totalBytes;
+    private long totalParseMs;
+
+    WakeWindow(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Queue some work for this window. A task with the same key as one already queued replaces it.
+     */
+    public void submit(@NonNull Task task) {
+        BackgroundUtils.ensureMainThread();
+        if (finished) return;
+
+        Task previous = tasksByKey.put(task.key, task);
+        if (previous != null && !previous.started) {
+            ArrayDeque<Task> queue = queues.get(previous.host);
+            if (queue != null) queue.remove(previous);
+        }
+
+        ArrayDeque<Task> queue = queues.get(task.host);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.put(task.host, queue);
+        }
+        queue.addLast(task);
+
+        if (started) dispatch();
+    }
+
+    void start() {
+        started = true;
+        startTime = SystemClock.elapsedRealtime();
+        if (tasksByKey.isEmpty()) {
+            finish();
+            return;
+        }
+
+        Logger.d(this, "Wake window opened with " + tasksByKey.size() + " tasks over " + queues.size() + " hosts");
+        WakeManager.getInstance().manageLock(true, this);
+        locked = true;
+        BackgroundUtils.runOnMainThread(this::onDeadline, DEADLINE_MS);
+        dispatch();
+    }
+
+    private void dispatch() {
+        // tasks may complete synchronously from run(), the outer call picks up where this would have
+        if (finished || dispatching) return;
+        dispatching = true;
+
+        Task task;
+        while (running < MAX_CONCURRENT && (task = nextTask()) != null) {
+            task.started = true;
+            running++;
+            Integer hostRunning = runningPerHost.get(task.host);
+            runningPerHost.put(task.host, hostRunning == null ? 1 : hostRunning + 1);
+            task.run(new Completion(task));
+        }
+
+        dispatching = false;
+        if (running == 0 && queues.isEmpty()) {
+            finish();
+        }
+    }
+
+    @Nullable
+    private Task nextTask() {
+        for (Iterator<Map.Entry<String, ArrayDeque<Task>>> iterator = queues.entrySet().iterator();
+             iterator.hasNext(); ) {
+            Map.Entry<String, ArrayDeque<Task>> entry = iterator.next();
+            Integer hostRunning = runningPerHost.get(entry.getKey());
+            if (hostRunning != null && hostRunning >= MAX_PER_HOST) continue;
+
+            Task task = entry.getValue().pollFirst();
+            if (entry.getValue().isEmpty()) iterator.remove();
+            if (task != null) return task;
+        }
+        return null;
+    }
+
+    private void onComplete(Task task, long bytes, long parseMs) {
+        if (finished) return;
+
+        running--;
+        Integer hostRunning = runningPerHost.get(task.host);
+        if (hostRunning == null || hostRunning <= 1) {
+            runningPerHost.remove(task.host);
+        } else {
+            runningPerHost.put(task.host, hostRunning - 1);
+        }
+        tasksByKey.remove(task.key);
+        completedCount++;
+        totalBytes += Math.max(0, bytes);
+        totalParseMs += Math.max(0, parseMs);
+        dispatch();
+    }
+
+    private void onDeadline() {
+        if (finished) return;
+
+        List<Task> deferred = new ArrayList<>();
+        for (ArrayDeque<Task> queue : queues.values()) {
+            deferred.addAll(queue);
+        }
+        queues.clear();
+        Logger.w(this,
+                "Wake window deadline reached, " + running + " tasks still running, " + deferred.size() + " deferred"
+        );
+        callback.onDeferred(deferred);
+        finish();
+    }
+
+    private void finish() {
+        if (finished) return;
+        finished = true;
+
+        if (locked) {
+            Logger.i(this, String.format(Locale.ENGLISH,
+                    "Wake window closed after %dms: %d tasks completed, %d bytes, %dms parsing",
+                    SystemClock.elapsedRealtime() - startTime,
+                    completedCount,
+                    totalBytes,
+                    totalParseMs
+            ));
+            WakeManager.getInstance().manageLock(false, this);
+        }
+        callback.onFinished();
+    }
+
+    /**
+     * A unit of background work, usually a single request.
+     */
+    public abstract static class Task {
+        // used to de-duplicate tasks, so the same thread isn't loaded twice in one window
+        private final String key;
+        private final String host;
+        @Nullable
+        final WakeManager.Wakeable owner;
+        private boolean started;
+
+        public Task(@NonNull String key, @NonNull String host, @Nullable WakeManager.Wakeable owner) {
+            this.key = key;
+            this.host = host;
+            this.owner = owner;
+        }
+
+        /**
+         * Start the work. The completion must be called exactly once, on the main thread, when the work is done or has
+         * failed; if nothing was started it can be called right away.
+         */
+        public abstract void run(Completion completion);
+    }
+
+    public class Completion {
+        private final Task task;
+        private boolean done;
+
+        private Completion(Task task) {
+            this.task = task;
+        }
+
+        public void done(long bytes, long parseMs) {
+            BackgroundUtils.ensureMainThread();
+            if (done) return;
+            done = true;
+            onComplete(task, bytes, parseMs);
+        }
+
+        public void done() {
+            done(0, 0);
+        }
+    }
+
+    interface Callback {
+        void onDeferred(List<Task> tasks);
+
+        void onFinished();
+    }
+}
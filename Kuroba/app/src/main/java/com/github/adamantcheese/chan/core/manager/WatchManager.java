@@ -38,6 +38,7 @@ import com.github.adamantcheese.chan.core.repository.PageRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPage;
 import com.github.adamantcheese.chan.core.site.loader.ChanThreadLoader;
+import com.github.adamantcheese.chan.core.site.loader.WatchSchedule;
 import com.github.adamantcheese.chan.ui.service.LastPageNotification;
 import com.github.adamantcheese.chan.ui.service.WatchNotification;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
@@ -90,13 +91,13 @@ public class WatchManager
 
     enum IntervalType {
         /**
-         * A timer that uses a {@link Handler} that calls {@link #update(boolean)} every
-         * {@link #FOREGROUND_INTERVAL}
+         * A timer that uses a {@link Handler} that calls {@link #update()} when the next watched thread is due,
+         * at most every {@link #FOREGROUND_INTERVAL}
          */
         FOREGROUND,
 
         /**
-         * A timer that schedules a broadcast to be send that calls {@link #update(boolean)}.
+         * A timer that schedules a broadcast to be send that calls {@link #onWake(WakeWindow)}.
          */
         BACKGROUND,
 
@@ -108,6 +109,7 @@ public class WatchManager
 
     private final Handler handler;
     private static final long FOREGROUND_INTERVAL = SECONDS.toMillis(15);
+    private static final long MIN_FOREGROUND_INTERVAL = SECONDS.toMillis(1);
     private static final int MESSAGE_UPDATE = 1;
 
     private static final long STATE_UPDATE_DEBOUNCE_TIME_MS = 1000L;
@@ -119,7 +121,6 @@ public class WatchManager
     private final Debouncer stateUpdateDebouncer;
 
     private final Map<Pin, PinWatcher> pinWatchers = new HashMap<>();
-    private Set<PinWatcher> waitingForPinWatchersForBackgroundUpdate;
 
     public WatchManager(
             DatabasePinManager databasePinManager
@@ -136,7 +137,7 @@ public class WatchManager
         //setup handler to deal with foreground updates
         handler = new Handler(Looper.getMainLooper(), msg -> {
             if (msg.what == MESSAGE_UPDATE) {
-                update(false);
+                update();
                 return true;
             } else {
                 return false;
@@ -403,8 +404,23 @@ public class WatchManager
     }
 
     // Called when the broadcast scheduled by the alarm manager was received
-    public void onWake() {
-        update(true);
+    @Override
+    public void onWake(WakeWindow window) {
+        for (Pin pin : getWatchingPins()) {
+            PinWatcher pinWatcher = getPinWatcher(pin);
+            if (pinWatcher == null || pin.isError) continue;
+
+            String host = pin.loadable.site == null ? "" : pin.loadable.site.endpoints().thread(pin.loadable).host();
+            window.submit(new WakeWindow.Task("pin:" + pin.loadable.id, host, this) {
+                @Override
+                public void run(WakeWindow.Completion completion) {
+                    // the watcher may have been destroyed while this task was waiting
+                    if (getPinWatcher(pin) != pinWatcher || !pinWatcher.startBackgroundUpdate(completion)) {
+                        completion.done();
+                    }
+                }
+            });
+        }
     }
 
     // Called from the button on the notification
@@ -665,56 +681,62 @@ public class WatchManager
         return false;
     }
 
-    // Update the watching pins
-    private void update(boolean fromBackground) {
-        Logger.vd(this, "update from " + (fromBackground ? "background" : "foreground"));
+    // Update the watching pins that are due
+    private void update() {
+        Logger.vd(this, "update from foreground");
 
-        if (currentInterval == FOREGROUND) {
-            // reschedule handler message
-            handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), FOREGROUND_INTERVAL);
+        for (Pin pin : getWatchingPins()) {
+            PinWatcher pinWatcher = getPinWatcher(pin);
+            if (pinWatcher != null) {
+                pinWatcher.update(false);
+            }
         }
 
-        // A set of watchers that all have to complete being updated
-        // before the wakelock is released again
-        waitingForPinWatchersForBackgroundUpdate = null;
-        if (fromBackground) {
-            waitingForPinWatchersForBackgroundUpdate = new HashSet<>();
+        if (currentInterval == FOREGROUND) {
+            scheduleForegroundUpdate();
         }
+    }
 
-        List<Pin> watchingPins = getWatchingPins();
-        for (Pin pin : watchingPins) {
-            PinWatcher pinWatcher = getPinWatcher(pin);
-            if (pinWatcher != null && pinWatcher.update(fromBackground)) {
-                if (fromBackground) {
-                    waitingForPinWatchersForBackgroundUpdate.add(pinWatcher);
-                }
+    // Wake up when the first watched thread is due rather than on a fixed tick
+    private void scheduleForegroundUpdate() {
+        long delay = FOREGROUND_INTERVAL;
+        for (PinWatcher pinWatcher : pinWatchers.values()) {
+            long untilDue = pinWatcher.getTimeUntilNextPoll();
+            // overdue watchers are either loading right now or will reschedule when they finish
+            if (untilDue > 0) {
+                delay = Math.min(delay, untilDue);
             }
         }
 
-        if (fromBackground && !waitingForPinWatchersForBackgroundUpdate.isEmpty()) {
-            Logger.d(this,
-                    waitingForPinWatchersForBackgroundUpdate.size() + " pin watchers beginning updates, started at "
-                            + StringUtils.getCurrentTimeDefaultLocale()
-            );
-            WakeManager.getInstance().manageLock(true, WatchManager.this);
+        handler.removeMessages(MESSAGE_UPDATE);
+        handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), Math.max(MIN_FOREGROUND_INTERVAL, delay));
+    }
+
+    /**
+     * @return a summary of thread polling for the developer screen
+     */
+    public String getScheduleSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("Thread requests in the last hour: ").append(WatchSchedule.getRequestsInLastHour());
+        for (Pin pin : getWatchingPins()) {
+            PinWatcher pinWatcher = getPinWatcher(pin);
+            if (pinWatcher == null || pinWatcher.getSchedule() == null) continue;
+            summary.append('\n')
+                    .append(StringUtils.centerEllipsize(pin.loadable.title, 30))
+                    .append(": ")
+                    .append(pinWatcher.getSchedule().describe());
         }
+        return summary.toString();
     }
 
     private void pinWatcherUpdated(PinWatcher pinWatcher) {
         updateState();
+        if (currentInterval == FOREGROUND) {
+            scheduleForegroundUpdate();
+        }
         postToEventBus(new PinMessages.PinChangedMessage(pinWatcher.pin));
 
-        synchronized (WatchManager.this) {
-            if (waitingForPinWatchersForBackgroundUpdate != null) {
-                waitingForPinWatchersForBackgroundUpdate.remove(pinWatcher);
-
-                if (waitingForPinWatchersForBackgroundUpdate.isEmpty()) {
-                    Logger.d(this, "All watchers updated, finished at " + StringUtils.getCurrentTimeDefaultLocale());
-                    waitingForPinWatchersForBackgroundUpdate = null;
-                    WakeManager.getInstance().manageLock(false, WatchManager.this);
-                }
-            }
-        }
+        pinWatcher.finishBackgroundUpdate();
     }
 
     public static class PinMessages {
@@ -757,6 +779,9 @@ public class WatchManager
         private boolean wereNewQuotes = false;
         private boolean wereNewPosts = false;
         private boolean notified = true;
+        // set while a background wake is waiting on this watcher's load
+        @Nullable
+        private WakeWindow.Completion backgroundUpdate;
 
         public int lastReplyCount = -1;
 
@@ -776,6 +801,19 @@ public class WatchManager
             return posts;
         }
 
+        @Nullable
+        public WatchSchedule getSchedule() {
+            return chanLoader != null ? chanLoader.getSchedule() : null;
+        }
+
+        /**
+         * @return the time in milliseconds until this thread should be polled again, negative if it is overdue
+         */
+        private long getTimeUntilNextPoll() {
+            if (pin.isError || !pin.watching || chanLoader == null) return Long.MAX_VALUE;
+            return chanLoader.getTimeUntilLoadMore();
+        }
+
         public List<Post> getUnviewedPosts() {
             if (posts.isEmpty()) {
                 return posts;
@@ -807,6 +845,7 @@ public class WatchManager
         }
 
         private void destroy() {
+            finishBackgroundUpdate();
             if (chanLoader != null) {
                 Logger.d(this,
                         "PinWatcher: destroyed for pin with id " + pin.id + " and loadable" + pin.loadable.toString()
@@ -817,6 +856,27 @@ public class WatchManager
             PageRepository.removeListener(this);
         }
 
+        private boolean startBackgroundUpdate(WakeWindow.Completion completion) {
+            if (update(true)) {
+                backgroundUpdate = completion;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private void finishBackgroundUpdate() {
+            if (backgroundUpdate != null) {
+                WakeWindow.Completion completion = backgroundUpdate;
+                backgroundUpdate = null;
+                if (chanLoader != null) {
+                    completion.done(chanLoader.getLastResponseBytes(), chanLoader.getLastParseMs());
+                } else {
+                    completion.done();
+                }
+            }
+        }
+
         private boolean update(boolean fromBackground) {
             if (!pin.isError && pin.watching) {
                 //check last page stuff, get the page for the OP and notify in the onPages method
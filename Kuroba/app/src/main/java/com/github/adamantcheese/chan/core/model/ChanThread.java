@@ -22,6 +22,8 @@ import android.text.SpannableStringBuilder;
 import android.text.style.StyleSpan;
 import android.text.style.UnderlineSpan;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.repository.PageRepository;
@@ -44,12 +46,17 @@ public class ChanThread {
     // there is no easy way to fix them right now) and to avoid copying the whole list of posts
     // every time it is needed somewhere.
     private List<Post> posts;
+    private PostIndex index;
+    // built on first use when not handed over with the posts
+    @Nullable
+    private ReplyGraph replyGraph;
     private boolean closed = false;
     private boolean archived = false;
 
     public ChanThread(Loadable loadable, List<Post> posts) {
         this.loadable = loadable;
         this.posts = Collections.unmodifiableList(new ArrayList<>(posts));
+        index = PostIndex.update(null, this.posts);
     }
 
     public synchronized int getImagesCount() {
@@ -80,8 +87,50 @@ public class ChanThread {
         return posts;
     }
 
-    public synchronized void setNewPosts(List<Post> newPosts) {
+    public synchronized void setNewPosts(List<Post> newPosts, @Nullable ReplyGraph replyGraph) {
         this.posts = Collections.unmodifiableList(new ArrayList<>(newPosts));
+        index = PostIndex.update(index, posts);
+        this.replyGraph = replyGraph;
+    }
+
+    public synchronized ReplyGraph getReplyGraph() {
+        if (replyGraph == null) {
+            replyGraph = ReplyGraph.build(posts);
+        }
+        return replyGraph;
+    }
+
+    @Nullable
+    public synchronized Post getPost(int no) {
+        return index.getPost(no);
+    }
+
+    /**
+     * @return every post with this poster ID, in thread order
+     */
+    public synchronized List<Post> getPostsByPosterId(String posterId) {
+        return index.getPostsByPosterId(posterId);
+    }
+
+    public synchronized List<Post> getPostsByTripcode(String tripcode) {
+        return index.getPostsByTripcode(tripcode);
+    }
+
+    public synchronized List<Post> getPostsByImageHash(String fileHash) {
+        return index.getPostsByImageHash(fileHash);
+    }
+
+    @Nullable
+    public synchronized Post getPostForImage(PostImage image) {
+        Post post = index.getPostForImage(image);
+        if (post != null) return post;
+        // embedded images are added to posts after they're loaded, so they aren't indexed
+        for (Post p : posts) {
+            for (PostImage postImage : p.images) {
+                if (postImage == image) return p;
+            }
+        }
+        return null;
     }
 
     /**
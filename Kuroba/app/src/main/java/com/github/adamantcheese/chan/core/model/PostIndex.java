@@ -0,0 +1,151 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model;
+
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lookups into a thread's posts, so that quote taps, reply popups and the like don't have to walk the whole thread.
+ * <br>
+ * An index is never changed once built. When a refresh only appends posts to the ones already indexed, which is the
+ * usual case as the loader reuses its cached posts, the new index copies the previous maps and only indexes the new
+ * posts; anything else rebuilds from scratch.
+ */
+class PostIndex {
+    private final List<Post> posts;
+    private final Map<Integer, Integer> positionByNo;
+    private final Map<String, List<Post>> postsByPosterId;
+    private final Map<String, List<Post>> postsByTripcode;
+    private final Map<String, List<Post>> postsByImageHash;
+    // by identity, PostImage.equals compares urls
+    private final Map<PostImage, Post> postByImage;
+
+    private PostIndex(List<Post> posts) {
+        this.posts = posts;
+        positionByNo = new HashMap<>();
+        postsByPosterId = new HashMap<>();
+        postsByTripcode = new HashMap<>();
+        postsByImageHash = new HashMap<>();
+        postByImage = new IdentityHashMap<>();
+        addPosts(0, null);
+    }
+
+    private PostIndex(PostIndex previous, List<Post> posts) {
+        this.posts = posts;
+        positionByNo = new HashMap<>(previous.positionByNo);
+        postsByPosterId = new HashMap<>(previous.postsByPosterId);
+        postsByTripcode = new HashMap<>(previous.postsByTripcode);
+        postsByImageHash = new HashMap<>(previous.postsByImageHash);
+        postByImage = new IdentityHashMap<>(previous.postByImage);
+        // lists shared with the previous index are copied before they're appended to
+        addPosts(previous.posts.size(), Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    /**
+     * @param posts an unmodifiable list of posts; it's held on to by the index
+     */
+    static PostIndex update(@Nullable PostIndex previous, List<Post> posts) {
+        if (previous != null && !previous.posts.isEmpty() && isPrefix(previous.posts, posts)) {
+            return previous.posts.size() == posts.size() ? previous : new PostIndex(previous, posts);
+        }
+        return new PostIndex(posts);
+    }
+
+    private static boolean isPrefix(List<Post> prefix, List<Post> posts) {
+        if (prefix.size() > posts.size()) return false;
+        for (int i = 0; i < prefix.size(); i++) {
+            if (prefix.get(i) != posts.get(i)) return false;
+        }
+        return true;
+    }
+
+    private void addPosts(int from, @Nullable Set<List<Post>> owned) {
+        for (int i = from; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            positionByNo.put(post.no, i);
+            if (!TextUtils.isEmpty(post.id)) {
+                append(postsByPosterId, post.id, post, owned);
+            }
+            if (!TextUtils.isEmpty(post.tripcode)) {
+                append(postsByTripcode, post.tripcode, post, owned);
+            }
+            for (PostImage image : post.images) {
+                postByImage.put(image, post);
+                if (!TextUtils.isEmpty(image.fileHash)) {
+                    List<Post> sameHash = postsByImageHash.get(image.fileHash);
+                    // a post with the same file twice still counts once
+                    if (sameHash == null || sameHash.get(sameHash.size() - 1) != post) {
+                        append(postsByImageHash, image.fileHash, post, owned);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void append(
+            Map<String, List<Post>> map, String key, Post post, @Nullable Set<List<Post>> owned
+    ) {
+        List<Post> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+            if (owned != null) owned.add(list);
+        } else if (owned != null && !owned.contains(list)) {
+            list = new ArrayList<>(list);
+            map.put(key, list);
+            owned.add(list);
+        }
+        list.add(post);
+    }
+
+    @Nullable
+    Post getPost(int no) {
+        Integer position = positionByNo.get(no);
+        return position == null ? null : posts.get(position);
+    }
+
+    List<Post> getPostsByPosterId(String posterId) {
+        return unmodifiable(postsByPosterId.get(posterId));
+    }
+
+    List<Post> getPostsByTripcode(String tripcode) {
+        return unmodifiable(postsByTripcode.get(tripcode));
+    }
+
+    List<Post> getPostsByImageHash(String fileHash) {
+        return unmodifiable(postsByImageHash.get(fileHash));
+    }
+
+    @Nullable
+    Post getPostForImage(PostImage image) {
+        return postByImage.get(image);
+    }
+
+    private static List<Post> unmodifiable(@Nullable List<Post> list) {
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+}
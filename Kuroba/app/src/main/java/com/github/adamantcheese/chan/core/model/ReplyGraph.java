@@ -0,0 +1,131 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Who replied to whom in a thread, for following reply chains.<br>
+ * <br>
+ * Edges are stored on post positions in a compact adjacency array, built once from each post's
+ * {@link Post#repliesFrom}; replies from posts outside the list are dropped. Queries walk the graph iteratively with an
+ * explicit queue, so long chains cost no stack and every post is visited at most once.
+ */
+public class ReplyGraph {
+    private final List<Post> posts;
+    // post numbers sorted, and the position of each of them in posts
+    private final int[] sortedNos;
+    private final int[] sortedPositions;
+    // replies to post i are repliesFrom[repliesStart[i]] until repliesFrom[repliesStart[i + 1]]
+    private final int[] repliesStart;
+    private final int[] repliesFrom;
+
+    private ReplyGraph(List<Post> posts, int[] nos, int[][] replies) {
+        this.posts = posts;
+        int count = nos.length;
+
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = ((long) nos[i] << 32) | i;
+        }
+        Arrays.sort(packed);
+        sortedNos = new int[count];
+        sortedPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedNos[i] = (int) (packed[i] >> 32);
+            sortedPositions[i] = (int) packed[i];
+        }
+
+        repliesStart = new int[count + 1];
+        int[] edges = new int[16];
+        int edgeCount = 0;
+        for (int i = 0; i < count; i++) {
+            repliesStart[i] = edgeCount;
+            for (int replyNo : replies[i]) {
+                int from = positionOf(replyNo);
+                if (from < 0 || from == i) continue;
+                if (edgeCount == edges.length) edges = Arrays.copyOf(edges, edgeCount * 2);
+                edges[edgeCount++] = from;
+            }
+        }
+        repliesStart[count] = edgeCount;
+        repliesFrom = Arrays.copyOf(edges, edgeCount);
+    }
+
+    public static ReplyGraph build(List<Post> posts) {
+        int[] nos = new int[posts.size()];
+        int[][] replies = new int[posts.size()][];
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            nos[i] = post.no;
+            List<Integer> repliesFrom = post.repliesFrom;
+            replies[i] = new int[repliesFrom.size()];
+            int j = 0;
+            for (Integer no : repliesFrom) {
+                if (j == replies[i].length) break; // repliesFrom grew while copying
+                replies[i][j++] = no;
+            }
+            if (j < replies[i].length) replies[i] = Arrays.copyOf(replies[i], j);
+        }
+        return new ReplyGraph(posts, nos, replies);
+    }
+
+    /**
+     * @return the post and every post that replied to it, directly or further down the chain, nearest first; empty if
+     * the post isn't in the graph
+     */
+    public List<Post> getPostWithReplies(int no) {
+        int start = positionOf(no);
+        if (start < 0) return new ArrayList<>();
+
+        int count = repliesStart.length - 1;
+        boolean[] visited = new boolean[count];
+        // the queue doubles as the result, in visiting order
+        int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited[start] = true;
+
+        while (head < tail) {
+            int current = queue[head++];
+            for (int e = repliesStart[current]; e < repliesStart[current + 1]; e++) {
+                int next = repliesFrom[e];
+                if (!visited[next]) {
+                    visited[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return toPosts(queue, tail);
+    }
+
+    private List<Post> toPosts(int[] positions, int count) {
+        List<Post> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(posts.get(positions[i]));
+        }
+        return result;
+    }
+
+    private int positionOf(int no) {
+        int index = Arrays.binarySearch(sortedNos, no);
+        return index < 0 ? -1 : sortedPositions[index];
+    }
+}
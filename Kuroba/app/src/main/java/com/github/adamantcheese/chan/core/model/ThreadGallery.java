@@ -0,0 +1,94 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model;
+
+import com.github.adamantcheese.chan.core.net.NetUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The images of a list of displayed posts, in display order, for opening the image viewer on. It's built whenever the
+ * displayed posts change, so that a thumbnail tap only has to pick out the images that can be shown.
+ */
+public class ThreadGallery {
+    public static final ThreadGallery EMPTY = new ThreadGallery(new PostImage[0], new Post[0], new boolean[0]);
+
+    private final PostImage[] images;
+    private final Post[] posts;
+    // whether images[i] is the first image of its post, the only one shown in grid mode
+    private final boolean[] first;
+
+    private ThreadGallery(PostImage[] images, Post[] posts, boolean[] first) {
+        this.images = images;
+        this.posts = posts;
+        this.first = first;
+    }
+
+    public static ThreadGallery build(List<Post> displayedPosts) {
+        int count = 0;
+        for (Post post : displayedPosts) {
+            count += post.images.size();
+        }
+        if (count == 0) return EMPTY;
+
+        PostImage[] images = new PostImage[count];
+        Post[] posts = new Post[count];
+        boolean[] first = new boolean[count];
+        int i = 0;
+        for (Post post : displayedPosts) {
+            for (int j = 0; j < post.images.size() && i < count; j++, i++) {
+                images[i] = post.images.get(j);
+                posts[i] = post;
+                first[i] = j == 0;
+            }
+        }
+        return new ThreadGallery(images, posts, first);
+    }
+
+    /**
+     * @param selected       the image that was tapped
+     * @param firstImageOnly only include the first image of every post, as grid mode only shows that one
+     * @return the images to show in the viewer, and where the selected one is among them
+     */
+    public Selection select(PostImage selected, boolean firstImageOnly) {
+        List<PostImage> result = new ArrayList<>();
+        int index = -1;
+        for (int i = 0; i < images.length; i++) {
+            if (firstImageOnly && !first[i]) continue;
+            PostImage image = images[i];
+            //deleted posts always have 404'd images, but let it through if the file exists in cache
+            if (!posts[i].deleted.get() || image.isInlined || NetUtils.isCached(image.imageUrl)) {
+                result.add(image);
+                if (image.equals(selected)) {
+                    index = result.size() - 1;
+                }
+            }
+        }
+        return new Selection(result, index);
+    }
+
+    public static class Selection {
+        public final List<PostImage> images;
+        public final int index;
+
+        private Selection(List<PostImage> images, int index) {
+            this.images = images;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model.export;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.di.AppModule;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The settings export file, written and read one record at a time instead of as a whole {@link ExportedAppSettings},
+ * so that memory use doesn't grow with the number of boards and post hides. The file is the same JSON object that
+ * {@link ExportedAppSettings} serializes to, with the version first, like Gson has always written it; old exports import
+ * as they did before.
+ */
+public class ExportStream {
+    private static final String VERSION = "app_settings_version";
+    public static final String SITES = "exported_sites";
+    public static final String BOARDS = "exported_boards";
+    public static final String FILTERS = "exported_filters";
+    public static final String POST_HIDES = "exported_post_hides";
+    private static final String SETTINGS = "exported_settings";
+
+    // how often to report progress, in records
+    private static final int PROGRESS_INTERVAL = 250;
+
+    public interface ProgressListener {
+        void onProgress(long records);
+    }
+
+    /**
+     * Receives the records of an export as they're read, in file order: sites (with their pins), boards, filters, post
+     * hides, then the settings. Any of them may throw to stop reading.
+     */
+    public interface Handler {
+        /**
+         * Called before any of the records.
+         */
+        void onVersion(int version)
+                throws Exception;
+
+        void onSite(ExportedSite site)
+                throws Exception;
+
+        void onBoard(ExportedBoard board)
+                throws Exception;
+
+        void onFilter(ExportedFilter filter)
+                throws Exception;
+
+        void onPostHide(ExportedPostHide postHide)
+                throws Exception;
+
+        void onSettings(@Nullable String settings)
+                throws Exception;
+    }
+
+    public static class Writer
+            implements Closeable {
+        private final JsonWriter json;
+        @Nullable
+        private final ProgressListener listener;
+        private long written;
+
+        public Writer(java.io.Writer out, int version, @Nullable ProgressListener listener)
+                throws IOException {
+            this.listener = listener;
+            json = AppModule.gson.newJsonWriter(out);
+            json.beginObject();
+            json.name(VERSION).value(version);
+        }
+
+        public void beginArray(String name)
+                throws IOException {
+            json.name(name).beginArray();
+        }
+
+        public <T> void write(T record, Class<T> type)
+                throws IOException {
+            AppModule.gson.toJson(record, type, json);
+            if (++written % PROGRESS_INTERVAL == 0 && listener != null) {
+                listener.onProgress(written);
+            }
+        }
+
+        public void endArray()
+                throws IOException {
+            json.endArray();
+        }
+
+        /**
+         * Writes the settings and ends the file; nothing can be written after this.
+         */
+        public void finish(String settings)
+                throws IOException {
+            json.name(SETTINGS).value(settings);
+            json.endObject();
+            json.flush();
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+            json.close();
+        }
+    }
+
+    public static void read(Reader in, Handler handler, @Nullable ProgressListener listener)
+            throws Exception {
+        JsonReader json = AppModule.gson.newJsonReader(in);
+        long read = 0;
+        boolean versionRead = false;
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (VERSION.equals(name)) {
+                handler.onVersion(json.nextInt());
+                versionRead = true;
+                continue;
+            }
+            if (!versionRead && !SETTINGS.equals(name) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                // upgrades depend on the version, so it can't come after the records
+                throw new IOException("Settings version missing or out of place");
+            }
+
+            switch (name) {
+                case SITES:
+                case BOARDS:
+                case FILTERS:
+                case POST_HIDES:
+                    if (json.peek() == JsonToken.NULL) {
+                        json.nextNull();
+                        break;
+                    }
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        readRecord(json, name, handler);
+                        if (++read % PROGRESS_INTERVAL == 0 && listener != null) {
+                            listener.onProgress(read);
+                        }
+                    }
+                    json.endArray();
+                    break;
+                case SETTINGS:
+                    if (json.peek() == JsonToken.NULL) {
+                        json.nextNull();
+                        handler.onSettings(null);
+                    } else {
+                        handler.onSettings(json.nextString());
+                    }
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+    }
+
+    private static void readRecord(JsonReader json, String name, Handler handler)
+            throws Exception {
+        switch (name) {
+            case SITES:
+                handler.onSite(AppModule.gson.fromJson(json, ExportedSite.class));
+                break;
+            case BOARDS:
+                handler.onBoard(AppModule.gson.fromJson(json, ExportedBoard.class));
+                break;
+            case FILTERS:
+                handler.onFilter(AppModule.gson.fromJson(json, ExportedFilter.class));
+                break;
+            case POST_HIDES:
+                handler.onPostHide(AppModule.gson.fromJson(json, ExportedPostHide.class));
+                break;
+        }
+    }
+}
@@ -0,0 +1,532 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model.export;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.AbsoluteSizeSpan;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import android.text.style.UnderlineSpan;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostHttpIcon;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.PostLinkable;
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
+import com.github.adamantcheese.chan.core.repository.SiteRepository;
+import com.github.adamantcheese.chan.core.site.Site;
+import com.github.adamantcheese.chan.core.site.SiteEndpoints.ICON_TYPE;
+import com.github.adamantcheese.chan.core.site.parser.CommentParser.ResolveLink;
+import com.github.adamantcheese.chan.core.site.parser.CommentParser.SearchLink;
+import com.github.adamantcheese.chan.core.site.parser.CommentParser.ThreadLink;
+import com.github.adamantcheese.chan.ui.text.AbsoluteSizeSpanHashed;
+import com.github.adamantcheese.chan.ui.text.BackgroundColorSpanHashed;
+import com.github.adamantcheese.chan.ui.text.CodeBackgroundSpan;
+import com.github.adamantcheese.chan.ui.text.CustomTypefaceSpan;
+import com.github.adamantcheese.chan.ui.text.ForegroundColorSpanHashed;
+import com.github.adamantcheese.chan.ui.text.RelativeSizeSpanHashed;
+import com.github.adamantcheese.chan.ui.theme.Theme;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+
+import static com.github.adamantcheese.chan.Chan.instance;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
+
+/**
+ * Writes posts as plain fields, and reads them back into posts that look the same as the parsed ones, so a snapshot
+ * doesn't have to go through the parser again. Comments are kept as their text plus a table of the spans the parser
+ * puts on them; spans it doesn't know, like highlights and embed icons, are left out.
+ */
+class SnapshotCodec {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // span kinds
+    private static final byte LINKABLE = 1;
+    private static final byte FOREGROUND = 2;
+    private static final byte BACKGROUND = 3;
+    private static final byte ABSOLUTE_SIZE = 4;
+    private static final byte RELATIVE_SIZE = 5;
+    private static final byte STYLE = 6;
+    private static final byte UNDERLINE = 7;
+    private static final byte STRIKETHROUGH = 8;
+    private static final byte TYPEFACE = 9;
+    private static final byte CODE_BACKGROUND = 10;
+    private static final byte SJIS = 11;
+
+    // linkable values
+    private static final byte VALUE_NONE = 0;
+    private static final byte VALUE_INT = 1;
+    private static final byte VALUE_STRING = 2;
+    private static final byte VALUE_THREAD_LINK = 3;
+    private static final byte VALUE_SEARCH_LINK = 4;
+    private static final byte VALUE_RESOLVE_LINK = 5;
+
+    // post flags
+    private static final int OP = 1;
+    private static final int STICKY = 1 << 1;
+    private static final int CLOSED = 1 << 2;
+    private static final int ARCHIVED = 1 << 3;
+    private static final int DELETED = 1 << 4;
+    private static final int SAVED_REPLY = 1 << 5;
+    private static final int FILTER_STUB = 1 << 6;
+    private static final int FILTER_REMOVE = 1 << 7;
+    private static final int FILTER_WATCH = 1 << 8;
+    private static final int FILTER_REPLIES = 1 << 9;
+    private static final int FILTER_ONLY_OP = 1 << 10;
+    private static final int FILTER_SAVED = 1 << 11;
+    private static final int EMBED_COMPLETE = 1 << 12;
+
+    // image flags
+    private static final int IMAGE_SPOILER = 1;
+    private static final int IMAGE_INLINED = 1 << 1;
+
+    private static Typeface submona;
+
+    static void writePost(DataOutputStream out, Post post)
+            throws IOException {
+        out.writeInt(post.no);
+        out.writeInt(post.opId);
+        out.writeLong(post.time);
+        int flags = (post.isOP ? OP : 0) | (post.isSticky() ? STICKY : 0) | (post.isClosed() ? CLOSED : 0)
+                | (post.isArchived() ? ARCHIVED : 0) | (post.deleted.get() ? DELETED : 0)
+                | (post.isSavedReply ? SAVED_REPLY : 0) | (post.filterStub ? FILTER_STUB : 0)
+                | (post.filterRemove ? FILTER_REMOVE : 0) | (post.filterWatch ? FILTER_WATCH : 0)
+                | (post.filterReplies ? FILTER_REPLIES : 0) | (post.filterOnlyOP ? FILTER_ONLY_OP : 0)
+                | (post.filterSaved ? FILTER_SAVED : 0) | (post.embedComplete.get() ? EMBED_COMPLETE : 0);
+        out.writeInt(flags);
+        out.writeInt(post.getReplies());
+        out.writeInt(post.getImagesCount());
+        out.writeInt(post.getUniqueIps());
+        out.writeLong(post.getLastModified());
+        out.writeInt(post.filterHighlightedColor);
+        writeString(out, post.subject);
+        writeString(out, post.name);
+        writeString(out, post.tripcode);
+        writeString(out, post.id);
+        writeString(out, post.capcode);
+        writeString(out, post.getTitle());
+        synchronized (post.comment) {
+            writeSpanned(out, post.comment, false);
+        }
+        writeSpanned(out, post.subjectSpan, true);
+        writeSpanned(out, post.nameTripcodeIdCapcodeSpan, true);
+
+        // the reply edges both ways, so the reply graph can be built without going through the comments
+        out.writeInt(post.repliesTo.size());
+        for (int no : post.repliesTo) {
+            out.writeInt(no);
+        }
+        // copies, as these can change while the post is being written
+        Integer[] repliesFrom = post.repliesFrom.toArray(new Integer[0]);
+        out.writeInt(repliesFrom.length);
+        for (int no : repliesFrom) {
+            out.writeInt(no);
+        }
+
+        PostImage[] images = post.images.toArray(new PostImage[0]);
+        out.writeInt(images.length);
+        for (PostImage image : images) {
+            writeImage(out, image);
+        }
+
+        List<PostHttpIcon> icons = post.httpIcons;
+        out.writeInt(icons == null ? 0 : icons.size());
+        if (icons != null) {
+            for (PostHttpIcon icon : icons) {
+                out.writeByte(icon.type.ordinal());
+                writeString(out, icon.url == null ? null : icon.url.toString());
+                writeString(out, icon.code);
+                writeString(out, icon.description);
+            }
+        }
+    }
+
+    static Post readPost(ByteBuffer in, Board board, @Nullable Theme theme) {
+        Post.Builder builder = new Post.Builder().board(board);
+        builder.no(in.getInt()).opId(in.getInt()).setUnixTimestampSeconds(in.getLong());
+        int flags = in.getInt();
+        builder.op((flags & OP) != 0)
+                .sticky((flags & STICKY) != 0)
+                .closed((flags & CLOSED) != 0)
+                .archived((flags & ARCHIVED) != 0)
+                .isSavedReply((flags & SAVED_REPLY) != 0)
+                .replies(in.getInt())
+                .images(in.getInt())
+                .uniqueIps(in.getInt())
+                .lastModified(in.getLong());
+        builder.filter(in.getInt(),
+                (flags & FILTER_STUB) != 0,
+                (flags & FILTER_REMOVE) != 0,
+                (flags & FILTER_WATCH) != 0,
+                (flags & FILTER_REPLIES) != 0,
+                (flags & FILTER_ONLY_OP) != 0,
+                (flags & FILTER_SAVED) != 0
+        );
+        builder.subject(nonNull(readString(in)))
+                .name(nonNull(readString(in)))
+                .tripcode(nonNull(readString(in)))
+                .posterId(nonNull(readString(in)))
+                .moderatorCapcode(nonNull(readString(in)));
+        String title = readString(in);
+        builder.comment(readSpanned(in, theme));
+        builder.spans(readSpanned(in, theme), readSpanned(in, theme));
+
+        int count = in.getInt();
+        Set<Integer> repliesTo = new HashSet<>(count);
+        for (int i = 0; i < count; i++) {
+            repliesTo.add(in.getInt());
+        }
+        builder.repliesTo(repliesTo);
+        count = in.getInt();
+        Integer[] repliesFrom = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            repliesFrom[i] = in.getInt();
+        }
+
+        count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            builder.images.add(readImage(in));
+        }
+
+        count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            ICON_TYPE type = ICON_TYPE.values()[in.get()];
+            String url = readString(in);
+            builder.addHttpIcon(new PostHttpIcon(type,
+                    url == null ? null : HttpUrl.parse(url),
+                    new PassthroughBitmapResult(),
+                    readString(in),
+                    readString(in)
+            ));
+        }
+
+        Post post = builder.build();
+        for (Integer no : repliesFrom) {
+            post.repliesFrom.add(no);
+        }
+        post.setTitle(nonNull(title));
+        post.deleted.set((flags & DELETED) != 0);
+        post.embedComplete.set((flags & EMBED_COMPLETE) != 0);
+        return post;
+    }
+
+    /**
+     * Adds the media hashes of a post, for bundling its media.
+     */
+    static void collectHashes(ByteBuffer in, Set<String> hashes) {
+        // only the images are needed, but the fields before them have to be stepped over
+        Post post = readPost(in, Board.getDummyBoard(), null);
+        for (PostImage image : post.images) {
+            if (image.fileHash != null) hashes.add(image.fileHash);
+        }
+    }
+
+    private static void writeImage(DataOutputStream out, PostImage image)
+            throws IOException {
+        writeString(out, image.serverFilename);
+        writeString(out, image.filename);
+        writeString(out, image.extension);
+        writeString(out, image.imageUrl.toString());
+        writeString(out, image.thumbnailUrl == null ? null : image.thumbnailUrl.toString());
+        writeString(out, image.spoilerThumbnailUrl == null ? null : image.spoilerThumbnailUrl.toString());
+        out.writeInt(image.imageWidth);
+        out.writeInt(image.imageHeight);
+        out.writeLong(image.size);
+        writeString(out, image.fileHash);
+        // spoiler() includes hidden, which comes from the setting when the image is read back
+        out.writeInt((image.spoiler() && !image.hidden ? IMAGE_SPOILER : 0) | (image.isInlined ? IMAGE_INLINED : 0));
+    }
+
+    private static PostImage readImage(ByteBuffer in) {
+        PostImage.Builder builder = new PostImage.Builder().serverFilename(readString(in))
+                .filename(readString(in))
+                .extension(readString(in))
+                .imageUrl(HttpUrl.get(readString(in)))
+                .thumbnailUrl(parseUrl(readString(in)))
+                .spoilerThumbnailUrl(parseUrl(readString(in)))
+                .imageWidth(in.getInt())
+                .imageHeight(in.getInt())
+                .size(in.getLong())
+                .fileHash(readString(in), false);
+        int flags = in.getInt();
+        builder.spoiler((flags & IMAGE_SPOILER) != 0);
+        if ((flags & IMAGE_INLINED) != 0) builder.isInlined();
+        return builder.build();
+    }
+
+    /**
+     * @param plainBackgrounds whether to keep plain background color spans; the post cell puts one on comments
+     *                         temporarily while a link is pressed, and that one shouldn't be kept
+     */
+    private static void writeSpanned(DataOutputStream out, @Nullable CharSequence text, boolean plainBackgrounds)
+            throws IOException {
+        if (text == null) {
+            writeString(out, null);
+            return;
+        }
+        writeString(out, text.toString());
+        if (!(text instanceof Spanned)) {
+            out.writeInt(0);
+            return;
+        }
+
+        Spanned spanned = (Spanned) text;
+        Object[] spans = spanned.getSpans(0, spanned.length(), Object.class);
+        int count = 0;
+        for (Object span : spans) {
+            if (kind(span, plainBackgrounds) != 0) count++;
+        }
+        out.writeInt(count);
+        for (Object span : spans) {
+            byte kind = kind(span, plainBackgrounds);
+            if (kind == 0) continue;
+            out.writeByte(kind);
+            out.writeInt(spanned.getSpanStart(span));
+            out.writeInt(spanned.getSpanEnd(span));
+            out.writeInt(spanned.getSpanFlags(span));
+            switch (kind) {
+                case LINKABLE:
+                    writeLinkable(out, (PostLinkable) span);
+                    break;
+                case FOREGROUND:
+                    out.writeInt(((ForegroundColorSpan) span).getForegroundColor());
+                    break;
+                case BACKGROUND:
+                    out.writeInt(((BackgroundColorSpan) span).getBackgroundColor());
+                    break;
+                case ABSOLUTE_SIZE:
+                    out.writeInt(((AbsoluteSizeSpan) span).getSize());
+                    out.writeBoolean(((AbsoluteSizeSpan) span).getDip());
+                    break;
+                case RELATIVE_SIZE:
+                    out.writeFloat(((RelativeSizeSpan) span).getSizeChange());
+                    break;
+                case STYLE:
+                    out.writeInt(((StyleSpan) span).getStyle());
+                    break;
+                case TYPEFACE:
+                    writeString(out, ((TypefaceSpan) span).getFamily());
+                    break;
+                default:
+                    // nothing more to them
+                    break;
+            }
+        }
+    }
+
+    private static byte kind(Object span, boolean plainBackgrounds) {
+        if (span instanceof PostLinkable) {
+            // temporary ones are replaced by the embedding engine, which runs again if it didn't finish
+            return ((PostLinkable) span).type == PostLinkable.Type.EMBED_TEMP ? 0 : LINKABLE;
+        }
+        if (span instanceof ForegroundColorSpan) return FOREGROUND;
+        if (span instanceof BackgroundColorSpanHashed) return BACKGROUND;
+        if (span instanceof BackgroundColorSpan) return plainBackgrounds ? BACKGROUND : 0;
+        if (span instanceof AbsoluteSizeSpan) return ABSOLUTE_SIZE;
+        if (span instanceof RelativeSizeSpan) return RELATIVE_SIZE;
+        if (span instanceof StyleSpan) return STYLE;
+        if (span instanceof UnderlineSpan) return UNDERLINE;
+        if (span instanceof StrikethroughSpan) return STRIKETHROUGH;
+        if (span instanceof CustomTypefaceSpan) return SJIS;
+        if (span instanceof TypefaceSpan) return TYPEFACE;
+        if (span instanceof CodeBackgroundSpan) return CODE_BACKGROUND;
+        return 0;
+    }
+
+    @Nullable
+    private static CharSequence readSpanned(ByteBuffer in, @Nullable Theme theme) {
+        String text = readString(in);
+        if (text == null) return null;
+        int count = in.getInt();
+        SpannableStringBuilder spanned = new SpannableStringBuilder(text);
+        for (int i = 0; i < count; i++) {
+            byte kind = in.get();
+            int start = in.getInt();
+            int end = in.getInt();
+            int flags = in.getInt();
+            Object span;
+            switch (kind) {
+                case LINKABLE:
+                    span = readLinkable(in, theme);
+                    break;
+                case FOREGROUND:
+                    span = new ForegroundColorSpanHashed(in.getInt());
+                    break;
+                case BACKGROUND:
+                    span = new BackgroundColorSpanHashed(in.getInt());
+                    break;
+                case ABSOLUTE_SIZE:
+                    int size = in.getInt();
+                    // the parser only makes pixel sized ones
+                    in.get();
+                    span = new AbsoluteSizeSpanHashed(size);
+                    break;
+                case RELATIVE_SIZE:
+                    span = new RelativeSizeSpanHashed(in.getFloat());
+                    break;
+                case STYLE:
+                    span = new StyleSpan(in.getInt());
+                    break;
+                case UNDERLINE:
+                    span = new UnderlineSpan();
+                    break;
+                case STRIKETHROUGH:
+                    span = new StrikethroughSpan();
+                    break;
+                case TYPEFACE:
+                    span = new TypefaceSpan(nonNull(readString(in)));
+                    break;
+                case CODE_BACKGROUND:
+                    span = theme == null ? null : new CodeBackgroundSpan(theme);
+                    break;
+                case SJIS:
+                    span = theme == null ? null : new CustomTypefaceSpan("", getSubmona());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown span kind " + kind);
+            }
+            if (span != null && start >= 0 && end <= spanned.length() && start <= end) {
+                spanned.setSpan(span, start, end, flags);
+            }
+        }
+        return spanned;
+    }
+
+    private static void writeLinkable(DataOutputStream out, PostLinkable linkable)
+            throws IOException {
+        out.writeByte(linkable.type.ordinal());
+        writeString(out, linkable.key.toString());
+        Object value = linkable.value;
+        if (value instanceof Integer) {
+            out.writeByte(VALUE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof ThreadLink) {
+            ThreadLink link = (ThreadLink) value;
+            out.writeByte(VALUE_THREAD_LINK);
+            writeString(out, link.boardCode);
+            out.writeInt(link.threadId);
+            out.writeInt(link.postId);
+        } else if (value instanceof SearchLink) {
+            SearchLink link = (SearchLink) value;
+            out.writeByte(VALUE_SEARCH_LINK);
+            writeString(out, link.board);
+            writeString(out, link.search);
+        } else if (value instanceof ResolveLink) {
+            ResolveLink link = (ResolveLink) value;
+            out.writeByte(VALUE_RESOLVE_LINK);
+            out.writeInt(link.board.siteId);
+            writeString(out, link.board.code);
+            out.writeInt(link.postId);
+        } else if (value != null) {
+            // strings, and the spoilered text
+            out.writeByte(VALUE_STRING);
+            writeString(out, value.toString());
+        } else {
+            out.writeByte(VALUE_NONE);
+        }
+    }
+
+    @Nullable
+    private static PostLinkable readLinkable(ByteBuffer in, @Nullable Theme theme) {
+        PostLinkable.Type type = PostLinkable.Type.values()[in.get()];
+        String key = nonNull(readString(in));
+        Object value;
+        switch (in.get()) {
+            case VALUE_INT:
+                value = in.getInt();
+                break;
+            case VALUE_STRING:
+                value = readString(in);
+                break;
+            case VALUE_THREAD_LINK:
+                value = new ThreadLink(readString(in), in.getInt(), in.getInt());
+                break;
+            case VALUE_SEARCH_LINK:
+                value = new SearchLink(readString(in), readString(in));
+                break;
+            case VALUE_RESOLVE_LINK:
+                int siteId = in.getInt();
+                Site site = theme == null ? null : instance(SiteRepository.class).forId(siteId);
+                String boardCode = readString(in);
+                int postId = in.getInt();
+                value = site == null ? null : new ResolveLink(site, boardCode, postId);
+                break;
+            default:
+                value = null;
+                break;
+        }
+        return theme == null || value == null ? null : new PostLinkable(theme, key, value, type);
+    }
+
+    private static synchronized Typeface getSubmona() {
+        if (submona == null) {
+            submona = Typeface.createFromAsset(getAppContext().getAssets(), "font/submona.ttf");
+        }
+        return submona;
+    }
+
+    static void writeString(DataOutputStream out, @Nullable String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        if (in.hasArray()) {
+            String s = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+            in.position(in.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    @Nullable
+    private static HttpUrl parseUrl(@Nullable String url) {
+        return url == null ? null : HttpUrl.parse(url);
+    }
+
+    private static String nonNull(@Nullable String s) {
+        return s == null ? "" : s;
+    }
+}
@@ -0,0 +1,545 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model.export;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import okhttp3.HttpUrl;
+import okio.ByteString;
+
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
+
+/**
+ * A thread's posts on disk, so that it can be opened again without the network, and read back after it's gone from the
+ * site.<br>
+ * <br>
+ * The file is a magic number and version, then records: an int length, followed by that many bytes of a type byte and
+ * its payload. The first record is the header, naming the thread. Post records hold one post each, see
+ * {@link SnapshotCodec}, and a later record for a post number replaces an earlier one; remove records drop a post.
+ * Records are only ever appended as the thread updates, and the file is rewritten once most of it is replaced records.
+ * A record torn by the process dying is cut off on the next write.<br>
+ * <br>
+ * Snapshots can be bundled into a zip together with the thread's images that are in the content store, to be imported
+ * somewhere else.
+ */
+public class ThreadSnapshot {
+    private static final String TAG = "ThreadSnapshot";
+
+    private static final int MAGIC = 0x4B534E50; // KSNP
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+
+    private static final byte HEADER = 1;
+    private static final byte POST = 2;
+    private static final byte REMOVE = 3;
+
+    // rewrite once this much of the file is replaced records
+    private static final long MIN_COMPACT_SIZE = 256 * 1024;
+    // the oldest snapshots are deleted past either of these
+    private static final int MAX_SNAPSHOTS = 200;
+    private static final long MAX_TOTAL_SIZE = 128L * 1024 * 1024;
+
+    private static final String BUNDLE_SNAPSHOT_ENTRY = "thread.snapshot";
+    private static final String BUNDLE_MEDIA_PREFIX = "media/";
+
+    public static class Header {
+        public final int siteId;
+        public final String boardCode;
+        public final int no;
+        public final String title;
+
+        private Header(int siteId, String boardCode, int no, String title) {
+            this.siteId = siteId;
+            this.boardCode = boardCode;
+            this.no = no;
+            this.title = title;
+        }
+
+        private boolean matches(Loadable loadable) {
+            return siteId == loadable.siteId && boardCode.equals(loadable.boardCode) && no == loadable.no;
+        }
+    }
+
+    public static File getDirectory() {
+        return new File(getAppContext().getFilesDir(), "snapshots");
+    }
+
+    public static File getFile(Loadable loadable) {
+        return getFile(loadable.siteId, loadable.boardCode, loadable.no);
+    }
+
+    private static File getFile(int siteId, String boardCode, int no) {
+        return new File(getDirectory(),
+                siteId + "_" + StringUtils.fileNameRemoveBadCharacters(boardCode) + "_" + no + ".snapshot"
+        );
+    }
+
+    /**
+     * Read a snapshot's posts, in thread order. Run this off the main thread.
+     *
+     * @return the posts, or null if there's no usable snapshot for this thread
+     */
+    @Nullable
+    public static List<Post> read(Loadable loadable) {
+        File file = getFile(loadable);
+        if (!file.exists()) return null;
+        try {
+            ByteBuffer buffer = map(file);
+            Header header = readHeader(buffer);
+            if (header == null || !header.matches(loadable)) return null;
+            List<Post> posts = readPosts(buffer, loadable.board);
+            return posts.isEmpty() ? null : posts;
+        } catch (Exception e) {
+            Logger.w(TAG, "Failed to read snapshot " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer map(File file)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.load();
+            return buffer;
+        }
+    }
+
+    /**
+     * Leaves the buffer at the first record after the header.
+     */
+    @Nullable
+    private static Header readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < FILE_HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        ByteBuffer record = nextRecord(buffer);
+        if (record == null || record.get() != HEADER) return null;
+        return new Header(record.getInt(),
+                SnapshotCodec.readString(record),
+                record.getInt(),
+                SnapshotCodec.readString(record)
+        );
+    }
+
+    private static List<Post> readPosts(ByteBuffer buffer, Board board) {
+        // only the last record for each post is decoded
+        Map<Integer, ByteBuffer> records = new LinkedHashMap<>();
+        ByteBuffer record;
+        while ((record = nextRecord(buffer)) != null) {
+            byte type = record.get();
+            int no = record.getInt(record.position());
+            if (type == POST) {
+                records.put(no, record);
+            } else if (type == REMOVE) {
+                records.remove(no);
+            }
+        }
+
+        List<Post> posts = new ArrayList<>(records.size());
+        for (ByteBuffer postRecord : records.values()) {
+            posts.add(SnapshotCodec.readPost(postRecord, board, ThemeHelper.getTheme()));
+        }
+        return posts;
+    }
+
+    /**
+     * @return the next record as its own buffer, without the length, or null at the end or at a torn record
+     */
+    @Nullable
+    private static ByteBuffer nextRecord(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) return null;
+        int length = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) return null;
+        ByteBuffer record = buffer.slice();
+        record.limit(length);
+        buffer.position(buffer.position() + length);
+        return record;
+    }
+
+    /**
+     * Keeps a thread's snapshot up to date with the thread, appending only the posts that are new or changed since the
+     * last update. One writer per thread.
+     */
+    public static class Writer {
+        private final Loadable loadable;
+        private final File file;
+        // post number to the checksum and the size of its last record
+        private final Map<Integer, Long> written = new HashMap<>();
+        private final Map<Integer, Integer> recordSizes = new HashMap<>();
+        private boolean opened;
+        // the size of the file, and how much of it isn't replaced records
+        private long fileSize;
+        private long liveSize;
+
+        public Writer(Loadable loadable) {
+            this.loadable = loadable;
+            this.file = getFile(loadable);
+        }
+
+        /**
+         * Run this off the main thread.
+         */
+        public synchronized void update(List<Post> posts) {
+            try {
+                if (!opened) open();
+
+                ByteArrayOutputStream batch = new ByteArrayOutputStream();
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                DataOutputStream recordOut = new DataOutputStream(record);
+                CRC32 crc = new CRC32();
+                Set<Integer> present = new HashSet<>();
+                for (Post post : posts) {
+                    present.add(post.no);
+                    record.reset();
+                    recordOut.writeByte(POST);
+                    SnapshotCodec.writePost(recordOut, post);
+
+                    crc.reset();
+                    crc.update(record.toByteArray());
+                    Long previous = written.put(post.no, crc.getValue());
+                    if (previous != null && previous == crc.getValue()) continue;
+                    int size = appendRecord(batch, record);
+                    Integer replaced = recordSizes.put(post.no, size);
+                    liveSize += size - (replaced == null ? 0 : replaced);
+                }
+                for (Integer no : new ArrayList<>(written.keySet())) {
+                    if (present.contains(no)) continue;
+                    written.remove(no);
+                    record.reset();
+                    recordOut.writeByte(REMOVE);
+                    recordOut.writeInt(no);
+                    appendRecord(batch, record);
+                    Integer removed = recordSizes.remove(no);
+                    if (removed != null) liveSize -= removed;
+                }
+                if (batch.size() == 0) return;
+
+                if (fileSize - liveSize > MIN_COMPACT_SIZE && fileSize > 2 * liveSize) {
+                    rewrite(posts);
+                } else {
+                    try (OutputStream out = new FileOutputStream(file, true)) {
+                        batch.writeTo(out);
+                    }
+                }
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis());
+            } catch (Exception e) {
+                Logger.w(TAG, "Failed to update snapshot " + file.getName(), e);
+                // start over next time
+                opened = false;
+                written.clear();
+                recordSizes.clear();
+            }
+        }
+
+        /**
+         * @return the size the record takes up in the file
+         */
+        private int appendRecord(ByteArrayOutputStream batch, ByteArrayOutputStream record)
+                throws IOException {
+            new DataOutputStream(batch).writeInt(record.size());
+            record.writeTo(batch);
+            int size = record.size() + 4;
+            fileSize += size;
+            return size;
+        }
+
+        /**
+         * Picks up where an existing snapshot left off, or starts a new one.
+         */
+        private void open()
+                throws IOException {
+            written.clear();
+            recordSizes.clear();
+            opened = true;
+            if (file.exists()) {
+                try {
+                    if (scan()) return;
+                } catch (IOException | RuntimeException e) {
+                    Logger.w(TAG, "Starting snapshot " + file.getName() + " over", e);
+                }
+            }
+            rewrite(new ArrayList<>());
+            trimDirectory();
+        }
+
+        private boolean scan()
+                throws IOException {
+            ByteBuffer buffer = map(file);
+            Header header = readHeader(buffer);
+            if (header == null || !header.matches(loadable)) return false;
+            liveSize = buffer.position();
+
+            CRC32 crc = new CRC32();
+            ByteBuffer record;
+            int end = buffer.position();
+            while ((record = nextRecord(buffer)) != null) {
+                end = buffer.position();
+                int size = record.remaining() + 4;
+                byte type = record.get(0);
+                int no = record.getInt(1);
+                if (type == POST) {
+                    byte[] bytes = new byte[record.remaining()];
+                    record.get(bytes);
+                    crc.reset();
+                    crc.update(bytes);
+                    written.put(no, crc.getValue());
+                    Integer replaced = recordSizes.put(no, size);
+                    liveSize += size - (replaced == null ? 0 : replaced);
+                } else if (type == REMOVE) {
+                    written.remove(no);
+                    Integer removed = recordSizes.remove(no);
+                    if (removed != null) liveSize -= removed;
+                }
+            }
+            fileSize = end;
+            if (end < file.length()) {
+                // a record torn by the process dying
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(end);
+                }
+            }
+            return true;
+        }
+
+        private void rewrite(List<Post> posts)
+                throws IOException {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Could not create " + parent.getPath());
+            }
+            written.clear();
+            recordSizes.clear();
+
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(batch);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream recordOut = new DataOutputStream(record);
+            recordOut.writeByte(HEADER);
+            recordOut.writeInt(loadable.siteId);
+            SnapshotCodec.writeString(recordOut, loadable.boardCode);
+            recordOut.writeInt(loadable.no);
+            SnapshotCodec.writeString(recordOut, loadable.title);
+            out.writeInt(record.size());
+            record.writeTo(batch);
+            fileSize = batch.size();
+            liveSize = fileSize;
+
+            CRC32 crc = new CRC32();
+            for (Post post : posts) {
+                record.reset();
+                recordOut.writeByte(POST);
+                SnapshotCodec.writePost(recordOut, post);
+                crc.reset();
+                crc.update(record.toByteArray());
+                written.put(post.no, crc.getValue());
+                int size = appendRecord(batch, record);
+                recordSizes.put(post.no, size);
+                liveSize += size;
+            }
+
+            File temp = new File(file.getPath() + ".tmp");
+            try (OutputStream fileOut = new FileOutputStream(temp)) {
+                batch.writeTo(fileOut);
+            }
+            if (!temp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw new IOException("Could not replace " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Deletes every snapshot, for when the setting is turned off. Run this off the main thread.
+     */
+    public static void deleteAll() {
+        File[] files = getDirectory().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently updated snapshots past the limits.
+     */
+    private static void trimDirectory() {
+        File[] files = getDirectory().listFiles();
+        if (files == null || files.length <= 1) return;
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            total += files[i].length();
+            if (i >= MAX_SNAPSHOTS || total > MAX_TOTAL_SIZE) {
+                //noinspection ResultOfMethodCallIgnored
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Write a thread's snapshot as a zip, optionally with the thread's images that are in the content
+     * store. Run this off the main thread.
+     *
+     * @return whether there was a snapshot to export
+     */
+    public static boolean exportBundle(Loadable loadable, OutputStream outputStream, boolean includeMedia)
+            throws IOException {
+        File file = getFile(loadable);
+        if (!file.exists()) return false;
+
+        try (ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+            zip.putNextEntry(new ZipEntry(BUNDLE_SNAPSHOT_ENTRY));
+            try (InputStream in = new FileInputStream(file)) {
+                copy(in, zip);
+            }
+            zip.closeEntry();
+            if (!includeMedia) return true;
+
+            List<Post> posts = read(loadable);
+            if (posts == null) return true;
+            NetUtils.CONTENT_STORE.learn(posts);
+            Set<HttpUrl> urls = new HashSet<>();
+            for (Post post : posts) {
+                for (PostImage image : post.images) {
+                    urls.add(image.imageUrl);
+                }
+            }
+            for (HttpUrl url : urls) {
+                File stored = NetUtils.CONTENT_STORE.getStoredFile(url);
+                if (stored == null) continue;
+                zip.putNextEntry(new ZipEntry(BUNDLE_MEDIA_PREFIX + ByteString.encodeUtf8(url.toString()).base64Url()));
+                try (InputStream in = new FileInputStream(stored)) {
+                    copy(in, zip);
+                }
+                zip.closeEntry();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Import a bundle made by {@link #exportBundle}, replacing any snapshot of the same thread; its media goes into the
+     * content store. Run this off the main thread.
+     *
+     * @return the header of the imported thread
+     */
+    public static Header importBundle(InputStream inputStream)
+            throws IOException {
+        Header header = null;
+        File temp = new File(getDirectory(), "import.tmp");
+        try (ZipInputStream zip = new ZipInputStream(inputStream)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (BUNDLE_SNAPSHOT_ENTRY.equals(name)) {
+                    File parent = temp.getParentFile();
+                    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                        throw new IOException("Could not create " + parent.getPath());
+                    }
+                    try (OutputStream out = new FileOutputStream(temp)) {
+                        copy(zip, out);
+                    }
+                    header = readHeader(map(temp));
+                    if (header == null) throw new IOException("Not a thread snapshot");
+                    // tell the content store which files the media urls are
+                    NetUtils.CONTENT_STORE.learn(readPosts(map(temp), Board.getDummyBoard()));
+                } else if (name.startsWith(BUNDLE_MEDIA_PREFIX) && header != null) {
+                    ByteString decoded = ByteString.decodeBase64(name.substring(BUNDLE_MEDIA_PREFIX.length()));
+                    HttpUrl url = decoded == null ? null : HttpUrl.parse(decoded.utf8());
+                    if (url != null) NetUtils.CONTENT_STORE.put(url, new NonClosingInputStream(zip));
+                }
+                zip.closeEntry();
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+        if (header == null) throw new IOException("Not a thread snapshot");
+
+        File file = getFile(header.siteId, header.boardCode, header.no);
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Could not store " + file.getName());
+        }
+        return header;
+    }
+
+    private static void copy(InputStream in, OutputStream out)
+            throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * The content store closes what it reads from, which mustn't close the zip.
+     */
+    private static class NonClosingInputStream
+            extends FilterInputStream {
+        private NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -96,7 +96,7 @@ public class Loadable
     @DatabaseField
     public int lastLoaded = -1;
 
-    @DatabaseField(canBeNull = false, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd HH:mm:ss")
+    @DatabaseField(canBeNull = false, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd HH:mm:ss", index = true)
     public Date lastLoadDate = GregorianCalendar.getInstance().getTime();
 
     @DatabaseField(persisterClass = HttpUrlType.class)
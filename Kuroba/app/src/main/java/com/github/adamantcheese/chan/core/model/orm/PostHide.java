@@ -37,7 +37,7 @@ public class PostHide {
     /**
      * The post number that is being hidden
      */
-    @DatabaseField
+    @DatabaseField(index = true)
     public int no;
 
     /**
@@ -65,6 +65,13 @@ public class PostHide {
     @DatabaseField(columnName = "thread_no")
     public int threadNo;
 
+    /**
+     * When this post was last in a loaded thread, in milliseconds; hides of threads that are long gone are expired by
+     * {@link com.github.adamantcheese.chan.core.database.DatabaseMaintenanceManager}
+     */
+    @DatabaseField(columnName = "last_seen")
+    public long lastSeen = System.currentTimeMillis();
+
     private PostHide() {
     }
 
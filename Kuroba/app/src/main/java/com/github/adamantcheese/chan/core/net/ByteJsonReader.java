@@ -0,0 +1,658 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.net;
+
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Options;
+
+/**
+ * A JSON reader that works on the bytes of an Okio source, for the site readers.<br>
+ * <br>
+ * It has the same methods as {@link android.util.JsonReader}, so a reader can be moved over by changing the type, but
+ * nothing goes through a char decoder: whitespace, structure and numbers are read straight from the buffer, strings
+ * are only decoded when asked for, and skipped values are never decoded at all. Names can be matched against a
+ * prepared {@link Names} set, which compares the raw bytes and hands back the constant string, so known keys don't
+ * allocate either.<br>
+ * <br>
+ * Only strict JSON is accepted.
+ */
+public class ByteJsonReader
+        implements Closeable {
+    private static final ByteString QUOTE_OR_BACKSLASH = ByteString.encodeUtf8("\"\\");
+
+    // scopes on the stack
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+    private static final int CLOSED = 8;
+
+    // what's been peeked but not consumed yet
+    private static final int PEEKED_NONE = 0;
+    private static final int PEEKED_BEGIN_OBJECT = 1;
+    private static final int PEEKED_END_OBJECT = 2;
+    private static final int PEEKED_BEGIN_ARRAY = 3;
+    private static final int PEEKED_END_ARRAY = 4;
+    private static final int PEEKED_TRUE = 5;
+    private static final int PEEKED_FALSE = 6;
+    private static final int PEEKED_NULL = 7;
+    // the opening quote has been consumed
+    private static final int PEEKED_QUOTED = 8;
+    private static final int PEEKED_QUOTED_NAME = 9;
+    // consumed, the value is in peekedLong
+    private static final int PEEKED_LONG = 10;
+    // not consumed, peekedNumberLength bytes long
+    private static final int PEEKED_NUMBER = 11;
+    private static final int PEEKED_EOF = 12;
+
+    private final BufferedSource source;
+    private final Buffer buffer;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    private int peeked = PEEKED_NONE;
+    private long peekedLong;
+    private int peekedNumberLength;
+
+    public ByteJsonReader(@NonNull BufferedSource source) {
+        this.source = source;
+        this.buffer = source.getBuffer();
+        push(EMPTY_DOCUMENT);
+    }
+
+    public void beginArray()
+            throws IOException {
+        expect(PEEKED_BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray()
+            throws IOException {
+        expect(PEEKED_END_ARRAY, JsonToken.END_ARRAY);
+        stackSize--;
+    }
+
+    public void beginObject()
+            throws IOException {
+        expect(PEEKED_BEGIN_OBJECT, JsonToken.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject()
+            throws IOException {
+        expect(PEEKED_END_OBJECT, JsonToken.END_OBJECT);
+        stackSize--;
+    }
+
+    public boolean hasNext()
+            throws IOException {
+        int p = peekInternal();
+        return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_EOF;
+    }
+
+    public JsonToken peek()
+            throws IOException {
+        switch (peekInternal()) {
+            case PEEKED_BEGIN_OBJECT:
+                return JsonToken.BEGIN_OBJECT;
+            case PEEKED_END_OBJECT:
+                return JsonToken.END_OBJECT;
+            case PEEKED_BEGIN_ARRAY:
+                return JsonToken.BEGIN_ARRAY;
+            case PEEKED_END_ARRAY:
+                return JsonToken.END_ARRAY;
+            case PEEKED_QUOTED_NAME:
+                return JsonToken.NAME;
+            case PEEKED_TRUE:
+            case PEEKED_FALSE:
+                return JsonToken.BOOLEAN;
+            case PEEKED_NULL:
+                return JsonToken.NULL;
+            case PEEKED_QUOTED:
+                return JsonToken.STRING;
+            case PEEKED_LONG:
+            case PEEKED_NUMBER:
+                return JsonToken.NUMBER;
+            default:
+                return JsonToken.END_DOCUMENT;
+        }
+    }
+
+    public String nextName()
+            throws IOException {
+        if (peekInternal() != PEEKED_QUOTED_NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek());
+        }
+        String result = readQuoted();
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /**
+     * Like {@link #nextName()}, but if the name is one of the given ones the constant from the set is returned, without
+     * decoding or allocating anything. Other names are read as usual.
+     */
+    public String nextName(Names names)
+            throws IOException {
+        if (peekInternal() != PEEKED_QUOTED_NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek());
+        }
+        int index = source.select(names.options);
+        if (index != -1) {
+            peeked = PEEKED_NONE;
+            return names.names[index];
+        }
+        return nextName();
+    }
+
+    /**
+     * Reads a string, or the text of a number, the same as {@link android.util.JsonReader#nextString()}.
+     */
+    public String nextString()
+            throws IOException {
+        String result;
+        switch (peekInternal()) {
+            case PEEKED_QUOTED:
+                result = readQuoted();
+                break;
+            case PEEKED_LONG:
+                result = Long.toString(peekedLong);
+                break;
+            case PEEKED_NUMBER:
+                result = buffer.readUtf8(peekedNumberLength);
+                break;
+            default:
+                throw new IllegalStateException("Expected a string but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    public boolean nextBoolean()
+            throws IOException {
+        int p = peekInternal();
+        if (p != PEEKED_TRUE && p != PEEKED_FALSE) {
+            throw new IllegalStateException("Expected a boolean but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+        return p == PEEKED_TRUE;
+    }
+
+    public void nextNull()
+            throws IOException {
+        expect(PEEKED_NULL, JsonToken.NULL);
+    }
+
+    /**
+     * Reads a number, or a string holding one, the same as {@link android.util.JsonReader#nextLong()}.
+     */
+    public long nextLong()
+            throws IOException {
+        int p = peekInternal();
+        if (p == PEEKED_LONG) {
+            peeked = PEEKED_NONE;
+            return peekedLong;
+        }
+
+        String text;
+        if (p == PEEKED_NUMBER) {
+            text = buffer.readUtf8(peekedNumberLength);
+        } else if (p == PEEKED_QUOTED) {
+            text = readQuoted();
+        } else {
+            throw new IllegalStateException("Expected a long but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+        try {
+            // integers too long for the fast path in peek, which a double would round
+            return Long.parseLong(text);
+        } catch (NumberFormatException ignored) {
+            // may still be a whole number written as a double
+        }
+        double asDouble = Double.parseDouble(text);
+        long result = (long) asDouble;
+        if (result != asDouble || asDouble >= 0x1p63) {
+            throw new NumberFormatException("Expected a long but was " + text);
+        }
+        return result;
+    }
+
+    public int nextInt()
+            throws IOException {
+        long result = nextLong();
+        if ((int) result != result) {
+            throw new NumberFormatException("Expected an int but was " + result);
+        }
+        return (int) result;
+    }
+
+    public double nextDouble()
+            throws IOException {
+        int p = peekInternal();
+        double result;
+        if (p == PEEKED_LONG) {
+            result = peekedLong;
+        } else if (p == PEEKED_NUMBER) {
+            result = Double.parseDouble(buffer.readUtf8(peekedNumberLength));
+        } else if (p == PEEKED_QUOTED) {
+            result = Double.parseDouble(readQuoted());
+        } else {
+            throw new IllegalStateException("Expected a double but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /**
+     * Skips the next value, including everything nested in it. Strings are skipped over without being decoded.
+     *
+     * @throws IllegalStateException at the end of an array or object, where there is no value to skip
+     */
+    public void skipValue()
+            throws IOException {
+        int depth = 0;
+        do {
+            switch (peekInternal()) {
+                case PEEKED_BEGIN_ARRAY:
+                    push(EMPTY_ARRAY);
+                    depth++;
+                    break;
+                case PEEKED_BEGIN_OBJECT:
+                    push(EMPTY_OBJECT);
+                    depth++;
+                    break;
+                case PEEKED_END_ARRAY:
+                case PEEKED_END_OBJECT:
+                    // there's no value here, and popping the scope would leave the reader out of step with the input
+                    if (depth == 0) throw new IllegalStateException("Expected a value but was " + peek());
+                    stackSize--;
+                    depth--;
+                    break;
+                case PEEKED_QUOTED:
+                case PEEKED_QUOTED_NAME:
+                    skipQuoted();
+                    break;
+                case PEEKED_NUMBER:
+                    buffer.skip(peekedNumberLength);
+                    break;
+                case PEEKED_EOF:
+                    throw new EOFException("End of input");
+                default:
+                    break;
+            }
+            peeked = PEEKED_NONE;
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close()
+            throws IOException {
+        peeked = PEEKED_NONE;
+        stack[0] = CLOSED;
+        stackSize = 1;
+        buffer.clear();
+        source.close();
+    }
+
+    private void expect(int expected, JsonToken token)
+            throws IOException {
+        if (peekInternal() != expected) {
+            throw new IllegalStateException("Expected " + token + " but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private int peekInternal()
+            throws IOException {
+        return peeked != PEEKED_NONE ? peeked : doPeek();
+    }
+
+    private int doPeek()
+            throws IOException {
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                buffer.readByte();
+                if (c == ']') return peeked = PEEKED_END_ARRAY;
+                if (c != ',') throw syntaxError("Unterminated array");
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[stackSize - 1] = DANGLING_NAME;
+                if (scope == NONEMPTY_OBJECT) {
+                    c = nextNonWhitespace();
+                    buffer.readByte();
+                    if (c == '}') return peeked = PEEKED_END_OBJECT;
+                    if (c != ',') throw syntaxError("Unterminated object");
+                }
+                c = nextNonWhitespace();
+                if (c == '"') {
+                    buffer.readByte();
+                    return peeked = PEEKED_QUOTED_NAME;
+                }
+                if (c == '}' && scope == EMPTY_OBJECT) {
+                    buffer.readByte();
+                    return peeked = PEEKED_END_OBJECT;
+                }
+                throw syntaxError("Expected name");
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace();
+                buffer.readByte();
+                if (c != ':') throw syntaxError("Expected ':'");
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (!skipWhitespace()) return peeked = PEEKED_EOF;
+                throw syntaxError("Expected end of document");
+            default:
+                throw new IllegalStateException("Reader is closed");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case ']':
+                if (scope == EMPTY_ARRAY) {
+                    buffer.readByte();
+                    return peeked = PEEKED_END_ARRAY;
+                }
+                throw syntaxError("Unexpected value");
+            case '"':
+                buffer.readByte();
+                return peeked = PEEKED_QUOTED;
+            case '[':
+                buffer.readByte();
+                return peeked = PEEKED_BEGIN_ARRAY;
+            case '{':
+                buffer.readByte();
+                return peeked = PEEKED_BEGIN_OBJECT;
+            default:
+                break;
+        }
+
+        int result = peekKeyword();
+        if (result != PEEKED_NONE) return result;
+        result = peekNumber();
+        if (result != PEEKED_NONE) return result;
+        throw syntaxError("Expected value");
+    }
+
+    private int peekKeyword()
+            throws IOException {
+        byte c = buffer.getByte(0);
+        String keyword;
+        int peeking;
+        if (c == 't') {
+            keyword = "true";
+            peeking = PEEKED_TRUE;
+        } else if (c == 'f') {
+            keyword = "false";
+            peeking = PEEKED_FALSE;
+        } else if (c == 'n') {
+            keyword = "null";
+            peeking = PEEKED_NULL;
+        } else {
+            return PEEKED_NONE;
+        }
+
+        int length = keyword.length();
+        if (!source.request(length)) return PEEKED_NONE;
+        for (int i = 1; i < length; i++) {
+            if (buffer.getByte(i) != keyword.charAt(i)) return PEEKED_NONE;
+        }
+        if (source.request(length + 1) && isLiteral(buffer.getByte(length))) return PEEKED_NONE;
+        buffer.skip(length);
+        return peeked = peeking;
+    }
+
+    private int peekNumber()
+            throws IOException {
+        long value = 0;
+        int digits = 0;
+        boolean negative = false;
+        boolean integer = true;
+        int i = 0;
+        while (source.request(i + 1)) {
+            byte c = buffer.getByte(i);
+            if (!isLiteral(c)) break;
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c == '-' && i == 0) {
+                negative = true;
+            } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integer = false;
+            } else {
+                return PEEKED_NONE;
+            }
+            i++;
+        }
+        if (digits == 0) return PEEKED_NONE;
+
+        // anything longer might not fit, let the slow path deal with it
+        if (integer && digits <= 18) {
+            peekedLong = negative ? -value : value;
+            buffer.skip(i);
+            return peeked = PEEKED_LONG;
+        }
+        peekedNumberLength = i;
+        return peeked = PEEKED_NUMBER;
+    }
+
+    private static boolean isLiteral(byte c) {
+        switch (c) {
+            case '/':
+            case '\\':
+            case ';':
+            case '#':
+            case '=':
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case ':':
+            case ',':
+            case ' ':
+            case '\t':
+            case '\f':
+            case '\r':
+            case '\n':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return the next non-whitespace byte, without consuming it
+     */
+    private int nextNonWhitespace()
+            throws IOException {
+        if (!skipWhitespace()) throw new EOFException("End of input");
+        return buffer.getByte(0);
+    }
+
+    /**
+     * @return false if the end of the input was reached
+     */
+    private boolean skipWhitespace()
+            throws IOException {
+        int i = 0;
+        while (source.request(i + 1)) {
+            byte c = buffer.getByte(i);
+            if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+                buffer.skip(i);
+                return true;
+            }
+            i++;
+        }
+        buffer.skip(i);
+        return false;
+    }
+
+    // the opening quote has already been consumed; this consumes the closing one
+    private String readQuoted()
+            throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            long index = source.indexOfElement(QUOTE_OR_BACKSLASH);
+            if (index == -1L) throw syntaxError("Unterminated string");
+
+            if (buffer.getByte(index) == '\\') {
+                if (builder == null) builder = new StringBuilder();
+                builder.append(buffer.readUtf8(index));
+                buffer.readByte(); // the backslash
+                readEscape(builder);
+                continue;
+            }
+
+            if (builder == null) {
+                String result = buffer.readUtf8(index);
+                buffer.readByte(); // the quote
+                return result;
+            }
+            builder.append(buffer.readUtf8(index));
+            buffer.readByte();
+            return builder.toString();
+        }
+    }
+
+    private void skipQuoted()
+            throws IOException {
+        while (true) {
+            long index = source.indexOfElement(QUOTE_OR_BACKSLASH);
+            if (index == -1L) throw syntaxError("Unterminated string");
+            byte c = buffer.getByte(index);
+            buffer.skip(index + 1);
+            if (c == '"') return;
+            // an escape; \\u has four more characters, the rest have one
+            source.require(1);
+            if (buffer.readByte() == 'u') {
+                source.require(4);
+                buffer.skip(4);
+            }
+        }
+    }
+
+    private void readEscape(StringBuilder builder)
+            throws IOException {
+        if (!source.request(1)) throw syntaxError("Unterminated escape sequence");
+        byte escaped = buffer.readByte();
+        switch (escaped) {
+            case 'u':
+                if (!source.request(4)) throw syntaxError("Unterminated escape sequence");
+                char result = 0;
+                for (int i = 0; i < 4; i++) {
+                    byte c = buffer.getByte(i);
+                    result <<= 4;
+                    if (c >= '0' && c <= '9') {
+                        result += (c - '0');
+                    } else if (c >= 'a' && c <= 'f') {
+                        result += (c - 'a' + 10);
+                    } else if (c >= 'A' && c <= 'F') {
+                        result += (c - 'A' + 10);
+                    } else {
+                        throw syntaxError("Malformed escape sequence");
+                    }
+                }
+                buffer.skip(4);
+                builder.append(result);
+                break;
+            case 't':
+                builder.append('\t');
+                break;
+            case 'b':
+                builder.append('\b');
+                break;
+            case 'n':
+                builder.append('\n');
+                break;
+            case 'r':
+                builder.append('\r');
+                break;
+            case 'f':
+                builder.append('\f');
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                builder.append((char) escaped);
+                break;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private static MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message);
+    }
+
+    /**
+     * A set of object names to match with {@link #nextName(Names)}.
+     */
+    public static class Names {
+        private final String[] names;
+        private final Options options;
+
+        private Names(String[] names, Options options) {
+            this.names = names;
+            this.options = options;
+        }
+
+        /**
+         * @param names plain names, without quotes, backslashes or anything else that would be escaped
+         */
+        public static Names of(String... names) {
+            ByteString[] encoded = new ByteString[names.length];
+            for (int i = 0; i < names.length; i++) {
+                // matched right after the opening quote, up to and including the closing one
+                encoded[i] = ByteString.encodeUtf8(names[i] + "\"");
+            }
+            return new Names(names.clone(), Options.of(encoded));
+        }
+    }
+}
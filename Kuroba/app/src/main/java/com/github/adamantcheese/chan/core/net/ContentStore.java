@@ -0,0 +1,422 @@
+package com.github.adamantcheese.chan.core.net;
+
+import android.webkit.MimeTypeMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PostUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.HashingSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Images stored by the hash of the file instead of by url. Imageboards repost the same files constantly, each time
+ * under a new url, so the url cache keeps fetching and storing files it already has. The post JSON says which file a url
+ * is (see {@link #learn(List)}); a request for a url whose file is in here is answered from disk without going to the
+ * network, and one whose file isn't gets stored here on its way through, from the network or the url cache.
+ * <br>
+ * Only full images with an MD5 are stored, and only once the download matches it, so a wrong or malicious hash on one
+ * site can't change what another shows. Thumbnails differ by site, size and spoiler for the same file, so they stay in
+ * the url cache. Only whole-file GETs are served and stored; ranged requests go through untouched. Until a file is
+ * stored, its url is cached as usual, so a download that is cut off or doesn't match its hash is still cached somewhere.
+ * The store is trimmed to its own size setting, least recently used first.
+ */
+public class ContentStore
+        implements Interceptor {
+    private static final String TAG = "ContentStore";
+
+    // one thread is a few hundred urls; this covers a good number of open threads and catalogs
+    private static final int MAX_KNOWN_URLS = 20000;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern MD5 = Pattern.compile("[0-9a-f]{32}");
+
+    private final File dir;
+    private final long maxSize;
+    private final LruCache<HttpUrl, Key> keys = new LruCache<>(MAX_KNOWN_URLS);
+    // the names of the stored files, so that checking for one doesn't touch the disk
+    private final Set<String> storedNames = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // the url each file was stored from this session, to tell repost hits apart from plain repeat hits
+    private final Map<String, HttpUrl> storedFrom = new ConcurrentHashMap<>();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong repostHits = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesFetched = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong savesLinked = new AtomicLong();
+    private final AtomicLong savesCopied = new AtomicLong();
+
+    ContentStore(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        BackgroundUtils.backgroundService.execute(() -> {
+            File[] files = dir.listFiles();
+            if (files == null) return;
+            long size = 0;
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    // from a download the process died during
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                } else {
+                    size += file.length();
+                    storedNames.add(file.getName());
+                }
+            }
+            storedBytes.addAndGet(size);
+            trimIfNeeded();
+        });
+    }
+
+    /**
+     * Remember which files the image urls of these posts are, so that they can be answered from the store.
+     */
+    public void learn(List<Post> posts) {
+        for (Post post : posts) {
+            for (PostImage postImage : post.images) {
+                if (postImage.fileHash == null || postImage.isInlined) continue;
+                String hash = postImage.fileHash.toLowerCase(Locale.ENGLISH);
+                // anything else can't be checked against the download
+                if (!MD5.matcher(hash).matches()) continue;
+                keys.put(postImage.imageUrl, new Key(hash, postImage.extension));
+            }
+        }
+    }
+
+    /**
+     * @return the stored file for this image, or null if it isn't in the store
+     */
+    @Nullable
+    public File getStoredFile(PostImage postImage) {
+        return getStoredFile(postImage.imageUrl);
+    }
+
+    /**
+     * @return the stored file for this url, or null if it isn't in the store
+     */
+    @Nullable
+    public File getStoredFile(HttpUrl url) {
+        Key key = keys.get(url);
+        if (key == null || !storedNames.contains(key.name)) return null;
+        File file = new File(dir, key.name);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * Store a file that came from somewhere other than the network, like a thread snapshot bundle. The url's image has
+     * to have been seen by {@link #learn(List)} first.
+     *
+     * @return whether the file was stored
+     */
+    public boolean put(HttpUrl url, InputStream in)
+            throws IOException {
+        Key key = keys.get(url);
+        if (key == null) return false;
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Could not create " + dir.getPath());
+        File temp = File.createTempFile(key.name, TEMP_SUFFIX, dir);
+        HashingSink hash = HashingSink.md5(Okio.sink(temp));
+        try (BufferedSink sink = Okio.buffer(hash)) {
+            sink.writeAll(Okio.source(in));
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+        store(temp, key, url, hash.hash().hex());
+        return getStoredFile(url) != null;
+    }
+
+    /**
+     * Doesn't touch the disk, so it's fine to call on the main thread.
+     */
+    public boolean contains(HttpUrl url) {
+        Key key = keys.get(url);
+        return key != null && storedNames.contains(key.name);
+    }
+
+    /**
+     * For the saver, to count saves that didn't need the network.
+     */
+    public void onSavedFromStore(boolean linked) {
+        (linked ? savesLinked : savesCopied).incrementAndGet();
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain)
+            throws IOException {
+        Request request = chain.request();
+        Key key = "GET".equals(request.method()) && request.header("Range") == null ? keys.get(request.url()) : null;
+        if (key == null) return chain.proceed(request);
+
+        File file = new File(dir, key.name);
+        if (file.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            bytesServed.addAndGet(file.length());
+            HttpUrl from = storedFrom.get(key.name);
+            if (from != null && !from.equals(request.url())) {
+                repostHits.incrementAndGet();
+            }
+            //noinspection deprecation
+            return new Response.Builder().request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .header("Content-Length", String.valueOf(file.length()))
+                    .body(ResponseBody.create(key.contentType, file.length(), Okio.buffer(Okio.source(file))))
+                    .build();
+        }
+
+        // cached as usual until the store has the file; after that the url cache entry goes unused and ages out
+        Response response = chain.proceed(request);
+        ResponseBody body = response.body();
+        if (response.code() != 200 || body == null || maxSize == 0) return response;
+        misses.incrementAndGet();
+        return response.newBuilder().body(new StoringBody(body, key, request.url())).build();
+    }
+
+    private void store(File temp, Key key, HttpUrl url, @Nullable String md5) {
+        if (!key.name.equals(md5)) {
+            rejected.incrementAndGet();
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        File file = new File(dir, key.name);
+        long replaced = file.length();
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        storedNames.add(key.name);
+        storedFrom.put(key.name, url);
+        bytesFetched.addAndGet(file.length());
+        storedBytes.addAndGet(file.length() - replaced);
+        trimIfNeeded();
+    }
+
+    private void trimIfNeeded() {
+        if (storedBytes.get() <= maxSize || !trimming.compareAndSet(false, true)) return;
+        BackgroundUtils.backgroundService.execute(() -> {
+            try {
+                File[] files = dir.listFiles();
+                if (files == null) return;
+                long[] modified = new long[files.length];
+                Integer[] order = new Integer[files.length];
+                for (int i = 0; i < files.length; i++) {
+                    modified[i] = files[i].lastModified();
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+                // trim a bit further than needed so this doesn't run again on the next file
+                long target = maxSize * 9 / 10;
+                for (Integer i : order) {
+                    if (storedBytes.get() <= target) break;
+                    File file = files[i];
+                    if (file.getName().endsWith(TEMP_SUFFIX)) continue;
+                    long length = file.length();
+                    if (file.delete()) {
+                        storedNames.remove(file.getName());
+                        storedBytes.addAndGet(-length);
+                        storedFrom.remove(file.getName());
+                    }
+                }
+            } finally {
+                trimming.set(false);
+            }
+        });
+    }
+
+    /**
+     * @return a summary of the store, for the developer screen
+     */
+    public String getStats() {
+        long served = bytesServed.get();
+        long fetched = bytesFetched.get();
+        long requested = hits.get() + misses.get();
+        return String.format(Locale.ENGLISH,
+                "Store size: %s\nServed from store: %d (%d reposts, %s)\nFetched into store: %d (%s, %d rejected)\n"
+                        + "Dedup ratio: %.1f%% of requests, %.1f%% of bytes\nSaves from store: %d linked, %d copied",
+                PostUtils.getReadableFileSize(storedBytes.get()),
+                hits.get(),
+                repostHits.get(),
+                PostUtils.getReadableFileSize(served),
+                misses.get(),
+                PostUtils.getReadableFileSize(fetched),
+                rejected.get(),
+                requested == 0 ? 0f : hits.get() * 100f / requested,
+                served + fetched == 0 ? 0f : served * 100f / (served + fetched),
+                savesLinked.get(),
+                savesCopied.get()
+        );
+    }
+
+    private static class Key {
+        // the file's name in the store, its MD5
+        private final String name;
+        // stored files are served with this, the store doesn't keep response headers
+        @Nullable
+        private final MediaType contentType;
+
+        private Key(String name, @Nullable String extension) {
+            this.name = name;
+            String mimeType =
+                    extension == null ? null : MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+            contentType = mimeType == null ? null : MediaType.parse(mimeType);
+        }
+    }
+
+    /**
+     * Passes the response through while writing it to a temporary file, which is moved into the store once the whole
+     * response has been read. A response that isn't read to the end is left out.
+     */
+    private class StoringBody
+            extends ResponseBody {
+        private final ResponseBody body;
+        private final BufferedSource source;
+
+        private StoringBody(ResponseBody body, Key key, HttpUrl url) {
+            this.body = body;
+            this.source = Okio.buffer(new StoringSource(body.source(), key, url));
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return body.contentLength();
+        }
+
+        @NonNull
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+
+        @Override
+        public void close() {
+            try {
+                source.close();
+            } catch (IOException ignored) {
+            }
+            body.close();
+        }
+    }
+
+    private class StoringSource
+            extends ForwardingSource {
+        private final Key key;
+        private final HttpUrl url;
+        private File temp;
+        @Nullable
+        private HashingSink hash;
+        @Nullable
+        private BufferedSink sink;
+        private boolean done;
+
+        private StoringSource(Source delegate, Key key, HttpUrl url) {
+            super(delegate);
+            this.key = key;
+            this.url = url;
+            try {
+                if (!dir.exists() && !dir.mkdirs()) throw new IOException("Could not create " + dir.getPath());
+                temp = File.createTempFile(key.name, TEMP_SUFFIX, dir);
+                hash = HashingSink.md5(Okio.sink(temp));
+                sink = Okio.buffer(hash);
+            } catch (IOException e) {
+                Logger.w(TAG, "Not storing " + url, e);
+            }
+        }
+
+        @Override
+        public long read(@NonNull Buffer buffer, long byteCount)
+                throws IOException {
+            long read;
+            try {
+                read = super.read(buffer, byteCount);
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            if (sink == null) return read;
+
+            try {
+                if (read == -1) {
+                    sink.close();
+                    done = true;
+                    File file = temp;
+                    String md5 = hash.hash().hex();
+                    sink = null;
+                    BackgroundUtils.backgroundService.execute(() -> store(file, key, url, md5));
+                } else {
+                    buffer.copyTo(sink.getBuffer(), buffer.size() - read, read);
+                    sink.emitCompleteSegments();
+                }
+            } catch (IOException e) {
+                Logger.w(TAG, "Failed to store " + url, e);
+                abandon();
+            }
+            return read;
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+            if (!done) abandon();
+            super.close();
+        }
+
+        private void abandon() {
+            if (sink == null) return;
+            try {
+                sink.close();
+            } catch (IOException ignored) {
+            }
+            sink = null;
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+}
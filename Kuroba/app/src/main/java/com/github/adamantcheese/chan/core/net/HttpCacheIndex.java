@@ -0,0 +1,158 @@
+package com.github.adamantcheese.chan.core.net;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Cache;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * The urls in the OkHttp cache, kept in memory so that checking for one is a set lookup instead of hashing the url and
+ * going through the disk cache's entry map, which also means waiting on its lock and, the first time, on it reading its
+ * journal. The set is seeded from the cache in the background and then kept up to date by watching responses go by.
+ * <br>
+ * The cache evicts entries on its own, which the responses don't show. A url that was in the set but comes back from
+ * the network is dropped, and the set is checked against the cache again in the background when it's been a while.
+ */
+class HttpCacheIndex
+        implements Interceptor {
+    private static final String TAG = "HttpCacheIndex";
+    private static final long SYNC_INTERVAL = MINUTES.toMillis(5);
+
+    private final Cache cache;
+    private final Set<HttpUrl> cachedUrls = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private volatile long lastSync;
+
+    HttpCacheIndex(Cache cache) {
+        this.cache = cache;
+        sync();
+    }
+
+    boolean contains(HttpUrl url) {
+        if (SystemClock.elapsedRealtime() - lastSync > SYNC_INTERVAL) {
+            sync();
+        }
+        return cachedUrls.contains(url);
+    }
+
+    /**
+     * Reads the cache's urls in the background, adding new ones and dropping the ones it has evicted.
+     */
+    private void sync() {
+        if (!syncing.compareAndSet(false, true)) return;
+        lastSync = SystemClock.elapsedRealtime();
+        BackgroundUtils.backgroundService.execute(() -> {
+            // only drop what was there before, not urls indexed while this runs
+            Set<HttpUrl> stale = new HashSet<>(cachedUrls);
+            try {
+                Iterator<String> urls = cache.urls();
+                while (urls.hasNext()) {
+                    HttpUrl url = HttpUrl.parse(urls.next());
+                    if (url != null) {
+                        stale.remove(url);
+                        cachedUrls.add(url);
+                    }
+                }
+                cachedUrls.removeAll(stale);
+            } catch (Exception e) {
+                Logger.w(TAG, "Failed to read cached urls", e);
+            } finally {
+                syncing.set(false);
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain)
+            throws IOException {
+        Response response = chain.proceed(chain.request());
+        Request request = response.request();
+        // partial content isn't cached, and a server that ignores the range may not get read to the end
+        if (!"GET".equals(request.method()) || request.header("Range") != null) return response;
+
+        if (response.cacheResponse() != null) {
+            cachedUrls.add(request.url());
+            return response;
+        }
+
+        // not served from the cache, so whatever was indexed has been evicted; it's added back once stored again
+        cachedUrls.remove(request.url());
+        if (response.isSuccessful() && !response.cacheControl().noStore()
+                && !request.cacheControl().noStore() && response.body() != null) {
+            // OkHttp only stores the response once its body has been read through; cancelled or failed reads aren't
+            return response.newBuilder().body(new IndexingBody(response.body(), request.url())).build();
+        }
+        return response;
+    }
+
+    /**
+     * Adds its url to the index once the body has been read to the end.
+     */
+    private class IndexingBody
+            extends ResponseBody {
+        private final ResponseBody body;
+        private final HttpUrl url;
+        private BufferedSource source;
+
+        IndexingBody(ResponseBody body, HttpUrl url) {
+            this.body = body;
+            this.url = url;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return body.contentLength();
+        }
+
+        @NonNull
+        @Override
+        public BufferedSource source() {
+            if (source == null) {
+                source = Okio.buffer(new ForwardingSource(body.source()) {
+                    @Override
+                    public long read(@NonNull Buffer sink, long byteCount)
+                            throws IOException {
+                        long read = super.read(sink, byteCount);
+                        if (read == -1) {
+                            cachedUrls.add(url);
+                        }
+                        return read;
+                    }
+                });
+            }
+            return source;
+        }
+    }
+}
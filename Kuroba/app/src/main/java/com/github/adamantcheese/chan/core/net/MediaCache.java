@@ -0,0 +1,178 @@
+package com.github.adamantcheese.chan.core.net;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.PostUtils;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSource;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+import static com.github.adamantcheese.chan.core.net.NetUtils.MB;
+
+/**
+ * The app-wide media cache for video and audio played through ExoPlayer. All players share one {@link SimpleCache}
+ * over the cache directory (ExoPlayer only allows one instance per directory) and one data source factory, so
+ * anything prefetched here is what the player reads back.
+ */
+public class MediaCache {
+    private static final String TAG = "MediaCache";
+
+    // no way to know a file's bitrate without fetching it, so assume a reasonably high one for prefetch sizing
+    private static final long ASSUMED_BYTES_PER_SECOND = 256 * 1024;
+
+    private static final AtomicLong cacheBytesRead = new AtomicLong();
+    private static final AtomicLong networkBytesRead = new AtomicLong();
+    private static final AtomicLong prefetchedBytes = new AtomicLong();
+    private static final AtomicLong prefetchCount = new AtomicLong();
+
+    private static SimpleCache cache;
+    private static CacheDataSource.Factory cacheFactory;
+    private static ProgressiveMediaSource.Factory mediaFactory;
+
+    private static synchronized CacheDataSource.Factory getCacheFactory() {
+        if (cacheFactory == null) {
+            OkHttpDataSource.Factory okHttpFactory = new OkHttpDataSource.Factory(NetUtils.applicationClient);
+            okHttpFactory.setUserAgent(NetUtils.USER_AGENT);
+            okHttpFactory.setCacheControl(NetUtilsClasses.ONE_DAY_CACHE);
+            okHttpFactory.setTransferListener(new TransferListener() {
+                @Override
+                public void onTransferInitializing(
+                        @NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork
+                ) {}
+
+                @Override
+                public void onTransferStart(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {}
+
+                @Override
+                public void onBytesTransferred(
+                        @NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork, int bytesTransferred
+                ) {
+                    networkBytesRead.addAndGet(bytesTransferred);
+                }
+
+                @Override
+                public void onTransferEnd(@NonNull DataSource source, @NonNull DataSpec dataSpec, boolean isNetwork) {}
+            });
+
+            cache = new SimpleCache(new File(getCacheDir(), "exoplayer"),
+                    new LeastRecentlyUsedCacheEvictor((long) ChanSettings.videoCacheSize.get() * MB)
+            );
+
+            cacheFactory = new CacheDataSource.Factory();
+            cacheFactory.setUpstreamDataSourceFactory(okHttpFactory);
+            cacheFactory.setCache(cache);
+            cacheFactory.setEventListener(new CacheDataSource.EventListener() {
+                @Override
+                public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+                    cacheBytesRead.addAndGet(cachedBytesRead);
+                }
+
+                @Override
+                public void onCacheIgnored(int reason) {}
+            });
+        }
+        return cacheFactory;
+    }
+
+    public static synchronized ProgressiveMediaSource.Factory getMediaSourceFactory() {
+        if (mediaFactory == null) {
+            mediaFactory = new ProgressiveMediaSource.Factory(getCacheFactory());
+        }
+        return mediaFactory;
+    }
+
+    /**
+     * Fetch the start of a media file into the cache so that playback can begin immediately when it is opened.
+     *
+     * @param url      the media url, exactly as it will be given to the player
+     * @param fileSize the size of the file if known, or a value of 0 or less if not
+     * @return a handle to cancel the prefetch with, or null if prefetching is disabled
+     */
+    public static Prefetch prefetch(@NonNull HttpUrl url, long fileSize) {
+        int seconds = ChanSettings.videoPrefetchSeconds.get();
+        if (seconds <= 0) return null;
+        long length = seconds * ASSUMED_BYTES_PER_SECOND;
+        if (fileSize > 0 && fileSize <= length) {
+            length = fileSize;
+        }
+
+        DataSpec dataSpec = new DataSpec.Builder().setUri(Uri.parse(url.toString())).setLength(length).build();
+        CacheWriter writer = new CacheWriter(getCacheFactory().createDataSource(),
+                dataSpec,
+                null,
+                (requestLength, bytesCached, newBytesCached) -> prefetchedBytes.addAndGet(newBytesCached)
+        );
+        prefetchCount.incrementAndGet();
+        Future<?> task = BackgroundUtils.backgroundService.submit(() -> {
+            try {
+                writer.cache();
+            } catch (InterruptedIOException ignored) {
+                // canceled
+            } catch (IOException e) {
+                Logger.vd(TAG, "Prefetch failed for " + url, e);
+            }
+        });
+        return new Prefetch(url, writer, task);
+    }
+
+    /**
+     * @return a summary of cache usage, for the developer screen
+     */
+    public static String getStats() {
+        long fromCache = cacheBytesRead.get();
+        // prefetched bytes come over the network but aren't played from it
+        long fromNetwork = Math.max(0, networkBytesRead.get() - prefetchedBytes.get());
+        long total = fromCache + fromNetwork;
+        return String.format(Locale.ENGLISH,
+                "Media cache used: %s\nPlayed from cache: %s\nPlayed from network: %s\nHit ratio: %.1f%%\nPrefetches: %d (%s)",
+                PostUtils.getReadableFileSize(cache == null ? 0 : cache.getCacheSpace()),
+                PostUtils.getReadableFileSize(fromCache),
+                PostUtils.getReadableFileSize(fromNetwork),
+                total == 0 ? 0f : fromCache * 100f / total,
+                prefetchCount.get(),
+                PostUtils.getReadableFileSize(prefetchedBytes.get())
+        );
+    }
+
+    public static class Prefetch {
+        public final HttpUrl url;
+        private final CacheWriter writer;
+        private final Future<?> task;
+
+        private Prefetch(HttpUrl url, CacheWriter writer, Future<?> task) {
+            this.url = url;
+            this.writer = writer;
+            this.task = task;
+        }
+
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        public void cancel() {
+            writer.cancel();
+            task.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.github.adamantcheese.chan.core.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.HttpCodeException;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.MainThreadResponseResult;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Reads the container header of a media file for its dimensions, duration, codecs and title, without downloading the
+ * file. Only the first {@link #PROBE_BYTES} are requested with a Range header; servers that ignore it and send the
+ * whole file anyway have their response cut off after that many bytes. MP4s that keep their index at the end get one
+ * more ranged request for it. Results are kept per url, so asking again is free. Probing costs a request per file, so
+ * it's meant for when a file is actually shown, not for every link in a thread.<br>
+ * <br>
+ * Understands WebM/Matroska, MP4, GIF, PNG and JPEG; anything else only gets its size.
+ */
+public class MediaProbe {
+    // jpeg exif can take most of this, other containers need a few KB at most
+    private static final int PROBE_BYTES = 64 * 1024;
+
+    private static final LruCache<HttpUrl, MediaInfo> probed = new LruCache<>(500);
+
+    /**
+     * @return the probed info for this url, or null if it hasn't been probed yet
+     */
+    @Nullable
+    public static MediaInfo getCached(@NonNull HttpUrl url) {
+        return probed.get(url);
+    }
+
+    /**
+     * @param url    the media url
+     * @param result the result callback
+     * @return An enqueued probe call, or null if the result is already known. WILL RUN RESULT ON MAIN THREAD!
+     */
+    @Nullable
+    public static Call probe(@NonNull HttpUrl url, @NonNull ResponseResult<MediaInfo> result) {
+        MainThreadResponseResult<MediaInfo> wrap = new MainThreadResponseResult<>(result);
+        MediaInfo cached = probed.get(url);
+        if (cached != null) {
+            wrap.onSuccess(cached);
+            return null;
+        }
+
+        Call call = NetUtils.applicationClient.newCall(rangeRequest(url, 0));
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                wrap.onFailure(e);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try {
+                    MediaInfo info = readProbe(call, url, response);
+                    probed.put(url, info);
+                    wrap.onSuccess(info);
+                } catch (Exception e) {
+                    wrap.onFailure(e);
+                }
+            }
+        });
+        return call;
+    }
+
+    private static Request rangeRequest(HttpUrl url, long offset) {
+        return new Request.Builder().url(url)
+                .header("Range", "bytes=" + offset + "-" + (offset + PROBE_BYTES - 1))
+                .build();
+    }
+
+    private static MediaInfo readProbe(Call call, HttpUrl url, Response response)
+            throws Exception {
+        long size;
+        byte[] data;
+        try (ResponseBody body = response.body()) {
+            if (!response.isSuccessful() || body == null) throw new HttpCodeException(response);
+            size = totalSize(response, body);
+            data = readUpTo(body.source());
+        }
+
+        Header header = new Header();
+        if (startsWith(data, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            header.container = "matroska";
+            parseEbml(data, 0, data.length, header);
+        } else if (startsWith(data, 4, 'f', 't', 'y', 'p')) {
+            header.container = "mp4";
+            long moovOffset = parseMp4(data, header);
+            // the index is after the media data, fetch it if the server does ranges
+            if (moovOffset > 0 && response.code() == 206 && !call.isCanceled()) {
+                try (Response moov = NetUtils.applicationClient.newCall(rangeRequest(url, moovOffset)).execute()) {
+                    ResponseBody body = moov.body();
+                    if (moov.code() == 206 && body != null) {
+                        parseMp4(readUpTo(body.source()), header);
+                    }
+                }
+            }
+        } else if (startsWith(data, 0, 'G', 'I', 'F', '8')) {
+            header.container = "gif";
+            if (data.length >= 10) {
+                header.width = readUInt16LE(data, 6);
+                header.height = readUInt16LE(data, 8);
+            }
+        } else if (startsWith(data, 0, 0x89, 'P', 'N', 'G')) {
+            header.container = "png";
+            if (data.length >= 24) {
+                header.width = (int) readUInt32(data, 16);
+                header.height = (int) readUInt32(data, 20);
+            }
+        } else if (startsWith(data, 0, 0xFF, 0xD8, 0xFF)) {
+            header.container = "jpeg";
+            parseJpeg(data, header);
+        }
+        return new MediaInfo(size, header);
+    }
+
+    private static long totalSize(Response response, ResponseBody body) {
+        if (response.code() == 206) {
+            // bytes 0-65535/1234567, the total can be * if the server doesn't know it
+            String range = response.header("Content-Range");
+            if (range == null || range.indexOf('/') < 0) return -1;
+            try {
+                return Long.parseLong(range.substring(range.indexOf('/') + 1).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return body.contentLength();
+    }
+
+    private static byte[] readUpTo(BufferedSource source)
+            throws IOException {
+        Buffer buffer = new Buffer();
+        while (buffer.size() < PROBE_BYTES && source.read(buffer, PROBE_BYTES - buffer.size()) != -1) {}
+        return buffer.readByteArray();
+    }
+
+    //region Matroska
+    // element ids, with their length marker
+    private static final long EBML = 0x1A45DFA3L;
+    private static final long DOC_TYPE = 0x4282L;
+    private static final long SEGMENT = 0x18538067L;
+    private static final long INFO = 0x1549A966L;
+    private static final long TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long DURATION = 0x4489L;
+    private static final long TITLE = 0x7BA9L;
+    private static final long TRACKS = 0x1654AE6BL;
+    private static final long TRACK_ENTRY = 0xAEL;
+    private static final long CODEC_ID = 0x86L;
+    private static final long VIDEO = 0xE0L;
+    private static final long PIXEL_WIDTH = 0xB0L;
+    private static final long PIXEL_HEIGHT = 0xBAL;
+    private static final long CLUSTER = 0x1F43B675L;
+
+    /**
+     * @return false once the media data starts or the header is cut off, nothing useful comes after either
+     */
+    private static boolean parseEbml(byte[] data, int start, int end, Header header) {
+        int pos = start;
+        while (pos < end) {
+            int idLength = vintLength(data, pos);
+            if (idLength <= 0 || idLength > 4 || pos + idLength > end) return false;
+            long id = readVint(data, pos, idLength, true);
+            pos += idLength;
+
+            int sizeLength = vintLength(data, pos);
+            if (sizeLength <= 0 || pos + sizeLength > end) return false;
+            long size = readVint(data, pos, sizeLength, false);
+            pos += sizeLength;
+            // an unknown size runs until the end of the parent
+            int elementEnd = size < 0 || pos + size > end ? end : (int) (pos + size);
+            boolean complete = size >= 0 && pos + size <= data.length;
+
+            if (id == CLUSTER) return false;
+            if (id == EBML || id == SEGMENT || id == INFO || id == TRACKS || id == TRACK_ENTRY || id == VIDEO) {
+                if (!parseEbml(data, pos, elementEnd, header)) return false;
+            } else if (complete) {
+                int length = (int) size;
+                if (id == DOC_TYPE) {
+                    header.container = new String(data, pos, length, StandardCharsets.US_ASCII).trim();
+                } else if (id == TIMECODE_SCALE) {
+                    header.timecodeScale = readUInt(data, pos, length);
+                } else if (id == DURATION && (length == 4 || length == 8)) {
+                    // a float element is either size; anything else is malformed
+                    header.rawDuration = length == 4
+                            ? Float.intBitsToFloat((int) readUInt(data, pos, 4))
+                            : Double.longBitsToDouble(readUInt(data, pos, 8));
+                } else if (id == TITLE) {
+                    header.title = new String(data, pos, length, StandardCharsets.UTF_8).trim();
+                } else if (id == CODEC_ID) {
+                    // V_VP9, A_OPUS and so on
+                    String codec = new String(data, pos, length, StandardCharsets.US_ASCII).trim();
+                    header.addCodec(codec.substring(codec.indexOf('_') + 1));
+                } else if (id == PIXEL_WIDTH && header.width == 0) {
+                    header.width = (int) readUInt(data, pos, length);
+                } else if (id == PIXEL_HEIGHT && header.height == 0) {
+                    header.height = (int) readUInt(data, pos, length);
+                }
+            }
+            if (size < 0) return false;
+            pos = elementEnd;
+        }
+        return true;
+    }
+
+    private static int vintLength(byte[] data, int pos) {
+        if (pos >= data.length) return -1;
+        int first = data[pos] & 0xFF;
+        return first == 0 ? -1 : Integer.numberOfLeadingZeros(first) - 23;
+    }
+
+    /**
+     * @return the value, or -1 for sizes that are all ones, which means unknown
+     */
+    private static long readVint(byte[] data, int pos, int length, boolean keepMarker) {
+        long value = keepMarker ? data[pos] & 0xFF : data[pos] & (0xFF >> length);
+        boolean allOnes = value == (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (data[pos + i] & 0xFF);
+            allOnes &= (data[pos + i] & 0xFF) == 0xFF;
+        }
+        return !keepMarker && allOnes ? -1 : value;
+    }
+    //endregion
+
+    //region MP4
+    /**
+     * @return the file offset of the first box that isn't in the given bytes, where the moov box might be, or 0 if the
+     * moov box was found or there's nothing after the given bytes to look in
+     */
+    private static long parseMp4(byte[] data, Header header) {
+        long pos = 0;
+        while (pos + 8 <= data.length) {
+            int at = (int) pos;
+            long size = readUInt32(data, at);
+            String type = new String(data, at + 4, 4, StandardCharsets.US_ASCII);
+            int headerSize = 8;
+            if (size == 1) {
+                // the large size is cut off, fetch from this box on
+                if (at + 16 > data.length) return pos;
+                size = readUInt(data, at + 8, 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                // runs to the end of the file
+                if (!"moov".equals(type)) return 0;
+                size = data.length - pos;
+            }
+            if (size < headerSize) return 0;
+
+            if ("moov".equals(type)) {
+                parseMp4Boxes(data, at + headerSize, (int) Math.min(data.length, pos + size), header);
+                return 0;
+            }
+            pos += size;
+        }
+        // the loop also ends on a box header cut off by the probe limit, which could be the moov
+        return pos;
+    }
+
+    private static void parseMp4Boxes(byte[] data, int start, int end, Header header) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            long size = readUInt32(data, pos);
+            String type = new String(data, pos + 4, 4, StandardCharsets.US_ASCII);
+            if (size < 8) return;
+            int content = pos + 8;
+            int boxEnd = (int) Math.min(end, pos + size);
+            switch (type) {
+                case "trak":
+                case "mdia":
+                case "minf":
+                case "stbl":
+                    parseMp4Boxes(data, content, boxEnd, header);
+                    break;
+                case "mvhd":
+                    // version 1 has 64 bit times and duration
+                    boolean longTimes = content < boxEnd && data[content] == 1;
+                    int timescaleAt = content + (longTimes ? 20 : 12);
+                    if (timescaleAt + (longTimes ? 12 : 8) <= boxEnd) {
+                        long timescale = readUInt32(data, timescaleAt);
+                        long duration = readUInt(data, timescaleAt + 4, longTimes ? 8 : 4);
+                        if (timescale > 0) header.durationMs = duration * 1000 / timescale;
+                    }
+                    break;
+                case "tkhd":
+                    // 16.16 fixed point width and height at the end; audio tracks have them at 0
+                    int widthAt = content + (content < boxEnd && data[content] == 1 ? 88 : 76);
+                    if (widthAt + 8 <= boxEnd && header.width == 0) {
+                        header.width = (int) (readUInt32(data, widthAt) >> 16);
+                        header.height = (int) (readUInt32(data, widthAt + 4) >> 16);
+                    }
+                    break;
+                case "stsd":
+                    // the format of the first sample description, avc1, vp09, mp4a and so on
+                    if (content + 16 <= boxEnd) {
+                        header.addCodec(new String(data, content + 12, 4, StandardCharsets.US_ASCII).trim());
+                    }
+                    break;
+            }
+            if (pos + size >= end) return;
+            pos += size;
+        }
+    }
+    //endregion
+
+    private static void parseJpeg(byte[] data, Header header) {
+        int pos = 2;
+        while (pos + 9 < data.length) {
+            if ((data[pos] & 0xFF) != 0xFF) return;
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                // fill byte
+                pos++;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) return;
+            // start of frame markers, except the ones for huffman and arithmetic tables
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                header.height = readUInt16(data, pos + 5);
+                header.width = readUInt16(data, pos + 7);
+                return;
+            }
+            pos += 2 + readUInt16(data, pos + 2);
+        }
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... magic) {
+        if (data.length < offset + magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((data[offset + i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+
+    private static long readUInt(byte[] data, int pos, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (data[pos + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long readUInt32(byte[] data, int pos) {
+        return readUInt(data, pos, 4);
+    }
+
+    private static int readUInt16(byte[] data, int pos) {
+        return (int) readUInt(data, pos, 2);
+    }
+
+    private static int readUInt16LE(byte[] data, int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8;
+    }
+
+    // what's been read so far
+    private static class Header {
+        private String container = "unknown";
+        private int width;
+        private int height;
+        private long durationMs = -1;
+        private long timecodeScale = 1000000;
+        private double rawDuration = -1;
+        private String title;
+        private final List<String> codecs = new ArrayList<>();
+
+        private void addCodec(String codec) {
+            codec = codec.toLowerCase(Locale.ENGLISH);
+            if (!codec.isEmpty() && !codecs.contains(codec)) codecs.add(codec);
+        }
+    }
+
+    public static class MediaInfo {
+        public final String container;
+        // the size of the whole file, or -1 if the server didn't say
+        public final long size;
+        // 0 if unknown
+        public final int width;
+        public final int height;
+        // -1 if unknown or not applicable
+        public final long durationMs;
+        @Nullable
+        public final String title;
+        public final List<String> codecs;
+
+        private MediaInfo(long size, Header header) {
+            this.container = header.container;
+            this.size = size;
+            this.width = header.width;
+            this.height = header.height;
+            if (header.rawDuration >= 0) {
+                // matroska durations are in timecode units, which are in nanoseconds
+                this.durationMs = (long) (header.rawDuration * header.timecodeScale / 1000000);
+            } else {
+                this.durationMs = header.durationMs;
+            }
+            this.title = header.title == null || header.title.isEmpty() ? null : header.title;
+            this.codecs = header.codecs;
+        }
+
+        /**
+         * @return the duration as m:ss or h:mm:ss
+         */
+        public String getReadableDuration() {
+            long seconds = durationMs / 1000;
+            return seconds >= 3600
+                    ? String.format(Locale.ENGLISH, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60)
+                    : String.format(Locale.ENGLISH, "%d:%02d", seconds / 60, seconds % 60);
+        }
+    }
+}
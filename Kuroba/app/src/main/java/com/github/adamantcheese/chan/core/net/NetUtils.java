@@ -71,15 +71,22 @@ public class NetUtils {
     public static final String USER_AGENT = BuildConfig.APP_LABEL + "/" + BuildConfig.VERSION_NAME;
 
     public static final int MB = 1024 * 1024;
+    // Files with a known hash, kept once no matter how many urls they're posted under; its own budget, on top of the
+    // file cache
+    public static final ContentStore CONTENT_STORE =
+            new ContentStore(new File(getCacheDir(), "content"), (long) ChanSettings.contentStoreSize.get() * MB);
     // The OkHttpClient installed cache, used for all requests
     private static final Cache OK_HTTP_CACHE = new Cache(new File(getCacheDir(), "okhttp"),
             ChanSettings.autoLoadThreadImages.get()
                     ? (long) ChanSettings.fileCacheSize.get() * 2 * MB
                     : (long) ChanSettings.fileCacheSize.get() * MB
     );
+    private static final HttpCacheIndex OK_HTTP_CACHE_INDEX = new HttpCacheIndex(OK_HTTP_CACHE);
 
     public static final OkHttpClientWithUtils applicationClient =
             new OkHttpClientWithUtils(new OkHttpClient.Builder().cache(OK_HTTP_CACHE)
+                    .addInterceptor(CONTENT_STORE)
+                    .addInterceptor(OK_HTTP_CACHE_INDEX)
                     .protocols(ChanSettings.okHttpAllowHttp2.get()
                             ? Arrays.asList(HTTP_2, HTTP_1_1)
                             : Collections.singletonList(HTTP_1_1))
@@ -123,14 +130,14 @@ public class NetUtils {
     }
 
     /**
-     * Simple wrapper to check if a url has been cached by OkHttp
+     * Check if a url has been cached by OkHttp, or its file is in the content store. Neither check touches the disk, see
+     * {@link HttpCacheIndex} and {@link ContentStore#contains(HttpUrl)}, so it's fine to call on the main thread.
      *
      * @param url The url to check
      * @return true if the url has a cached response
      */
-    @SuppressWarnings("KotlinInternalInJava")
     public static boolean isCached(HttpUrl url) {
-        return OK_HTTP_CACHE.getCache$okhttp().getLruEntries$okhttp().containsKey(Cache.key(url));
+        return OK_HTTP_CACHE_INDEX.contains(url) || CONTENT_STORE.contains(url);
     }
 
     /**
@@ -246,6 +246,9 @@ public class NetUtilsClasses {
     public static final Converter<JsonReader, Response> JSON_CONVERTER =
             response -> new JsonReader(new InputStreamReader(response.body().byteStream(), UTF_8));
 
+    public static final Converter<ByteJsonReader, Response> BYTE_JSON_CONVERTER =
+            response -> new ByteJsonReader(response.body().source());
+
     public static final Converter<Document, Response> HTML_CONVERTER =
             response -> Jsoup.parse(response.body().byteStream(), null, response.request().url().toString());
 
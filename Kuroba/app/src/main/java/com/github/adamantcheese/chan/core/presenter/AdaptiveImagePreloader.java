@@ -0,0 +1,169 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.presenter;
+
+import android.os.SystemClock;
+
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.settings.ChanSettings.ImageClickPreloadStrategy;
+import com.github.adamantcheese.chan.utils.PostUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.adamantcheese.chan.core.net.NetUtils.MB;
+
+/**
+ * Decides which images around the current one in the image viewer should be preloaded.<br>
+ * <br>
+ * The window ahead of the user grows with how fast they're swiping and how fast downloads are actually completing,
+ * so flicking through a thread on a fast connection keeps several images ready, while a slow or metered connection
+ * only fetches the next one in the direction of travel. Until the user's first swipe gives a direction, the static
+ * preload strategy setting picks the neighbours; with it set to preload neither, nothing is ever preloaded.
+ */
+public class AdaptiveImagePreloader {
+    private static final int MAX_WINDOW = 8;
+    // how many swipes ahead the window should try to cover
+    private static final int LOOKAHEAD_SWIPES = 3;
+    private static final float SMOOTHING = 0.3f;
+    private static final long UNKNOWN_SIZE = MB;
+    private static final long MAX_DWELL_MS = 10000;
+
+    // throughput is a property of the connection rather than the viewer, so keep it between viewer sessions
+    private static float throughputBytesPerSec = 512 * 1024;
+
+    private static final AtomicLong totalWaitMs = new AtomicLong();
+    private static final AtomicLong waitCount = new AtomicLong();
+    private static final AtomicLong preloadCount = new AtomicLong();
+    private static final AtomicLong preloadCanceledCount = new AtomicLong();
+
+    private float dwellMs = 3000;
+    private long lastSwipeTime = -1;
+    private int direction = 0;
+
+    /**
+     * Record a swipe between positions, updating the direction and the time spent per image.
+     */
+    public void onSwipe(int from, int to) {
+        long now = SystemClock.elapsedRealtime();
+        direction = Integer.compare(to, from);
+        if (lastSwipeTime > 0) {
+            long dwell = Math.min(MAX_DWELL_MS, now - lastSwipeTime);
+            dwellMs = dwellMs + SMOOTHING * (dwell - dwellMs);
+        }
+        lastSwipeTime = now;
+    }
+
+    /**
+     * Record a completed preload, for throughput estimation.
+     *
+     * @param elapsedMs time from the first byte arriving to the download finishing
+     */
+    public static synchronized void onPreloadComplete(long bytes, long elapsedMs) {
+        if (bytes <= 0 || elapsedMs <= 0) return;
+        float measured = bytes * 1000f / elapsedMs;
+        throughputBytesPerSec = throughputBytesPerSec + SMOOTHING * (measured - throughputBytesPerSec);
+    }
+
+    public static void onPreloadStarted() {
+        preloadCount.incrementAndGet();
+    }
+
+    public static void onPreloadCanceled() {
+        preloadCanceledCount.incrementAndGet();
+    }
+
+    /**
+     * Record how long the user waited between an image becoming the current one and its full version showing.
+     */
+    public static void recordViewerWait(long waitMs) {
+        totalWaitMs.addAndGet(waitMs);
+        waitCount.incrementAndGet();
+    }
+
+    /**
+     * @return the indices that should be preloaded, smallest files first so the most images are ready soonest
+     */
+    public List<Integer> computeWindow(
+            List<PostImage> images, int position, boolean metered, ImageClickPreloadStrategy strategy
+    ) {
+        List<Integer> window = new ArrayList<>();
+        if (strategy == ImageClickPreloadStrategy.PreloadNeither) {
+            return window;
+        } else if (direction == 0) {
+            // no swipes yet, fall back to the user's preference
+            if (strategy == ImageClickPreloadStrategy.PreloadNext || strategy == ImageClickPreloadStrategy.PreloadBoth) {
+                addIfValid(window, images, position + 1);
+            }
+            if (strategy == ImageClickPreloadStrategy.PreloadPrevious
+                    || strategy == ImageClickPreloadStrategy.PreloadBoth) {
+                addIfValid(window, images, position - 1);
+            }
+        } else if (metered) {
+            // don't spend mobile data on more than the very next image
+            addIfValid(window, images, position + direction);
+        } else {
+            float budget;
+            synchronized (AdaptiveImagePreloader.class) {
+                budget = throughputBytesPerSec * (dwellMs / 1000f) * LOOKAHEAD_SWIPES;
+            }
+            long used = 0;
+            for (int i = position + direction; i >= 0 && i < images.size() && window.size() < MAX_WINDOW;
+                 i += direction) {
+                used += sizeOf(images.get(i));
+                // always take at least one
+                if (!window.isEmpty() && used > budget) break;
+                window.add(i);
+            }
+        }
+
+        Collections.sort(window, (a, b) -> Long.compare(sizeOf(images.get(a)), sizeOf(images.get(b))));
+        return window;
+    }
+
+    private static void addIfValid(List<Integer> window, List<PostImage> images, int index) {
+        if (index >= 0 && index < images.size()) {
+            window.add(index);
+        }
+    }
+
+    private static long sizeOf(PostImage image) {
+        return image.size > 0 ? image.size : UNKNOWN_SIZE;
+    }
+
+    /**
+     * @return a summary of preloading behavior, for the developer screen
+     */
+    public static String getStats() {
+        long waits = waitCount.get();
+        float throughput;
+        synchronized (AdaptiveImagePreloader.class) {
+            throughput = throughputBytesPerSec;
+        }
+        return String.format(Locale.ENGLISH,
+                "Viewer waits: %d, average %dms\nPreloads: %d started, %d canceled\nEstimated throughput: %s/s",
+                waits,
+                waits == 0 ? 0 : totalWaitMs.get() / waits,
+                preloadCount.get(),
+                preloadCanceledCount.get(),
+                PostUtils.getReadableFileSize((long) throughput)
+        );
+    }
+}
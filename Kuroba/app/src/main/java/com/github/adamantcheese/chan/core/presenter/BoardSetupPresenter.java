@@ -164,24 +164,14 @@ public class BoardSetupPresenter
         suggestionCall = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
             List<BoardSuggestion> suggestions = new ArrayList<>();
             if (site.boardsType().canList) {
+                // search the site's own list rather than a copy, so its search index is reused between keystrokes
                 Boards siteBoards = boardManager.getSiteBoards(site);
-                Boards allUnsavedBoards = new Boards();
-                for (Board siteBoard : siteBoards) {
-                    if (!siteBoard.saved) {
-                        allUnsavedBoards.add(siteBoard);
-                    }
-                }
-
-                Boards toSuggest;
-                if (TextUtils.isEmpty(query)) {
-                    toSuggest = new Boards(allUnsavedBoards);
-                } else {
-                    toSuggest = BoardHelper.search(allUnsavedBoards, query);
-                }
+                Boards toSuggest = TextUtils.isEmpty(query) ? siteBoards : BoardHelper.search(siteBoards, query);
 
                 for (Board board : toSuggest) {
-                    BoardSuggestion suggestion = new BoardSuggestion(board);
-                    suggestions.add(suggestion);
+                    if (!board.saved) {
+                        suggestions.add(new BoardSuggestion(board));
+                    }
                 }
             } else {
                 if (!TextUtils.isEmpty(query)) {
@@ -31,8 +31,12 @@ import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.repository.BitmapRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.http.Reply;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.BitmapUtils;
 
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.dp;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getDisplaySize;
@@ -42,6 +46,7 @@ public class ImageReencodingPresenter {
     private final Context context;
     private final ImageReencodingPresenterCallback callback;
     private final Reply draft;
+    private BackgroundUtils.Cancelable reencodeTask;
 
     public ImageReencodingPresenter(Context context, ImageReencodingPresenterCallback callback, Loadable loadable) {
         this.context = context;
@@ -88,19 +93,64 @@ public class ImageReencodingPresenter {
     public void applyImageOptions(ImageOptions options) {
         ChanSettings.lastImageOptions.set(AppModule.gson.toJson(options));
 
+        if (reencodeTask != null) return; // already working
         callback.disableOrEnableButtons(false);
-        try {
-            CompressFormat reencodeFormat =
-                    callback.getReencodeFormat() == null ? getCurrentFileFormat() : callback.getReencodeFormat();
-            draft.file = BitmapUtils.reencodeBitmapFile(draft.file, options, reencodeFormat);
-        } catch (Throwable error) {
-            showToast(context, getString(R.string.could_not_apply_image_options, error.getMessage()));
-            return;
-        } finally {
+        callback.onReencodeProgress(0);
+
+        CompressFormat reencodeFormat =
+                callback.getReencodeFormat() == null ? getCurrentFileFormat() : callback.getReencodeFormat();
+        File inputFile = draft.file;
+        AtomicBoolean canceled = new AtomicBoolean(false);
+        BitmapUtils.ReencodeListener listener = new BitmapUtils.ReencodeListener() {
+            @Override
+            public void onProgress(int percent) {
+                BackgroundUtils.runOnMainThread(() -> {
+                    if (!canceled.get()) callback.onReencodeProgress(percent);
+                });
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return canceled.get();
+            }
+        };
+
+        BackgroundUtils.Cancelable cancelable = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+            try {
+                return new Pair<File, Throwable>(BitmapUtils.reencodeBitmapFile(inputFile,
+                        options,
+                        reencodeFormat,
+                        listener
+                ), null);
+            } catch (Throwable error) {
+                return new Pair<File, Throwable>(null, error);
+            }
+        }, result -> {
+            reencodeTask = null;
             callback.disableOrEnableButtons(true);
-        }
+            if (result.second != null) {
+                showToast(context, getString(R.string.could_not_apply_image_options, result.second.getMessage()));
+                return;
+            }
+            draft.file = result.first;
+            callback.onImageOptionsApplied();
+        });
+
+        reencodeTask = () -> {
+            canceled.set(true);
+            cancelable.cancel();
+        };
+    }
 
-        callback.onImageOptionsApplied();
+    /**
+     * @return true if a running re-encode was canceled, false if there was nothing to cancel
+     */
+    public boolean cancelImageOptions() {
+        if (reencodeTask == null) return false;
+        reencodeTask.cancel();
+        reencodeTask = null;
+        callback.disableOrEnableButtons(true);
+        return true;
     }
 
     public static class ImageOptions {
@@ -125,6 +175,13 @@ public class ImageReencodingPresenter {
             }
         }
 
+        /**
+         * @return true if the only thing requested is a checksum change, which doesn't require re-encoding the image
+         */
+        public boolean isChecksumChangeOnly() {
+            return changeImageChecksum && !fixExif && reducePercent == MIN_REDUCE && reencodeQuality == MAX_QUALITY;
+        }
+
         public boolean areOptionsInvalid() {
             return reencodeQuality < MIN_QUALITY || reencodeQuality > MAX_QUALITY || reducePercent < MIN_REDUCE
                     || reducePercent > MAX_REDUCE;
@@ -138,6 +195,8 @@ public class ImageReencodingPresenter {
 
         void onImageOptionsApplied();
 
+        void onReencodeProgress(int percent);
+
         CompressFormat getReencodeFormat();
     }
 }
@@ -17,12 +17,14 @@
 package com.github.adamantcheese.chan.core.presenter;
 
 import android.content.Context;
+import android.os.SystemClock;
 
 import androidx.annotation.Nullable;
 import androidx.viewpager.widget.ViewPager;
 
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.MediaCache;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
@@ -37,9 +39,13 @@ import com.github.adamantcheese.chan.utils.Logger;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.Call;
 import okhttp3.HttpUrl;
@@ -56,19 +62,13 @@ import static com.github.adamantcheese.chan.ui.view.MultiImageView.Mode.GIFIMAGE
 import static com.github.adamantcheese.chan.ui.view.MultiImageView.Mode.LOWRES;
 import static com.github.adamantcheese.chan.ui.view.MultiImageView.Mode.VIDEO;
 import static com.github.adamantcheese.chan.ui.view.MultiImageView.Mode.WEBVIEW;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getConnectivityManager;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getDefaultMuteState;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.openLinkInBrowser;
 
 public class ImageViewerPresenter
         implements MultiImageView.Callback, ViewPager.OnPageChangeListener {
     private final Context context;
-    private static final int PRELOAD_IMAGE_INDEX = 1;
-    /**
-     * We don't want to cancel an image right after we have started preloading it because it
-     * sometimes causes weird bugs where you swipe to an already canceled image/webm and nothing
-     * happens so you need to swipe back and forth for it to start loading.
-     */
-    private static final int CANCEL_IMAGE_INDEX = 2;
 
     private final Callback callback;
 
@@ -76,11 +76,20 @@ public class ImageViewerPresenter
     private boolean exiting = false;
     private List<PostImage> images;
     private int selectedPosition = 0;
-    private SwipeDirection swipeDirection = SwipeDirection.Default;
     private Loadable loadable;
-    private final Set<Call> preloadingImages = new CopyOnWriteArraySet<>();
+    private final AdaptiveImagePreloader preloader = new AdaptiveImagePreloader();
+    private final Map<HttpUrl, BackgroundUtils.Cancelable> preloads = new ConcurrentHashMap<>();
+    /**
+     * We don't want to cancel an image right after we have started preloading it because it
+     * sometimes causes weird bugs where you swipe to an already canceled image/webm and nothing
+     * happens so you need to swipe back and forth for it to start loading.
+     */
     private final Set<HttpUrl> nonCancelableImages = new CopyOnWriteArraySet<>();
 
+    // for measuring how long the user waits for the full version of the current image
+    private PostImage waitingForImage;
+    private long waitingSince;
+
     // Disables swiping until the view pager is visible
     private boolean viewPagerVisible = false;
     private boolean changeViewsOnInTransitionEnd = false;
@@ -132,12 +141,13 @@ public class ImageViewerPresenter
         callback.startPreviewOutTransition(postImage);
         callback.showProgress(false);
 
-        for (Call preloadingImage : preloadingImages) {
-            preloadingImage.cancel();
+        for (BackgroundUtils.Cancelable preload : preloads.values()) {
+            preload.cancel();
         }
 
         nonCancelableImages.clear();
-        preloadingImages.clear();
+        preloads.clear();
+        waitingForImage = null;
     }
 
     public void onVolumeClicked() {
@@ -165,12 +175,8 @@ public class ImageViewerPresenter
             return;
         }
 
-        if (position == selectedPosition) {
-            swipeDirection = SwipeDirection.Default;
-        } else if (position > selectedPosition) {
-            swipeDirection = SwipeDirection.Forward;
-        } else {
-            swipeDirection = SwipeDirection.Backward;
+        if (position != selectedPosition) {
+            preloader.onSwipe(selectedPosition, position);
         }
 
         selectedPosition = position;
@@ -216,6 +222,10 @@ public class ImageViewerPresenter
             if (multiImageView.getPostImage() == currentImage) {
                 setTitle(currentImage, selectedPosition);
             }
+            if (multiImageView.getPostImage() == waitingForImage) {
+                AdaptiveImagePreloader.recordViewerWait(SystemClock.elapsedRealtime() - waitingSince);
+                waitingForImage = null;
+            }
         }
     }
 
@@ -239,12 +249,6 @@ public class ImageViewerPresenter
         nonCancelableImages.clear();
         nonCancelableImages.addAll(getNonCancelableImages(position));
 
-        if (swipeDirection == SwipeDirection.Forward) {
-            cancelPreviousFromStartImageDownload(position);
-        } else if (swipeDirection == SwipeDirection.Backward) {
-            cancelPreviousFromEndImageDownload(position);
-        }
-
         // Already in LOWRES mode
         if (callback.getImageMode(postImage) == LOWRES) {
             onLowResInCenter();
@@ -256,7 +260,10 @@ public class ImageViewerPresenter
     private void onLowResInCenter() {
         PostImage postImage = getCurrentPostImage();
 
+        waitingForImage = null;
         if (imageAutoLoad(postImage) && (!postImage.spoiler() || ChanSettings.revealimageSpoilers.get())) {
+            waitingForImage = postImage;
+            waitingSince = SystemClock.elapsedRealtime();
             if (postImage.type == STATIC) {
                 callback.setImageMode(postImage, BIGIMAGE, true);
             } else if (postImage.type == GIF) {
@@ -267,48 +274,42 @@ public class ImageViewerPresenter
                 callback.setImageMode(postImage, WEBVIEW, true);
             } else if (postImage.type == PostImage.Type.OTHER) {
                 callback.setImageMode(postImage, MultiImageView.Mode.OTHER, true);
+            } else {
+                waitingForImage = null;
             }
         }
 
-        ChanSettings.ImageClickPreloadStrategy strategy = ChanSettings.imageClickPreloadStrategy.get();
-
-        if (swipeDirection == SwipeDirection.Forward) {
-            preloadNext();
-        } else if (swipeDirection == SwipeDirection.Backward) {
-            preloadPrevious();
-        } else {
-            switch (strategy) {
-                case PreloadNext:
-                    preloadNext();
-                    break;
-                case PreloadPrevious:
-                    preloadPrevious();
-                    break;
-                case PreloadBoth:
-                    preloadNext();
-                    preloadPrevious();
-                    break;
-                case PreloadNeither:
-                    break;
-            }
-        }
+        updatePreloadWindow();
     }
 
-    private void preloadPrevious() {
-        int index = selectedPosition - PRELOAD_IMAGE_INDEX;
+    /**
+     * Starts preloads for everything in the current preload window, and cancels any preloads that have fallen out of it.
+     */
+    private void updatePreloadWindow() {
+        List<Integer> window = preloader.computeWindow(images,
+                selectedPosition,
+                getConnectivityManager().isActiveNetworkMetered(),
+                ChanSettings.imageClickPreloadStrategy.get()
+        );
 
-        if (index >= 0 && index < images.size()) {
-            doPreloading(images.get(index));
+        Set<HttpUrl> inWindow = new HashSet<>();
+        for (int index : window) {
+            inWindow.add(images.get(index).imageUrl);
         }
-    }
 
-    // This won't actually change any modes, but it will preload the image so that it's
-    // available immediately when the user swipes right.
-    private void preloadNext() {
-        int index = selectedPosition + PRELOAD_IMAGE_INDEX;
+        for (Map.Entry<HttpUrl, BackgroundUtils.Cancelable> preload : preloads.entrySet()) {
+            if (inWindow.contains(preload.getKey()) || nonCancelableImages.contains(preload.getKey())) continue;
+            preload.getValue().cancel();
+            preloads.remove(preload.getKey(), preload.getValue());
+            AdaptiveImagePreloader.onPreloadCanceled();
+        }
 
-        if (index >= 0 && index < images.size()) {
-            doPreloading(images.get(index));
+        // the window is ordered smallest first, so those get queued first
+        for (int index : window) {
+            PostImage postImage = images.get(index);
+            if (postImage.type == IFRAME || preloads.containsKey(postImage.imageUrl)) continue;
+            if (postImage.type != MOVIE && NetUtils.isCached(postImage.imageUrl)) continue;
+            doPreloading(postImage);
         }
     }
 
@@ -343,79 +344,49 @@ public class ImageViewerPresenter
             load = videoAutoLoad(postImage);
         }
 
-        if (load) {
-            // If downloading, remove from preloadingImages if it finished.
-            // Array to allow access from within the callback
-            final Call[] preloadDownload = new Call[1];
-
-            preloadDownload[0] = NetUtils.makeRequest(NetUtils.applicationClient.getHttpRedirectClient(),
-                    postImage.imageUrl,
-                    EMPTY_CONVERTER,
-                    new NetUtilsClasses.ResponseResult<Object>() {
-                        @Override
-                        public void onFailure(Exception e) {
-                            updatePreload();
-                        }
-
-                        @Override
-                        public void onSuccess(Object result) {
-                            updatePreload();
-                        }
+        if (!load) return;
 
-                        private void updatePreload() {
-                            if (preloadDownload[0] != null) {
-                                preloadingImages.remove(preloadDownload[0]);
-                            }
-                        }
-                    },
-                    null,
-                    NetUtilsClasses.ONE_DAY_CACHE
-            );
-
-            if (preloadDownload[0] != null) {
-                preloadingImages.add(preloadDownload[0]);
-            }
-        }
-    }
-
-    private void cancelPreviousFromEndImageDownload(int position) {
-        for (Call downloader : preloadingImages) {
-            int index = position + CANCEL_IMAGE_INDEX;
-            if (index < images.size()) {
-                if (cancelImageDownload(index, downloader)) {
-                    return;
-                }
+        if (postImage.type == MOVIE) {
+            // videos are played through the media cache, so only the start of the file needs to be there
+            MediaCache.Prefetch prefetch = MediaCache.prefetch(postImage.imageUrl, postImage.size);
+            if (prefetch != null) {
+                preloads.put(postImage.imageUrl, prefetch::cancel);
+                AdaptiveImagePreloader.onPreloadStarted();
             }
+            return;
         }
-    }
 
-    private void cancelPreviousFromStartImageDownload(int position) {
-        for (Call downloader : preloadingImages) {
-            int index = position - CANCEL_IMAGE_INDEX;
-            if (index >= 0) {
-                if (cancelImageDownload(index, downloader)) {
-                    return;
-                }
-            }
-        }
-    }
+        // timed from the first byte, so time spent queued behind other requests doesn't count against throughput
+        AtomicLong firstByte = new AtomicLong(-1);
+        Call preloadDownload = NetUtils.makeRequest(NetUtils.applicationClient.getHttpRedirectClient(),
+                postImage.imageUrl,
+                EMPTY_CONVERTER,
+                new NetUtilsClasses.ResponseResult<Object>() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        preloads.remove(postImage.imageUrl);
+                    }
 
-    private boolean cancelImageDownload(int position, Call downloader) {
-        if (nonCancelableImages.contains(downloader.request().url())) {
-            Logger.d(this,
-                    "Attempt to cancel non cancelable download for image with url: " + downloader.request().url()
-            );
-            return false;
-        }
+                    @Override
+                    public void onSuccess(Object result) {
+                        preloads.remove(postImage.imageUrl);
+                        if (firstByte.get() >= 0) {
+                            AdaptiveImagePreloader.onPreloadComplete(postImage.size,
+                                    SystemClock.elapsedRealtime() - firstByte.get()
+                            );
+                        }
+                    }
+                },
+                (source, bytesRead, contentLength, start, done) -> {
+                    if (start) firstByte.compareAndSet(-1, SystemClock.elapsedRealtime());
+                },
+                NetUtilsClasses.ONE_DAY_CACHE
+        );
 
-        PostImage previousImage = images.get(position);
-        if (downloader.request().url().equals(previousImage.imageUrl)) {
-            downloader.cancel();
-            preloadingImages.remove(downloader);
-            return true;
+        if (preloadDownload != null) {
+            preloads.put(postImage.imageUrl, preloadDownload::cancel);
+            AdaptiveImagePreloader.onPreloadStarted();
         }
-
-        return false;
     }
 
     @Override
@@ -571,12 +542,6 @@ public class ImageViewerPresenter
         return postImage.type == PostImage.Type.MOVIE ? postImage.thumbnailUrl : postImage.imageUrl;
     }
 
-    private enum SwipeDirection {
-        Default,
-        Forward,
-        Backward
-    }
-
     public interface Callback {
         void startPreviewInTransition(PostImage postImage);
 
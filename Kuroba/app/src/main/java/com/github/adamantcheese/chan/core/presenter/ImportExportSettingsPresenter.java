@@ -44,6 +44,15 @@ public class ImportExportSettingsPresenter {
 
     public void doExport(ExternalFile settingsFile, boolean isNewFile) {
         importExportRepository.exportTo(settingsFile, isNewFile, new ImportExportRepository.ImportExportCallbacks() {
+            @Override
+            public void onProgress(ImportExportRepository.ImportExport importExport, int percent) {
+                //called on background thread
+
+                if (callbacks != null) {
+                    callbacks.onProgress(percent);
+                }
+            }
+
             @Override
             public void onSuccess(ImportExportRepository.ImportExport importExport) {
                 //called on background thread
@@ -75,6 +84,15 @@ public class ImportExportSettingsPresenter {
 
     public void doImport(ExternalFile settingsFile) {
         importExportRepository.importFrom(settingsFile, new ImportExportRepository.ImportExportCallbacks() {
+            @Override
+            public void onProgress(ImportExportRepository.ImportExport importExport, int percent) {
+                //called on background thread
+
+                if (callbacks != null) {
+                    callbacks.onProgress(percent);
+                }
+            }
+
             @Override
             public void onSuccess(ImportExportRepository.ImportExport importExport) {
                 //called on background thread
@@ -105,6 +123,8 @@ public class ImportExportSettingsPresenter {
     }
 
     public interface ImportExportSettingsCallbacks {
+        void onProgress(int percent);
+
         void onSuccess(ImportExportRepository.ImportExport importExport);
 
         void onError(String message);
@@ -27,7 +27,6 @@ import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.TextView;
 
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 
@@ -45,11 +44,13 @@ import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostHttpIcon;
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.PostLinkable;
+import com.github.adamantcheese.chan.core.model.ThreadGallery;
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.model.orm.SavedReply;
-import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.MediaProbe;
+import com.github.adamantcheese.chan.core.net.MediaProbe.MediaInfo;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.repository.PageRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
@@ -78,7 +79,6 @@ import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.github.adamantcheese.chan.utils.PostUtils;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.GregorianCalendar;
@@ -90,8 +90,6 @@ import java.util.Set;
 import javax.inject.Inject;
 
 import okhttp3.Call;
-import okhttp3.Request;
-import okhttp3.Response;
 
 import static com.github.adamantcheese.chan.Chan.inject;
 import static com.github.adamantcheese.chan.ui.cell.PostCellInterface.PostCellCallback.PostOptions.POST_OPTION_COPY;
@@ -493,28 +491,17 @@ public class ThreadPresenter
     }
 
     public void selectPostImage(PostImage postImage) {
-        List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-        for (Post post : posts) {
-            for (PostImage image : post.images) {
-                if (image == postImage) {
-                    scrollToPost(post, false);
-                    highlightPostNo(post.no);
-                    return;
-                }
-            }
+        Post post = getPostFromPostImage(postImage);
+        if (post != null) {
+            scrollToPost(post, false);
+            highlightPostNo(post.no);
         }
     }
 
+    @Nullable
     public Post getPostFromPostImage(PostImage postImage) {
-        List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-        for (Post post : posts) {
-            for (PostImage image : post.images) {
-                if (image == postImage) {
-                    return post;
-                }
-            }
-        }
-        return null;
+        ChanThread thread = getChanThread();
+        return thread == null ? null : thread.getPostForImage(postImage);
     }
 
     /*
@@ -550,37 +537,12 @@ public class ThreadPresenter
     @Override
     public void onThumbnailClicked(PostImage postImage, ThumbnailView thumbnail) {
         if (!isBound()) return;
-        List<PostImage> images = new ArrayList<>();
-        int index = -1;
-        List<Post> posts = threadPresenterCallback.getDisplayingPosts();
-        PostViewMode viewMode = threadPresenterCallback.getPostViewMode();
-        for (Post post : posts) {
-            // for card mode, only add the displayed image
-            // otherwise add all images
-            if (viewMode == PostViewMode.GRID) {
-                if (post.image() == null) continue;
-                if (!post.deleted.get() || post.image().isInlined || NetUtils.isCached(post.image().imageUrl)) {
-                    //deleted posts always have 404'd images, but let it through if the file exists in cache
-                    images.add(post.image());
-                    if (post.image().equals(postImage)) {
-                        index = images.size() - 1;
-                    }
-                }
-            } else {
-                for (PostImage image : post.images) {
-                    if (!post.deleted.get() || image.isInlined || NetUtils.isCached(image.imageUrl)) {
-                        //deleted posts always have 404'd images, but let it through if the file exists in cache
-                        images.add(image);
-                        if (image.equals(postImage)) {
-                            index = images.size() - 1;
-                        }
-                    }
-                }
-            }
-        }
-
-        if (!images.isEmpty()) {
-            threadPresenterCallback.showImages(images, index, loadable, thumbnail);
+        // for card mode, only add the displayed image
+        // otherwise add all images
+        ThreadGallery.Selection selection = threadPresenterCallback.getDisplayingGallery()
+                .select(postImage, threadPresenterCallback.getPostViewMode() == PostViewMode.GRID);
+        if (!selection.images.isEmpty()) {
+            threadPresenterCallback.showImages(selection.images, selection.index, loadable, thumbnail);
         }
     }
 
@@ -830,11 +792,7 @@ public class ThreadPresenter
             matching.add(post);
         } else {
             //match all post IDs
-            for (Post p : getChanThread().getPosts()) {
-                if (!TextUtils.isEmpty(p.id) && p.id.equals(post.id)) {
-                    matching.add(p);
-                }
-            }
+            matching.addAll(getChanThread().getPostsByPosterId(post.id));
         }
         return matching;
     }
@@ -1085,6 +1043,12 @@ public class ThreadPresenter
         ListView linkableList = fullView.findViewById(R.id.post_linkable_list);
 
         SpannableStringBuilder text = new SpannableStringBuilder();
+        List<Call> probes = new ArrayList<>();
+        dialog.setOnDismissListener(dialog1 -> {
+            for (Call call : probes) {
+                call.cancel();
+            }
+        });
         if (post.isOP && !TextUtils.isEmpty(post.subject)) {
             text.append("Subject: ").append(post.subject).append("\n");
         }
@@ -1093,23 +1057,22 @@ public class ThreadPresenter
             text.append("Name: ").append(post.name).append("\n");
         }
 
+        ChanThread thread = getChanThread();
         if (!TextUtils.isEmpty(post.tripcode)) {
             text.append("Tripcode: ").append(post.tripcode).append("\n");
+            if (thread != null) {
+                int count = thread.getPostsByTripcode(post.tripcode).size();
+                text.append("Tripcode post count: ").append(Integer.toString(count)).append("\n");
+            }
         }
 
         if (!TextUtils.isEmpty(post.capcode)) {
             text.append("Capcode: ").append(post.capcode).append("\n");
         }
 
-        if (!TextUtils.isEmpty(post.id) && isBound() && chanLoader.getThread() != null) {
+        if (!TextUtils.isEmpty(post.id) && thread != null) {
             text.append("Id: ").append(post.id).append("\n");
-            int count = 0;
-            try {
-                for (Post p : chanLoader.getThread().getPosts()) {
-                    if (p.id.equals(post.id)) count++;
-                }
-            } catch (Exception ignored) {
-            }
+            int count = thread.getPostsByPosterId(post.id).size();
             text.append("Post count: ").append(Integer.toString(count)).append("\n");
         }
 
@@ -1123,37 +1086,44 @@ public class ThreadPresenter
 
         for (PostImage image : post.images) {
             text.append("\n\nFilename: ").append(image.filename).append(".").append(image.extension);
-            if ("webm".equals(image.extension.toLowerCase())) {
-                // check webms for extra titles, async
-                // this is a super simple example of what the embedding engine does, basically
-                String checking = "\nChecking for metadata titles…";
+            if (image.type == PostImage.Type.MOVIE || image.isInlined) {
+                // read the container header for titles, durations and the like, async
+                String checking = "\nChecking media metadata…";
                 text.append(checking);
-                Call call = NetUtils.applicationClient.newCall(new Request.Builder().url(image.imageUrl).build());
-                call.enqueue(new NetUtilsClasses.IgnoreFailureCallback() {
+                Call call = MediaProbe.probe(image.imageUrl, new NetUtilsClasses.ResponseResult<MediaInfo>() {
                     @Override
-                    public void onResponse(@NonNull Call call, @NonNull Response response)
-                            throws IOException {
-                        int index = text.toString().indexOf(checking);
-                        String replaceText = ""; // clears out text if nothing found
-
-                        byte[] bytes = new byte[2048];
-                        response.body().source().read(bytes);
-                        response.close();
-                        for (int i = 0; i < bytes.length - 1; i++) {
-                            if (((bytes[i] & 0xFF) << 8 | bytes[i + 1] & 0xFF) == 0x7ba9) {
-                                byte len = (byte) (bytes[i + 2] ^ 0x80);
-                                // i is the position of the length bytes, which are 2 bytes
-                                // 1 after that is the actual string start
-                                replaceText = "\nMetadata title: " + new String(bytes, i + 2 + 1, len);
-                                break;
-                            }
+                    public void onFailure(Exception e) {
+                        replaceInfo(""); // clears out text if nothing found
+                    }
+
+                    @Override
+                    public void onSuccess(MediaInfo result) {
+                        StringBuilder info = new StringBuilder();
+                        if (result.title != null) {
+                            info.append("\nMetadata title: ").append(result.title);
                         }
+                        if (image.isInlined && result.width > 0) {
+                            info.append("\nDimensions: ").append(result.width).append("x").append(result.height);
+                        }
+                        if (result.durationMs > 0) {
+                            info.append("\nDuration: ").append(result.getReadableDuration());
+                        }
+                        if (!result.codecs.isEmpty()) {
+                            info.append("\nCodecs: ").append(TextUtils.join(", ", result.codecs));
+                        }
+                        replaceInfo(info);
+                    }
+
+                    private void replaceInfo(CharSequence replaceText) {
+                        int index = text.toString().indexOf(checking);
+                        if (index < 0) return;
                         text.replace(index, index + checking.length(), replaceText);
-                        // update on main thread, this is an OkHttp thread
-                        BackgroundUtils.runOnMainThread(() -> infoText.setText(text));
+                        infoText.setText(text);
                     }
                 });
-                dialog.setOnDismissListener(dialog1 -> call.cancel());
+                if (call != null) {
+                    probes.add(call);
+                }
             }
             if (image.isInlined) {
                 text.append("\nLinked file");
@@ -1171,6 +1141,13 @@ public class ThreadPresenter
             if (image.spoiler() && !image.isInlined) { //all linked files are spoilered, don't say that
                 text.append("\nSpoilered");
             }
+
+            if (thread != null && !TextUtils.isEmpty(image.fileHash)) {
+                int count = thread.getPostsByImageHash(image.fileHash).size();
+                if (count > 1) {
+                    text.append("\nPosted ").append(Integer.toString(count)).append(" times in this thread");
+                }
+            }
         }
         infoText.setText(text);
 
@@ -1229,7 +1206,7 @@ public class ThreadPresenter
             if (wholeChain) {
                 ChanThread thread = chanLoader.getThread();
                 if (thread != null) {
-                    posts.addAll(PostUtils.findPostWithReplies(post.no, thread.getPosts()));
+                    posts.addAll(thread.getReplyGraph().getPostWithReplies(post.no));
                 }
             } else {
                 posts.add(PostUtils.findPostById(post.no, chanLoader.getThread()));
@@ -1341,6 +1318,8 @@ public class ThreadPresenter
 
         List<Post> getDisplayingPosts();
 
+        ThreadGallery getDisplayingGallery();
+
         PostViewMode getPostViewMode();
 
         int[] getCurrentPosition();
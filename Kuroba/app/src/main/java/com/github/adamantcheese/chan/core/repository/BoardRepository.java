@@ -26,7 +26,9 @@ import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
 import com.github.adamantcheese.chan.utils.Logger;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -40,6 +42,9 @@ public class BoardRepository
     private final SitesBoards allBoards = new SitesBoards();
     private final SitesBoards savedBoards = new SitesBoards();
 
+    // replaced as a whole whenever the board lists change, so readers on other threads never see a partial index
+    private volatile BoardIndex index = new BoardIndex();
+
     public BoardRepository(DatabaseBoardManager databaseBoardManager, SiteRepository siteRepository) {
         this.databaseBoardManager = databaseBoardManager;
         allSites = siteRepository.all();
@@ -69,18 +74,8 @@ public class BoardRepository
     }
 
     public Board getFromCode(Site site, String code) {
-        for (SiteBoards siteBoards : allBoards.get()) {
-            if (siteBoards.site.id() == site.id()) {
-                for (Board board : siteBoards.boards) {
-                    if (board.code.equals(code)) {
-                        return board;
-                    }
-                }
-                return null;
-            }
-        }
-
-        return null;
+        Map<String, Board> siteBoards = index.codes.get(site.id());
+        return siteBoards == null ? null : siteBoards.get(code);
     }
 
     public SitesBoards getAll() {
@@ -96,21 +91,13 @@ public class BoardRepository
     }
 
     public Boards getSiteBoards(Site site) {
-        for (SiteBoards item : allBoards.siteBoards) {
-            if (item.site.id() == site.id()) {
-                return item.boards;
-            }
-        }
-        return new Boards();
+        Boards boards = index.all.get(site.id());
+        return boards == null ? new Boards() : boards;
     }
 
     public Boards getSiteSavedBoards(Site site) {
-        for (SiteBoards item : savedBoards.siteBoards) {
-            if (item.site.id() == site.id()) {
-                return item.boards;
-            }
-        }
-        return new Boards();
+        Boards boards = index.saved.get(site.id());
+        return boards == null ? new Boards() : boards;
     }
 
     public void updateBoardOrders(Boards boards) {
@@ -143,16 +130,28 @@ public class BoardRepository
     private void updateWith(List<Pair<Site, Boards>> databaseData) {
         List<SiteBoards> all = new ArrayList<>();
         List<SiteBoards> saved = new ArrayList<>();
+        BoardIndex newIndex = new BoardIndex();
         for (Pair<Site, Boards> item : databaseData) {
             all.add(new SiteBoards(item.first, item.second));
 
             Boards savedBoards = new Boards();
+            Map<String, Board> codes = new HashMap<>(item.second.size() * 2);
             for (Board board : item.second) {
                 if (board.saved) savedBoards.add(board);
+                // keep the first board for a code, same as the linear search did
+                if (!codes.containsKey(board.code)) codes.put(board.code, board);
             }
             saved.add(new SiteBoards(item.first, savedBoards));
+
+            int siteId = item.first.id();
+            if (!newIndex.codes.containsKey(siteId)) {
+                newIndex.codes.put(siteId, codes);
+                newIndex.all.put(siteId, item.second);
+                newIndex.saved.put(siteId, savedBoards);
+            }
         }
 
+        index = newIndex;
         allBoards.set(all);
         savedBoards.set(saved);
 
@@ -160,6 +159,13 @@ public class BoardRepository
         savedBoards.notifyObservers();
     }
 
+    private static class BoardIndex {
+        // site id -> board code -> board
+        final Map<Integer, Map<String, Board>> codes = new HashMap<>();
+        final Map<Integer, Boards> all = new HashMap<>();
+        final Map<Integer, Boards> saved = new HashMap<>();
+    }
+
     public static class SitesBoards
             extends Observable {
         private List<SiteBoards> siteBoards = new ArrayList<>();
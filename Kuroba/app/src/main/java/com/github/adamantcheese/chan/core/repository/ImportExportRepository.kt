@@ -18,7 +18,6 @@ package com.github.adamantcheese.chan.core.repository
 
 import com.github.adamantcheese.chan.core.database.DatabaseHelper
 import com.github.adamantcheese.chan.core.database.DatabaseUtils
-import com.github.adamantcheese.chan.core.di.AppModule
 import com.github.adamantcheese.chan.core.model.export.*
 import com.github.adamantcheese.chan.core.model.orm.*
 import com.github.adamantcheese.chan.core.repository.ImportExportRepository.ImportExport.Export
@@ -30,9 +29,12 @@ import com.github.k1rakishou.fsaf.FileManager
 import com.github.k1rakishou.fsaf.file.AbstractFile
 import com.github.k1rakishou.fsaf.file.ExternalFile
 import com.github.k1rakishou.fsaf.file.FileDescriptorMode
-import java.io.FileReader
+import com.google.common.io.CountingInputStream
+import com.j256.ormlite.dao.Dao
+import java.io.FileInputStream
 import java.io.FileWriter
 import java.io.IOException
+import java.io.InputStreamReader
 import java.sql.SQLException
 import java.util.*
 import java.util.regex.Pattern
@@ -46,13 +48,15 @@ constructor(
     fun exportTo(settingsFile: ExternalFile, isNewFile: Boolean, callbacks: ImportExportCallbacks) {
         DatabaseUtils.runTask {
             try {
-                val appSettings = readSettingsFromDatabase()
-                if (appSettings.isEmpty) {
+                val settings = ChanSettings.serializeToString()
+                val sites = databaseHelper.siteModelDao.countOf()
+                val boards = databaseHelper.boardDao.countOf()
+                // sites and boards are important, almost nothing else can be exported without them (except settings)
+                if (sites == 0L && boards == 0L && settings.isEmpty()) {
                     callbacks.onNothingToImportExport(Export)
                     return@runTask
                 }
-
-                val json = AppModule.gson.toJson(appSettings)
+                val total = sites + boards + databaseHelper.filterDao.countOf() + databaseHelper.postHideDao.countOf()
 
                 if (!fileManager.exists(settingsFile) || !fileManager.canWrite(settingsFile)) {
                     throw IOException(
@@ -70,9 +74,50 @@ constructor(
                 }
 
                 fileManager.withFileDescriptor(settingsFile, fdm) { fileDescriptor ->
-                    FileWriter(fileDescriptor).use { writer ->
-                        writer.write(json)
-                        writer.flush()
+                    val listener = ExportStream.ProgressListener { records ->
+                        callbacks.onProgress(Export, (records * 100 / total).toInt())
+                    }
+                    ExportStream.Writer(
+                            FileWriter(fileDescriptor).buffered(),
+                            CURRENT_EXPORT_SETTINGS_VERSION,
+                            listener
+                    ).use { writer ->
+                        writeSites(writer)
+                        writeTable(writer, ExportStream.BOARDS, databaseHelper.boardDao, ExportedBoard::class.java) {
+                            exportBoard(it)
+                        }
+                        writeTable(writer, ExportStream.FILTERS, databaseHelper.filterDao, ExportedFilter::class.java) {
+                            ExportedFilter(
+                                    it.enabled,
+                                    it.type,
+                                    it.pattern,
+                                    it.allBoards,
+                                    it.boards,
+                                    it.action,
+                                    it.color,
+                                    it.applyToReplies,
+                                    it.order,
+                                    it.onlyOnOP,
+                                    it.applyToSaved
+                            )
+                        }
+                        writeTable(
+                                writer,
+                                ExportStream.POST_HIDES,
+                                databaseHelper.postHideDao,
+                                ExportedPostHide::class.java
+                        ) {
+                            ExportedPostHide(
+                                    it.site,
+                                    it.board,
+                                    it.no,
+                                    it.wholeThread,
+                                    it.hide,
+                                    it.hideRepliesToThisPost,
+                                    it.threadNo
+                            )
+                        }
+                        writer.finish(settings)
                     }
 
                     Logger.d(TAG, "Exporting done!")
@@ -89,46 +134,65 @@ constructor(
     }
 
     fun importFrom(settingsFile: ExternalFile, callbacks: ImportExportCallbacks) {
-        DatabaseUtils.runTask {
-            try {
-                if (!fileManager.exists(settingsFile)) {
-                    Logger.e(TAG, "There is nothing to import, importFile does not exist "
-                            + settingsFile.getFullPath())
-                    callbacks.onNothingToImportExport(Import)
-                    return@runTask
-                }
+        var failure: Throwable? = null
+        try {
+            DatabaseUtils.runTask {
+                try {
+                    if (!fileManager.exists(settingsFile)) {
+                        Logger.e(TAG, "There is nothing to import, importFile does not exist "
+                                + settingsFile.getFullPath())
+                        callbacks.onNothingToImportExport(Import)
+                        return@runTask
+                    }
 
-                if (!fileManager.canRead(settingsFile)) {
-                    throw IOException(
-                            "Something wrong with import file (Can't read or it doesn't exist) "
-                                    + settingsFile.getFullPath()
-                    )
-                }
+                    if (!fileManager.canRead(settingsFile)) {
+                        throw IOException(
+                                "Something wrong with import file (Can't read or it doesn't exist) "
+                                        + settingsFile.getFullPath()
+                        )
+                    }
 
-                fileManager.withFileDescriptor(
-                        settingsFile,
-                        FileDescriptorMode.Read
-                ) { fileDescriptor ->
-                    FileReader(fileDescriptor).use { reader ->
-                        val appSettings = AppModule.gson.fromJson(reader, ExportedAppSettings::class.java)
-
-                        if (appSettings.isEmpty) {
-                            Logger.d(TAG, "There is nothing to import, appSettings is empty")
-                            callbacks.onNothingToImportExport(Import)
-                            return@use
+                    fileManager.withFileDescriptor(
+                            settingsFile,
+                            FileDescriptorMode.Read
+                    ) { fileDescriptor ->
+                        val input = FileInputStream(fileDescriptor)
+                        // not every descriptor has a size, without one there's no progress to show
+                        val length = try {
+                            input.channel.size()
+                        } catch (e: IOException) {
+                            0L
+                        }
+                        val counted = CountingInputStream(input)
+                        val listener = ExportStream.ProgressListener {
+                            if (length > 0) callbacks.onProgress(Import, (counted.count * 100 / length).toInt())
                         }
 
-                        writeSettingsToDatabase(appSettings)
+                        InputStreamReader(counted, Charsets.UTF_8).buffered().use { reader ->
+                            val importer = DatabaseImporter()
+                            ExportStream.read(reader, importer, listener)
 
-                        Logger.d(TAG, "Importing done!")
-                        callbacks.onSuccess(Import)
+                            if (!importer.finish()) {
+                                Logger.d(TAG, "There is nothing to import, the export is empty")
+                                callbacks.onNothingToImportExport(Import)
+                                return@use
+                            }
+
+                            Logger.d(TAG, "Importing done!")
+                            callbacks.onSuccess(Import)
+                        }
                     }
-                }
 
-            } catch (error: Throwable) {
-                Logger.e(TAG, "Error while trying to import settings", error)
-                callbacks.onError(error, Import)
+                } catch (error: Throwable) {
+                    // the tables are reset before the whole file has been read; rethrow so the transaction rolls back
+                    // instead of committing a partial import over them
+                    failure = error
+                    throw error
+                }
             }
+        } catch (error: Throwable) {
+            Logger.e(TAG, "Error while trying to import settings", failure ?: error)
+            callbacks.onError(failure ?: error, Import)
         }
     }
 
@@ -138,67 +202,45 @@ constructor(
         }
     }
 
-    @Throws(SQLException::class, IOException::class, DowngradeNotSupportedException::class)
-    private fun writeSettingsToDatabase(appSettingsParam: ExportedAppSettings) {
-        var appSettings = appSettingsParam
-
-        if (appSettings.version < CURRENT_EXPORT_SETTINGS_VERSION) {
-            appSettings = onUpgrade(appSettings.version, appSettings)
-        } else if (appSettings.version > CURRENT_EXPORT_SETTINGS_VERSION) {
-            // we don't support settings downgrade so just notify the user about it
-            throw DowngradeNotSupportedException("You are attempting to import settings with " +
-                    "version higher than the current app's settings version (downgrade). " +
-                    "This is not supported so nothing will be imported."
-            )
-        }
-
-        // recreate tables from scratch, because we need to reset database IDs as well
-        databaseHelper.connectionSource.use { cs ->
-            databaseHelper.dropTables(cs)
-            databaseHelper.createTables(cs)
+    /**
+     * Writes the records of an import to the database as they're read, upgrading them from older export versions on
+     * the way. The tables are freshly created, so rows are inserted without checking for them first. The tables are only
+     * reset once there turns out to be something to import.
+     */
+    private inner class DatabaseImporter : ExportStream.Handler {
+        private var version = CURRENT_EXPORT_SETTINGS_VERSION
+        private var tablesReset = false
+        private var settings: String? = null
+
+        // for version 4, the first 8chan and 55chan sites are dropped along with their boards, filters and post hides
+        private val removedSites = HashSet<Int>()
+        private var foundChan8 = false
+        private var foundChan55 = false
+
+        override fun onVersion(version: Int) {
+            if (version > CURRENT_EXPORT_SETTINGS_VERSION) {
+                // we don't support settings downgrade so just notify the user about it
+                throw DowngradeNotSupportedException("You are attempting to import settings with " +
+                        "version higher than the current app's settings version (downgrade). " +
+                        "This is not supported so nothing will be imported."
+                )
+            }
+            this.version = version
         }
 
-        for (exportedBoard in appSettings.exportedBoards) {
-            databaseHelper.boardDao.createIfNotExists(Board(
-                    exportedBoard.siteId,
-                    exportedBoard.isSaved,
-                    exportedBoard.order,
-                    exportedBoard.name,
-                    exportedBoard.code,
-                    exportedBoard.isWorkSafe,
-                    exportedBoard.perPage,
-                    exportedBoard.pages,
-                    exportedBoard.maxFileSize,
-                    exportedBoard.maxWebmSize,
-                    exportedBoard.maxCommentChars,
-                    exportedBoard.bumpLimit,
-                    exportedBoard.imageLimit,
-                    exportedBoard.cooldownThreads,
-                    exportedBoard.cooldownReplies,
-                    exportedBoard.cooldownImages,
-                    exportedBoard.isSpoilers,
-                    exportedBoard.customSpoilers,
-                    exportedBoard.isUserIds,
-                    exportedBoard.isCodeTags,
-                    exportedBoard.isPreuploadCaptcha,
-                    exportedBoard.isCountryFlags,
-                    exportedBoard.boardFlags,
-                    exportedBoard.isMathTags,
-                    exportedBoard.description ?: "",
-                    exportedBoard.isArchive
-            ))
-        }
+        override fun onSite(site: ExportedSite) {
+            if (!upgradeSite(site)) return
+            resetTables()
 
-        for (exportedSite in appSettings.exportedSites) {
             val inserted = databaseHelper.siteModelDao.createIfNotExists(SiteModel(
-                    exportedSite.siteId,
-                    exportedSite.configuration,
-                    exportedSite.userSettings,
-                    exportedSite.order,
-                    exportedSite.classId
+                    site.siteId,
+                    site.configuration,
+                    site.userSettings,
+                    site.order,
+                    site.classId
             ))
 
-            for (exportedPin in exportedSite.exportedPins) {
+            for (exportedPin in site.exportedPins) {
                 val exportedLoadable = exportedPin.exportedLoadable ?: continue
 
                 val loadable = Loadable.importLoadable(
@@ -229,8 +271,48 @@ constructor(
             }
         }
 
-        for (exportedFilter in appSettings.exportedFilters) {
-            databaseHelper.filterDao.createIfNotExists(Filter(
+        override fun onBoard(exportedBoard: ExportedBoard) {
+            if (version < 6) {
+                exportedBoard.boardFlags = HashMap()
+            }
+            if (exportedBoard.siteId in removedSites) return
+            resetTables()
+
+            databaseHelper.boardDao.create(Board(
+                    exportedBoard.siteId,
+                    exportedBoard.isSaved,
+                    exportedBoard.order,
+                    exportedBoard.name,
+                    exportedBoard.code,
+                    exportedBoard.isWorkSafe,
+                    exportedBoard.perPage,
+                    exportedBoard.pages,
+                    exportedBoard.maxFileSize,
+                    exportedBoard.maxWebmSize,
+                    exportedBoard.maxCommentChars,
+                    exportedBoard.bumpLimit,
+                    exportedBoard.imageLimit,
+                    exportedBoard.cooldownThreads,
+                    exportedBoard.cooldownReplies,
+                    exportedBoard.cooldownImages,
+                    exportedBoard.isSpoilers,
+                    exportedBoard.customSpoilers,
+                    exportedBoard.isUserIds,
+                    exportedBoard.isCodeTags,
+                    exportedBoard.isPreuploadCaptcha,
+                    exportedBoard.isCountryFlags,
+                    exportedBoard.boardFlags,
+                    exportedBoard.isMathTags,
+                    exportedBoard.description ?: "",
+                    exportedBoard.isArchive
+            ))
+        }
+
+        override fun onFilter(exportedFilter: ExportedFilter) {
+            if (removedSites.isNotEmpty() && filterUsesSites(exportedFilter, removedSites)) return
+            resetTables()
+
+            databaseHelper.filterDao.create(Filter(
                     exportedFilter.isEnabled,
                     exportedFilter.type,
                     exportedFilter.pattern,
@@ -245,104 +327,100 @@ constructor(
             ))
         }
 
-        for (exportedPostHide in appSettings.exportedPostHides) {
-            databaseHelper.postHideDao.createIfNotExists(PostHide(
-                    exportedPostHide.site,
-                    exportedPostHide.board,
-                    exportedPostHide.no))
+        override fun onPostHide(exportedPostHide: ExportedPostHide) {
+            //clear the post hides for version 1, threadNo field was added
+            if (version < 2 || exportedPostHide.site in removedSites) return
+            resetTables()
+
+            databaseHelper.postHideDao.create(PostHide(exportedPostHide.site, exportedPostHide.board, exportedPostHide.no).apply {
+                wholeThread = exportedPostHide.wholeThread
+                hide = exportedPostHide.hide
+                hideRepliesToThisPost = exportedPostHide.hideRepliesToThisPost
+                threadNo = exportedPostHide.threadNo
+            })
         }
 
-        ChanSettings.deserializeFromString(appSettingsParam.settings)
-    }
-
-    private fun onUpgrade(version: Int, appSettings: ExportedAppSettings): ExportedAppSettings {
-        if (version < 2) {
-            //clear the post hides for version 1, threadNo field was added
-            appSettings.exportedPostHides = ArrayList()
+        override fun onSettings(settings: String?) {
+            this.settings = settings
         }
 
-        if (version < 3) {
-            //clear the site model usersettings to be an empty JSON map for version 2,
-            // as they won't parse correctly otherwise
-            for (site in appSettings.exportedSites) {
-                site.userSettings = EMPTY_JSON
-            }
+        /**
+         * @return false if there was nothing in the export
+         */
+        fun finish(): Boolean {
+            if (!tablesReset && settings.isNullOrEmpty()) return false
+            resetTables()
+            ChanSettings.deserializeFromString(settings)
+            return true
         }
 
-        //can't directly use gson here, gotta use regex instead
-        //I don't know why, but for some reason Android fails to compile this without the redundant escape??
-        @Suppress("RegExpRedundantEscape") val oldConfigPattern = Pattern.compile("\\{\"internal_site_id\":(\\d+),\"external\":.+\\}")
-
-        if (version < 4) {
-            //55chan and 8chan were removed for this version
-            var chan8: ExportedSite? = null
-            var chan55: ExportedSite? = null
-
-            for (site in appSettings.exportedSites) {
-                val matcher = oldConfigPattern.matcher(site.configuration.toString())
-                if (matcher.matches()) {
-                    val classID = matcher.group(1)?.let { Integer.parseInt(it) }
-                    if (classID == 1 && chan8 == null) {
-                        chan8 = site
-                    }
+        private fun resetTables() {
+            if (tablesReset) return
+            tablesReset = true
 
-                    if (classID == 7 && chan55 == null) {
-                        chan55 = site
-                    }
-                }
+            // recreate tables from scratch, because we need to reset database IDs as well
+            databaseHelper.connectionSource.use { cs ->
+                databaseHelper.dropTables(cs)
+                databaseHelper.createTables(cs)
             }
+        }
 
-            if (chan55 != null) {
-                deleteExportedSite(chan55, appSettings)
+        /**
+         * @return false if the site is dropped
+         */
+        private fun upgradeSite(site: ExportedSite): Boolean {
+            if (version < 3) {
+                //clear the site model usersettings to be an empty JSON map for version 2,
+                // as they won't parse correctly otherwise
+                site.userSettings = EMPTY_JSON
             }
 
-            if (chan8 != null) {
-                deleteExportedSite(chan8, appSettings)
-            }
-        }
+            val matcher = OLD_CONFIG_PATTERN.matcher(site.configuration.toString())
+            val classId = if (matcher.matches()) matcher.group(1)?.let { Integer.parseInt(it) } else null
 
-        if (version < 5) {
-            // siteconfig class removed, move stuff over
-            for (site in appSettings.exportedSites) {
-                val matcher = oldConfigPattern.matcher(site.configuration.toString())
-                if (matcher.matches()) {
-                    val classID = matcher.group(1)?.let { Integer.parseInt(it) }
-                    if (classID != null) {
-                        site.classId = classID
-                    }
+            if (version < 4) {
+                //55chan and 8chan were removed for this version
+                if (classId == 1 && !foundChan8) {
+                    foundChan8 = true
+                    removedSites.add(site.siteId)
+                    return false
+                }
+                if (classId == 7 && !foundChan55) {
+                    foundChan55 = true
+                    removedSites.add(site.siteId)
+                    return false
                 }
             }
-        }
 
-        if (version < 6) {
-            for (board in appSettings.exportedBoards) {
-                board.boardFlags = HashMap()
+            if (version < 5) {
+                // siteconfig class removed, move stuff over
+                if (classId != null) {
+                    site.classId = classId
+                }
             }
+            return true
         }
-        return appSettings
     }
 
-    @Throws(java.sql.SQLException::class, IOException::class)
-    private fun readSettingsFromDatabase(): ExportedAppSettings {
-        val sitesMap = fillSitesMap()
-        val loadableMap = fillLoadablesMap()
-
-        val pins = HashSet(databaseHelper.pinDao.queryForAll())
-        val toExportMap = HashMap<SiteModel, MutableList<ExportedPin>>()
-
-        for (siteModel in sitesMap.values) {
-            toExportMap[siteModel] = ArrayList()
+    /**
+     * Sites with their pins; pins are few, so only their loadables are loaded rather than the whole history.
+     */
+    @Throws(SQLException::class, IOException::class)
+    private fun writeSites(writer: ExportStream.Writer) {
+        val pins = databaseHelper.pinDao.queryForAll()
+        val loadableMap = HashMap<Int, Loadable>()
+        for (chunk in pins.map { it.loadable.id }.distinct().chunked(CHUNK_SIZE)) {
+            for (loadable in databaseHelper.loadableDao.queryBuilder().where().`in`("id", chunk).query()) {
+                loadableMap[loadable.id] = loadable
+            }
         }
 
+        val sitePins = HashMap<Int, MutableList<ExportedPin>>()
         for (pin in pins) {
             val loadable = loadableMap[pin.loadable.id]
                     ?: throw NullPointerException("Could not find Loadable by pin.loadable.id "
                             + pin.loadable.id)
 
-            val siteModel = sitesMap[loadable.siteId]
-                    ?: throw NullPointerException("Could not find siteModel by loadable.siteId "
-                            + loadable.siteId)
-
             val exportedLoadable = ExportedLoadable(
                     loadable.boardCode,
                     loadable.id.toLong(),
@@ -371,161 +449,99 @@ constructor(
                     exportedLoadable
             )
 
-            toExportMap[siteModel]!!.add(exportedPin)
-        }
-
-        val exportedSites = ArrayList<ExportedSite>()
-
-        for ((key, value) in toExportMap) {
-            val exportedSite = ExportedSite(
-                    key.id,
-                    key.configuration,
-                    key.order,
-                    key.userSettings,
-                    key.classID,
-                    value
-            )
-
-            exportedSites.add(exportedSite)
-        }
-
-        val exportedBoards = databaseHelper.boardDao.queryForAll().map {
-            ExportedBoard(
-                    it.siteId,
-                    it.saved,
-                    it.order,
-                    it.name,
-                    it.code,
-                    it.workSafe,
-                    it.perPage,
-                    it.pages,
-                    it.maxFileSize,
-                    it.maxWebmSize,
-                    it.maxCommentChars,
-                    it.bumpLimit,
-                    it.imageLimit,
-                    it.cooldownThreads,
-                    it.cooldownReplies,
-                    it.cooldownImages,
-                    it.spoilers,
-                    it.customSpoilers,
-                    it.userIds,
-                    it.codeTags,
-                    it.preuploadCaptcha,
-                    it.countryFlags,
-                    it.boardFlags,
-                    it.mathTags,
-                    it.description,
-                    it.archive
-            )
+            sitePins.getOrPut(loadable.siteId) { ArrayList() }.add(exportedPin)
         }
 
-        val exportedFilters = databaseHelper.filterDao.queryForAll().map {
-            ExportedFilter(
-                    it.enabled,
-                    it.type,
-                    it.pattern,
-                    it.allBoards,
-                    it.boards,
-                    it.action,
-                    it.color,
-                    it.applyToReplies,
+        val siteIds = HashSet<Int>()
+        writeTable(writer, ExportStream.SITES, databaseHelper.siteModelDao, ExportedSite::class.java) {
+            siteIds.add(it.id)
+            ExportedSite(
+                    it.id,
+                    it.configuration,
                     it.order,
-                    it.onlyOnOP,
-                    it.applyToSaved
+                    it.userSettings,
+                    it.classID,
+                    sitePins[it.id] ?: ArrayList()
             )
         }
 
-        val exportedPostHides = databaseHelper.postHideDao.queryForAll().map {
-            ExportedPostHide(
-                    it.site,
-                    it.board,
-                    it.no,
-                    it.wholeThread,
-                    it.hide,
-                    it.hideRepliesToThisPost,
-                    it.threadNo
-            )
+        for (siteId in sitePins.keys) {
+            if (siteId !in siteIds) {
+                throw NullPointerException("Could not find siteModel by loadable.siteId $siteId")
+            }
         }
-
-        val settings = ChanSettings.serializeToString()
-
-        return ExportedAppSettings(CURRENT_EXPORT_SETTINGS_VERSION,
-                exportedSites,
-                exportedBoards,
-                exportedFilters,
-                exportedPostHides,
-                settings
-        )
     }
 
-    private fun fillLoadablesMap(): Map<Int, Loadable> {
-        val map = hashMapOf<Int, Loadable>()
-        val loadables = databaseHelper.loadableDao.queryForAll()
-
-        for (loadable in loadables) {
-            map[loadable.id] = loadable
+    /**
+     * Writes a table one row at a time, with the rows read from a cursor.
+     */
+    @Throws(SQLException::class, IOException::class)
+    private fun <T, E> writeTable(
+            writer: ExportStream.Writer,
+            name: String,
+            dao: Dao<T, Int>,
+            type: Class<E>,
+            export: (T) -> E
+    ) {
+        writer.beginArray(name)
+        val iterator = dao.closeableIterator()
+        try {
+            while (iterator.hasNext()) {
+                writer.write(export(iterator.next()), type)
+            }
+        } finally {
+            iterator.closeQuietly()
         }
-
-        return map
+        writer.endArray()
     }
 
-    private fun fillSitesMap(): Map<Int, SiteModel> {
-        val map = hashMapOf<Int, SiteModel>()
-        val sites = databaseHelper.siteModelDao.queryForAll()
-
-        for (site in sites) {
-            map[site.id] = site
-        }
-
-        return map
+    private fun exportBoard(board: Board): ExportedBoard {
+        return ExportedBoard(
+                board.siteId,
+                board.saved,
+                board.order,
+                board.name,
+                board.code,
+                board.workSafe,
+                board.perPage,
+                board.pages,
+                board.maxFileSize,
+                board.maxWebmSize,
+                board.maxCommentChars,
+                board.bumpLimit,
+                board.imageLimit,
+                board.cooldownThreads,
+                board.cooldownReplies,
+                board.cooldownImages,
+                board.spoilers,
+                board.customSpoilers,
+                board.userIds,
+                board.codeTags,
+                board.preuploadCaptcha,
+                board.countryFlags,
+                board.boardFlags,
+                board.mathTags,
+                board.description,
+                board.archive
+        )
     }
 
-    private fun deleteExportedSite(site: ExportedSite, appSettings: ExportedAppSettings) {
-        //filters
-        val filtersToDelete = ArrayList<ExportedFilter>()
-        for (filter in appSettings.exportedFilters) {
-            if (filter.isAllBoards || filter.boards.isNullOrEmpty()) {
-                continue
-            }
-
-            val boards = checkNotNull(filter.boards)
-            val splitBoards = boards.split(",".toRegex()).dropLastWhile { it.isEmpty() }
-
-            for (uniqueId in splitBoards) {
-                val split = uniqueId.split(":".toRegex()).dropLastWhile { it.isEmpty() }
-
-                if (split.size == 2 && Integer.parseInt(split[0]) == site.siteId) {
-                    filtersToDelete.add(filter)
-                    break
-                }
-            }
+    private fun filterUsesSites(filter: ExportedFilter, siteIds: Set<Int>): Boolean {
+        if (filter.isAllBoards || filter.boards.isNullOrEmpty()) {
+            return false
         }
 
-        appSettings.exportedFilters.removeAll(filtersToDelete)
-
-        //boards
-        val boardsToDelete = appSettings.exportedBoards.filter { it.siteId == site.siteId }
-        appSettings.exportedBoards.removeAll(boardsToDelete)
+        val boards = checkNotNull(filter.boards)
+        val splitBoards = boards.split(",".toRegex()).dropLastWhile { it.isEmpty() }
 
-        //loadables for saved threads
-        val loadables = ArrayList<ExportedLoadable>()
-        for (pin in site.exportedPins) {
-            val loadable = pin.exportedLoadable
-                    ?: continue
+        for (uniqueId in splitBoards) {
+            val split = uniqueId.split(":".toRegex()).dropLastWhile { it.isEmpty() }
 
-            if (loadable.siteId == site.siteId) {
-                loadables.add(loadable)
+            if (split.size == 2 && Integer.parseInt(split[0]) in siteIds) {
+                return true
             }
         }
-
-        //post hides
-        val hidesToDelete = appSettings.exportedPostHides.filter { it.site == site.siteId }
-
-        appSettings.exportedPostHides.removeAll(hidesToDelete)
-
-        //site (also removes pins and loadables)
-        appSettings.exportedSites.remove(site)
+        return false
     }
 
     enum class ImportExport {
@@ -534,6 +550,10 @@ constructor(
     }
 
     interface ImportExportCallbacks {
+        /**
+         * Called on the database thread, with the percentage done.
+         */
+        fun onProgress(importExport: ImportExport, percent: Int)
         fun onSuccess(importExport: ImportExport)
         fun onNothingToImportExport(importExport: ImportExport)
         fun onError(error: Throwable, importExport: ImportExport)
@@ -547,5 +567,13 @@ constructor(
         // Don't forget to change this when changing any of the Export models.
         // Also, don't forget to handle the change in the onUpgrade or onDowngrade methods
         const val CURRENT_EXPORT_SETTINGS_VERSION = 6
+
+        // loadable ids per query when exporting pins
+        private const val CHUNK_SIZE = 500
+
+        //can't directly use gson here, gotta use regex instead
+        //I don't know why, but for some reason Android fails to compile this without the redundant escape??
+        @Suppress("RegExpRedundantEscape")
+        private val OLD_CONFIG_PATTERN = Pattern.compile("\\{\"internal_site_id\":(\\d+),\"external\":.+\\}")
     }
 }
@@ -0,0 +1,626 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.saver;
+
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.HttpCodeException;
+import com.github.adamantcheese.chan.core.saver.ImageSaver.BundledDownloadResult;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StringUtils;
+import com.github.k1rakishou.fsaf.FileManager;
+import com.github.k1rakishou.fsaf.file.AbstractFile;
+import com.github.k1rakishou.fsaf.file.RawFile;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ByteString;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+import static com.github.adamantcheese.chan.core.saver.ImageSaver.BundledDownloadResult.Canceled;
+import static com.github.adamantcheese.chan.core.saver.ImageSaver.BundledDownloadResult.Success;
+
+/**
+ * Downloads the files for {@link ImageSaver}.<br>
+ * <br>
+ * Each host gets its own number of parallel downloads: it starts low, goes up by one after as many successes in a row,
+ * and is halved whenever the host times out, errors or asks to slow down, in which case the download is retried a
+ * little later. Files are written to a partial file, next to the destination when that's a plain file and in the cache
+ * otherwise, and a retried or resumed download continues it with a Range request. Files whose MD5 is known are checked
+ * against it, and aren't downloaded at all when the destination already has them or another save in the same batch is
+ * for the same file. Queued saves are kept in a {@link DownloadJournal} until they're done.
+ */
+class DownloadEngine {
+    private static final String TAG = "DownloadEngine";
+
+    private static final int MAX_TOTAL = 8;
+    private static final int INITIAL_PER_HOST = 2;
+    private static final int MAX_PER_HOST = 6;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 2000;
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+
+    interface Listener {
+        // main thread
+        void onTaskFinished(ImageSaveTask task, BundledDownloadResult result);
+
+        // main thread
+        void onTaskFailed(ImageSaveTask task, Throwable error);
+
+        // main thread, about once a second while bytes come in
+        void onProgress();
+
+        /**
+         * Background thread; for a save whose destination holds a different file.
+         */
+        @Nullable
+        AbstractFile findFreeDestination(ImageSaveTask task);
+    }
+
+    private final FileManager fileManager;
+    private final DownloadJournal journal;
+    private final Listener listener;
+    private final File partsDir = new File(getCacheDir(), "saver_parts");
+    private final OkHttpClient client = NetUtils.applicationClient.getHttpRedirectClient();
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_TOTAL);
+
+    @GuardedBy("this")
+    private final Map<String, Host> hosts = new HashMap<>();
+    @GuardedBy("this")
+    private final Set<Job> running = new HashSet<>();
+    @GuardedBy("this")
+    private final Set<Job> waiting = new HashSet<>();
+    // md5s of the files in this batch, to only save each once
+    @GuardedBy("this")
+    private final Set<String> batchHashes = new HashSet<>();
+    @GuardedBy("this")
+    private int pending;
+
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong bytesExpected = new AtomicLong();
+    private final Object progressLock = new Object();
+    @GuardedBy("progressLock")
+    private long lastTickTime;
+    @GuardedBy("progressLock")
+    private long lastTickBytes;
+    private volatile long bytesPerSecond;
+
+    DownloadEngine(FileManager fileManager, File journalFile, Listener listener) {
+        this.fileManager = fileManager;
+        this.journal = new DownloadJournal(journalFile);
+        this.listener = listener;
+    }
+
+    /**
+     * @return the saves left unfinished by the last process; only call this once, before enqueueing anything
+     */
+    List<DownloadJournal.Entry> getUnfinished() {
+        return journal.replay();
+    }
+
+    void enqueue(ImageSaveTask task, boolean albumSave) {
+        submit(new Job(task, task.isShareTask() ? -1 : journal.add(task, albumSave)));
+    }
+
+    /**
+     * Queue a save from {@link #getUnfinished()} again.
+     */
+    void resume(ImageSaveTask task, int journalId) {
+        submit(new Job(task, journalId));
+    }
+
+    /**
+     * Give up on a save from {@link #getUnfinished()}.
+     */
+    void drop(int journalId) {
+        journal.done(journalId);
+    }
+
+    private void submit(Job job) {
+        long size = job.task.getPostImage().size;
+        if (size > 0) bytesExpected.addAndGet(size);
+        synchronized (this) {
+            pending++;
+            host(job).queue.add(job);
+            dispatch();
+        }
+    }
+
+    void cancelAll() {
+        List<Job> dropped = new ArrayList<>();
+        synchronized (this) {
+            for (Host host : hosts.values()) {
+                dropped.addAll(host.queue);
+                host.queue.clear();
+            }
+            dropped.addAll(waiting);
+            waiting.clear();
+            for (Job job : running) {
+                job.canceled = true;
+                // the journal is cleared below, a new batch might start before this one notices
+                job.journalId = -1;
+                if (job.call != null) job.call.cancel();
+            }
+            pending -= dropped.size();
+            if (pending == 0) resetBatch();
+        }
+        journal.clear();
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            for (Job job : dropped) {
+                deletePart(job.task);
+            }
+        });
+    }
+
+    long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return the estimated seconds until the batch is done, or -1 if there's no estimate yet
+     */
+    long getEtaSeconds() {
+        long speed = bytesPerSecond;
+        long remaining = bytesExpected.get() - bytesDone.get();
+        return speed <= 0 || remaining <= 0 ? -1 : remaining / speed;
+    }
+
+    @GuardedBy("this")
+    private Host host(Job job) {
+        String key = job.task.getPostImage().imageUrl.host();
+        Host host = hosts.get(key);
+        if (host == null) {
+            host = new Host();
+            hosts.put(key, host);
+        }
+        return host;
+    }
+
+    // hosts take turns, so one slow host doesn't hold up the others
+    @GuardedBy("this")
+    private void dispatch() {
+        boolean started = true;
+        while (started && running.size() < MAX_TOTAL) {
+            started = false;
+            for (Host host : hosts.values()) {
+                if (running.size() >= MAX_TOTAL) break;
+                if (host.running < host.limit && !host.queue.isEmpty()) {
+                    Job job = host.queue.poll();
+                    host.running++;
+                    running.add(job);
+                    executor.execute(() -> run(job));
+                    started = true;
+                }
+            }
+        }
+    }
+
+    private void run(Job job) {
+        BundledDownloadResult result = null;
+        Throwable error = null;
+        try {
+            result = save(job);
+        } catch (Throwable e) {
+            error = e;
+        }
+
+        boolean hostTrouble = error != null && !job.canceled && isHostTrouble(error);
+        synchronized (this) {
+            running.remove(job);
+            Host host = host(job);
+            host.running--;
+            if (error == null) {
+                if (++host.successes >= host.limit) {
+                    host.limit = Math.min(MAX_PER_HOST, host.limit + 1);
+                    host.successes = 0;
+                }
+            } else if (hostTrouble) {
+                host.limit = Math.max(1, host.limit / 2);
+                host.successes = 0;
+            }
+
+            if (job.canceled) {
+                result = Canceled;
+                error = null;
+            } else if (hostTrouble && job.attempts < MAX_ATTEMPTS) {
+                waiting.add(job);
+                BackgroundUtils.runOnBackgroundThread(() -> retry(job), RETRY_DELAY_MS * job.attempts);
+                dispatch();
+                return;
+            }
+            dispatch();
+        }
+        finish(job, result, error);
+    }
+
+    private void retry(Job job) {
+        synchronized (this) {
+            // canceled while waiting
+            if (!waiting.remove(job)) return;
+            host(job).queue.add(job);
+            dispatch();
+        }
+    }
+
+    private void finish(Job job, @Nullable BundledDownloadResult result, @Nullable Throwable error) {
+        if (job.canceled) deletePart(job.task);
+        if (job.journalId >= 0) journal.done(job.journalId);
+        synchronized (this) {
+            if (error != null && job.md5 != null) batchHashes.remove(job.md5);
+            if (--pending == 0) resetBatch();
+        }
+
+        BackgroundUtils.runOnMainThread(() -> {
+            if (error != null) {
+                listener.onTaskFailed(job.task, error);
+            } else {
+                if (job.saved) job.task.onSaved();
+                listener.onTaskFinished(job.task, result);
+            }
+        });
+    }
+
+    @GuardedBy("this")
+    private void resetBatch() {
+        batchHashes.clear();
+        bytesDone.set(0);
+        bytesExpected.set(0);
+        bytesPerSecond = 0;
+        synchronized (progressLock) {
+            lastTickTime = 0;
+            lastTickBytes = 0;
+        }
+    }
+
+    private BundledDownloadResult save(Job job)
+            throws Exception {
+        job.attempts++;
+        ImageSaveTask task = job.task;
+        PostImage postImage = task.getPostImage();
+
+        if (!task.isShareTask()) {
+            if (job.md5 != null && job.attempts == 1) {
+                synchronized (this) {
+                    if (!batchHashes.add(job.md5)) {
+                        skip(postImage);
+                        return Success;
+                    }
+                }
+            }
+
+            AbstractFile destination = task.getDestination();
+            if (fileManager.exists(destination)) {
+                if (job.md5 == null || job.md5.equals(md5(destination))) {
+                    skip(postImage);
+                    job.saved = true;
+                    return Success;
+                }
+                AbstractFile free = listener.findFreeDestination(task);
+                if (free == null) throw new IOException("Could not find a free file name");
+                task.setDestination(free);
+            }
+        }
+
+        File stored = NetUtils.CONTENT_STORE.getStoredFile(postImage);
+        if (stored != null) {
+            skip(postImage);
+            saveFromStore(task, stored);
+            job.saved = true;
+            return Success;
+        }
+
+        File part = getPartFile(task);
+        download(job, part);
+        if (job.md5 != null && !job.md5.equals(md5(part))) {
+            deletePart(task);
+            throw new ChecksumMismatchException();
+        }
+        moveToDestination(task, part);
+        job.saved = true;
+        return Success;
+    }
+
+    private void download(Job job, File part)
+            throws Exception {
+        long existing = part.length();
+        if (job.attempts == 1 && existing > 0) {
+            // left over from an earlier process
+            bytesExpected.addAndGet(-existing);
+        }
+
+        Request.Builder request = new Request.Builder().url(job.task.getPostImage().imageUrl)
+                .cacheControl(NetUtilsClasses.ONE_DAY_CACHE);
+        if (existing > 0) {
+            request.header("Range", "bytes=" + existing + "-");
+        }
+        Call call = client.newCall(request.build());
+        synchronized (this) {
+            if (job.canceled) throw new IOException("Canceled");
+            job.call = call;
+        }
+
+        Response response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            throw new NetworkException(e);
+        }
+        try {
+            boolean append;
+            if (response.code() == 206) {
+                append = true;
+            } else if (response.isSuccessful()) {
+                // the server ignored the range
+                append = false;
+            } else if (response.code() == 416 && existing > 0) {
+                // the file changed or the partial file is bad, start over; without a partial file there's no range
+                response.close();
+                deletePart(job.task);
+                download(job, part);
+                return;
+            } else {
+                throw new HttpCodeException(response);
+            }
+
+            ResponseBody body = response.body();
+            if (body == null) throw new IOException("No body!");
+            File parent = part.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory for " + part.getPath());
+            }
+
+            BufferedSource source = body.source();
+            try (OutputStream out = new FileOutputStream(part, append)) {
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = readFromNetwork(source, buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    onBytes(read);
+                }
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private static int readFromNetwork(BufferedSource source, byte[] buffer)
+            throws NetworkException {
+        try {
+            return source.read(buffer);
+        } catch (IOException e) {
+            throw new NetworkException(e);
+        }
+    }
+
+    private void onBytes(int count) {
+        long done = bytesDone.addAndGet(count);
+        long now = SystemClock.elapsedRealtime();
+        synchronized (progressLock) {
+            if (now - lastTickTime < PROGRESS_INTERVAL_MS) return;
+            if (lastTickTime > 0) {
+                long current = (done - lastTickBytes) * 1000 / (now - lastTickTime);
+                bytesPerSecond = bytesPerSecond == 0 ? current : (bytesPerSecond * 7 + current * 3) / 10;
+            }
+            lastTickTime = now;
+            lastTickBytes = done;
+        }
+        BackgroundUtils.runOnMainThread(listener::onProgress);
+    }
+
+    private void skip(PostImage postImage) {
+        if (postImage.size > 0) bytesExpected.addAndGet(-postImage.size);
+    }
+
+    private File getPartFile(ImageSaveTask task) {
+        AbstractFile destination = task.getDestination();
+        if (!task.isShareTask() && destination instanceof RawFile) {
+            return new File(destination.getFullPath() + ".part");
+        }
+        String name = ByteString.encodeUtf8(task.getPostImage().imageUrl.toString()).md5().hex();
+        return new File(partsDir, name + ".part");
+    }
+
+    private void deletePart(ImageSaveTask task) {
+        File part = getPartFile(task);
+        if (!part.delete() && part.exists()) {
+            Logger.w(TAG, "Could not delete partial file " + part.getPath());
+        }
+    }
+
+    /**
+     * The file is already on disk under its hash; hard link it where it can be, as that takes no extra space, and copy it
+     * otherwise. Links only work within one filesystem, which the save directory usually isn't.
+     */
+    private void saveFromStore(ImageSaveTask task, File stored)
+            throws IOException {
+        File part = getPartFile(task);
+        File parent = part.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory for " + part.getPath());
+        }
+        //noinspection ResultOfMethodCallIgnored
+        part.delete();
+
+        boolean linked;
+        try {
+            Os.link(stored.getPath(), part.getPath());
+            linked = true;
+        } catch (ErrnoException e) {
+            Files.copy(stored, part);
+            linked = false;
+        }
+        moveToDestination(task, part);
+        NetUtils.CONTENT_STORE.onSavedFromStore(linked);
+    }
+
+    private void moveToDestination(ImageSaveTask task, File part)
+            throws IOException {
+        PostImage postImage = task.getPostImage();
+        if (task.isShareTask()) {
+            File shared = new File(new File(getCacheDir(), "requested"),
+                    StringUtils.fileNameRemoveBadCharacters(postImage.filename) + "." + postImage.extension
+            );
+            File parent = shared.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory for " + shared.getPath());
+            }
+            if (shared.exists() && !shared.delete() || !part.renameTo(shared)) {
+                throw new IOException("Could not move downloaded file to " + shared.getPath());
+            }
+            task.setDestination(fileManager.fromRawFile(shared));
+            return;
+        }
+
+        AbstractFile destination = task.getDestination();
+        if (destination instanceof RawFile && part.renameTo(new File(destination.getFullPath()))) return;
+
+        AbstractFile created = fileManager.create(destination);
+        if (created == null) {
+            throw new IOException("Could not create destination file, path = " + destination.getFullPath());
+        }
+        if (fileManager.isDirectory(created)) {
+            throw new IOException("Destination file is already a directory");
+        }
+        if (!fileManager.copyFileContents(fileManager.fromRawFile(part), created)) {
+            if (!fileManager.delete(created)) {
+                Logger.e(TAG, "Could not delete destination file after error");
+            }
+            throw new IOException("Could not copy source file into destination");
+        }
+        deletePart(task);
+    }
+
+    @Nullable
+    private String md5(AbstractFile file) {
+        try (InputStream in = fileManager.getInputStream(file)) {
+            return in == null ? null : md5(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String md5(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return md5(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String md5(InputStream in)
+            throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return ByteString.of(digest.digest()).hex();
+    }
+
+    // timeouts, dropped connections, server errors and rate limits; worth backing off from the host and retrying.
+    // Local failures, like the save location or a checksum, aren't the host's fault and wouldn't go away on a retry.
+    private static boolean isHostTrouble(Throwable error) {
+        if (error instanceof HttpCodeException) {
+            int code = ((HttpCodeException) error).code;
+            return code == 429 || code >= 500;
+        }
+        return error instanceof NetworkException;
+    }
+
+    private static class Host {
+        private int limit = INITIAL_PER_HOST;
+        private int running;
+        private int successes;
+        private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    }
+
+    private static class Job {
+        private final ImageSaveTask task;
+        // only set for md5s, other sites use other hashes
+        @Nullable
+        private final String md5;
+        private volatile int journalId;
+        private int attempts;
+        private volatile boolean canceled;
+        private boolean saved;
+        private Call call;
+
+        private Job(ImageSaveTask task, int journalId) {
+            this.task = task;
+            this.journalId = journalId;
+            String hash = task.getPostImage().fileHash;
+            this.md5 = hash != null && hash.length() == 32 ? hash : null;
+        }
+    }
+
+    /**
+     * Failed talking to the host, as opposed to failing to write the file.
+     */
+    private static class NetworkException
+            extends IOException {
+        private NetworkException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    private static class ChecksumMismatchException
+            extends IOException {
+        private ChecksumMismatchException() {
+            super("Downloaded file doesn't match its checksum");
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.saver;
+
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.HttpUrl;
+
+/**
+ * The saves that haven't finished yet, so that a batch picks up where it left off after the process dies.<br>
+ * <br>
+ * One record is appended when a save is queued and one when it's over, however it ended. Once nothing is pending the
+ * file is deleted, so it never grows past a single batch.
+ */
+class DownloadJournal {
+    private static final String TAG = "DownloadJournal";
+
+    // record types
+    private static final byte ADD = 1;
+    private static final byte DONE = 2;
+
+    private final File file;
+    // records are written in order, off the calling thread
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private int nextId;
+    private int pending;
+
+    DownloadJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the saves that were queued and never finished; call this once, before anything is added
+     */
+    synchronized List<Entry> replay() {
+        Map<Integer, Entry> entries = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int id = in.readInt();
+                nextId = Math.max(nextId, id + 1);
+                if (type == ADD) {
+                    Entry entry = new Entry();
+                    entry.url = in.readUTF();
+                    entry.serverFilename = in.readUTF();
+                    entry.filename = in.readUTF();
+                    entry.extension = in.readUTF();
+                    entry.fileHash = in.readUTF();
+                    entry.size = in.readLong();
+                    entry.subFolder = in.readUTF();
+                    entry.albumSave = in.readBoolean();
+                    entries.put(id, entry);
+                } else {
+                    entries.remove(id);
+                }
+            }
+        } catch (IOException ignored) {
+            // no journal, or a torn record from process death at the end; keep what was read
+        }
+
+        List<Entry> unfinished = new ArrayList<>();
+        for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+            entry.getValue().id = entry.getKey();
+            unfinished.add(entry.getValue());
+        }
+        pending = unfinished.size();
+        if (pending == 0) clear();
+        return unfinished;
+    }
+
+    /**
+     * Saves are queued from the main thread, so this only hands the record to the writer.
+     *
+     * @return the id to mark the save as done with
+     */
+    synchronized int add(ImageSaveTask task, boolean albumSave) {
+        int id = nextId++;
+        pending++;
+        PostImage postImage = task.getPostImage();
+        String subFolder = nonNull(task.getSubFolder());
+        writer.execute(() -> {
+            try (DataOutputStream out = open()) {
+                out.writeByte(ADD);
+                out.writeInt(id);
+                out.writeUTF(postImage.imageUrl.toString());
+                out.writeUTF(nonNull(postImage.serverFilename));
+                out.writeUTF(nonNull(postImage.filename));
+                out.writeUTF(nonNull(postImage.extension));
+                out.writeUTF(nonNull(postImage.fileHash));
+                out.writeLong(postImage.size);
+                out.writeUTF(subFolder);
+                out.writeBoolean(albumSave);
+            } catch (IOException e) {
+                Logger.w(TAG, "Failed to add to download journal", e);
+            }
+        });
+        return id;
+    }
+
+    synchronized void done(int id) {
+        if (--pending <= 0) {
+            clear();
+            return;
+        }
+        writer.execute(() -> {
+            try (DataOutputStream out = open()) {
+                out.writeByte(DONE);
+                out.writeInt(id);
+            } catch (IOException e) {
+                Logger.w(TAG, "Failed to write to download journal", e);
+            }
+        });
+    }
+
+    synchronized void clear() {
+        pending = 0;
+        writer.execute(() -> {
+            if (!file.delete() && file.exists()) {
+                Logger.w(TAG, "Failed to delete download journal");
+            }
+        });
+    }
+
+    private DataOutputStream open()
+            throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    private static String nonNull(@Nullable String s) {
+        return s == null ? "" : s;
+    }
+
+    static class Entry {
+        int id;
+        String url;
+        String serverFilename;
+        String filename;
+        String extension;
+        String fileHash;
+        long size;
+        String subFolder;
+        boolean albumSave;
+
+        /**
+         * @return the save as a task again, or null if the url doesn't parse anymore
+         */
+        @Nullable
+        ImageSaveTask toTask() {
+            HttpUrl imageUrl = HttpUrl.parse(url);
+            if (imageUrl == null) return null;
+            PostImage postImage = new PostImage.Builder().serverFilename(serverFilename)
+                    .imageUrl(imageUrl)
+                    .filename(filename)
+                    .extension(extension)
+                    .fileHash(fileHash, false)
+                    .size(size)
+                    .build();
+            ImageSaveTask task = new ImageSaveTask(postImage, false);
+            if (!subFolder.isEmpty()) task.setSubFolder(subFolder);
+            return task;
+        }
+    }
+}
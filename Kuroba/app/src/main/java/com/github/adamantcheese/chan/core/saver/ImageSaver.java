@@ -17,12 +17,10 @@
 package com.github.adamantcheese.chan.core.saver;
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.widget.Toast;
 
-import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
@@ -50,19 +48,14 @@ import org.greenrobot.eventbus.ThreadMode;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.processors.FlowableProcessor;
-import io.reactivex.processors.PublishProcessor;
 import io.reactivex.schedulers.Schedulers;
-import okhttp3.HttpUrl;
 
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.BundledDownloadResult.Canceled;
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.BundledDownloadResult.Success;
@@ -75,18 +68,8 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getString;
 import static com.github.adamantcheese.chan.utils.StringUtils.maskImageUrl;
 
-public class ImageSaver {
-    /**
-     * We don't want to process all images at once because that will freeze the phone. Also we don't
-     * want to process images one by one because it will be way too slow. So we use this parameter
-     * for maximum amount of images processed concurrently.
-     */
-    private static final int CONCURRENT_REQUESTS_COUNT = 4;
-    /**
-     * We use unbounded queue and this variable is it's initial capacity.
-     */
-    private static final int UNBOUNDED_QUEUE_MIN_CAPACITY = 32;
-
+public class ImageSaver
+        implements DownloadEngine.Listener {
     /**
      * Amount of successfully downloaded images
      */
@@ -101,64 +84,18 @@ public class ImageSaver {
     private final AtomicInteger failedTasks = new AtomicInteger(0);
 
     private final FileManager fileManager;
-
-    /**
-     * Reactive queue used for batch image downloads.
-     */
-    private final FlowableProcessor<ImageSaveTask> imageSaverQueue = PublishProcessor.create();
-
-    /**
-     * Only for batch downloads. Holds the urls of all images in a batch. Use for batch canceling.
-     * If an image url is not present in the activeDownloads that means that it was canceled.
-     */
-    @GuardedBy("itself")
-    private final Set<HttpUrl> activeDownloads = new HashSet<>(64);
+    private final DownloadEngine downloadEngine;
 
     private final Scheduler workerScheduler = Schedulers.from(new ForkJoinPool(1));
 
-    /**
-     * This is a singleton class so we don't care about the disposable since we will never should
-     * dispose of this stream
-     */
-    @SuppressLint("CheckResult")
     public ImageSaver(FileManager fileManager) {
         this.fileManager = fileManager;
+        this.downloadEngine =
+                new DownloadEngine(fileManager, new File(getAppContext().getFilesDir(), "image_saver.journal"), this);
         EventBus.getDefault().register(this);
 
-        imageSaverQueue
-                // Unbounded queue
-                .onBackpressureBuffer(UNBOUNDED_QUEUE_MIN_CAPACITY, false, true)
-                .observeOn(workerScheduler)
-                .flatMapSingle((t) -> Single.just(t)
-                        .observeOn(workerScheduler)
-                        .flatMap((task) -> {
-                            synchronized (activeDownloads) {
-                                boolean isStillActive = activeDownloads.contains(task.getPostImage().imageUrl);
-
-                                // If the download is not present in activeDownloads that means that
-                                // it wat canceled, so exit immediately
-                                if (!isStillActive) {
-                                    return Single.just(Canceled);
-                                }
-                            }
-
-                            return task.run();
-                        })
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .doOnError((error) -> imageSaveTaskFailed(t, error))
-                        .doOnSuccess((success) -> imageSaveTaskFinished(t, success))
-                        .doOnError((error) -> Logger.e(ImageSaver.this, "Unhandled exception", error))
-                        .onErrorReturnItem(BundledDownloadResult.Failure), false, CONCURRENT_REQUESTS_COUNT)
-                .subscribe((result) -> {
-                    // Do nothing
-                }, (error) -> {
-                    throw new RuntimeException(
-                            ImageSaver.this + " Uncaught exception!!! " + "workerQueue is in error state now!!! "
-                                    + "This should not happen!!!, original error = " + error.getMessage());
-                }, () -> {
-                    throw new RuntimeException(
-                            ImageSaver.this + " workerQueue stream has completed!!! This should not happen!!!");
-                });
+        // pick up whatever was still downloading when the process died
+        workerScheduler.scheduleDirect(this::resumeUnfinished);
     }
 
     public void startDownloadTask(Context context, final ImageSaveTask task, DownloadTaskCallbacks callbacks) {
@@ -200,7 +137,7 @@ public class ImageSaver {
         task.setDestination(deduplicateFile(postImage, task, saveLocation, false));
 
         // At this point we already have disk permissions
-        startTask(task);
+        startTask(task, false);
         updateNotification();
     }
 
@@ -287,32 +224,26 @@ public class ImageSaver {
         return baseSaveDir;
     }
 
-    private void imageSaveTaskFailed(ImageSaveTask task, Throwable error) {
+    @Override
+    public void onTaskFailed(ImageSaveTask task, Throwable error) {
         BackgroundUtils.ensureMainThread();
         failedTasks.incrementAndGet();
 
-        synchronized (activeDownloads) {
-            activeDownloads.remove(task.getPostImage().imageUrl);
-        }
-
         if (checkBatchCompleted()) {
             onBatchCompleted();
         }
 
-        Logger.e(this, "imageSaveTaskFailed imageUrl = " + maskImageUrl(task.getPostImage().imageUrl));
+        Logger.e(this, "imageSaveTaskFailed imageUrl = " + maskImageUrl(task.getPostImage().imageUrl), error);
 
         String errorMessage = getString(R.string.image_saver_failed_to_save_image, error.getMessage());
         showToast(getAppContext(), errorMessage, Toast.LENGTH_LONG);
     }
 
-    private void imageSaveTaskFinished(ImageSaveTask task, BundledDownloadResult result) {
+    @Override
+    public void onTaskFinished(ImageSaveTask task, BundledDownloadResult result) {
         BackgroundUtils.ensureMainThread();
         doneTasks.incrementAndGet();
 
-        synchronized (activeDownloads) {
-            activeDownloads.remove(task.getPostImage().imageUrl);
-        }
-
         Logger.d(this, "imageSaveTaskFinished imageUrl = " + maskImageUrl(task.getPostImage().imageUrl));
         boolean wasAlbumSave = totalTasks.get() > 1;
 
@@ -322,7 +253,7 @@ public class ImageSaver {
 
         updateNotification();
 
-        // Do not show the toast when image download has failed; we will show it in imageSaveTaskFailed
+        // Do not show the toast when image download has failed; we will show it in onTaskFailed
         // Also don't show the toast if the task was a share, or if this is an album save task
         if (result == Success && !task.isShareTask()) {
             if (totalTasks.get() == 0) {
@@ -333,6 +264,18 @@ public class ImageSaver {
         }
     }
 
+    @Override
+    public void onProgress() {
+        updateNotification();
+    }
+
+    @Nullable
+    @Override
+    public AbstractFile findFreeDestination(ImageSaveTask task) {
+        AbstractFile saveLocation = getSaveLocation(task);
+        return saveLocation == null ? null : deduplicateFile(task.getPostImage(), task, saveLocation, false);
+    }
+
     private boolean checkBatchCompleted() {
         return doneTasks.get() + failedTasks.get() >= totalTasks.get();
     }
@@ -370,7 +313,7 @@ public class ImageSaver {
                 }
 
                 task.setDestination(deduplicateFile(postImage, task, saveLocation, true));
-                startTask(task);
+                startTask(task, true);
             }
 
             return allSuccess;
@@ -380,20 +323,33 @@ public class ImageSaver {
                 .doOnEvent((event, throwable) -> updateNotification());
     }
 
-    private void startTask(ImageSaveTask task) {
-        synchronized (activeDownloads) {
-            activeDownloads.add(task.getPostImage().imageUrl);
-        }
-
+    private void startTask(ImageSaveTask task, boolean albumSave) {
         totalTasks.incrementAndGet();
-        imageSaverQueue.onNext(task);
+        downloadEngine.enqueue(task, albumSave);
     }
 
-    private void cancelAll() {
-        synchronized (activeDownloads) {
-            activeDownloads.clear();
+    private void resumeUnfinished() {
+        List<DownloadJournal.Entry> unfinished = downloadEngine.getUnfinished();
+        if (unfinished.isEmpty()) return;
+        Logger.i(this, "Resuming " + unfinished.size() + " unfinished image saves");
+
+        for (DownloadJournal.Entry entry : unfinished) {
+            ImageSaveTask task = entry.toTask();
+            AbstractFile saveLocation = task == null ? null : getSaveLocation(task);
+            if (saveLocation == null) {
+                downloadEngine.drop(entry.id);
+                continue;
+            }
+
+            task.setDestination(deduplicateFile(task.getPostImage(), task, saveLocation, entry.albumSave));
+            totalTasks.incrementAndGet();
+            downloadEngine.resume(task, entry.id);
         }
+        BackgroundUtils.runOnMainThread(this::updateNotification);
+    }
 
+    private void cancelAll() {
+        downloadEngine.cancelAll();
         onBatchCompleted();
     }
 
@@ -408,6 +364,8 @@ public class ImageSaver {
                 service.putExtra(SavingNotification.DONE_TASKS_KEY, doneTasks.get());
                 service.putExtra(SavingNotification.FAILED_TASKS_KEY, failedTasks.get());
                 service.putExtra(SavingNotification.TOTAL_TASKS_KEY, totalTasks.get());
+                service.putExtra(SavingNotification.BYTES_PER_SECOND_KEY, downloadEngine.getBytesPerSecond());
+                service.putExtra(SavingNotification.ETA_SECONDS_KEY, downloadEngine.getEtaSeconds());
                 ContextCompat.startForegroundService(getAppContext(), service);
             } else {
                 getAppContext().stopService(service);
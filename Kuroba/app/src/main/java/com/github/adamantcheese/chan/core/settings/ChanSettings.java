@@ -23,6 +23,7 @@ import android.net.Uri;
 import com.github.adamantcheese.chan.BuildConfig;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.export.ThreadSnapshot;
 import com.github.adamantcheese.chan.core.settings.base_dir.SavedFilesBaseDirSetting;
 import com.github.adamantcheese.chan.core.settings.primitives.BooleanSetting;
 import com.github.adamantcheese.chan.core.settings.primitives.IntegerSetting;
@@ -34,6 +35,7 @@ import com.github.adamantcheese.chan.core.settings.provider.SettingProvider;
 import com.github.adamantcheese.chan.core.settings.provider.SharedPreferencesSettingProvider;
 import com.github.adamantcheese.chan.ui.adapter.PostsFilter;
 import com.github.adamantcheese.chan.ui.theme.ThemeHelper;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
 
 import java.io.File;
@@ -239,6 +241,7 @@ public class ChanSettings {
     //region BEHAVIOUR
     // General
     public static final BooleanSetting autoRefreshThread;
+    public static final BooleanSetting threadSnapshots;
     public static final BooleanSetting controllerSwipeable;
     public static final BooleanSetting openLinkConfirmation;
     public static final BooleanSetting openLinkBrowser;
@@ -260,6 +263,8 @@ public class ChanSettings {
     // Other options
     public static final BooleanSetting fullUserRotationEnable;
     public static final BooleanSetting allowFilePickChooser;
+    public static final IntegerSetting historyRetentionDays;
+    public static final IntegerSetting postHideRetentionDays;
 
     // Proxy
     public static final BooleanSetting proxyEnabled;
@@ -290,6 +295,9 @@ public class ChanSettings {
     public static final OptionsSetting<ImageClickPreloadStrategy> imageClickPreloadStrategy;
     public static final BooleanSetting autoLoadThreadImages;
     public static final IntegerSetting fileCacheSize;
+    public static final IntegerSetting contentStoreSize;
+    public static final IntegerSetting videoCacheSize;
+    public static final IntegerSetting videoPrefetchSeconds;
     //endregion
 
     //region EXPERIMENTAL
@@ -401,6 +409,10 @@ public class ChanSettings {
             //region BEHAVIOUR
             // General
             autoRefreshThread = new BooleanSetting(p, "preference_auto_refresh_thread", true);
+            threadSnapshots = new BooleanSetting(p, "preference_thread_snapshots", true);
+            threadSnapshots.addCallback((s, v) -> {
+                if (!v) BackgroundUtils.runOnBackgroundThread(ThreadSnapshot::deleteAll);
+            });
             controllerSwipeable = new BooleanSetting(p, "preference_controller_swipeable", true);
             openLinkConfirmation = new BooleanSetting(p, "preference_open_link_confirmation", false);
             openLinkBrowser = new BooleanSetting(p, "preference_open_link_browser", false);
@@ -422,6 +434,9 @@ public class ChanSettings {
             // Other options
             fullUserRotationEnable = new BooleanSetting(p, "full_user_rotation_enable", true);
             allowFilePickChooser = new BooleanSetting(p, "allow_file_picker_chooser", false);
+            historyRetentionDays = new IntegerSetting(p, "preference_history_retention_days", 30);
+            // 0 keeps post hides until the count cap trims them
+            postHideRetentionDays = new IntegerSetting(p, "preference_post_hide_retention_days", 0);
 
             // Proxy
             proxyEnabled = new BooleanSetting(p, "preference_proxy_enabled", false);
@@ -474,6 +489,9 @@ public class ChanSettings {
             );
             autoLoadThreadImages = new BooleanSetting(p, "preference_auto_load_thread", false);
             fileCacheSize = new IntegerSetting(p, "preference_file_cache_size", 512);
+            contentStoreSize = new IntegerSetting(p, "preference_content_store_size", 256);
+            videoCacheSize = new IntegerSetting(p, "preference_video_cache_size", 100);
+            videoPrefetchSeconds = new IntegerSetting(p, "preference_video_prefetch_seconds", 5);
             //endregion
 
             //region EXPERIMENTAL
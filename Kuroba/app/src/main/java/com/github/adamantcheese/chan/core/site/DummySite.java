@@ -2,7 +2,6 @@ package com.github.adamantcheese.chan.core.site;
 
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
-import android.util.JsonReader;
 
 import androidx.annotation.NonNull;
 import androidx.core.util.Pair;
@@ -12,6 +11,7 @@ import com.github.adamantcheese.chan.core.model.InternalSiteArchive;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.settings.primitives.JsonSettings;
@@ -193,13 +193,13 @@ public class DummySite
             }
 
             @Override
-            public void loadThread(JsonReader reader, ChanReaderProcessingQueue queue) {}
+            public void loadThread(ByteJsonReader reader, ChanReaderProcessingQueue queue) {}
 
             @Override
-            public void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue) {}
+            public void loadCatalog(ByteJsonReader reader, ChanReaderProcessingQueue queue) {}
 
             @Override
-            public void readPostObject(JsonReader reader, ChanReaderProcessingQueue queue) {}
+            public void readPostObject(ByteJsonReader reader, ChanReaderProcessingQueue queue) {}
         };
     }
 
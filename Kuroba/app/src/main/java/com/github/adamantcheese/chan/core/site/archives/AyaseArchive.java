@@ -4,6 +4,7 @@ import android.util.JsonReader;
 
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.site.common.DefaultPostParser;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderProcessingQueue;
 import com.github.adamantcheese.chan.core.site.parser.CommentParser;
@@ -52,7 +53,7 @@ public class AyaseArchive
 
         @Override
         public void loadThread(
-                JsonReader reader, ChanReaderProcessingQueue queue
+                ByteJsonReader reader, ChanReaderProcessingQueue queue
         )
                 throws Exception {
             throw new NotImplementedError();
@@ -75,7 +76,7 @@ public class AyaseArchive
 
         @Override
         public void readPostObject(
-                JsonReader reader, ChanReaderProcessingQueue queue
+                ByteJsonReader reader, ChanReaderProcessingQueue queue
         )
                 throws Exception {
             Post.Builder builder = new Post.Builder();
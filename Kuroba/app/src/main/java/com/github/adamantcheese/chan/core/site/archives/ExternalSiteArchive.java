@@ -8,6 +8,7 @@ import androidx.core.util.Pair;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
 import com.github.adamantcheese.chan.core.site.DummySite;
 import com.github.adamantcheese.chan.core.site.Site;
@@ -211,16 +212,16 @@ public abstract class ExternalSiteArchive
         public abstract PostParser getParser();
 
         @Override
-        public abstract void loadThread(JsonReader reader, ChanReaderProcessingQueue queue)
+        public abstract void loadThread(ByteJsonReader reader, ChanReaderProcessingQueue queue)
                 throws Exception;
 
         @Override
-        public void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue) {
+        public void loadCatalog(ByteJsonReader reader, ChanReaderProcessingQueue queue) {
             // external archives don't support catalogs
         }
 
         @Override
-        public abstract void readPostObject(JsonReader reader, ChanReaderProcessingQueue queue)
+        public abstract void readPostObject(ByteJsonReader reader, ChanReaderProcessingQueue queue)
                 throws Exception;
     }
 }
@@ -11,6 +11,7 @@ import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.core.site.common.DefaultPostParser;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderProcessingQueue;
@@ -35,6 +36,31 @@ import okhttp3.HttpUrl;
 public class FoolFuukaArchive
         extends ExternalSiteArchive {
 
+    private static final ByteJsonReader.Names POST_KEYS = ByteJsonReader.Names.of("num",
+            "thread_num",
+            "op",
+            "timestamp",
+            "capcode",
+            "name",
+            "trip",
+            "title",
+            "comment_processed",
+            "sticky",
+            "locked",
+            "media"
+    );
+    private static final ByteJsonReader.Names MEDIA_KEYS = ByteJsonReader.Names.of("spoiler",
+            "media_w",
+            "media_h",
+            "media_size",
+            "media_filename",
+            "media_hash",
+            "remote_media_link",
+            "media_link",
+            "media_orig",
+            "thumb_link"
+    );
+
     private FoolFuukaReader reader;
 
     public FoolFuukaArchive(
@@ -58,7 +84,7 @@ public class FoolFuukaArchive
 
         @Override
         public void loadThread(
-                JsonReader reader, ChanReaderProcessingQueue queue
+                ByteJsonReader reader, ChanReaderProcessingQueue queue
         )
                 throws Exception {
             reader.beginObject(); // start JSON
@@ -84,7 +110,7 @@ public class FoolFuukaArchive
 
         @Override
         public void readPostObject(
-                JsonReader reader, ChanReaderProcessingQueue queue
+                ByteJsonReader reader, ChanReaderProcessingQueue queue
         )
                 throws Exception {
             Post.Builder builder = new Post.Builder();
@@ -92,7 +118,7 @@ public class FoolFuukaArchive
             reader.nextName(); // "op" or post number; not necessary as it's in the rest of the data so ignore this
             reader.beginObject(); // post object itself
             while (reader.hasNext()) {
-                String key = reader.nextName();
+                String key = reader.nextName(POST_KEYS);
                 switch (key) {
                     case "num":
                         builder.no(reader.nextInt());
@@ -158,7 +184,7 @@ public class FoolFuukaArchive
                         PostImage.Builder imageBuilder = new PostImage.Builder();
                         reader.beginObject();
                         while (reader.hasNext()) {
-                            String mediaKey = reader.nextName();
+                            String mediaKey = reader.nextName(MEDIA_KEYS);
                             switch (mediaKey) {
                                 case "spoiler":
                                     imageBuilder.spoiler(reader.nextInt() == 1);
@@ -0,0 +1,184 @@
+package com.github.adamantcheese.chan.core.site.common;
+
+import android.util.JsonToken;
+
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
+import com.github.adamantcheese.chan.core.site.parser.CatalogScanner;
+import com.github.adamantcheese.chan.utils.StringUtils;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+
+/**
+ * Scans catalogs in the 4chan API format, which vichan boards also serve: an array of pages, each with a threads
+ * array of post objects.
+ */
+public class FutabaCatalogScanner
+        implements CatalogScanner {
+    public static final FutabaCatalogScanner INSTANCE = new FutabaCatalogScanner();
+
+    private static final ByteJsonReader.Names THREAD_KEYS = ByteJsonReader.Names.of("no",
+            "sub",
+            "name",
+            "com",
+            "trip",
+            "id",
+            "capcode",
+            "sticky",
+            "country",
+            "board_flag",
+            "tim",
+            "ext",
+            "filename",
+            "md5",
+            "extra_files"
+    );
+
+    private FutabaCatalogScanner() {}
+
+    @Override
+    public void scanCatalog(ByteJsonReader reader, Callback callback)
+            throws Exception {
+        ScannedThread thread = new ScannedThread();
+        reader.beginArray(); // Array of pages
+
+        while (reader.hasNext()) {
+            reader.beginObject(); // Page object
+
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("threads")) {
+                    reader.beginArray(); // Threads array
+
+                    while (reader.hasNext()) {
+                        thread.reset();
+                        readThread(reader, thread);
+                        if (thread.no > 0) {
+                            callback.onThread(thread);
+                        }
+                    }
+
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+        }
+
+        reader.endArray();
+    }
+
+    private void readThread(ByteJsonReader reader, ScannedThread thread)
+            throws IOException {
+        String fileName = null;
+        String fileHash = null;
+        String countryCode = null;
+        String boardFlagCode = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName(THREAD_KEYS);
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (key) {
+                case "no":
+                    thread.no = reader.nextInt();
+                    break;
+                case "sub":
+                    thread.subject = Parser.unescapeEntities(reader.nextString(), false);
+                    break;
+                case "name":
+                    thread.name = Parser.unescapeEntities(reader.nextString(), false);
+                    break;
+                case "com":
+                    thread.setRawComment(reader.nextString());
+                    break;
+                case "trip":
+                    thread.tripcode = reader.nextString();
+                    break;
+                case "id":
+                    thread.posterId = reader.nextString();
+                    break;
+                case "capcode":
+                    thread.capcode = reader.nextString();
+                    break;
+                case "sticky":
+                    thread.sticky = reader.nextInt() == 1;
+                    break;
+                case "country":
+                    countryCode = reader.nextString();
+                    break;
+                case "board_flag":
+                    boardFlagCode = reader.nextString();
+                    break;
+                case "tim":
+                    thread.fileId = reader.nextString();
+                    break;
+                case "ext":
+                    thread.fileExt = reader.nextString().replace(".", "");
+                    break;
+                case "filename":
+                    fileName = reader.nextString();
+                    break;
+                case "md5":
+                    fileHash = reader.nextString();
+                    break;
+                case "extra_files":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readExtraFile(reader, thread);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        // the main file goes first, as it does in the parsed post
+        if (fileName != null) {
+            thread.filenames.add(0, Parser.unescapeEntities(fileName, false));
+        }
+        if (fileHash != null && !fileHash.isEmpty()) {
+            thread.fileHashes.add(0, StringUtils.decodeBase64(fileHash));
+        }
+        // matches the order the full reader adds flag icons in
+        if (countryCode != null) {
+            thread.flagCode = countryCode;
+        } else if (boardFlagCode != null) {
+            thread.flagCode = boardFlagCode;
+        }
+    }
+
+    private void readExtraFile(ByteJsonReader reader, ScannedThread thread)
+            throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            // some vichan boards put stray empty arrays in here
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (key.equals("filename")) {
+                thread.filenames.add(Parser.unescapeEntities(reader.nextString(), false));
+            } else if (key.equals("md5")) {
+                String hash = reader.nextString();
+                if (!hash.isEmpty()) thread.fileHashes.add(StringUtils.decodeBase64(hash));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -1,15 +1,15 @@
 package com.github.adamantcheese.chan.core.site.common;
 
-import android.util.JsonReader;
-
 import androidx.core.util.Pair;
 
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostHttpIcon;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints.ICON_TYPE;
+import com.github.adamantcheese.chan.core.site.parser.CatalogScanner;
 import com.github.adamantcheese.chan.core.site.parser.ChanReader;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderProcessingQueue;
 import com.github.adamantcheese.chan.core.site.parser.CommentParser;
@@ -28,6 +28,41 @@ import static com.github.adamantcheese.chan.core.site.SiteEndpoints.makeArgument
 
 public class FutabaChanReader
         implements ChanReader {
+    private static final ByteJsonReader.Names POST_KEYS = ByteJsonReader.Names.of("no",
+            "sub",
+            "name",
+            "com",
+            "tim",
+            "time",
+            "ext",
+            "w",
+            "h",
+            "fsize",
+            "filename",
+            "trip",
+            "country",
+            "country_name",
+            "board_flag",
+            "flag_name",
+            "spoiler",
+            "resto",
+            "filedeleted",
+            "sticky",
+            "closed",
+            "archived",
+            "replies",
+            "images",
+            "unique_ips",
+            "last_modified",
+            "id",
+            "capcode",
+            "since4pass",
+            "extra_files",
+            "md5"
+    );
+    private static final ByteJsonReader.Names IMAGE_KEYS =
+            ByteJsonReader.Names.of("tim", "fsize", "w", "h", "spoiler", "ext", "filename", "md5");
+
     private final PostParser postParser;
 
     public FutabaChanReader() {
@@ -41,7 +76,12 @@ public class FutabaChanReader
     }
 
     @Override
-    public void loadThread(JsonReader reader, ChanReaderProcessingQueue queue)
+    public CatalogScanner getCatalogScanner() {
+        return FutabaCatalogScanner.INSTANCE;
+    }
+
+    @Override
+    public void loadThread(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         reader.beginObject();
         // Page object
@@ -63,7 +103,7 @@ public class FutabaChanReader
     }
 
     @Override
-    public void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void loadCatalog(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         reader.beginArray(); // Array of pages
 
@@ -91,7 +131,7 @@ public class FutabaChanReader
     }
 
     @Override
-    public void readPostObject(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void readPostObject(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         Post.Builder builder = new Post.Builder();
         builder.board(queue.loadable.board);
@@ -122,13 +162,18 @@ public class FutabaChanReader
         // 4chan pass leaf
         int since4pass = 0;
 
+        // the cached post is used as-is, so its comment doesn't need decoding; "no" comes first in the API
+        boolean reused = false;
+
         reader.beginObject();
         while (reader.hasNext()) {
-            String key = reader.nextName();
+            String key = reader.nextName(POST_KEYS);
 
             switch (key) {
                 case "no":
                     builder.no(reader.nextInt());
+                    // the thread's OP is always read in full, it is copied over later
+                    reused = builder.no != queue.loadable.no && queue.getCachedPost(builder.no) != null;
                     break;
                 /*case "now":
                     post.date = reader.nextString();
@@ -140,7 +185,11 @@ public class FutabaChanReader
                     builder.name(reader.nextString());
                     break;
                 case "com":
-                    builder.comment(reader.nextString());
+                    if (reused) {
+                        reader.skipValue();
+                    } else {
+                        builder.comment(reader.nextString());
+                    }
                     break;
                 case "tim":
                     fileId = reader.nextString();
@@ -321,7 +370,7 @@ public class FutabaChanReader
         queue.addForParse(builder);
     }
 
-    private PostImage readPostImage(JsonReader reader, Post.Builder builder, SiteEndpoints endpoints)
+    private PostImage readPostImage(ByteJsonReader reader, Post.Builder builder, SiteEndpoints endpoints)
             throws IOException {
         reader.beginObject();
 
@@ -336,7 +385,7 @@ public class FutabaChanReader
         String fileHash = null;
 
         while (reader.hasNext()) {
-            switch (reader.nextName()) {
+            switch (reader.nextName(IMAGE_KEYS)) {
                 case "tim":
                     fileId = reader.nextString();
                     break;
@@ -1,12 +1,11 @@
 package com.github.adamantcheese.chan.core.site.common.taimaba;
 
-import android.util.JsonReader;
-
 import androidx.core.util.Pair;
 
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostHttpIcon;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints.ICON_TYPE;
@@ -26,12 +25,41 @@ import static com.github.adamantcheese.chan.core.site.SiteEndpoints.makeArgument
 
 public class TaimabaApi
         extends CommonSite.CommonApi {
+    private static final ByteJsonReader.Names POST_KEYS = ByteJsonReader.Names.of("no",
+            "resto",
+            "sticky",
+            "closed",
+            "time",
+            "name",
+            "trip",
+            "id",
+            "sub",
+            "com",
+            "filename",
+            "ext",
+            "fsize",
+            "w",
+            "h",
+            "country",
+            "country_name",
+            "spoiler",
+            "archived",
+            "replies",
+            "images",
+            "unique_ips",
+            "last_modified",
+            "capcode",
+            "extra_files"
+    );
+    private static final ByteJsonReader.Names IMAGE_KEYS =
+            ByteJsonReader.Names.of("fsize", "w", "h", "spoiler", "ext", "filename");
+
     public TaimabaApi(CommonSite commonSite) {
         super(commonSite);
     }
 
     @Override
-    public void loadThread(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void loadThread(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         reader.beginObject();
         // Page object
@@ -53,7 +81,7 @@ public class TaimabaApi
     }
 
     @Override
-    public void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void loadCatalog(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         reader.beginArray(); // Array of pages
 
@@ -81,7 +109,7 @@ public class TaimabaApi
     }
 
     @Override
-    public void readPostObject(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void readPostObject(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         Post.Builder builder = new Post.Builder();
         builder.board(queue.loadable.board);
@@ -113,7 +141,7 @@ public class TaimabaApi
 
         reader.beginObject();
         while (reader.hasNext()) {
-            String key = reader.nextName();
+            String key = reader.nextName(POST_KEYS);
 
             switch (key) {
                 case "no":
@@ -272,7 +300,7 @@ public class TaimabaApi
     }
 
     private PostImage readPostImage(
-            JsonReader reader, Post.Builder builder, SiteEndpoints endpoints
+            ByteJsonReader reader, Post.Builder builder, SiteEndpoints endpoints
     )
             throws IOException {
         reader.beginObject();
@@ -285,7 +313,7 @@ public class TaimabaApi
         String fileName = null;
 
         while (reader.hasNext()) {
-            switch (reader.nextName()) {
+            switch (reader.nextName(IMAGE_KEYS)) {
                 case "fsize":
                     fileSize = reader.nextLong();
                     break;
@@ -18,8 +18,10 @@ package com.github.adamantcheese.chan.core.site.common.vichan;
 
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ChainConverter;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.site.SiteAuthentication;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPages;
@@ -44,6 +46,7 @@ import okhttp3.HttpUrl;
 import okhttp3.Response;
 
 import static android.text.TextUtils.isEmpty;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.BYTE_JSON_CONVERTER;
 
 public class VichanActions
         extends CommonSite.CommonActions {
@@ -181,7 +184,14 @@ public class VichanActions
     @Override
     public void pages(Board board, ResponseResult<ChanPages> pagesListener) {
         // Vichan keeps the pages and the catalog as one JSON unit, so parse those here
-        NetUtils.makeJsonRequest(site.endpoints().catalog(board),
+        NetUtils.makeRequest(NetUtils.applicationClient,
+                site.endpoints().catalog(board),
+                new ChainConverter<ChanPages, ByteJsonReader>(reader -> {
+                    VichanApi api = (VichanApi) site.chanReader();
+                    return api.readCatalogWithPages(reader,
+                            new ChanReaderProcessingQueue(new ArrayList<>(), Loadable.forCatalog(board))
+                    );
+                }).chain(BYTE_JSON_CONVERTER),
                 new ResponseResult<ChanPages>() {
                     @Override
                     public void onFailure(Exception e) {
@@ -194,9 +204,7 @@ public class VichanActions
                         pagesListener.onSuccess(result);
                     }
                 },
-                response -> ((VichanApi) site.chanReader()).readCatalogWithPages(response,
-                        new ChanReaderProcessingQueue(new ArrayList<>(), Loadable.forCatalog(board))
-                ),
+                null,
                 NetUtilsClasses.NO_CACHE
         );
     }
@@ -1,13 +1,12 @@
 package com.github.adamantcheese.chan.core.site.common.vichan;
 
-import android.util.JsonReader;
-
 import androidx.annotation.NonNull;
 import androidx.core.util.Pair;
 
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostHttpIcon;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.PassthroughBitmapResult;
 import com.github.adamantcheese.chan.core.repository.PageRepository;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints;
@@ -16,6 +15,8 @@ import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPage
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPages;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ThreadNoTimeModPair;
 import com.github.adamantcheese.chan.core.site.common.CommonSite;
+import com.github.adamantcheese.chan.core.site.common.FutabaCatalogScanner;
+import com.github.adamantcheese.chan.core.site.parser.CatalogScanner;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderProcessingQueue;
 
 import org.jsoup.parser.Parser;
@@ -31,12 +32,48 @@ import static com.github.adamantcheese.chan.core.site.SiteEndpoints.makeArgument
 
 public class VichanApi
         extends CommonSite.CommonApi {
+    private static final ByteJsonReader.Names POST_KEYS = ByteJsonReader.Names.of("no",
+            "sub",
+            "name",
+            "com",
+            "tim",
+            "time",
+            "ext",
+            "w",
+            "h",
+            "fsize",
+            "filename",
+            "trip",
+            "country",
+            "country_name",
+            "spoiler",
+            "resto",
+            "sticky",
+            "closed",
+            "archived",
+            "replies",
+            "images",
+            "unique_ips",
+            "last_modified",
+            "id",
+            "capcode",
+            "extra_files",
+            "md5"
+    );
+    private static final ByteJsonReader.Names IMAGE_KEYS =
+            ByteJsonReader.Names.of("tim", "fsize", "w", "h", "spoiler", "ext", "filename", "md5");
+
     public VichanApi(CommonSite commonSite) {
         super(commonSite);
     }
 
     @Override
-    public void loadThread(JsonReader reader, ChanReaderProcessingQueue queue)
+    public CatalogScanner getCatalogScanner() {
+        return FutabaCatalogScanner.INSTANCE;
+    }
+
+    @Override
+    public void loadThread(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         reader.beginObject();
         // Page object
@@ -58,12 +95,12 @@ public class VichanApi
     }
 
     @Override
-    public void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void loadCatalog(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         PageRepository.addPages(queue.loadable.board, readCatalogWithPages(reader, queue));
     }
 
-    public ChanPages readCatalogWithPages(JsonReader reader, ChanReaderProcessingQueue queue)
+    public ChanPages readCatalogWithPages(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         ChanPages pages = new ChanPages();
         reader.beginArray(); // Array of pages
@@ -106,13 +143,13 @@ public class VichanApi
     }
 
     @Override
-    public void readPostObject(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void readPostObject(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         readPostObjectWithReturn(reader, queue); // ignore return for non-page requests (ie threads)
     }
 
     @NonNull
-    private Pair<Integer, Long> readPostObjectWithReturn(JsonReader reader, ChanReaderProcessingQueue queue)
+    private Pair<Integer, Long> readPostObjectWithReturn(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         Post.Builder builder = new Post.Builder();
         builder.board(queue.loadable.board);
@@ -137,7 +174,7 @@ public class VichanApi
 
         reader.beginObject();
         while (reader.hasNext()) {
-            String key = reader.nextName();
+            String key = reader.nextName(POST_KEYS);
 
             switch (key) {
                 case "no":
@@ -288,7 +325,7 @@ public class VichanApi
         return new Pair<>(builder.no, builder.lastModified); // this return is only used for pages!
     }
 
-    private PostImage readPostImage(JsonReader reader, Post.Builder builder, SiteEndpoints endpoints)
+    private PostImage readPostImage(ByteJsonReader reader, Post.Builder builder, SiteEndpoints endpoints)
             throws IOException {
         try {
             reader.beginObject();
@@ -314,7 +351,7 @@ public class VichanApi
         String fileHash = null;
 
         while (reader.hasNext()) {
-            switch (reader.nextName()) {
+            switch (reader.nextName(IMAGE_KEYS)) {
                 case "tim":
                     fileId = reader.nextString();
                     break;
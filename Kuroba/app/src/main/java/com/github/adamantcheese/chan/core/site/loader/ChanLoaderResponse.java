@@ -16,7 +16,10 @@
  */
 package com.github.adamantcheese.chan.core.site.loader;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.utils.JavaUtils.NoDeleteArrayList;
 
 public class ChanLoaderResponse {
@@ -24,6 +27,9 @@ public class ChanLoaderResponse {
     // Used to later copy members like image count to the real op on the main thread.
     public final Post.Builder op;
     public final NoDeleteArrayList<Post> posts = new NoDeleteArrayList<>();
+    // only for threads
+    @Nullable
+    public ReplyGraph replyGraph;
 
     public ChanLoaderResponse(Post.Builder op) {
         this.op = op;
@@ -16,6 +16,7 @@
  */
 package com.github.adamantcheese.chan.core.site.loader;
 
+import android.os.SystemClock;
 import android.util.MalformedJsonException;
 
 import androidx.annotation.NonNull;
@@ -29,10 +30,14 @@ import com.github.adamantcheese.chan.core.manager.ChanLoaderManager;
 import com.github.adamantcheese.chan.core.manager.WatchManager;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.export.ThreadSnapshot;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ChainConverter;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.HttpCodeException;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser;
 import com.github.adamantcheese.chan.ui.helper.PostHelper;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
@@ -52,6 +57,7 @@ import okhttp3.Call;
 import okhttp3.HttpUrl;
 
 import static com.github.adamantcheese.chan.Chan.inject;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.BYTE_JSON_CONVERTER;
 
 /**
  * A ChanThreadLoader is the loader for Loadables.
@@ -61,8 +67,6 @@ import static com.github.adamantcheese.chan.Chan.inject;
  * <p>For threads timers can be started with {@link #setTimer()} to do a request later.
  */
 public class ChanThreadLoader {
-    private static final int[] WATCH_TIMEOUTS = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
-
     private final List<ChanLoaderCallback> listeners = new CopyOnWriteArrayList<>();
 
     @NonNull
@@ -74,9 +78,13 @@ public class ChanThreadLoader {
     @Nullable
     private ScheduledFuture<?> pendingFuture;
 
-    private int currentTimeout = 0;
-    private int lastPostCount;
-    private long lastLoadTime;
+    private final WatchSchedule schedule = new WatchSchedule();
+    @Nullable
+    private ThreadSnapshot.Writer snapshotWriter;
+
+    // network bytes and parse time of the last completed request, for background wake accounting
+    private volatile long lastResponseBytes;
+    private volatile long lastParseMs;
 
     @Inject
     private WatchManager watchManager;
@@ -150,13 +158,16 @@ public class ChanThreadLoader {
             loadable.listViewTop = 0;
         }
 
-        currentTimeout = -1;
-
         synchronized (this) {
             thread = null;
         }
 
         call = getData();
+
+        // show the thread from disk while the request runs
+        if (loadable.isThreadMode() && ChanSettings.threadSnapshots.get()) {
+            loadSnapshot(null);
+        }
     }
 
     /**
@@ -213,20 +224,34 @@ public class ChanThreadLoader {
         BackgroundUtils.ensureMainThread();
         clearPendingRunnable();
 
-        int watchTimeout = WATCH_TIMEOUTS[currentTimeout];
+        long delay = Math.max(0, schedule.getTimeUntilNextPoll());
 
         pendingFuture =
                 BackgroundUtils.backgroundScheduledService.schedule(() -> BackgroundUtils.runOnMainThread(() -> {
                     pendingFuture = null;
                     requestMoreData();
-                }), watchTimeout, TimeUnit.SECONDS);
+                }), delay, TimeUnit.MILLISECONDS);
     }
 
     public void clearTimer() {
-        currentTimeout = 0;
         clearPendingRunnable();
     }
 
+    public WatchSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return the number of bytes transferred for the last response, 0 if it came from the cache
+     */
+    public long getLastResponseBytes() {
+        return lastResponseBytes;
+    }
+
+    public long getLastParseMs() {
+        return lastParseMs;
+    }
+
     /**
      * Get the time in milliseconds until another loadMore is recommended
      */
@@ -234,12 +259,14 @@ public class ChanThreadLoader {
         if (call != null) {
             return 0L;
         } else {
-            long waitTime = WATCH_TIMEOUTS[Math.max(0, currentTimeout)] * 1000L;
-            return lastLoadTime + waitTime - System.currentTimeMillis();
+            return schedule.getTimeUntilNextPoll();
         }
     }
 
     private Call getData() {
+        if (loadable.isThreadMode()) {
+            WatchSchedule.recordRequest();
+        }
         List<Post> cachedClones = new ArrayList<>();
         synchronized (this) {
             List<Post> cached = thread == null ? new ArrayList<>() : thread.getPosts();
@@ -248,8 +275,18 @@ public class ChanThreadLoader {
             }
         }
 
-        return NetUtils.makeJsonRequest(
+        ChanReaderParser parser = new ChanReaderParser(loadable, cachedClones, null);
+        lastResponseBytes = 0;
+        return NetUtils.makeRequest(NetUtils.applicationClient,
                 getChanUrl(loadable),
+                new ChainConverter<ChanLoaderResponse, ByteJsonReader>(reader -> {
+                    long start = SystemClock.elapsedRealtime();
+                    try {
+                        return parser.convert(reader);
+                    } finally {
+                        lastParseMs = SystemClock.elapsedRealtime() - start;
+                    }
+                }).chain(BYTE_JSON_CONVERTER),
                 new ResponseResult<ChanLoaderResponse>() {
                     @Override
                     public void onFailure(Exception e) {
@@ -262,11 +299,13 @@ public class ChanThreadLoader {
                         BackgroundUtils.runOnBackgroundThread(() -> onResponse(result));
                     }
                 },
-                new ChanReaderParser(loadable, cachedClones, null),
+                (source, bytesRead, contentLength, start, done) -> lastResponseBytes = bytesRead,
                 // todo change this so that If-Modified-Since takes care of stuff
-                // cache this for the amount of time of the current timeout, minus a second to ensure it is purged upon the next request
-                new CacheControl.Builder().maxAge(WATCH_TIMEOUTS[Math.max(0, currentTimeout)] - 1, TimeUnit.SECONDS)
-                        .build()
+                // cache this for the current poll interval, minus a second to ensure it is purged upon the next request
+                new CacheControl.Builder().maxAge(
+                        (int) Math.max(0, TimeUnit.MILLISECONDS.toSeconds(schedule.getIntervalMs()) - 1),
+                        TimeUnit.SECONDS
+                ).build()
         );
     }
 
@@ -314,8 +353,9 @@ public class ChanThreadLoader {
                 thread = new ChanThread(loadable, new ArrayList<>());
             }
 
-            thread.setNewPosts(response.posts);
+            thread.setNewPosts(response.posts, response.replyGraph);
         }
+        NetUtils.CONTENT_STORE.learn(response.posts);
 
         ChanThread localThread = thread;
         if (loadable.isThreadMode() && thread.getPosts().size() > 0) {
@@ -349,16 +389,15 @@ public class ChanThreadLoader {
             post.setTitle(loadable.title);
         }
 
-        lastLoadTime = System.currentTimeMillis();
+        if (loadable.isThreadMode()) {
+            schedule.onLoaded(localThread.getPosts(), localThread.getOp().isSticky());
 
-        int postCount = localThread.getPosts().size();
-        if (postCount > lastPostCount) {
-            // fresh posts, reset timer to minimum 10 seconds, or if sticky 30
-            lastPostCount = postCount;
-            currentTimeout = localThread.getOp().isSticky() ? 3 : 0;
-        } else {
-            // no new posts, increase timer
-            currentTimeout = Math.min(currentTimeout + 1, WATCH_TIMEOUTS.length - 1);
+            if (shouldSnapshot()) {
+                if (snapshotWriter == null) {
+                    snapshotWriter = new ThreadSnapshot.Writer(loadable);
+                }
+                snapshotWriter.update(localThread.getPosts());
+            }
         }
 
         DatabaseUtils.runTaskAsync(databaseLoadableManager.updateLoadable(loadable, false));
@@ -370,12 +409,30 @@ public class ChanThreadLoader {
         });
     }
 
+    /**
+     * Snapshots are only written for threads that are on screen; pin polls, including background ones, leave them be.
+     */
+    private boolean shouldSnapshot() {
+        if (!ChanSettings.threadSnapshots.get() || !BackgroundUtils.isInForeground()) return false;
+        for (ChanLoaderCallback l : listeners) {
+            if (!(l instanceof WatchManager.PinWatcher)) return true;
+        }
+        return false;
+    }
+
     private void notifyAboutError(ChanLoaderException exception) {
         call = null;
         clearTimer();
+        schedule.onError();
 
         Logger.e(this, "Loading error", exception);
 
+        if (loadable.isThreadMode() && thread == null && ChanSettings.threadSnapshots.get()) {
+            // fall back to the thread from disk, if there is one, with the error on top of it
+            loadSnapshot(exception);
+            return;
+        }
+
         BackgroundUtils.runOnMainThread(() -> {
             for (ChanLoaderCallback l : listeners) {
                 l.onChanLoaderError(exception);
@@ -383,6 +440,43 @@ public class ChanThreadLoader {
         });
     }
 
+    /**
+     * Read this thread's snapshot and hand it to the listeners, unless posts from the network have been loaded first.
+     *
+     * @param error an error to notify about afterwards
+     */
+    private void loadSnapshot(@Nullable ChanLoaderException error) {
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            List<Post> posts = thread == null ? ThreadSnapshot.read(loadable) : null;
+            ChanThread snapshot = null;
+            if (posts != null) {
+                NetUtils.CONTENT_STORE.learn(posts);
+                synchronized (this) {
+                    if (thread == null) {
+                        snapshot = new ChanThread(loadable, posts);
+                        snapshot.setClosed(snapshot.getOp().isClosed());
+                        snapshot.setArchived(snapshot.getOp().isArchived());
+                        thread = snapshot;
+                    }
+                }
+            }
+
+            ChanThread localThread = snapshot;
+            BackgroundUtils.runOnMainThread(() -> {
+                if (localThread != null) {
+                    for (ChanLoaderCallback l : listeners) {
+                        l.onChanLoaderData(localThread);
+                    }
+                }
+                if (error != null) {
+                    for (ChanLoaderCallback l : listeners) {
+                        l.onChanLoaderError(error);
+                    }
+                }
+            });
+        });
+    }
+
     private void clearPendingRunnable() {
         if (pendingFuture != null) {
             pendingFuture.cancel(false);
@@ -0,0 +1,164 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.site.loader;
+
+import com.github.adamantcheese.chan.core.model.Post;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getConnectivityManager;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getPowerManager;
+
+/**
+ * Decides when a thread should be polled next.<br>
+ * <br>
+ * Each thread's post rate is estimated from post timestamps, smoothed over loads, and the next poll is timed so that
+ * about one new post is expected by then. A thread that has gone quiet since its last post is polled less often the
+ * longer it stays quiet. Intervals are stretched on metered connections and in battery saver, and every interval is
+ * jittered so that threads loaded together drift apart instead of being polled in bursts.
+ */
+public class WatchSchedule {
+    private static final long MIN_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final long MIN_STICKY_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    // how many of the most recent posts seed the rate on the first load
+    private static final int SEED_POSTS = 10;
+    private static final double SMOOTHING = 0.3;
+    private static final double JITTER = 0.15;
+    private static final double METERED_FACTOR = 2.0;
+    private static final double POWER_SAVE_FACTOR = 2.0;
+
+    private static final Random random = new Random();
+    private static final ArrayDeque<Long> recentRequests = new ArrayDeque<>();
+
+    private double postsPerSecond = -1;
+    private long lastPostTimeMs;
+    private int lastPostCount;
+    private long lastLoadTimeMs;
+    private long intervalMs = MIN_INTERVAL_MS;
+
+    /**
+     * Record a successful load of the thread and schedule the next one.
+     */
+    public synchronized void onLoaded(List<Post> posts, boolean sticky) {
+        long now = System.currentTimeMillis();
+        if (!posts.isEmpty()) {
+            long newestPostMs = TimeUnit.SECONDS.toMillis(posts.get(posts.size() - 1).time);
+            if (postsPerSecond < 0) {
+                postsPerSecond = seedRate(posts, now);
+            } else if (lastLoadTimeMs > 0 && now > lastLoadTimeMs) {
+                int newPosts = Math.max(0, posts.size() - lastPostCount);
+                double measured = newPosts * 1000.0 / (now - lastLoadTimeMs);
+                postsPerSecond += SMOOTHING * (measured - postsPerSecond);
+            }
+            lastPostTimeMs = newestPostMs;
+            lastPostCount = posts.size();
+        }
+        lastLoadTimeMs = now;
+        intervalMs = computeInterval(now, sticky);
+    }
+
+    /**
+     * Record a failed load; back off as if nothing new was posted.
+     */
+    public synchronized void onError() {
+        lastLoadTimeMs = System.currentTimeMillis();
+        intervalMs = Math.min(MAX_INTERVAL_MS, intervalMs * 2);
+    }
+
+    /**
+     * @return the time in milliseconds until the next poll is due, negative if overdue
+     */
+    public synchronized long getTimeUntilNextPoll() {
+        return lastLoadTimeMs + intervalMs - System.currentTimeMillis();
+    }
+
+    public synchronized long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * @return the estimated number of posts per hour for this thread, or -1 if it hasn't been loaded
+     */
+    public synchronized double getPostsPerHour() {
+        return postsPerSecond < 0 ? -1 : postsPerSecond * 3600;
+    }
+
+    private static double seedRate(List<Post> posts, long now) {
+        int count = Math.min(SEED_POSTS, posts.size());
+        long oldestMs = TimeUnit.SECONDS.toMillis(posts.get(posts.size() - count).time);
+        // counting up to now rather than the newest post accounts for the quiet period since then
+        long spanMs = Math.max(1000, now - oldestMs);
+        return count * 1000.0 / spanMs;
+    }
+
+    private long computeInterval(long now, boolean sticky) {
+        // expect about one new post per poll
+        double interval = postsPerSecond > 0 ? 1000.0 / postsPerSecond : MAX_INTERVAL_MS;
+        // threads that have been quiet for a while are unlikely to wake up right away
+        interval = Math.max(interval, (now - lastPostTimeMs) / 2.0);
+
+        if (getConnectivityManager().isActiveNetworkMetered()) {
+            interval *= METERED_FACTOR;
+        }
+        if (getPowerManager().isPowerSaveMode()) {
+            interval *= POWER_SAVE_FACTOR;
+        }
+
+        interval *= 1 + JITTER * (2 * random.nextDouble() - 1);
+        long min = sticky ? MIN_STICKY_INTERVAL_MS : MIN_INTERVAL_MS;
+        return Math.max(min, Math.min(MAX_INTERVAL_MS, (long) interval));
+    }
+
+    /**
+     * Count a poll request towards the requests per hour metric.
+     */
+    public static void recordRequest() {
+        long now = System.currentTimeMillis();
+        synchronized (recentRequests) {
+            recentRequests.addLast(now);
+            trimRequests(now);
+        }
+    }
+
+    public static int getRequestsInLastHour() {
+        synchronized (recentRequests) {
+            trimRequests(System.currentTimeMillis());
+            return recentRequests.size();
+        }
+    }
+
+    private static void trimRequests(long now) {
+        long cutoff = now - TimeUnit.HOURS.toMillis(1);
+        while (!recentRequests.isEmpty() && recentRequests.peekFirst() < cutoff) {
+            recentRequests.removeFirst();
+        }
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.ENGLISH,
+                "%.1f posts/h, every %ds, next in %ds",
+                Math.max(0, getPostsPerHour()),
+                TimeUnit.MILLISECONDS.toSeconds(intervalMs),
+                Math.max(0, TimeUnit.MILLISECONDS.toSeconds(getTimeUntilNextPoll()))
+        );
+    }
+}
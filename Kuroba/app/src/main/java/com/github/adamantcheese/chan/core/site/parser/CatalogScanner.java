@@ -0,0 +1,105 @@
+package com.github.adamantcheese.chan.core.site.parser;
+
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
+
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a catalog for background filter watching only.<br>
+ * <br>
+ * Unlike {@link ChanReader#loadCatalog}, no posts are built: no comment parsing, spans, icons or hide lookups. Each
+ * thread's raw fields are read into a reused {@link ScannedThread} and handed to the callback, which is all that is
+ * needed to evaluate watch filters.
+ */
+public interface CatalogScanner {
+    void scanCatalog(ByteJsonReader reader, Callback callback)
+            throws Exception;
+
+    interface Callback {
+        /**
+         * Called for every thread in the catalog. The thread object is reused, don't hold on to it.
+         */
+        void onThread(ScannedThread thread);
+    }
+
+    class ScannedThread {
+        public int no;
+        public boolean sticky;
+        public String subject = "";
+        public String name = "";
+        public String tripcode = "";
+        public String posterId = "";
+        public String capcode = "";
+        public String flagCode = "";
+        public final List<String> filenames = new ArrayList<>();
+        // decoded the same way as PostImage.fileHash
+        public final List<String> fileHashes = new ArrayList<>();
+        // the first file's server name and extension, for the pin thumbnail
+        public String fileId;
+        public String fileExt;
+
+        private String rawComment = "";
+        private String comment;
+
+        public void setRawComment(String rawComment) {
+            this.rawComment = rawComment;
+            comment = null;
+        }
+
+        /**
+         * @return the comment as plain text, roughly what the fully parsed comment reads as; only converted if asked for
+         */
+        public String getComment() {
+            if (comment == null) {
+                comment = htmlToText(rawComment);
+            }
+            return comment;
+        }
+
+        public void reset() {
+            no = -1;
+            sticky = false;
+            subject = "";
+            name = "";
+            tripcode = "";
+            posterId = "";
+            capcode = "";
+            flagCode = "";
+            filenames.clear();
+            fileHashes.clear();
+            fileId = null;
+            fileExt = null;
+            setRawComment("");
+        }
+
+        private static String htmlToText(String html) {
+            if (html.isEmpty()) return html;
+
+            StringBuilder text = new StringBuilder(html.length());
+            int i = 0;
+            while (i < html.length()) {
+                char c = html.charAt(i);
+                if (c != '<') {
+                    text.append(c);
+                    i++;
+                    continue;
+                }
+
+                int end = html.indexOf('>', i);
+                if (end < 0) {
+                    text.append(html, i, html.length());
+                    break;
+                }
+                // line breaks are the only tags that produce text
+                if (html.regionMatches(true, i + 1, "br", 0, 2)) {
+                    text.append('\n');
+                }
+                i = end + 1;
+            }
+            return Parser.unescapeEntities(text.toString(), false);
+        }
+    }
+}
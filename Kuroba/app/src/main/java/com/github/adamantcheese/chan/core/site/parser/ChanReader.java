@@ -16,17 +16,27 @@
  */
 package com.github.adamantcheese.chan.core.site.parser;
 
-import android.util.JsonReader;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 
 public interface ChanReader {
     PostParser getParser();
 
-    void loadThread(JsonReader reader, ChanReaderProcessingQueue queue)
+    void loadThread(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception;
 
-    void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue)
+    void loadCatalog(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception;
 
-    void readPostObject(JsonReader reader, ChanReaderProcessingQueue queue)
+    void readPostObject(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception;
+
+    /**
+     * @return a scanner for this site's catalog format, or null if catalogs can only be read with {@link #loadCatalog}
+     */
+    @Nullable
+    default CatalogScanner getCatalogScanner() {
+        return null;
+    }
 }
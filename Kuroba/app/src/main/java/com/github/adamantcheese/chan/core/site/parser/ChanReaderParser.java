@@ -16,8 +16,6 @@
  */
 package com.github.adamantcheese.chan.core.site.parser;
 
-import android.util.JsonReader;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -25,9 +23,11 @@ import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.site.loader.ChanLoaderResponse;
 import com.github.adamantcheese.chan.ui.theme.Theme;
@@ -56,7 +56,7 @@ import static com.github.adamantcheese.chan.Chan.inject;
  * changed on the main thread.
  */
 public class ChanReaderParser
-        implements NetUtilsClasses.Converter<ChanLoaderResponse, JsonReader> {
+        implements NetUtilsClasses.Converter<ChanLoaderResponse, ByteJsonReader> {
 
     @Inject
     FilterEngine filterEngine;
@@ -97,7 +97,7 @@ public class ChanReaderParser
     }
 
     @Override
-    public ChanLoaderResponse convert(JsonReader reader)
+    public ChanLoaderResponse convert(ByteJsonReader reader)
             throws Exception {
         ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable);
 
@@ -262,6 +262,8 @@ public class ChanReaderParser
                     subject.repliesFrom.addAll(value);
                 }
             }
+
+            response.replyGraph = ReplyGraph.build(allPosts);
         }
 
         response.posts.addAll(allPosts);
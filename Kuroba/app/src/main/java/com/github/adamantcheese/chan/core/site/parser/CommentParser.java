@@ -88,6 +88,13 @@ public class CommentParser {
 
     private Pattern fullQuotePattern = Pattern.compile("/(\\w+)/\\w+/(\\d+)#p?(\\d+)");
     private Pattern quotePattern = Pattern.compile(".*#p?(\\d+)");
+    // while the default patterns above are in use, quotes are recognized by scanning instead, see scanFullQuote/scanQuote
+    private boolean defaultFullQuotePattern = true;
+    private boolean defaultQuotePattern = true;
+
+    // 4chan thread links with the full domain, which are rewritten to be relative
+    static final Pattern FULL_DOMAIN_THREAD_LINK_PATTERN =
+            Pattern.compile("//boards\\.4chan.*?\\.org/(.*?)/thread/(\\d*?)#p(\\d*)");
 
     // A pattern matching any board links
     private final Pattern boardLinkPattern =
@@ -193,6 +200,7 @@ public class CommentParser {
      */
     public void setQuotePattern(Pattern quotePattern) {
         this.quotePattern = quotePattern;
+        defaultQuotePattern = false;
     }
 
     /**
@@ -201,6 +209,7 @@ public class CommentParser {
      */
     public void setFullQuotePattern(Pattern fullQuotePattern) {
         this.fullQuotePattern = fullQuotePattern;
+        defaultFullQuotePattern = false;
     }
 
     public String createQuoteElementString(Post.Builder post) {
@@ -410,7 +419,7 @@ public class CommentParser {
         String href = anchor.attr("href");
         //gets us something like /board/ or /thread/postno#quoteno
         //hacky fix for 4chan having two domains but the same API
-        if (href.matches("//boards\\.4chan.*?\\.org/(.*?)/thread/(\\d*?)#p(\\d*)")) {
+        if (href.startsWith("//boards.4chan") && FULL_DOMAIN_THREAD_LINK_PATTERN.matcher(href).matches()) {
             href = href.substring(2);
             href = href.substring(href.indexOf('/'));
         }
@@ -418,11 +427,11 @@ public class CommentParser {
         Type t;
         Object value;
 
-        Matcher externalMatcher = fullQuotePattern.matcher(href);
-        if (externalMatcher.matches()) {
-            String board = externalMatcher.group(1);
-            int threadId = Integer.parseInt(externalMatcher.group(2));
-            String postNo = externalMatcher.group(3);
+        String[] fullQuote = matchFullQuote(href);
+        if (fullQuote != null) {
+            String board = fullQuote[0];
+            int threadId = Integer.parseInt(fullQuote[1]);
+            String postNo = fullQuote[2];
             int postId = postNo == null ? -1 : Integer.parseInt(postNo);
 
             if (board.equals(post.board.code) && callback.isInternal(postId)) {
@@ -440,19 +449,22 @@ public class CommentParser {
                 }
             }
         } else {
-            Matcher quoteMatcher = quotePattern.matcher(href);
-            if (quoteMatcher.matches()) {
+            String quote = matchQuote(href);
+            if (quote != null) {
                 //link to post in the same thread with post number (>>post); usually this is a #num href
                 t = Type.QUOTE;
-                value = Integer.parseInt(quoteMatcher.group(1));
+                value = Integer.parseInt(quote);
             } else {
                 Matcher boardLinkMatcher = boardLinkPattern.matcher(href);
                 Matcher boardLinkMatcher8Chan = boardLinkPattern8Chan.matcher(href);
                 Matcher boardSearchMatcher = boardSearchPattern.matcher(href);
-                if (boardLinkMatcher.matches() || boardLinkMatcher8Chan.matches()) {
+                if (boardLinkMatcher.matches()) {
                     //board link
                     t = Type.BOARD;
-                    value = (boardLinkMatcher.matches() ? boardLinkMatcher : boardLinkMatcher8Chan).group(1);
+                    value = boardLinkMatcher.group(1);
+                } else if (boardLinkMatcher8Chan.matches()) {
+                    t = Type.BOARD;
+                    value = boardLinkMatcher8Chan.group(1);
                 } else if (boardSearchMatcher.matches()) {
                     //search link
                     String board = boardSearchMatcher.group(1);
@@ -484,6 +496,92 @@ public class CommentParser {
         return link;
     }
 
+    /**
+     * @return the board, thread number and post number of a quote linking outside a thread, or null if href isn't one
+     */
+    @Nullable
+    private String[] matchFullQuote(String href) {
+        if (defaultFullQuotePattern) return scanFullQuote(href);
+        Matcher matcher = fullQuotePattern.matcher(href);
+        return matcher.matches() ? new String[]{matcher.group(1), matcher.group(2), matcher.group(3)} : null;
+    }
+
+    /**
+     * @return the post number of a quote within a thread, or null if href isn't one
+     */
+    @Nullable
+    private String matchQuote(String href) {
+        if (defaultQuotePattern) return scanQuote(href);
+        Matcher matcher = quotePattern.matcher(href);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Equivalent to matching the default full quote pattern, /(\w+)/\w+/(\d+)#p?(\d+), without a regex.
+     */
+    @Nullable
+    static String[] scanFullQuote(String href) {
+        int length = href.length();
+        if (length == 0 || href.charAt(0) != '/') return null;
+        int boardEnd = skipWordChars(href, 1);
+        if (boardEnd == 1 || boardEnd >= length || href.charAt(boardEnd) != '/') return null;
+        int segmentEnd = skipWordChars(href, boardEnd + 1);
+        if (segmentEnd == boardEnd + 1 || segmentEnd >= length || href.charAt(segmentEnd) != '/') return null;
+        int threadStart = segmentEnd + 1;
+        int threadEnd = skipDigits(href, threadStart);
+        if (threadEnd == threadStart || threadEnd >= length || href.charAt(threadEnd) != '#') return null;
+        int postStart = threadEnd + 1;
+        if (postStart < length && href.charAt(postStart) == 'p') postStart++;
+        int postEnd = skipDigits(href, postStart);
+        if (postEnd == postStart || postEnd != length) return null;
+        return new String[]{
+                href.substring(1, boardEnd),
+                href.substring(threadStart, threadEnd),
+                href.substring(postStart, postEnd)
+        };
+    }
+
+    /**
+     * Equivalent to matching the default quote pattern, .*#p?(\d+), without a regex.
+     */
+    @Nullable
+    static String scanQuote(String href) {
+        // the number can't contain a #, so only the last one can start it
+        int hash = href.lastIndexOf('#');
+        if (hash < 0) return null;
+        for (int i = 0; i < hash; i++) {
+            // . doesn't match line terminators
+            char c = href.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return null;
+        }
+        int postStart = hash + 1;
+        if (postStart < href.length() && href.charAt(postStart) == 'p') postStart++;
+        int postEnd = skipDigits(href, postStart);
+        if (postEnd == postStart || postEnd != href.length()) return null;
+        return href.substring(postStart, postEnd);
+    }
+
+    private static int skipWordChars(String s, int from) {
+        int i = from;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int skipDigits(String s, int from) {
+        int i = from;
+        while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
     public SpannableString span(CharSequence text, Object... additionalSpans) {
         SpannableString result = new SpannableString(text);
         int l = result.length();
@@ -1,9 +1,8 @@
 package com.github.adamantcheese.chan.core.site.sites.dvach;
 
-import android.util.JsonReader;
-
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.net.ByteJsonReader;
 import com.github.adamantcheese.chan.core.site.SiteEndpoints;
 import com.github.adamantcheese.chan.core.site.common.CommonSite;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderProcessingQueue;
@@ -19,12 +18,30 @@ import static com.github.adamantcheese.chan.core.site.SiteEndpoints.makeArgument
 
 public class DvachApi
         extends CommonSite.CommonApi {
+    private static final ByteJsonReader.Names POST_KEYS = ByteJsonReader.Names.of("name",
+            "subject",
+            "comment",
+            "timestamp",
+            "trip",
+            "op",
+            "sticky",
+            "closed",
+            "archived",
+            "posts_count",
+            "files_count",
+            "lasthit",
+            "num",
+            "files"
+    );
+    private static final ByteJsonReader.Names FILE_KEYS =
+            ByteJsonReader.Names.of("path", "name", "size", "width", "height", "thumbnail", "md5");
+
     DvachApi(CommonSite commonSite) {
         super(commonSite);
     }
 
     @Override
-    public void loadThread(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void loadThread(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         reader.beginObject(); // Main object
 
@@ -55,7 +72,7 @@ public class DvachApi
     }
 
     @Override
-    public void loadCatalog(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void loadCatalog(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         reader.beginObject(); // Main object
 
@@ -77,7 +94,7 @@ public class DvachApi
     }
 
     @Override
-    public void readPostObject(JsonReader reader, ChanReaderProcessingQueue queue)
+    public void readPostObject(ByteJsonReader reader, ChanReaderProcessingQueue queue)
             throws Exception {
         Post.Builder builder = new Post.Builder();
         builder.board(queue.loadable.board);
@@ -88,7 +105,7 @@ public class DvachApi
 
         reader.beginObject();
         while (reader.hasNext()) {
-            String key = reader.nextName();
+            String key = reader.nextName(POST_KEYS);
 
             switch (key) {
                 case "name":
@@ -170,7 +187,7 @@ public class DvachApi
         queue.addForParse(builder);
     }
 
-    private PostImage readPostImage(JsonReader reader, Post.Builder builder, SiteEndpoints endpoints)
+    private PostImage readPostImage(ByteJsonReader reader, Post.Builder builder, SiteEndpoints endpoints)
             throws IOException {
         reader.beginObject();
 
@@ -184,7 +201,7 @@ public class DvachApi
         String fileHash = null;
 
         while (reader.hasNext()) {
-            switch (reader.nextName()) {
+            switch (reader.nextName(FILE_KEYS)) {
                 case "path":
                     path = reader.nextString();
                     break;
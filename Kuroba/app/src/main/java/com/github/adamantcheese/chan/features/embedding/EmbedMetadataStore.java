@@ -0,0 +1,328 @@
+package com.github.adamantcheese.chan.features.embedding;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.utils.Logger;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only, lazily loaded store for embed results.<br>
+ * <br>
+ * Every put and removal is queued as a single JSON line and written to a journal file in batches on a background
+ * writer thread, so nothing on the calling thread ever serializes the whole cache or opens a file. Hits aren't
+ * journaled; the recency they build up is kept whenever the journal is compacted into a fresh snapshot of the cache,
+ * which happens once it has grown to a couple of times the cache size. On first use the journal is replayed in order
+ * into an LRU cache, and anything put or removed while that was running wins over what's on disk.<br>
+ * <br>
+ * The JSON snapshot this replaced is imported on first load and then deleted.
+ */
+public class EmbedMetadataStore {
+    private static final String TAG = "EmbedMetadataStore";
+
+    // journal record types; older journals also have hit records, which are skipped
+    private static final char PUT = 'P';
+    private static final char REMOVE = 'R';
+
+    // records are batched up for this long before being written
+    private static final long WRITE_DELAY_MS = 2000;
+
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private final File journalFile;
+    @Nullable
+    private final File legacyFile;
+    private final int maxSize;
+    private final LruCache<String, Entry> cache;
+
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private boolean loadStarted;
+    // changes made while the journal is replaying, which have to win over it; guarded by this
+    private final Set<String> removedWhileLoading = new HashSet<>();
+    private boolean clearedWhileLoading;
+
+    private final List<Record> pending = new ArrayList<>();
+    private boolean writeScheduled; // guarded by pending
+    private int journalRecords; // writer thread only
+
+    /**
+     * @param legacyFile the old JSON snapshot of the cache, imported and deleted on first load if it's still around
+     */
+    public EmbedMetadataStore(@NonNull File journalFile, @Nullable File legacyFile, int maxSize) {
+        this.journalFile = journalFile;
+        this.legacyFile = legacyFile;
+        this.maxSize = maxSize;
+        this.cache = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Kicks off loading the journal on the writer thread if it hasn't been loaded already. Safe to call repeatedly.
+     */
+    public synchronized void preload() {
+        if (loadStarted) return;
+        loadStarted = true;
+        writer.execute(this::replayJournal);
+    }
+
+    /**
+     * @return the cached result for this key, or null if it isn't cached, has expired, or the store is still loading
+     */
+    @Nullable
+    public EmbedResult get(@NonNull String key) {
+        if (!isLoaded()) return null; // don't stall callers on a slow disk, this is only a cache
+        Entry entry = cache.get(key);
+        if (entry == null) return null;
+        if (entry.expired(System.currentTimeMillis())) {
+            remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    public void put(@NonNull String key, @NonNull EmbedResult result, long ttlMillis) {
+        preload();
+        long expires = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+        synchronized (this) {
+            cache.put(key, new Entry(result, expires));
+            removedWhileLoading.remove(key);
+        }
+        append(new Record(PUT, key, expires, result));
+    }
+
+    public void remove(@NonNull String key) {
+        synchronized (this) {
+            cache.remove(key);
+            if (loaded.getCount() != 0) removedWhileLoading.add(key);
+        }
+        append(new Record(REMOVE, key, 0, null));
+    }
+
+    public void clear() {
+        synchronized (this) {
+            cache.evictAll();
+            if (loaded.getCount() != 0) clearedWhileLoading = true;
+        }
+        synchronized (pending) {
+            pending.clear();
+        }
+        writer.execute(() -> {
+            journalRecords = 0;
+            if (!journalFile.delete() && journalFile.exists()) {
+                Logger.w(TAG, "Failed to delete embed journal");
+            }
+        });
+    }
+
+    /**
+     * Writes out any queued records and compacts the journal if it has grown too large; asynchronous.
+     */
+    public void flush() {
+        writer.execute(this::writePending);
+    }
+
+    private boolean isLoaded() {
+        preload();
+        return loaded.getCount() == 0;
+    }
+
+    private void append(Record record) {
+        synchronized (pending) {
+            pending.add(record);
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+        writer.schedule(this::writePending, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // writer thread only
+    private void writePending() {
+        List<Record> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            writeScheduled = false;
+        }
+        if (!batch.isEmpty()) {
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(journalFile, true))) {
+                for (Record record : batch) {
+                    out.write(gson.toJson(record));
+                    out.newLine();
+                    journalRecords++;
+                }
+            } catch (IOException e) {
+                Logger.w(TAG, "Failed to append to embed journal", e);
+            }
+        }
+        if (journalRecords > maxSize * 2) compact();
+    }
+
+    // writer thread only
+    private void replayJournal() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int count = 0;
+        // replayed on the side, so that changes made in the meantime can be put on top of it
+        LruCache<String, Entry> replayed = new LruCache<>(maxSize);
+        boolean migrated = importLegacyFile(replayed);
+        try (BufferedReader in = new BufferedReader(new FileReader(journalFile))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                count++;
+                Record record;
+                try {
+                    record = gson.fromJson(line, Record.class);
+                } catch (Exception e) {
+                    continue; // a torn write from process death, skip it
+                }
+                if (record == null || record.key == null) continue;
+                switch (record.type) {
+                    case PUT:
+                        if (record.result == null || (record.expires > 0 && record.expires <= now)) {
+                            replayed.remove(record.key);
+                        } else {
+                            replayed.put(record.key, new Entry(record.result, record.expires));
+                        }
+                        break;
+                    case REMOVE:
+                        replayed.remove(record.key);
+                        break;
+                }
+            }
+        } catch (IOException ignored) {
+            // no journal yet
+        } finally {
+            journalRecords = count;
+            synchronized (this) {
+                if (!clearedWhileLoading) {
+                    // what's on disk is older than anything put since, so it goes in first and is evicted first
+                    Map<String, Entry> live = cache.snapshot();
+                    for (Map.Entry<String, Entry> e : replayed.snapshot().entrySet()) {
+                        if (live.containsKey(e.getKey()) || removedWhileLoading.contains(e.getKey())) continue;
+                        cache.put(e.getKey(), e.getValue());
+                    }
+                    for (Map.Entry<String, Entry> e : live.entrySet()) {
+                        cache.put(e.getKey(), e.getValue());
+                    }
+                }
+                removedWhileLoading.clear();
+                clearedWhileLoading = false;
+                loaded.countDown();
+            }
+        }
+        // the journal doesn't have the imported entries yet
+        if (migrated) compact();
+        Logger.vd(TAG,
+                "Loaded " + cache.size() + " embeds from " + count + " records in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms"
+        );
+    }
+
+    /**
+     * Reads the old JSON snapshot into the given cache and deletes it; writer thread only.
+     *
+     * @return true if any entries were imported
+     */
+    private boolean importLegacyFile(LruCache<String, Entry> into) {
+        if (legacyFile == null || !legacyFile.exists()) return false;
+        boolean imported = false;
+        // the old file was an LruCache snapshot, least recently used first
+        Type type = new TypeToken<LinkedHashMap<String, EmbedResult>>() {}.getType();
+        try (FileReader reader = new FileReader(legacyFile)) {
+            Map<String, EmbedResult> entries = gson.fromJson(reader, type);
+            if (entries != null) {
+                for (Map.Entry<String, EmbedResult> e : entries.entrySet()) {
+                    if (e.getKey() == null || e.getValue() == null) continue;
+                    into.put(e.getKey(), new Entry(e.getValue(), 0));
+                    imported = true;
+                }
+            }
+        } catch (Exception e) {
+            Logger.w(TAG, "Failed to import old embed cache", e);
+        }
+        if (!legacyFile.delete()) {
+            Logger.w(TAG, "Failed to delete old embed cache");
+        }
+        return imported;
+    }
+
+    // writer thread only
+    private void compact() {
+        long now = System.currentTimeMillis();
+        // everything queued so far is already in the cache, and so in the snapshot
+        synchronized (pending) {
+            pending.clear();
+        }
+        File temp = new File(journalFile.getParentFile(), journalFile.getName() + ".tmp");
+        // snapshot is ordered least recently used first, so replaying it restores the same ordering
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(cache.snapshot().entrySet());
+        int written = 0;
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(temp))) {
+            for (Map.Entry<String, Entry> e : entries) {
+                if (e.getValue().expired(now)) continue;
+                out.write(gson.toJson(new Record(PUT, e.getKey(), e.getValue().expires, e.getValue().result)));
+                out.newLine();
+                written++;
+            }
+        } catch (IOException e) {
+            Logger.w(TAG, "Failed to compact embed journal", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(journalFile)) {
+            journalRecords = written;
+        }
+    }
+
+    private static class Entry {
+        final EmbedResult result;
+        final long expires; // 0 means never
+
+        Entry(EmbedResult result, long expires) {
+            this.result = result;
+            this.expires = expires;
+        }
+
+        boolean expired(long now) {
+            return expires > 0 && expires <= now;
+        }
+    }
+
+    private static class Record {
+        char type;
+        String key;
+        long expires;
+        EmbedResult result;
+
+        @SuppressWarnings("unused")
+        Record() {} // for gson
+
+        Record(char type, String key, long expires, EmbedResult result) {
+            this.type = type;
+            this.key = key;
+            this.expires = expires;
+            this.result = result;
+        }
+    }
+}
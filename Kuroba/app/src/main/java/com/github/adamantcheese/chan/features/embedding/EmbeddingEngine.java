@@ -8,7 +8,6 @@ import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.ImageSpan;
-import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.ComponentActivity;
@@ -18,11 +17,12 @@ import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
 
 import com.github.adamantcheese.chan.BuildConfig;
-import com.github.adamantcheese.chan.core.di.AppModule;
 import com.github.adamantcheese.chan.core.manager.ArchivesManager;
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.PostLinkable;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.MediaProbe;
+import com.github.adamantcheese.chan.core.net.MediaProbe.MediaInfo;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.IgnoreFailureCallback;
@@ -45,7 +45,6 @@ import com.github.adamantcheese.chan.ui.theme.Theme;
 import com.github.adamantcheese.chan.utils.JavaUtils.NoDeleteArrayList;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.github.adamantcheese.chan.utils.StringUtils;
-import com.google.gson.reflect.TypeToken;
 
 import org.jetbrains.annotations.NotNull;
 import org.nibor.autolink.LinkExtractor;
@@ -53,17 +52,13 @@ import org.nibor.autolink.LinkSpan;
 import org.nibor.autolink.LinkType;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
@@ -88,7 +83,11 @@ public class EmbeddingEngine
     private static final int CACHE_SIZE = 1500;
     // a cache for titles and durations to prevent extra api calls if not necessary
     // maps a URL to a title and duration string; if durations are disabled, the second argument is an empty string
-    private static LruCache<String, EmbedResult> videoTitleDurCache = new LruCache<>(CACHE_SIZE);
+    private static final EmbedMetadataStore videoTitleDurCache =
+            new EmbedMetadataStore(new File(getCacheDir(), "video_title_cache.journal"),
+                    new File(getCacheDir(), "video_title_cache.json"),
+                    CACHE_SIZE
+            );
 
     private static final LinkExtractor LINK_EXTRACTOR =
             LinkExtractor.builder().linkTypes(EnumSet.of(LinkType.URL)).build();
@@ -302,11 +301,10 @@ public class EmbeddingEngine
             // double check however and set up "archive" links here in place of regular links
             // this allows the person to pick any archive they want, regardless of if it actually is the link in question
             try {
-                String domain = HttpUrl.get(linkText).topPrivateDomain();
-                if (domain == null) throw new IllegalArgumentException("No domain?");
-                ExternalSiteArchive a = ArchivesManager.getInstance().archiveForDomain(domain);
+                HttpUrl url = HttpUrl.get(linkText);
+                ExternalSiteArchive a = ArchivesManager.getInstance().archiveForUrl(url);
                 if (a != null) {
-                    Loadable resolved = a.resolvable().resolveLoadable(a, HttpUrl.get(linkText));
+                    Loadable resolved = a.resolvable().resolveLoadable(a, url);
                     if (resolved != null) {
                         Object value = new ThreadLink(resolved.boardCode, resolved.no, resolved.markedNo);
                         pl = new PostLinkable(theme, linkText, value, PostLinkable.Type.ARCHIVE);
@@ -349,6 +347,7 @@ public class EmbeddingEngine
                     continue;
                 }
 
+                MediaInfo probed = MediaProbe.getCached(imageUrl);
                 PostImage inlinedImage = new PostImage.Builder().serverFilename(matcher.group(1))
                         //spoiler thumb for some linked items, the image itself for the rest; probably not a great idea
                         .thumbnailUrl(HttpUrl.parse(noThumbnail ? spoilerThumbnail : (String) linkable.value))
@@ -356,23 +355,28 @@ public class EmbeddingEngine
                         .imageUrl(imageUrl)
                         .filename(matcher.group(1))
                         .extension(matcher.group(2))
+                        .imageWidth(probed == null ? 0 : probed.width)
+                        .imageHeight(probed == null ? 0 : probed.height)
                         .spoiler(true)
                         .isInlined()
-                        .size(-1)
+                        .size(probed == null ? -1 : Math.max(0, probed.size))
                         .build();
 
                 generated.add(inlinedImage);
 
-                NetUtils.makeHeadersRequest(imageUrl, new ResponseResult<Headers>() {
-                    @Override
-                    public void onFailure(Exception e) {}
-
-                    @Override
-                    public void onSuccess(Headers result) {
-                        String size = result.get("Content-Length");
-                        inlinedImage.size = size == null ? 0 : Long.parseLong(size);
-                    }
-                });
+                if (probed == null) {
+                    // only the size for now; the container is probed once something actually shows the file
+                    NetUtils.makeHeadersRequest(imageUrl, new ResponseResult<Headers>() {
+                        @Override
+                        public void onFailure(Exception e) {}
+
+                        @Override
+                        public void onSuccess(Headers result) {
+                            String size = result.get("Content-Length");
+                            inlinedImage.size = size == null ? 0 : Long.parseLong(size);
+                        }
+                    });
+                }
             }
         }
         return generated;
@@ -454,7 +458,7 @@ public class EmbeddingEngine
             public void onSuccess(EmbedResult result) {
                 //got a result, replace with the result and also cache the result
                 if (embedder.shouldCacheResults()) {
-                    videoTitleDurCache.put(URL, result);
+                    videoTitleDurCache.put(URL, result, embedder.getCacheTTLMillis());
                 }
                 performStandardEmbedding(theme,
                         commentCopy,
@@ -556,36 +560,23 @@ public class EmbeddingEngine
     //endregion
 
     public void clearCache() {
-        videoTitleDurCache.evictAll();
-        cacheFile.delete();
+        videoTitleDurCache.clear();
     }
 
-    private static final Type lruType = new TypeToken<Map<String, EmbedResult>>() {}.getType();
-    private static final File cacheFile = new File(getCacheDir(), "video_title_cache.json");
-
     @OnLifecycleEvent(Lifecycle.Event.ON_START)
     public void onStart() {
-        try (FileReader reader = new FileReader(cacheFile)) {
-            //restore parsed media title stuff
-            Map<String, EmbedResult> titles = AppModule.gson.fromJson(reader, lruType);
-            //reconstruct
-            videoTitleDurCache = new LruCache<>(CACHE_SIZE);
-            for (Map.Entry<String, EmbedResult> entry : titles.entrySet()) {
-                videoTitleDurCache.put(entry.getKey(), entry.getValue());
-            }
-        } catch (Exception e) {
-            cacheFile.delete(); // bad file probably
-        }
+        // the journal is replayed on the store's own thread, nothing to wait on here
+        long start = System.nanoTime();
+        videoTitleDurCache.preload();
+        Logger.vd(this, "Embed cache start took " + (System.nanoTime() - start) / 1000 + "us");
     }
 
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     public void onStop() {
-        //store parsed media title stuff, extra prevention of unneeded API calls
-        try (FileWriter writer = new FileWriter(cacheFile)) {
-            AppModule.gson.toJson(videoTitleDurCache.snapshot(), lruType, writer);
-        } catch (Exception e) {
-            cacheFile.delete();
-        }
+        // entries are already journaled as they're added, so this only schedules a compaction if needed
+        long start = System.nanoTime();
+        videoTitleDurCache.flush();
+        Logger.vd(this, "Embed cache stop took " + (System.nanoTime() - start) / 1000 + "us");
     }
 
     public interface InvalidateFunction {
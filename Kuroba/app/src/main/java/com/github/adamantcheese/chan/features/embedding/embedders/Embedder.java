@@ -40,6 +40,13 @@ public interface Embedder
         return true;
     }
 
+    /**
+     * @return how long a cached result from this embedder stays valid; 0 or less to keep it until evicted
+     */
+    default long getCacheTTLMillis() {
+        return TimeUnit.DAYS.toMillis(7);
+    }
+
     default int getTimeoutMillis() {
         return (int) TimeUnit.SECONDS.toMillis(3);
     }
@@ -49,6 +49,13 @@ public class DrawerHistoryAdapter
     private History highlighted;
     private final Callback callback;
 
+    // start fetching the next page once a row this close to the end is shown
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+    private boolean loadingPage;
+    private boolean allLoaded;
+    // bumped on every reload, so pages requested before it are dropped
+    private int loadGeneration;
+
     // Placeholder history variables
     private final History LOADING = new History(null);
     private final History NO_HISTORY = new History(null);
@@ -63,15 +70,41 @@ public class DrawerHistoryAdapter
         historyList.clear();
         historyList.add(LOADING);
         highlighted = null;
+        loadGeneration++;
+        loadingPage = false;
+        allLoaded = false;
         notifyDataSetChanged();
 
-        DatabaseUtils.runTaskAsync(instance(DatabaseLoadableManager.class).getHistory(), (result) -> {
-            historyList.clear();
-            if (result.isEmpty()) {
-                result.add(NO_HISTORY);
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (loadingPage || allLoaded) return;
+        loadingPage = true;
+
+        final int generation = loadGeneration;
+        History last = null;
+        for (int i = historyList.size() - 1; i >= 0 && last == null; i--) {
+            History history = historyList.get(i);
+            if (history != LOADING && history != NO_HISTORY) last = history;
+        }
+        DatabaseUtils.runTaskAsync(instance(DatabaseLoadableManager.class).getHistoryPage(last), (result) -> {
+            if (generation != loadGeneration) return;
+            loadingPage = false;
+            allLoaded = result.size() < DatabaseLoadableManager.HISTORY_PAGE_SIZE;
+
+            if (historyList.size() == 1 && historyList.get(0) == LOADING) {
+                historyList.clear();
+                historyList.addAll(result);
+                if (historyList.isEmpty()) {
+                    historyList.add(NO_HISTORY);
+                }
+                notifyDataSetChanged();
+            } else {
+                int start = historyList.size();
+                historyList.addAll(result);
+                notifyItemRangeInserted(start, result.size());
             }
-            historyList.addAll(result);
-            notifyDataSetChanged();
         });
     }
 
@@ -83,7 +116,12 @@ public class DrawerHistoryAdapter
     @Override
     public void onBindViewHolder(HistoryCell holder, int position) {
         History history = historyList.get(position);
+        if (position >= historyList.size() - PAGE_PREFETCH_DISTANCE) {
+            // filtered out rows have no height, so while searching this keeps paging until there's enough to show
+            loadNextPage();
+        }
         if (history != LOADING && history != NO_HISTORY) {
+            instance(DatabaseLoadableManager.class).resolve(history);
             if (!StringUtils.containsIgnoreCase(history.loadable.title, searchQuery)) {
                 holder.itemView.setVisibility(View.GONE);
                 ViewGroup.LayoutParams oldParams = holder.itemView.getLayoutParams();
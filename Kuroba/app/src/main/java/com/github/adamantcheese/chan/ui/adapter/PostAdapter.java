@@ -32,6 +32,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ThreadGallery;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
@@ -68,6 +69,7 @@ public class PostAdapter
 
     private final ThreadStatusCell.Callback statusCellCallback;
     private final List<Post> displayList = new ArrayList<>();
+    private ThreadGallery gallery = ThreadGallery.EMPTY;
 
     private Loadable loadable = null;
     private String highlightedId;
@@ -340,6 +342,7 @@ public class PostAdapter
         if (loadableChanged) {
             displayList.clear();
             displayList.addAll(newList);
+            gallery = ThreadGallery.build(displayList);
             notifyDataSetChanged();
             return;
         }
@@ -383,6 +386,7 @@ public class PostAdapter
 
         displayList.clear();
         displayList.addAll(newList);
+        gallery = ThreadGallery.build(displayList);
 
         result.dispatchUpdatesTo(this); // better than notifyDataSetChanged for small UI updates, but can also act as a full refresh if needed
     }
@@ -391,6 +395,10 @@ public class PostAdapter
         return displayList;
     }
 
+    public ThreadGallery getGallery() {
+        return gallery;
+    }
+
     public void cleanup() {
         highlightedId = null;
         highlightedNo = -1;
@@ -21,14 +21,21 @@ import android.util.AttributeSet;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
+import androidx.annotation.Nullable;
+
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.net.MediaProbe;
+import com.github.adamantcheese.chan.core.net.MediaProbe.MediaInfo;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.ui.view.PostImageThumbnailView;
 import com.github.adamantcheese.chan.ui.view.ThumbnailView;
 
 import java.util.Locale;
 
+import okhttp3.Call;
+
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.dp;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.setClipboardContent;
@@ -39,6 +46,8 @@ public class AlbumViewCell
     private PostImage postImage;
     private PostImageThumbnailView thumbnailView;
     private TextView text;
+    @Nullable
+    private Call probeCall;
 
     public AlbumViewCell(Context context) {
         this(context, null);
@@ -72,23 +81,45 @@ public class AlbumViewCell
 
     public void setPostImage(PostImage postImage) {
         this.postImage = postImage;
+        if (probeCall != null) {
+            probeCall.cancel();
+            probeCall = null;
+        }
 
         thumbnailView.setPostImage(postImage, -1);
 
         if (postImage != null) {
-            text.setText(String.format(
-                    Locale.ENGLISH,
-                    "%s %dx%d %s",
-                    postImage.extension.toUpperCase(),
-                    postImage.imageWidth,
-                    postImage.imageHeight,
-                    getReadableFileSize(postImage.size)
-            ));
+            setInfoText(postImage.imageWidth, postImage.imageHeight, postImage.size);
+            if (postImage.isInlined && postImage.imageWidth == 0) {
+                // linked files don't come with their dimensions
+                probeCall = MediaProbe.probe(postImage.imageUrl, new ResponseResult<MediaInfo>() {
+                    @Override
+                    public void onFailure(Exception e) {}
+
+                    @Override
+                    public void onSuccess(MediaInfo result) {
+                        if (AlbumViewCell.this.postImage != postImage) return;
+                        probeCall = null;
+                        setInfoText(result.width, result.height, Math.max(postImage.size, result.size));
+                    }
+                });
+            }
         }
 
         text.setVisibility(ChanSettings.neverShowAlbumCellInfo.get() ? GONE : VISIBLE);
     }
 
+    private void setInfoText(int width, int height, long size) {
+        text.setText(String.format(
+                Locale.ENGLISH,
+                "%s %dx%d %s",
+                postImage.extension.toUpperCase(),
+                width,
+                height,
+                getReadableFileSize(size)
+        ));
+    }
+
     public PostImage getPostImage() {
         return postImage;
     }
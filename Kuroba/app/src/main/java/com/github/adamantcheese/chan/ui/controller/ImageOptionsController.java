@@ -212,6 +212,7 @@ public class ImageOptionsController
 
     @Override
     public boolean onBack() {
+        presenter.cancelImageOptions();
         callback.onImageOptionsComplete();
         stopPresenting();
         return true;
@@ -219,7 +220,9 @@ public class ImageOptionsController
 
     @Override
     public void onClick(View v) {
-        if (v == cancel || v == viewHolder) {
+        if (v == cancel && presenter.cancelImageOptions()) {
+            ok.setText(R.string.apply_options);
+        } else if (v == cancel || v == viewHolder) {
             BackgroundUtils.runOnMainThread(() -> {
                 stopPresenting();
                 callback.onImageOptionsComplete();
@@ -258,13 +261,19 @@ public class ImageOptionsController
         callback.onImageOptionsComplete();
     }
 
+    @Override
+    public void onReencodeProgress(int percent) {
+        ok.setText(getString(R.string.image_options_applying, percent));
+    }
+
     @Override
     public void disableOrEnableButtons(boolean enabled) {
         fixExif.setEnabled(enabled);
         changeImageChecksum.setEnabled(enabled);
         viewHolder.setEnabled(enabled);
-        cancel.setEnabled(enabled);
+        // cancel stays enabled so a running re-encode can be stopped
         ok.setEnabled(enabled);
+        if (enabled) ok.setText(R.string.apply_options);
     }
 
     @Override
@@ -17,7 +17,9 @@
 package com.github.adamantcheese.chan.ui.controller;
 
 import android.content.Context;
+import android.net.Uri;
 import android.view.View;
+import android.widget.Toast;
 
 import androidx.core.util.Pair;
 
@@ -28,6 +30,7 @@ import com.github.adamantcheese.chan.core.manager.WatchManager;
 import com.github.adamantcheese.chan.core.manager.WatchManager.PinMessages;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.export.ThreadSnapshot;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.presenter.ThreadPresenter;
@@ -43,13 +46,21 @@ import com.github.adamantcheese.chan.ui.toolbar.ToolbarMenuItem;
 import com.github.adamantcheese.chan.ui.toolbar.ToolbarMenuSubItem;
 import com.github.adamantcheese.chan.ui.view.FloatingMenu;
 import com.github.adamantcheese.chan.utils.AndroidUtils;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.k1rakishou.fsaf.FileChooser;
 import com.github.k1rakishou.fsaf.FileManager;
+import com.github.k1rakishou.fsaf.callback.FileCreateCallback;
+import com.github.k1rakishou.fsaf.file.ExternalFile;
 import com.skydoves.balloon.ArrowOrientation;
 import com.skydoves.balloon.ArrowPositionRules;
 import com.skydoves.balloon.Balloon;
 
 import org.greenrobot.eventbus.Subscribe;
+import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -80,6 +91,8 @@ public class ViewThreadController
     WatchManager watchManager;
     @Inject
     FileManager fileManager;
+    @Inject
+    FileChooser fileChooser;
 
     private Loadable loadable;
 
@@ -141,12 +154,62 @@ public class ViewThreadController
                 .withSubItem(R.string.view_my_posts, this::showYourPosts)
                 .withSubItem(R.string.action_open_browser, () -> handleShareAndOpenInBrowser(false))
                 .withSubItem(R.string.action_share, () -> handleShareAndOpenInBrowser(true))
+                .withSubItem(R.string.action_export_snapshot, this::exportSnapshotClicked)
                 .withSubItem(R.string.action_scroll_to_top, () -> threadLayout.scrollTo(0, false))
                 .withSubItem(R.string.action_scroll_to_bottom, () -> threadLayout.scrollTo(-1, false));
 
         menuOverflowBuilder.build().build();
     }
 
+    private void exportSnapshotClicked() {
+        getDefaultAlertBuilder(context).setTitle(R.string.thread_snapshot_export_title)
+                .setMessage(R.string.thread_snapshot_export_message)
+                .setPositiveButton(R.string.thread_snapshot_export_with_media, (dialog, which) -> exportSnapshot(true))
+                .setNegativeButton(R.string.thread_snapshot_export_posts_only, (dialog, which) -> exportSnapshot(false))
+                .create()
+                .show();
+    }
+
+    private void exportSnapshot(boolean includeMedia) {
+        Loadable snapshotLoadable = loadable;
+        String fileName = snapshotLoadable.boardCode + "_" + snapshotLoadable.no + ".zip";
+        fileChooser.openCreateFileDialog(fileName, new FileCreateCallback() {
+            @Override
+            public void onResult(@NotNull Uri uri) {
+                ExternalFile file = fileManager.fromUri(uri);
+                if (file == null) {
+                    showToast(context, R.string.thread_snapshot_export_failed);
+                    return;
+                }
+
+                BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+                    boolean exported;
+                    try (OutputStream outputStream = fileManager.getOutputStream(file)) {
+                        if (outputStream == null) throw new IOException("Could not open " + uri);
+                        exported = ThreadSnapshot.exportBundle(snapshotLoadable, outputStream, includeMedia);
+                    } catch (Exception e) {
+                        Logger.e(ViewThreadController.this, "Snapshot export failed", e);
+                        fileManager.delete(file);
+                        return R.string.thread_snapshot_export_failed;
+                    }
+                    if (!exported) {
+                        fileManager.delete(file);
+                        return R.string.thread_snapshot_export_none;
+                    }
+                    return R.string.thread_snapshot_export_done;
+                }, result -> showToast(context, result));
+            }
+
+            @Override
+            public void onCancel(@NotNull String reason) {
+                // hack to ignore activity cancel toasts
+                if (!reason.contains("(0)")) {
+                    showToast(context, reason, Toast.LENGTH_LONG);
+                }
+            }
+        });
+    }
+
     private void albumClicked(ToolbarMenuItem item) {
         dismissFloatingMenu();
         threadLayout.getPresenter().showAlbum();
@@ -43,6 +43,7 @@ import com.github.adamantcheese.chan.ui.settings.BooleanSettingView;
 import com.github.adamantcheese.chan.ui.settings.IntegerSettingView;
 import com.github.adamantcheese.chan.ui.settings.LinkSettingView;
 import com.github.adamantcheese.chan.ui.settings.ListSettingView;
+import com.github.adamantcheese.chan.ui.settings.ListSettingView.Item;
 import com.github.adamantcheese.chan.ui.settings.SettingView;
 import com.github.adamantcheese.chan.ui.settings.SettingsGroup;
 import com.github.adamantcheese.chan.ui.settings.StringSettingView;
@@ -111,6 +112,12 @@ public class BehaviourSettingsController
                     R.string.empty
             ));
 
+            general.add(new BooleanSettingView(this,
+                    ChanSettings.threadSnapshots,
+                    R.string.setting_thread_snapshots,
+                    R.string.setting_thread_snapshots_description
+            ));
+
             requiresRestart.add(general.add(new BooleanSettingView(this,
                     ChanSettings.controllerSwipeable,
                     R.string.setting_controller_swipeable,
@@ -252,6 +259,37 @@ public class BehaviourSettingsController
                     "If you'd prefer to use a different file chooser, turn this on"
             ));
 
+            List<Item<Integer>> retentionItems = new ArrayList<>();
+            for (int days : new int[]{7, 30, 90, 365}) {
+                retentionItems.add(new Item<>(getString(R.string.days, days), days));
+            }
+            other.add(new ListSettingView<Integer>(this,
+                    ChanSettings.historyRetentionDays,
+                    R.string.setting_history_retention,
+                    retentionItems
+            ) {
+                @Override
+                public String getBottomDescription() {
+                    return getString(R.string.setting_history_retention_description) + "\n\n" + selected.name;
+                }
+            });
+
+            List<Item<Integer>> hideRetentionItems = new ArrayList<>();
+            hideRetentionItems.add(new Item<>(getString(R.string.setting_post_hide_retention_forever), 0));
+            for (int days : new int[]{30, 90, 365}) {
+                hideRetentionItems.add(new Item<>(getString(R.string.days, days), days));
+            }
+            other.add(new ListSettingView<Integer>(this,
+                    ChanSettings.postHideRetentionDays,
+                    R.string.setting_post_hide_retention,
+                    hideRetentionItems
+            ) {
+                @Override
+                public String getBottomDescription() {
+                    return getString(R.string.setting_post_hide_retention_description) + "\n\n" + selected.name;
+                }
+            });
+
             requiresRestart.add(other.add(new BooleanSettingView(this,
                     ChanSettings.okHttpAllowHttp2,
                     R.string.setting_allow_okhttp_http2,
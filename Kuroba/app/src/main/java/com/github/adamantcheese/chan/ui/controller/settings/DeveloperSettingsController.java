@@ -24,26 +24,30 @@ import android.widget.ScrollView;
 import android.widget.Switch;
 import android.widget.TextView;
 
+import com.davemorrissey.labs.subscaleview.TileCache;
 import com.franmontiel.persistentcookiejar.PersistentCookieJar;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
 import com.github.adamantcheese.chan.controller.Controller;
 import com.github.adamantcheese.chan.core.database.DatabaseHelper;
+import com.github.adamantcheese.chan.core.database.DatabaseMaintenanceManager;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.manager.FilterWatchManager;
 import com.github.adamantcheese.chan.core.manager.WakeManager;
+import com.github.adamantcheese.chan.core.manager.WatchManager;
+import com.github.adamantcheese.chan.core.net.MediaCache;
 import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.presenter.AdaptiveImagePreloader;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.settings.PersistableChanState;
 import com.github.adamantcheese.chan.core.settings.primitives.Setting;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
 import com.github.adamantcheese.chan.ui.controller.LogsController;
 import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StartupTrace;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -59,7 +63,11 @@ public class DeveloperSettingsController
     @Inject
     DatabaseHelper databaseHelper;
     @Inject
+    DatabaseMaintenanceManager databaseMaintenanceManager;
+    @Inject
     WakeManager wakeManager;
+    @Inject
+    WatchManager watchManager;
 
     public DeveloperSettingsController(Context context) {
         super(context);
@@ -98,10 +106,53 @@ public class DeveloperSettingsController
         wrapper.addView(crashButton);
 
         //DATABASE SUMMARY
-        TextView summaryText = new TextView(context);
-        summaryText.setText("Database summary:\n" + DatabaseUtils.getDatabaseSummary());
-        summaryText.setPadding(0, dp(5), 0, 0);
-        wrapper.addView(summaryText);
+        Runnable refreshDatabaseSummary = addSummary(wrapper, "Database summary", DatabaseUtils::getDatabaseSummary);
+
+        //DATABASE REPORT AND MAINTENANCE
+        TextView databaseReportText = new TextView(context);
+        databaseReportText.setPadding(0, dp(5), 0, 0);
+        Button databaseReport = new Button(context);
+        databaseReport.setOnClickListener(v -> {
+            databaseReportText.setText("Building database report…");
+            DatabaseUtils.runTaskAsync(databaseMaintenanceManager.getReport(), result -> {
+                Logger.i(this, "Database report:\n" + result);
+                databaseReportText.setText("Database report:\n" + result);
+            });
+        });
+        databaseReport.setText("Show database sizes and query plans");
+        wrapper.addView(databaseReport);
+        Button databaseMaintenance = new Button(context);
+        databaseMaintenance.setOnClickListener(v -> {
+            databaseReportText.setText("Running database maintenance…");
+            databaseMaintenanceManager.runMaintenance(() -> {
+                refreshDatabaseSummary.run();
+                databaseReport.performClick();
+            });
+        });
+        databaseMaintenance.setText("Run database maintenance now");
+        wrapper.addView(databaseMaintenance);
+        wrapper.addView(databaseReportText);
+
+        //MEDIA CACHE SUMMARY
+        addSummary(wrapper, "Media cache summary", MediaCache::getStats);
+
+        //CONTENT STORE SUMMARY
+        addSummary(wrapper, "Content store summary", NetUtils.CONTENT_STORE::getStats);
+
+        //IMAGE VIEWER PRELOAD SUMMARY
+        addSummary(wrapper, "Image viewer preload summary", AdaptiveImagePreloader::getStats);
+
+        //STARTUP TRACE
+        addSummary(wrapper, "Startup trace", StartupTrace::getSummary);
+
+        //TILE CACHE SUMMARY
+        addSummary(wrapper, "Tile cache summary", TileCache.getInstance()::getStats);
+
+        //WATCH SCHEDULER SUMMARY
+        addSummary(wrapper, "Watch scheduler summary", watchManager::getScheduleSummary);
+
+        //BENCHMARKS
+        DeveloperBenchmarks.addTo(context, wrapper);
 
         //APP RESET
         Button resetDbButton = new Button(context);
@@ -139,14 +190,8 @@ public class DeveloperSettingsController
         //FILTER WATCH IGNORE RESET
         Button clearFilterWatchIgnores = new Button(context);
         clearFilterWatchIgnores.setOnClickListener(v -> {
-            try {
-                Field ignoredField = filterWatchManager.getClass().getDeclaredField("ignoredPosts");
-                ignoredField.setAccessible(true);
-                ignoredField.set(filterWatchManager, Collections.synchronizedSet(new HashSet<Integer>()));
-                showToast(context, "Cleared ignores");
-            } catch (Exception e) {
-                showToast(context, "Failed to clear ignores");
-            }
+            filterWatchManager.clearIgnores();
+            showToast(context, "Cleared ignores");
         });
         clearFilterWatchIgnores.setText("Clear ignored filter watches");
         wrapper.addView(clearFilterWatchIgnores);
@@ -204,4 +249,23 @@ public class DeveloperSettingsController
         view = scrollView;
         view.setBackgroundColor(getAttrColor(context, R.attr.backcolor));
     }
+
+    /**
+     * Adds a titled block of text from the given source.
+     *
+     * @return a runnable that reads the source again and updates the text
+     */
+    @SuppressLint("SetTextI18n")
+    private Runnable addSummary(LinearLayout wrapper, String title, Summary summary) {
+        TextView summaryText = new TextView(context);
+        summaryText.setPadding(0, dp(5), 0, 0);
+        Runnable refresh = () -> summaryText.setText(title + ":\n" + summary.get());
+        refresh.run();
+        wrapper.addView(summaryText);
+        return refresh;
+    }
+
+    private interface Summary {
+        String get();
+    }
 }
@@ -26,9 +26,16 @@ import androidx.annotation.Nullable;
 import com.github.adamantcheese.chan.BuildConfig;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
+import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager;
+import com.github.adamantcheese.chan.core.database.DatabaseUtils;
+import com.github.adamantcheese.chan.core.model.export.ThreadSnapshot;
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.presenter.ImportExportSettingsPresenter;
 import com.github.adamantcheese.chan.core.repository.ImportExportRepository;
+import com.github.adamantcheese.chan.core.repository.SiteRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.ui.controller.LoadingViewController;
 import com.github.adamantcheese.chan.ui.settings.LinkSettingView;
 import com.github.adamantcheese.chan.ui.settings.SettingsGroup;
@@ -42,6 +49,10 @@ import com.github.k1rakishou.fsaf.file.ExternalFile;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.GregorianCalendar;
+
 import javax.inject.Inject;
 
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
@@ -57,6 +68,10 @@ public class ImportExportSettingsController
     FileManager fileManager;
     @Inject
     FileChooser fileChooser;
+    @Inject
+    SiteRepository siteRepository;
+    @Inject
+    DatabaseLoadableManager databaseLoadableManager;
 
     private ImportExportSettingsPresenter presenter;
 
@@ -69,7 +84,7 @@ public class ImportExportSettingsController
         super(context);
 
         this.callbacks = callbacks;
-        this.loadingViewController = new LoadingViewController(context, true);
+        this.loadingViewController = new LoadingViewController(context, false);
     }
 
     @Override
@@ -112,6 +127,13 @@ public class ImportExportSettingsController
                     (v, sv) -> onImportClicked()
             ));
 
+            group.add(new LinkSettingView(
+                    this,
+                    getString(R.string.thread_snapshot_import),
+                    getString(R.string.thread_snapshot_import_description),
+                    (v, sv) -> onImportSnapshotClicked()
+            ));
+
             groups.add(group);
         }
     }
@@ -243,6 +265,64 @@ public class ImportExportSettingsController
         });
     }
 
+    private void onImportSnapshotClicked() {
+        fileChooser.openChooseFileDialog(new FileChooserCallback() {
+            @Override
+            public void onResult(@NotNull Uri uri) {
+                ExternalFile externalFile = fileManager.fromUri(uri);
+                if (externalFile == null) {
+                    String message = "onImportSnapshotClicked() fileManager.fromUri() returned null, uri = " + uri;
+
+                    Logger.d(ImportExportSettingsController.this, message);
+                    showToast(context, message, Toast.LENGTH_LONG);
+                    return;
+                }
+
+                BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+                    try {
+                        return getString(R.string.thread_snapshot_import_done, importSnapshot(externalFile));
+                    } catch (Exception e) {
+                        Logger.e(ImportExportSettingsController.this, "Snapshot import failed", e);
+                        return getString(R.string.thread_snapshot_import_failed, e.getMessage());
+                    }
+                }, message -> showToast(context, message, Toast.LENGTH_LONG));
+            }
+
+            @Override
+            public void onCancel(@NotNull String reason) {
+                showToast(context, reason, Toast.LENGTH_LONG);
+            }
+        });
+    }
+
+    /**
+     * Imports the snapshot and puts its thread in the history, where it can be opened from.
+     *
+     * @return the thread's title
+     */
+    private String importSnapshot(ExternalFile externalFile)
+            throws IOException {
+        ThreadSnapshot.Header header;
+        try (InputStream inputStream = fileManager.getInputStream(externalFile)) {
+            if (inputStream == null) throw new IOException("Could not open " + externalFile.getFullPath());
+            header = ThreadSnapshot.importBundle(inputStream);
+        }
+
+        Site site = siteRepository.forId(header.siteId);
+        Board board = site == null ? null : site.board(header.boardCode);
+        if (board == null) throw new IOException("/" + header.boardCode + "/ isn't set up in this app");
+
+        Loadable loadable = Loadable.forThread(board, header.no, header.title);
+        loadable.lastLoadDate = GregorianCalendar.getInstance().getTime();
+        DatabaseUtils.runTask(databaseLoadableManager.updateLoadable(loadable, false));
+        return header.title;
+    }
+
+    @Override
+    public void onProgress(int percent) {
+        BackgroundUtils.runOnMainThread(() -> loadingViewController.updateWithText(percent + "%"));
+    }
+
     @Override
     public void onSuccess(ImportExportRepository.ImportExport importExport) {
         // called on background thread
@@ -246,6 +246,27 @@ public class MediaSettingsController
                     new Pair<>(100, 2000)
             )));
 
+            requiresRestart.add(loading.add(new IntegerSettingView(this,
+                    ChanSettings.contentStoreSize,
+                    "Image store size (in MB)",
+                    "Full images kept by file hash, so reposts don't download again\nOn top of the file cache size",
+                    new Pair<>(0, 2000)
+            )));
+
+            requiresRestart.add(loading.add(new IntegerSettingView(this,
+                    ChanSettings.videoCacheSize,
+                    "Video cache size (in MB)",
+                    "Video cache size in MB",
+                    new Pair<>(20, 1000)
+            )));
+
+            loading.add(new IntegerSettingView(this,
+                    ChanSettings.videoPrefetchSeconds,
+                    "Video preload length (in seconds)",
+                    "How much of a preloaded video to fetch ahead of time\n(0 to disable)",
+                    new Pair<>(0, 30)
+            ));
+
             groups.add(loading);
         }
     }
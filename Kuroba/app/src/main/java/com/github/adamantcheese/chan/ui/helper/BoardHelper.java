@@ -31,7 +31,8 @@ public class BoardHelper {
     public static Boards search(Boards from, final String query) {
         List<Pair<Board, Integer>> ratios = new ArrayList<>();
         Board exact = null;
-        for (Board board : from) {
+        // only score boards the index considers plausible, fuzzy matching every board is too slow for big sites
+        for (Board board : BoardSearchIndex.get(from).candidates(query)) {
             int code = FuzzySearch.ratio(board.code, query);
             int name = FuzzySearch.ratio(board.name, query);
             int description = FuzzySearch.weightedRatio(board.description, query);
@@ -68,6 +69,34 @@ public class BoardHelper {
         return board.siteId + ":" + code;
     }
 
+    /**
+     * @return a key identifying a board by site and exact code, for use in hash lookups
+     */
+    public static String boardKey(int siteId, String code) {
+        return siteId + ":" + code;
+    }
+
+    /**
+     * Converts a unique id from {@link #boardUniqueId(Board)} into the {@link #boardKey(int, String)} of the board it
+     * matches under {@link #matchesUniqueId(Board, String)}, or null if it can't match any board.
+     */
+    public static String uniqueIdToKey(String uniqueId) {
+        if (!uniqueId.contains(":")) {
+            return boardKey(0, uniqueId);
+        } else {
+            String[] splitted = uniqueId.split(":");
+            if (splitted.length != 2) {
+                return null;
+            }
+
+            try {
+                return boardKey(Integer.parseInt(splitted[0]), splitted[1]);
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+    }
+
     public static boolean matchesUniqueId(Board board, String uniqueId) {
         if (!uniqueId.contains(":")) {
             return board.siteId == 0 && board.code.equals(uniqueId);
@@ -0,0 +1,217 @@
+package com.github.adamantcheese.chan.ui.helper;
+
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A search index over one board list, so that fuzzy scoring only has to run over plausible candidates.<br>
+ * <br>
+ * Codes, names and descriptions are lowercased and broken into trigrams once, with a posting list of boards per
+ * trigram. A query of three or more characters selects the boards that contain all of its trigrams. That only ever
+ * narrows as a query is extended, so typing one more character filters the previous candidates rather than starting
+ * over. If it finds too few boards, for example because of a typo, boards sharing at least half the query's trigrams
+ * are used instead. Shorter queries have no trigrams to go by, so every board is a candidate, the same as without an
+ * index.<br>
+ * <br>
+ * Board lists are replaced rather than modified when they change, so indexes are cached by list identity.
+ */
+public class BoardSearchIndex {
+    // one per site is plenty; most recently used last
+    private static final int MAX_INDEXES = 8;
+    private static final List<BoardSearchIndex> indexes = new ArrayList<>();
+
+    // below this many strict candidates, fall back to the looser trigram match
+    private static final int MIN_CANDIDATES = 10;
+
+    private final WeakReference<Boards> source;
+    private final Board[] boards;
+    private final Map<String, int[]> postings = new HashMap<>();
+
+    // last strict query and its candidates, for refining as the user types
+    private String lastQuery;
+    private int[] lastCandidates;
+
+    private BoardSearchIndex(Boards from) {
+        source = new WeakReference<>(from);
+        int count = from.size();
+        boards = from.toArray(new Board[0]);
+
+        Map<String, IntList> building = new HashMap<>();
+        Set<String> boardTrigrams = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            Board board = boards[i];
+            boardTrigrams.clear();
+            addTrigrams(boardTrigrams, normalize(board.code));
+            addTrigrams(boardTrigrams, normalize(board.name));
+            addTrigrams(boardTrigrams, normalize(board.description));
+            for (String trigram : boardTrigrams) {
+                IntList list = building.get(trigram);
+                if (list == null) {
+                    list = new IntList();
+                    building.put(trigram, list);
+                }
+                list.add(i); // added in board order, so every posting list is sorted
+            }
+        }
+        for (Map.Entry<String, IntList> entry : building.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * @return the index for this board list, building it if this list hasn't been searched before
+     */
+    public static BoardSearchIndex get(@NonNull Boards boards) {
+        synchronized (indexes) {
+            for (int i = indexes.size() - 1; i >= 0; i--) {
+                BoardSearchIndex index = indexes.get(i);
+                Boards indexed = index.source.get();
+                if (indexed == null || (indexed == boards && index.boards.length != boards.size())) {
+                    indexes.remove(i);
+                } else if (indexed == boards) {
+                    indexes.remove(i);
+                    indexes.add(index);
+                    return index;
+                }
+            }
+            BoardSearchIndex index = new BoardSearchIndex(boards);
+            indexes.add(index);
+            if (indexes.size() > MAX_INDEXES) {
+                indexes.remove(0);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return the boards that may match this query, in list order; the caller still has to score them
+     */
+    public synchronized List<Board> candidates(@NonNull String query) {
+        String normalized = normalize(query);
+        if (normalized.length() < 3) {
+            lastQuery = null;
+            lastCandidates = null;
+            return Arrays.asList(boards);
+        }
+
+        int[] strict;
+        if (lastQuery != null && normalized.startsWith(lastQuery)) {
+            strict = refine(lastCandidates, normalized);
+        } else {
+            strict = strictCandidates(normalized);
+        }
+        lastQuery = normalized;
+        lastCandidates = strict;
+
+        int[] result = strict;
+        if (strict.length < MIN_CANDIDATES) {
+            result = looseCandidates(normalized);
+        }
+
+        List<Board> candidates = new ArrayList<>(result.length);
+        for (int i : result) {
+            candidates.add(boards[i]);
+        }
+        return candidates;
+    }
+
+    private int[] strictCandidates(String query) {
+        Set<String> trigrams = new HashSet<>();
+        addTrigrams(trigrams, query);
+        int[] result = null;
+        for (String trigram : trigrams) {
+            int[] posting = postings.get(trigram);
+            if (posting == null) return new int[0];
+            result = result == null ? posting : intersect(result, posting);
+            if (result.length == 0) break;
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    private int[] refine(int[] previous, String query) {
+        int[] result = previous;
+        Set<String> trigrams = new HashSet<>();
+        // only trigrams that the previous query didn't already have can narrow the set
+        addTrigrams(trigrams, query.substring(Math.max(0, lastQuery.length() - 2)));
+        for (String trigram : trigrams) {
+            int[] posting = postings.get(trigram);
+            if (posting == null) return new int[0];
+            result = intersect(result, posting);
+            if (result.length == 0) break;
+        }
+        return result;
+    }
+
+    private int[] looseCandidates(String query) {
+        Set<String> trigrams = new HashSet<>();
+        addTrigrams(trigrams, query);
+        int needed = Math.max(1, trigrams.size() / 2);
+        int[] counts = new int[boards.length];
+        IntList result = new IntList();
+        for (String trigram : trigrams) {
+            int[] posting = postings.get(trigram);
+            if (posting == null) continue;
+            for (int i : posting) {
+                if (++counts[i] == needed) result.add(i);
+            }
+        }
+        int[] sorted = result.toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static void addTrigrams(Set<String> into, String text) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            into.add(text.substring(i, i + 3));
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
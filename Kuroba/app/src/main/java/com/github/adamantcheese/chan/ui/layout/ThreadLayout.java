@@ -46,6 +46,7 @@ import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostHttpIcon;
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.PostLinkable;
+import com.github.adamantcheese.chan.core.model.ThreadGallery;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.core.presenter.ReplyPresenter.Page;
@@ -352,6 +353,16 @@ public class ThreadLayout
         }
     }
 
+    @Override
+    public ThreadGallery getDisplayingGallery() {
+        if (postPopupHelper.isOpen()) {
+            // popups only have a handful of posts
+            return ThreadGallery.build(postPopupHelper.getDisplayingPosts());
+        } else {
+            return threadListLayout.getDisplayingGallery();
+        }
+    }
+
     public PostViewMode getPostViewMode() {
         return threadListLayout.getPostViewMode();
     }
@@ -40,6 +40,7 @@ import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostImage;
+import com.github.adamantcheese.chan.core.model.ThreadGallery;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.presenter.ReplyPresenter;
 import com.github.adamantcheese.chan.core.repository.BitmapRepository;
@@ -458,6 +459,10 @@ public class ThreadListLayout
         return postAdapter.getDisplayList();
     }
 
+    public ThreadGallery getDisplayingGallery() {
+        return postAdapter.getGallery();
+    }
+
     public PostViewMode getPostViewMode() {
         return postViewMode;
     }
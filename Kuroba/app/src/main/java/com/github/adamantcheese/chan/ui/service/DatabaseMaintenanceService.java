@@ -0,0 +1,54 @@
+package com.github.adamantcheese.chan.ui.service;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.ComponentName;
+
+import com.github.adamantcheese.chan.core.database.DatabaseMaintenanceManager;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import static com.github.adamantcheese.chan.Chan.inject;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getJobScheduler;
+
+/**
+ * Runs {@link DatabaseMaintenanceManager} about once a day, while the device is idle and charging.
+ */
+public class DatabaseMaintenanceService
+        extends JobService {
+    // last page notification jobs are keyed by thread number, which is never negative
+    private static final int JOB_ID = -1;
+
+    @Inject
+    DatabaseMaintenanceManager databaseMaintenanceManager;
+
+    public DatabaseMaintenanceService() {
+        inject(this);
+    }
+
+    public static void schedule() {
+        // rescheduling would restart the period, and the job might never come due for someone opening the app daily
+        for (JobInfo job : getJobScheduler().getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) return;
+        }
+        getJobScheduler().schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(getAppContext(), DatabaseMaintenanceService.class)
+        ).setRequiresCharging(true).setRequiresDeviceIdle(true).setPeriodic(TimeUnit.DAYS.toMillis(1)).build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        databaseMaintenanceManager.runMaintenance(() -> jobFinished(params, false));
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // whatever was done is committed, the rest waits for the next window
+        return false;
+    }
+}
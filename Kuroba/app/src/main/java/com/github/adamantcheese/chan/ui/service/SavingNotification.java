@@ -31,14 +31,18 @@ import androidx.core.app.NotificationCompat;
 
 import com.github.adamantcheese.chan.R;
 
+import static android.text.format.DateUtils.formatElapsedTime;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getNotificationManager;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.postToEventBus;
+import static com.github.adamantcheese.chan.utils.PostUtils.getReadableFileSize;
 
 public class SavingNotification
         extends Service {
     public static final String DONE_TASKS_KEY = "done_tasks";
     public static final String FAILED_TASKS_KEY = "failed_tasks";
     public static final String TOTAL_TASKS_KEY = "total_tasks";
+    public static final String BYTES_PER_SECOND_KEY = "bytes_per_second";
+    public static final String ETA_SECONDS_KEY = "eta_seconds";
     private static final String CANCEL_KEY = "cancel";
 
     private static final String NOTIFICATION_ID_STR = "3";
@@ -92,8 +96,12 @@ public class SavingNotification
                 int doneTasks = extras.getInt(DONE_TASKS_KEY);
                 int failedTasks = extras.getInt(FAILED_TASKS_KEY);
                 int totalTasks = extras.getInt(TOTAL_TASKS_KEY);
+                long bytesPerSecond = extras.getLong(BYTES_PER_SECOND_KEY);
+                long etaSeconds = extras.getLong(ETA_SECONDS_KEY, -1);
                 //replace the notification with the generated one
-                startForeground(NOTIFICATION_ID, getNotification(doneTasks, failedTasks, totalTasks));
+                startForeground(NOTIFICATION_ID,
+                        getNotification(doneTasks, failedTasks, totalTasks, bytesPerSecond, etaSeconds)
+                );
                 return START_STICKY;
             }
         }
@@ -106,7 +114,7 @@ public class SavingNotification
         return START_NOT_STICKY;
     }
 
-    private Notification getNotification(int done, int failed, int total) {
+    private Notification getNotification(int done, int failed, int total, long bytesPerSecond, long etaSeconds) {
         Intent intent = new Intent(this, SavingNotification.class);
         intent.putExtra(CANCEL_KEY, true);
         PendingIntent pendingIntent = PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
@@ -120,6 +128,14 @@ public class SavingNotification
                 .setContentIntent(pendingIntent)
                 .setOngoing(true);
 
+        // nothing to show until the first second of transfer has been measured
+        if (bytesPerSecond > 0) {
+            String speed = getReadableFileSize(bytesPerSecond);
+            builder.setSubText(etaSeconds >= 0
+                    ? getString(R.string.image_save_notification_progress, speed, formatElapsedTime(etaSeconds))
+                    : getString(R.string.image_save_notification_speed, speed));
+        }
+
         return builder.build();
     }
 
@@ -40,6 +40,7 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
+import android.os.PowerManager;
 import android.text.TextUtils;
 import android.util.TypedValue;
 import android.view.ContextThemeWrapper;
@@ -74,6 +75,7 @@ import static android.content.Context.INPUT_METHOD_SERVICE;
 import static android.content.Context.JOB_SCHEDULER_SERVICE;
 import static android.content.Context.MODE_PRIVATE;
 import static android.content.Context.NOTIFICATION_SERVICE;
+import static android.content.Context.POWER_SERVICE;
 import static android.content.res.Configuration.ORIENTATION_LANDSCAPE;
 import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
 import static android.view.inputmethod.InputMethodManager.SHOW_IMPLICIT;
@@ -469,6 +471,10 @@ public class AndroidUtils {
         return (JobScheduler) application.getSystemService(JOB_SCHEDULER_SERVICE);
     }
 
+    public static PowerManager getPowerManager() {
+        return (PowerManager) application.getSystemService(POWER_SERVICE);
+    }
+
     public static AudioManager getAudioManager() {
         return (AudioManager) getAppContext().getSystemService(AUDIO_SERVICE);
     }
@@ -4,8 +4,12 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.media.MediaMetadataRetriever;
 
 import androidx.annotation.DrawableRes;
@@ -23,9 +27,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.util.Arrays;
+import java.util.zip.CRC32;
 
 import kotlin.random.Random;
 
@@ -38,6 +44,8 @@ import static com.github.adamantcheese.chan.utils.AndroidUtils.getRes;
 public class BitmapUtils {
     private static final String TAG = "BitmapUtils";
     private static final int PIXEL_DIFF = 5;
+    // rows of the source decoded at a time when rotating
+    private static final int ROTATE_STRIP_ROWS = 256;
 
     private static final byte[] PNG_HEADER = new byte[]{(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
     private static final byte[] JPEG_HEADER = new byte[]{(byte) 0xFF, (byte) 0xD8};
@@ -50,79 +58,297 @@ public class BitmapUtils {
         options.inMutable = true;
     }
 
+    /**
+     * Re-encodes the given image file with the given options into a new temp file. This does disk and decode work and
+     * must be called off the main thread.
+     *
+     * @param listener receives coarse progress and is polled for cancellation between stages; if canceled, the
+     *                 partial output is removed and an {@link InterruptedIOException} is thrown
+     */
     public static File reencodeBitmapFile(
             @NonNull File inputBitmapFile,
             @NonNull ImageReencodingPresenter.ImageOptions imageOptions,
-            @Nullable CompressFormat newFormat
+            @Nullable CompressFormat newFormat,
+            @NonNull ReencodeListener listener
     )
             throws IOException {
+        BackgroundUtils.ensureBackgroundThread();
         if (imageOptions.areOptionsInvalid())
             throw new IllegalArgumentException("Image options not formatted correctly.");
-        Bitmap bitmap = BitmapFactory.decodeFile(inputBitmapFile.getAbsolutePath(), options);
-        Matrix matrix = new Matrix();
 
-        //slightly change one pixel of the image to change it's checksum
-        if (imageOptions.changeImageChecksum) {
-            int randomX = Math.abs(Random.Default.nextInt()) % bitmap.getWidth();
-            int randomY = Math.abs(Random.Default.nextInt()) % bitmap.getHeight();
-
-            // one pixel is enough to change the checksum of an image
-            int pixel = bitmap.getPixel(randomX, randomY);
-
-            // NOTE: apparently when re-encoding jpegs, changing a pixel by 1 is sometimes not enough
-            // due to the jpeg's compression algorithm (it may even out this pixel with surrounding
-            // pixels like it wasn't changed at all) so we have to increase the difference a little bit
-            if (pixel - PIXEL_DIFF >= 0) {
-                pixel -= PIXEL_DIFF;
-            } else {
-                pixel += PIXEL_DIFF;
+        CompressFormat currentFormat = getImageFormat(inputBitmapFile);
+        if (newFormat == null) newFormat = currentFormat;
+        if (newFormat == null) throw new IOException("Unknown image format");
+
+        File tempFile = null;
+        try {
+            deleteOldTempFiles(getCacheDir().listFiles());
+            tempFile = File.createTempFile("temp_file_name", null, getCacheDir());
+
+            // a checksum change alone doesn't need the pixels touched at all, so skip the decode/re-encode entirely
+            if (imageOptions.isChecksumChangeOnly() && newFormat == currentFormat) {
+                listener.onProgress(50);
+                changeFileChecksum(inputBitmapFile, tempFile, currentFormat);
+                listener.onProgress(100);
+                return tempFile;
             }
 
-            bitmap.setPixel(randomX, randomY, pixel);
+            checkCanceled(listener);
+            int degrees = imageOptions.fixExif ? getExifRotation(inputBitmapFile) : 0;
+            Bitmap bitmap = degrees != 0
+                    ? decodeRotated(inputBitmapFile, imageOptions, degrees, listener)
+                    : decodeForReencode(inputBitmapFile, imageOptions);
+            if (bitmap == null) throw new IOException("Could not decode image");
+            listener.onProgress(33);
+
+            try {
+                checkCanceled(listener);
+                if (imageOptions.changeImageChecksum) {
+                    changeRandomPixel(bitmap);
+                }
+                if (degrees == 0) {
+                    bitmap = scaleForReencode(inputBitmapFile, bitmap, imageOptions);
+                }
+                listener.onProgress(66);
+
+                checkCanceled(listener);
+                try (FileOutputStream output = new FileOutputStream(tempFile)) {
+                    bitmap.compress(newFormat, imageOptions.reencodeQuality, output);
+                }
+                checkCanceled(listener);
+                listener.onProgress(100);
+            } finally {
+                bitmap.recycle();
+            }
+
+            return tempFile;
+        } catch (Throwable error) {
+            File[] list = new File[1];
+            list[0] = tempFile;
+            deleteOldTempFiles(list);
+
+            throw error;
         }
+    }
+
+    private static void checkCanceled(ReencodeListener listener)
+            throws InterruptedIOException {
+        if (listener.isCanceled()) throw new InterruptedIOException("Re-encode canceled");
+    }
 
-        //scale the image down
+    /**
+     * Decodes the file for re-encoding, subsampling at decode time if the image is going to be reduced anyway so that
+     * the full resolution image never has to be held in memory.
+     */
+    @Nullable
+    private static Bitmap decodeForReencode(File file, ImageReencodingPresenter.ImageOptions imageOptions) {
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inMutable = true;
         if (imageOptions.reducePercent > 0) {
+            Pair<Integer, Integer> dims = getImageDims(file);
             float scale = (100f - (float) imageOptions.reducePercent) / 100f;
-            matrix.setScale(scale, scale);
+            decodeOptions.inSampleSize = calculateInSampleSize(dims.first,
+                    dims.second,
+                    (int) (dims.first * scale),
+                    (int) (dims.second * scale)
+            );
         }
+        return BitmapFactory.decodeFile(file.getAbsolutePath(), decodeOptions);
+    }
 
-        //fix exif
-        if (imageOptions.fixExif) {
-            try {
-                ExifInterface exif = new ExifInterface(inputBitmapFile.getAbsolutePath());
-                matrix.postRotate(exif.getRotationDegrees());
-            } catch (Exception ignored) {}
+    /**
+     * @return the largest power of two sample size that keeps the decoded image at least as large as the target
+     */
+    public static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) return inSampleSize;
+        while (width / (inSampleSize * 2) >= targetWidth && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
         }
+        return inSampleSize;
+    }
+
+    /**
+     * Applies any scaling left over after subsampling at decode time, so at most one extra bitmap at the output size is
+     * allocated. If nothing needs to change, the input bitmap is returned as is. The input is recycled if a new bitmap
+     * is returned.
+     */
+    private static Bitmap scaleForReencode(
+            File inputFile, Bitmap bitmap, ImageReencodingPresenter.ImageOptions imageOptions
+    ) {
+        if (imageOptions.reducePercent <= 0) return bitmap;
+
+        Pair<Integer, Integer> dims = getImageDims(inputFile);
+        float scale = (100f - (float) imageOptions.reducePercent) / 100f;
+        float remaining = dims.first > 0 ? (dims.first * scale) / bitmap.getWidth() : scale;
+        if (remaining >= 1f) return bitmap;
 
+        Matrix matrix = new Matrix();
+        matrix.setScale(remaining, remaining);
         Bitmap newBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        bitmap.recycle();
+        if (newBitmap != bitmap) bitmap.recycle();
+        return newBitmap;
+    }
 
-        File tempFile = null;
+    private static int getExifRotation(File file) {
+        try {
+            return new ExifInterface(file.getAbsolutePath()).getRotationDegrees();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
 
+    /**
+     * Decodes the file scaled and rotated straight into the output bitmap, a strip of rows at a time. A rotated image
+     * can't be drawn over its own pixels, so this way only the output and one strip are ever in memory instead of the
+     * decoded image plus a rotated copy of it.
+     */
+    @Nullable
+    private static Bitmap decodeRotated(
+            File file, ImageReencodingPresenter.ImageOptions imageOptions, int degrees, ReencodeListener listener
+    )
+            throws IOException {
+        BitmapRegionDecoder decoder;
         try {
-            deleteOldTempFiles(getCacheDir().listFiles());
+            decoder = BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false);
+        } catch (IOException e) {
+            return null;
+        }
 
-            tempFile = File.createTempFile("temp_file_name", null, getCacheDir());
+        try {
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            float scale = imageOptions.reducePercent > 0 ? (100f - (float) imageOptions.reducePercent) / 100f : 1f;
+            int sampleSize = calculateInSampleSize(width, height, (int) (width * scale), (int) (height * scale));
+
+            // source pixels to output pixels
+            Matrix transform = new Matrix();
+            transform.setScale(scale, scale);
+            transform.postRotate(degrees);
+            RectF bounds = new RectF(0, 0, width, height);
+            transform.mapRect(bounds);
+            transform.postTranslate(-bounds.left, -bounds.top);
+
+            Bitmap output = Bitmap.createBitmap(Math.max(1, Math.round(bounds.width())),
+                    Math.max(1, Math.round(bounds.height())),
+                    Bitmap.Config.ARGB_8888
+            );
+            Canvas canvas = new Canvas(output);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            BitmapFactory.Options stripOptions = new BitmapFactory.Options();
+            stripOptions.inSampleSize = sampleSize;
+            int stripRows = ROTATE_STRIP_ROWS * sampleSize;
 
-            try (FileOutputStream output = new FileOutputStream(tempFile)) {
-                newBitmap.compress(newFormat, imageOptions.reencodeQuality, output);
+            try {
+                Matrix stripTransform = new Matrix();
+                for (int top = 0; top < height; top += stripRows) {
+                    checkCanceled(listener);
+                    Rect region = new Rect(0, top, width, Math.min(height, top + stripRows));
+                    Bitmap strip = decoder.decodeRegion(region, stripOptions);
+                    if (strip == null) throw new IOException("Could not decode image");
+                    stripTransform.setScale(sampleSize, sampleSize);
+                    stripTransform.postTranslate(0, top);
+                    stripTransform.postConcat(transform);
+                    canvas.drawBitmap(strip, stripTransform, paint);
+                    strip.recycle();
+                }
+            } catch (Throwable e) {
+                output.recycle();
+                throw e;
             }
+            return output;
+        } finally {
+            decoder.recycle();
+        }
+    }
 
-            return tempFile;
-        } catch (Throwable error) {
-            File[] list = new File[1];
-            list[0] = tempFile;
-            deleteOldTempFiles(list);
+    private static void changeRandomPixel(Bitmap bitmap) {
+        //slightly change one pixel of the image to change it's checksum
+        int randomX = Math.abs(Random.Default.nextInt()) % bitmap.getWidth();
+        int randomY = Math.abs(Random.Default.nextInt()) % bitmap.getHeight();
 
-            throw error;
-        } finally {
-            if (newBitmap != null) {
-                newBitmap.recycle();
+        // one pixel is enough to change the checksum of an image
+        int pixel = bitmap.getPixel(randomX, randomY);
+
+        // NOTE: apparently when re-encoding jpegs, changing a pixel by 1 is sometimes not enough
+        // due to the jpeg's compression algorithm (it may even out this pixel with surrounding
+        // pixels like it wasn't changed at all) so we have to increase the difference a little bit
+        if (pixel - PIXEL_DIFF >= 0) {
+            pixel -= PIXEL_DIFF;
+        } else {
+            pixel += PIXEL_DIFF;
+        }
+
+        bitmap.setPixel(randomX, randomY, pixel);
+    }
+
+    /**
+     * Copies the input file to the output, inserting a block of random metadata that decoders ignore. The image data
+     * itself is untouched, but the file's checksum changes.
+     */
+    private static void changeFileChecksum(File input, File output, CompressFormat format)
+            throws IOException {
+        byte[] data = Files.toByteArray(input);
+        byte[] junk = new byte[16];
+        for (int i = 0; i < junk.length; i++) {
+            junk[i] = (byte) ('a' + Math.abs(Random.Default.nextInt()) % 26);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(output)) {
+            switch (format) {
+                case JPEG: {
+                    // a COM segment after the APPn segments, as JFIF and EXIF both have to directly follow SOI
+                    int insertAt = 2;
+                    while (insertAt + 4 <= data.length && (data[insertAt] & 0xFF) == 0xFF
+                            && (data[insertAt + 1] & 0xF0) == 0xE0) {
+                        int segmentLength = (data[insertAt + 2] & 0xFF) << 8 | (data[insertAt + 3] & 0xFF);
+                        if (segmentLength < 2 || insertAt + 2 + segmentLength > data.length) break;
+                        insertAt += 2 + segmentLength;
+                    }
+                    out.write(data, 0, insertAt);
+                    int length = junk.length + 2;
+                    out.write(new byte[]{(byte) 0xFF, (byte) 0xFE, (byte) (length >> 8), (byte) length});
+                    out.write(junk);
+                    out.write(data, insertAt, data.length - insertAt);
+                    break;
+                }
+                case PNG: {
+                    // a private ancillary chunk directly after IHDR (8 byte signature + 25 byte IHDR chunk)
+                    int afterHeader = 8 + 25;
+                    out.write(data, 0, afterHeader);
+                    byte[] type = new byte[]{'k', 'u', 'R', 'o'};
+                    CRC32 crc = new CRC32();
+                    crc.update(type);
+                    crc.update(junk);
+                    long crcValue = crc.getValue();
+                    out.write(intToBytesBigEndian(junk.length));
+                    out.write(type);
+                    out.write(junk);
+                    out.write(intToBytesBigEndian((int) crcValue));
+                    out.write(data, afterHeader, data.length - afterHeader);
+                    break;
+                }
+                default: {
+                    // WEBP; an unknown chunk at the end of the RIFF container, with the container size fixed up
+                    int riffSize = (data[4] & 0xFF) | (data[5] & 0xFF) << 8 | (data[6] & 0xFF) << 16
+                            | (data[7] & 0xFF) << 24;
+                    int newSize = riffSize + 8 + junk.length;
+                    out.write(data, 0, 4);
+                    out.write(new byte[]{(byte) newSize, (byte) (newSize >> 8), (byte) (newSize >> 16),
+                            (byte) (newSize >> 24)});
+                    out.write(data, 8, data.length - 8);
+                    out.write(new byte[]{'K', 'U', 'R', 'O', (byte) junk.length, 0, 0, 0});
+                    out.write(junk);
+                    break;
+                }
             }
         }
     }
 
+    private static byte[] intToBytesBigEndian(int value) {
+        return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+    }
+
     private static void deleteOldTempFiles(File[] files) {
         if (files == null || files.length == 0) {
             return;
@@ -174,12 +400,12 @@ public class BitmapUtils {
      */
     @NonNull
     public static Pair<Integer, Integer> getImageDims(File file) {
-        try {
-            Bitmap bitmap = BitmapFactory.decodeStream(new FileInputStream(file));
-            return new Pair<>(bitmap.getWidth(), bitmap.getHeight());
-        } catch (Exception e) {
-            return new Pair<>(-1, -1);
-        }
+        // only decode the header, not the whole bitmap
+        BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) return new Pair<>(-1, -1);
+        return new Pair<>(boundsOptions.outWidth, boundsOptions.outHeight);
     }
 
     /**
@@ -307,4 +533,13 @@ public class BitmapUtils {
     public interface ImageDecoderCallback {
         void onImageBitmap(Bitmap bitmap);
     }
+
+    public interface ReencodeListener {
+        /**
+         * @param percent 0-100; may be called from a background thread
+         */
+        void onProgress(int percent);
+
+        boolean isCanceled();
+    }
 }
@@ -7,10 +7,7 @@ import com.github.adamantcheese.chan.core.model.Post;
 
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 public class PostUtils {
 
@@ -31,34 +28,8 @@ public class PostUtils {
         return String.format(Locale.ENGLISH, "%.1f %ciB", value / 1024.0, ci.current());
     }
 
+    @Nullable
     public static Post findPostById(int id, @Nullable ChanThread thread) {
-        if (thread != null) {
-            for (Post post : thread.getPosts()) {
-                if (post.no == id) {
-                    return post;
-                }
-            }
-        }
-        return null;
-    }
-
-    public static Set<Post> findPostWithReplies(int id, List<Post> posts) {
-        Set<Post> postsSet = new HashSet<>();
-        findPostWithRepliesRecursive(id, posts, postsSet);
-        return postsSet;
-    }
-
-    /**
-     * Finds a post by it's id and then finds all posts that has replied to this post recursively
-     */
-    private static void findPostWithRepliesRecursive(int id, List<Post> posts, Set<Post> postsSet) {
-        for (Post post : posts) {
-            if (post.no == id && !postsSet.contains(post)) {
-                postsSet.add(post);
-                for (Integer replyId : post.repliesFrom) {
-                    findPostWithRepliesRecursive(replyId, posts, postsSet);
-                }
-            }
-        }
+        return thread == null ? null : thread.getPost(id);
     }
 }
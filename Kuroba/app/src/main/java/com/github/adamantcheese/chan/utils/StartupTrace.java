@@ -0,0 +1,69 @@
+package com.github.adamantcheese.chan.utils;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records how long each phase of application startup took and on which thread, for the developer settings screen.
+ * Times are relative to the process start where the platform reports it (Android 7 and up), otherwise to
+ * {@link #start()}, which the application calls as the first thing in onCreate.
+ */
+public class StartupTrace {
+    private static final List<String> phases = new ArrayList<>();
+    private static long startTime = -1;
+    private static boolean fromProcessStart;
+
+    public static synchronized void start() {
+        if (startTime >= 0) return;
+        fromProcessStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+        startTime = fromProcessStart ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * @return a phase that is recorded when {@link Phase#end()} is called
+     */
+    public static Phase begin(String name) {
+        return new Phase(name);
+    }
+
+    public static synchronized String getSummary() {
+        if (phases.isEmpty()) return "No startup phases recorded";
+        StringBuilder summary =
+                new StringBuilder(fromProcessStart ? "Offsets from process start" : "Offsets from Application onCreate");
+        for (String phase : phases) {
+            summary.append('\n').append(phase);
+        }
+        return summary.toString();
+    }
+
+    private static synchronized void record(String name, long start, long end) {
+        long offset = startTime < 0 ? 0 : start - startTime;
+        String phase = String.format(Locale.ENGLISH,
+                "+%dms %s: %dms (%s)",
+                offset,
+                name,
+                end - start,
+                Thread.currentThread().getName()
+        );
+        phases.add(phase);
+        Logger.d("StartupTrace", phase);
+    }
+
+    public static class Phase {
+        private final String name;
+        private final long start = SystemClock.elapsedRealtime();
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        public void end() {
+            record(name, start, SystemClock.elapsedRealtime());
+        }
+    }
+}